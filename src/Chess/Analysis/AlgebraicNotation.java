@@ -0,0 +1,238 @@
+package Chess.Analysis;
+
+import Chess.Models.Board;
+import Chess.Models.Coordinate;
+import Chess.Models.Move;
+import Chess.Models.Piece;
+import Chess.Types.GameStatus;
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+/**
+ * The standard algebraic notation (SAN) of moves and the Forsyth-Edwards notation (FEN) of positions, as in PGN files.
+ *
+ * The variant pieces have letters of their own, D for the drunken knight and E for the elephant, next to K, Q, B, N, R
+ * and P. The game has no castling, en passant or promotions, so a FEN written here only tells the pieces and the player
+ * to move, and the other fields of a FEN read here are ignored.
+ */
+public final class AlgebraicNotation {
+    public static final String STARTING_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1";
+    // the letter of each PieceType, indexed by PieceType.ordinal(), in upper case for white in a FEN
+    private static final String PIECE_LETTERS = "KQBNRPDE";
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+    // the squares of column a and of row 0, rank 8
+    private static final long COLUMN_MASK = 0x0101010101010101L;
+    private static final long ROW_MASK = 0xFFL;
+
+    private AlgebraicNotation() {
+    }
+
+    /**
+     * @return the SAN of a legal move, see appendMove.
+     */
+    public static String formatMove(Board board, PlayerColor color, int move) {
+        StringBuilder san = new StringBuilder(8);
+        appendMove(board, color, move, san);
+        return san.toString();
+    }
+
+    /**
+     * Appends the SAN of a legal move: the letter of the piece, none for a pawn, its column, row or square when another
+     * piece of the same kind can go to the same square, x for a capture, the destination and + for a check or # for a
+     * mate. A pawn capture starts with the column of the pawn.
+     * @param board the position before the move. The move is made to look for a check, then taken back.
+     */
+    public static void appendMove(Board board, PlayerColor color, int move, StringBuilder san) {
+        int fromSquare = Move.getFromSquare(move);
+        int toSquare = Move.getToSquare(move);
+        Piece piece = board.getPieceAtSquare(fromSquare);
+        boolean isCapture = board.getPieceAtSquare(toSquare) != null;
+        long rivals = 0;
+        long others = board.getPieceSquares(piece.type, color) & ~(1L << fromSquare);
+        while (others != 0) {
+            int square = Long.numberOfTrailingZeros(others);
+            others &= others - 1;
+            if (board.isLegalMove(Move.encode(square, toSquare), color)) {
+                rivals |= 1L << square;
+            }
+        }
+        if (piece.type == PieceType.PAWN) {
+            // the column of a pawn is written for a capture and implied otherwise. The double step leaps over a pawn
+            // of the same column, which the square of the pawn tells apart
+            boolean isRowNeeded = (rivals & COLUMN_MASK << (fromSquare % 8)) != 0;
+            if (isCapture || isRowNeeded) {
+                san.append(columnName(fromSquare));
+            }
+            if (isRowNeeded) {
+                san.append(rowName(fromSquare));
+            }
+        } else {
+            san.append(PIECE_LETTERS.charAt(piece.type.ordinal()));
+            if (rivals != 0) {
+                if ((rivals & COLUMN_MASK << (fromSquare % 8)) == 0) {
+                    san.append(columnName(fromSquare));
+                } else if ((rivals & ROW_MASK << (fromSquare / 8 * 8)) == 0) {
+                    san.append(rowName(fromSquare));
+                } else {
+                    san.append(columnName(fromSquare)).append(rowName(fromSquare));
+                }
+            }
+        }
+        if (isCapture) {
+            san.append('x');
+        }
+        san.append(columnName(toSquare)).append(rowName(toSquare));
+
+        board.makeMove(move);
+        GameStatus status = board.evaluateStatus(color.oppositeColor());
+        board.undoLastMove();
+        if (status == GameStatus.CHECKMATE) {
+            san.append('#');
+        } else if (status == GameStatus.CHECK) {
+            san.append('+');
+        }
+    }
+
+    /**
+     * Reads a move in SAN. The capture, check and mate marks and the annotations such as !? are not checked, and a
+     * piece needs no column or row as long as only one piece of its kind can go to the destination.
+     * @return the move, see Move.
+     * @throws IllegalArgumentException if the move is not legal, is ambiguous or is not SAN.
+     */
+    public static int parseMove(Board board, PlayerColor color, CharSequence san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        int toSquare = end < 2 ? -1 : parseSquare(san.charAt(end - 2), san.charAt(end - 1));
+        if (toSquare < 0) {
+            throw new IllegalArgumentException(san + " is not a move of this game");
+        }
+        PieceType type = PieceType.PAWN;
+        int start = 0;
+        int letter = PIECE_LETTERS.indexOf(san.charAt(0));
+        if (letter >= 0) {
+            type = PIECE_TYPES[letter];
+            start = 1;
+        }
+        // a pawn moves straight ahead unless its column tells otherwise
+        int fromColumn = type == PieceType.PAWN ? toSquare % 8 : -1;
+        int fromRow = -1;
+        for (int i = start; i < end - 2; i++) {
+            char c = san.charAt(i);
+            if (c >= 'a' && c <= 'h') {
+                fromColumn = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRow = '8' - c;
+            } else if (c != 'x' && c != ':' && c != '-') {
+                throw new IllegalArgumentException(san + " is not a move of this game");
+            }
+        }
+        long candidates = board.getPieceSquares(type, color);
+        if (fromColumn >= 0) {
+            candidates &= COLUMN_MASK << fromColumn;
+        }
+        if (fromRow >= 0) {
+            candidates &= ROW_MASK << (fromRow * 8);
+        }
+        int move = Move.NONE;
+        while (candidates != 0) {
+            int square = Long.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+            int candidate = Move.encode(square, toSquare);
+            if (board.isLegalMove(candidate, color)) {
+                if (move != Move.NONE) {
+                    throw new IllegalArgumentException(san + " is ambiguous");
+                }
+                move = candidate;
+            }
+        }
+        if (move == Move.NONE) {
+            throw new IllegalArgumentException(san + " is not a legal move of " + color);
+        }
+        return move;
+    }
+
+    /**
+     * @return the FEN of the pieces of a board with a player to move.
+     */
+    public static String formatPosition(Board board, PlayerColor colorToMove) {
+        StringBuilder fen = new StringBuilder(64);
+        for (int row = 0; row < 8; row++) {
+            int emptyCount = 0;
+            for (int column = 0; column < 8; column++) {
+                Piece piece = board.getPieceAtSquare(row * 8 + column);
+                if (piece == null) {
+                    emptyCount++;
+                    continue;
+                }
+                if (emptyCount > 0) {
+                    fen.append(emptyCount);
+                    emptyCount = 0;
+                }
+                char letter = PIECE_LETTERS.charAt(piece.type.ordinal());
+                fen.append(piece.color == PlayerColor.WHITE ? letter : Character.toLowerCase(letter));
+            }
+            if (emptyCount > 0) {
+                fen.append(emptyCount);
+            }
+            if (row < 7) {
+                fen.append('/');
+            }
+        }
+        return fen.append(colorToMove == PlayerColor.WHITE ? " w" : " b").append(" - - 0 1").toString();
+    }
+
+    /**
+     * @return a board with the pieces of a FEN, and no moves.
+     * @throws IllegalArgumentException if the FEN does not describe 8 rows of 8 squares.
+     */
+    public static Board parsePosition(String fen) {
+        Board board = new Board(PositionCorpus.EMPTY_POSITION);
+        int row = 0;
+        int column = 0;
+        for (int i = 0; i < fen.length() && fen.charAt(i) != ' '; i++) {
+            char c = fen.charAt(i);
+            if (c == '/' && column == 8 && row < 7) {
+                row++;
+                column = 0;
+            } else if (c >= '1' && c <= '8' && column + (c - '0') <= 8) {
+                column += c - '0';
+            } else if (PIECE_LETTERS.indexOf(Character.toUpperCase(c)) >= 0 && column < 8) {
+                PieceType type = PIECE_TYPES[PIECE_LETTERS.indexOf(Character.toUpperCase(c))];
+                PlayerColor color = Character.isUpperCase(c) ? PlayerColor.WHITE : PlayerColor.BLACK;
+                board.setPieceAtCoordinate(Piece.of(type, color), new Coordinate(row, column));
+                column++;
+            } else {
+                throw new IllegalArgumentException(fen + " is not a position of this game");
+            }
+        }
+        if (row != 7 || column != 8) {
+            throw new IllegalArgumentException(fen + " is not a position of this game");
+        }
+        return board;
+    }
+
+    /**
+     * @return the player to move of a FEN, white if it does not tell.
+     */
+    public static PlayerColor parseColorToMove(String fen) {
+        int space = fen.indexOf(' ');
+        return space >= 0 && fen.startsWith("b", space + 1) ? PlayerColor.BLACK : PlayerColor.WHITE;
+    }
+
+    private static int parseSquare(char column, char row) {
+        if (column < 'a' || column > 'h' || row < '1' || row > '8') {
+            return -1;
+        }
+        return ('8' - row) * 8 + column - 'a';
+    }
+
+    private static char columnName(int square) {
+        return (char) ('a' + square % 8);
+    }
+
+    private static char rowName(int square) {
+        return (char) ('8' - square / 8);
+    }
+}
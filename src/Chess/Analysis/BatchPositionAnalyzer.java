@@ -0,0 +1,159 @@
+package Chess.Analysis;
+
+import Chess.Models.Board;
+import Chess.Types.PlayerColor;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Streams positions in the 192 character Board format, one per line, and writes one CSV row per position with the
+ * legal move count and status of both players.
+ *
+ * Lines are read in batches and fanned out over a pool of worker threads, each one reusing its own Board. Only a
+ * few batches per worker are in flight at any time and rows are written in input order, so memory stays bounded
+ * however large the input is.
+ *
+ * Usage: BatchPositionAnalyzer [input file or -] [output file or -] [thread count]
+ */
+public class BatchPositionAnalyzer {
+    public static final String CSV_HEADER = "line,white_moves,black_moves,white_status,black_status";
+    static int BATCH_SIZE = 512;
+    static int BATCHES_IN_FLIGHT_PER_THREAD = 4;
+
+    private final int threadCount;
+
+    /**
+     * @param threadCount the number of worker threads, usually the number of cores.
+     */
+    public BatchPositionAnalyzer(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Analyzes every line of input and writes the CSV, header included, to output.
+     * @return the number of positions read
+     */
+    public long analyze(BufferedReader input, Writer output) throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threadCount);
+        // one board per worker thread, reloaded for every position
+        final ThreadLocal<Board> workerBoards = new ThreadLocal<Board>();
+        ArrayDeque<Future<String>> inFlight = new ArrayDeque<Future<String>>();
+        int maxInFlight = threadCount * BATCHES_IN_FLIGHT_PER_THREAD;
+        long lineCount = 0;
+        try {
+            output.write(CSV_HEADER);
+            output.write('\n');
+            List<String> batch = new ArrayList<String>(BATCH_SIZE);
+            String line;
+            while (true) {
+                line = input.readLine();
+                if (line != null) {
+                    batch.add(line);
+                    lineCount++;
+                }
+                if (batch.size() == BATCH_SIZE || (line == null && !batch.isEmpty())) {
+                    final List<String> positions = batch;
+                    final long firstLineNumber = lineCount - batch.size() + 1;
+                    inFlight.add(workers.submit(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return analyzeBatch(positions, firstLineNumber, workerBoards);
+                        }
+                    }));
+                    batch = new ArrayList<String>(BATCH_SIZE);
+                    if (inFlight.size() >= maxInFlight) {
+                        // wait for the oldest batch before reading further
+                        output.write(inFlight.poll().get());
+                    }
+                }
+                if (line == null) {
+                    break;
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                output.write(inFlight.poll().get());
+            }
+            output.flush();
+        } catch (ExecutionException e) {
+            throw new IOException("analysis failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        return lineCount;
+    }
+
+    private static String analyzeBatch(List<String> positions, long firstLineNumber, ThreadLocal<Board> workerBoards) {
+        StringBuilder rows = new StringBuilder(positions.size() * 40);
+        long lineNumber = firstLineNumber;
+        for (String position : positions) {
+            rows.append(lineNumber++).append(',');
+            if (!isValidPosition(position)) {
+                rows.append("-1,-1,invalid,invalid\n");
+                continue;
+            }
+            Board board = workerBoards.get();
+            if (board == null) {
+                board = new Board(position);
+                workerBoards.set(board);
+            } else {
+                board.loadPosition(position);
+            }
+            int whiteMoves = board.getCountForReachableMoves(PlayerColor.WHITE);
+            int blackMoves = board.getCountForReachableMoves(PlayerColor.BLACK);
+            rows.append(whiteMoves).append(',').append(blackMoves).append(',')
+                    .append(describeStatus(board, PlayerColor.WHITE, whiteMoves)).append(',')
+                    .append(describeStatus(board, PlayerColor.BLACK, blackMoves)).append('\n');
+        }
+        return rows.toString();
+    }
+
+    /**
+     * @return none, check, checkmate or stalemate for a player, as if it were their turn.
+     */
+    private static String describeStatus(Board board, PlayerColor color, int legalMoveCount) {
+        boolean isInCheck = board.isKingInCheck(color);
+        if (legalMoveCount == 0) {
+            return isInCheck ? "checkmate" : "stalemate";
+        }
+        return isInCheck ? "check" : "none";
+    }
+
+    static boolean isValidPosition(String position) {
+        if (position.length() != 192) {
+            return false;
+        }
+        for (int i = 0; i < 192; i += 3) {
+            char code = position.charAt(i + 1);
+            char color = position.charAt(i + 2);
+            if (position.charAt(i) != '#' || "KQBHRPXYE".indexOf(code) < 0) {
+                return false;
+            }
+            // 0 or 1 for the color of a piece, 2 for an empty square
+            if (code == 'E' ? color != '2' : color != '0' && color != '1') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String inputPath = args.length > 0 ? args[0] : "-";
+        String outputPath = args.length > 1 ? args[1] : "-";
+        int threadCount = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        InputStream inputStream = inputPath.equals("-") ? System.in : new FileInputStream(inputPath);
+        OutputStream outputStream = outputPath.equals("-") ? System.out : new FileOutputStream(outputPath);
+        try (BufferedReader input = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.US_ASCII), 1 << 16);
+             Writer output = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.US_ASCII), 1 << 16)) {
+            long startTime = System.nanoTime();
+            long positionCount = new BatchPositionAnalyzer(threadCount).analyze(input, output);
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            System.err.printf("%d positions in %.2fs (%.0f positions/s) on %d threads%n",
+                    positionCount, seconds, positionCount / seconds, threadCount);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package Chess.Analysis;
+
+import Chess.Engine.EndgameTable;
+import Chess.Engine.EvaluationParameters;
+import Chess.Engine.Evaluator;
+import Chess.Models.Board;
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Learns the scale factors of the endings with an elephant or a drunken knight, whose evaluation cannot be trusted as
+ * it is: nobody knows which of them can be won.
+ *
+ * The positions of a corpus with at most MAX_PIECES pieces are grouped by their material, and the factor of every
+ * group with MIN_POSITIONS positions or more is the one at which the scaled evaluation best predicts the results,
+ * through the sigmoid of the EvaluationTuner, at the scale fitted to the whole corpus.
+ *
+ * Usage: EndgameScaleLearner [corpus file with results] [endgames file to write] [thread count]
+ * The endings start from Assets/endgames.txt, the learned ones replace their rule.
+ */
+public class EndgameScaleLearner {
+    static final int MAX_PIECES = 6;
+    static final int MIN_POSITIONS = 200;
+    static final int MAX_SCALE_FACTOR = 2 * EndgameTable.NORMAL_SCALE;
+    private static final double LOG_10 = Math.log(10);
+
+    /**
+     * The positions of one material, seen from the player whose pieces are written first.
+     */
+    static final class MaterialGroup {
+        int[] evaluations = new int[64];
+        // the first player's results in half points
+        byte[] results = new byte[64];
+        int positionCount;
+
+        void add(int evaluation, int result) {
+            if (positionCount == evaluations.length) {
+                evaluations = Arrays.copyOf(evaluations, positionCount * 2);
+                results = Arrays.copyOf(results, positionCount * 2);
+            }
+            evaluations[positionCount] = evaluation;
+            results[positionCount] = (byte) result;
+            positionCount++;
+        }
+
+        /**
+         * @return the factor of 0 to MAX_SCALE_FACTOR with the least squared error of the expected scores.
+         */
+        int fitScaleFactor(double scale) {
+            int bestFactor = EndgameTable.NORMAL_SCALE;
+            double bestError = Double.MAX_VALUE;
+            for (int factor = 0; factor <= MAX_SCALE_FACTOR; factor++) {
+                double error = 0;
+                for (int i = 0; i < positionCount; i++) {
+                    double scaled = (double) evaluations[i] * factor / EndgameTable.NORMAL_SCALE;
+                    double expected = 1 / (1 + Math.exp(-scale * LOG_10 / 400 * scaled));
+                    error += (results[i] / 2.0 - expected) * (results[i] / 2.0 - expected);
+                }
+                if (error < bestError) {
+                    bestError = error;
+                    bestFactor = factor;
+                }
+            }
+            return bestFactor;
+        }
+    }
+
+    private final EndgameTable table;
+    private final Evaluator evaluator;
+    // by material, see EndgameTable.describeMaterial
+    private final Map<String, MaterialGroup> groups = new LinkedHashMap<String, MaterialGroup>();
+
+    public EndgameScaleLearner(EndgameTable table, Evaluator evaluator) {
+        this.table = table;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Adds the positions of a corpus with a known result and the material of a learned ending.
+     */
+    public void loadPositions(PositionCorpus corpus) {
+        Board board = new Board(PositionCorpus.EMPTY_POSITION);
+        for (long record = 0; record < corpus.getRecordCount(); record++) {
+            byte result = corpus.getResult(record);
+            if (result == PositionCorpus.RESULT_UNKNOWN) {
+                continue;
+            }
+            corpus.readPosition(record, board);
+            if (!isLearned(board)) {
+                continue;
+            }
+            // the stronger player first, so an ending and its mirror fall in the same group
+            String whiteFirst = EndgameTable.describeMaterial(board, PlayerColor.WHITE);
+            String blackFirst = EndgameTable.describeMaterial(board, PlayerColor.BLACK);
+            PlayerColor first = compareMaterial(whiteFirst, blackFirst) >= 0 ? PlayerColor.WHITE : PlayerColor.BLACK;
+            String material = first == PlayerColor.WHITE ? whiteFirst : blackFirst;
+            MaterialGroup group = groups.get(material);
+            if (group == null) {
+                group = new MaterialGroup();
+                groups.put(material, group);
+            }
+            int halfPoints = result == PositionCorpus.RESULT_DRAW ? 1
+                    : (result == PositionCorpus.RESULT_WHITE_WINS) == (first == PlayerColor.WHITE) ? 2 : 0;
+            group.add(evaluator.evaluate(board, first), halfPoints);
+        }
+    }
+
+    /**
+     * @return the learned scale factor of every material with enough positions.
+     */
+    public Map<String, Integer> learnScaleFactors(double scale) {
+        Map<String, Integer> scaleFactors = new LinkedHashMap<String, Integer>();
+        for (Map.Entry<String, MaterialGroup> entry : groups.entrySet()) {
+            if (entry.getValue().positionCount >= MIN_POSITIONS) {
+                scaleFactors.put(entry.getKey(), entry.getValue().fitScaleFactor(scale));
+            }
+        }
+        return scaleFactors;
+    }
+
+    public int getPositionCount(String material) {
+        MaterialGroup group = groups.get(material);
+        return group == null ? 0 : group.positionCount;
+    }
+
+    /**
+     * @return a table with the endings of the learner's table and the learned factors, which replace the rule of
+     * their material.
+     */
+    public EndgameTable createTable(Map<String, Integer> scaleFactors) {
+        List<EndgameTable.Endgame> endgames = new ArrayList<EndgameTable.Endgame>();
+        Set<String> written = new HashSet<String>();
+        for (EndgameTable.Endgame endgame : table.getEndgames()) {
+            Integer factor = scaleFactors.get(endgame.material);
+            if (factor == null) {
+                endgames.add(endgame);
+            } else {
+                endgames.add(new EndgameTable.Endgame(endgame.material, EndgameTable.Rule.SCALE, endgame.strongSide, factor));
+                written.add(endgame.material);
+            }
+        }
+        for (Map.Entry<String, Integer> entry : scaleFactors.entrySet()) {
+            if (!written.contains(entry.getKey())) {
+                for (PlayerColor color : new PlayerColor[]{PlayerColor.WHITE, PlayerColor.BLACK}) {
+                    endgames.add(new EndgameTable.Endgame(entry.getKey(), EndgameTable.Rule.SCALE, color, entry.getValue()));
+                }
+            }
+        }
+        return new EndgameTable(endgames);
+    }
+
+    /**
+     * @return true for a few pieces with an elephant or a drunken knight, unless the table knows the ending is a
+     * draw or a win.
+     */
+    private boolean isLearned(Board board) {
+        long pieces = board.getColorSquares(PlayerColor.WHITE) | board.getColorSquares(PlayerColor.BLACK);
+        long fairyPieces = 0;
+        for (PlayerColor color : new PlayerColor[]{PlayerColor.WHITE, PlayerColor.BLACK}) {
+            fairyPieces |= board.getPieceSquares(PieceType.ELEPHANT, color)
+                    | board.getPieceSquares(PieceType.DRUNKEN_KNIGHT, color);
+        }
+        if (fairyPieces == 0 || Long.bitCount(pieces) > MAX_PIECES) {
+            return false;
+        }
+        EndgameTable.Endgame endgame = table.lookUp(board);
+        return endgame == null || endgame.rule == EndgameTable.Rule.SCALE;
+    }
+
+    /**
+     * @return a positive number if the first pieces have more pieces than the second, or the same number and come
+     * first in the order of the letters.
+     */
+    private static int compareMaterial(String material, String mirror) {
+        int firstLength = material.indexOf(' ');
+        int mirrorLength = mirror.indexOf(' ');
+        return firstLength != mirrorLength ? firstLength - mirrorLength : mirror.compareTo(material);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: EndgameScaleLearner corpus endgames [thread count]");
+            System.exit(2);
+        }
+        Path corpusPath = Paths.get(args[0]);
+        Path outputPath = Paths.get(args[1]);
+        int threadCount = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        EvaluationTuner tuner = new EvaluationTuner(threadCount);
+        EndgameScaleLearner learner = new EndgameScaleLearner(EndgameTable.getDefault(), new Evaluator());
+        long startTime = System.nanoTime();
+        try (PositionCorpus corpus = PositionCorpus.open(corpusPath)) {
+            if (!corpus.hasMetadata()) {
+                throw new IllegalArgumentException(corpusPath + " has no results");
+            }
+            tuner.loadPositions(corpus);
+            learner.loadPositions(corpus);
+        }
+        if (tuner.getPositionCount() == 0) {
+            throw new IllegalArgumentException(corpusPath + " has no position with a known result");
+        }
+        int[] values = EvaluationParameters.getDefault().toArray();
+        double[] parameters = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            parameters[i] = values[i];
+        }
+        double scale = tuner.fitScale(parameters);
+        tuner.shutdown();
+        Map<String, Integer> scaleFactors = learner.learnScaleFactors(scale);
+        System.err.printf("scale %.3f, %d endings learned in %.2fs%n", scale, scaleFactors.size(),
+                (System.nanoTime() - startTime) / 1e9);
+        for (Map.Entry<String, Integer> entry : scaleFactors.entrySet()) {
+            System.err.printf("%-17s scale %3d on %d positions%n", entry.getKey(), entry.getValue(),
+                    learner.getPositionCount(entry.getKey()));
+        }
+
+        List<String> comments = new ArrayList<String>();
+        comments.add("The endings recognized by their material, loaded once at startup by Chess.Engine.EndgameTable.");
+        comments.add(String.format("Scale factors learned by Chess.Analysis.EndgameScaleLearner on %s at scale %.3f.",
+                corpusPath.getFileName(), scale));
+        comments.add("");
+        comments.add("One \"<pieces> <pieces> <rule>\" per line, the rules are draw, win and scale <factor / 64>.");
+        learner.createTable(scaleFactors).write(outputPath, comments);
+    }
+}
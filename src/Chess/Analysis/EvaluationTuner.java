@@ -0,0 +1,321 @@
+package Chess.Analysis;
+
+import Chess.Engine.EvaluationParameters;
+import Chess.Engine.Evaluator;
+import Chess.Models.Board;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fits the evaluation parameters to the results of labeled positions, Texel style: the evaluation of each position
+ * is mapped to an expected score for white by a sigmoid, and the mean squared error against the actual results is
+ * minimized.
+ *
+ * The evaluation is linear in its parameters, so the features of every position are extracted once, see
+ * Evaluator.computeFeatures, and each step of the descent only takes dot products over the feature table. Both the
+ * extraction and the error with its gradient are split over a ForkJoinPool; every leaf task sums into its own
+ * accumulator and the sums are added up as the tasks join, so threads never share a counter.
+ *
+ * Usage: EvaluationTuner [corpus file with results] [parameters file to write] [thread count] [iterations]
+ * The parameters start from Assets/evaluation.txt.
+ */
+public class EvaluationTuner {
+    static int LEAF_RECORDS = 1 << 14;
+    static double LEARNING_RATE = 1.0;
+    private static final int COUNT = EvaluationParameters.COUNT;
+    private static final double LOG_10 = Math.log(10);
+
+    private final ForkJoinPool pool;
+    // EvaluationParameters.COUNT features per position, white's minus black's
+    private short[] features = new short[0];
+    // white's result per position in half points: 0 for a loss, 1 for a draw, 2 for a win
+    private byte[] results = new byte[0];
+    private int positionCount = 0;
+
+    public EvaluationTuner(int threadCount) {
+        this.pool = new ForkJoinPool(threadCount);
+    }
+
+    public int getPositionCount() {
+        return positionCount;
+    }
+
+    /**
+     * Extracts the features of every record of a corpus with a known result, replacing the loaded positions.
+     * @return the number of positions loaded.
+     */
+    public int loadPositions(final PositionCorpus corpus) {
+        long recordCount = corpus.getRecordCount();
+        if (recordCount * COUNT > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many records for one feature table: " + recordCount);
+        }
+        features = new short[(int) recordCount * COUNT];
+        results = new byte[(int) recordCount];
+        pool.invoke(new ExtractionTask(corpus, 0, (int) recordCount));
+
+        // move the labeled positions to the front
+        positionCount = 0;
+        for (int record = 0; record < recordCount; record++) {
+            if (results[record] < 0) {
+                continue;
+            }
+            if (positionCount != record) {
+                System.arraycopy(features, record * COUNT, features, positionCount * COUNT, COUNT);
+                results[positionCount] = results[record];
+            }
+            positionCount++;
+        }
+        return positionCount;
+    }
+
+    /**
+     * @return the mean squared error of the expected scores.
+     * @param scale stretches the evaluation before the sigmoid, see fitScale.
+     */
+    public double computeError(double[] parameters, double scale) {
+        return pool.invoke(new ErrorTask(parameters, scale, false, 0, positionCount))[COUNT] / positionCount;
+    }
+
+    /**
+     * @return the gradient of computeError with respect to every parameter.
+     */
+    public double[] computeGradient(double[] parameters, double scale) {
+        double[] sums = pool.invoke(new ErrorTask(parameters, scale, true, 0, positionCount));
+        double[] gradient = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            gradient[i] = sums[i] / positionCount;
+        }
+        return gradient;
+    }
+
+    /**
+     * Finds the scale at which the evaluation best predicts the results, so the parameters keep their centipawn
+     * meaning while they are tuned.
+     */
+    public double fitScale(double[] parameters) {
+        // golden-section search, the error is unimodal in the scale
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double low = 0.05;
+        double high = 5.0;
+        double left = high - ratio * (high - low);
+        double right = low + ratio * (high - low);
+        double leftError = computeError(parameters, left);
+        double rightError = computeError(parameters, right);
+        while (high - low > 0.001) {
+            if (leftError < rightError) {
+                high = right;
+                right = left;
+                rightError = leftError;
+                left = high - ratio * (high - low);
+                leftError = computeError(parameters, left);
+            } else {
+                low = left;
+                left = right;
+                leftError = rightError;
+                right = low + ratio * (high - low);
+                rightError = computeError(parameters, right);
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Minimizes the error by gradient descent with Adam step sizes.
+     * @param log receives the error every few iterations, may be null.
+     * @return the tuned parameters, not rounded.
+     */
+    public double[] tune(double[] initialParameters, double scale, int iterations, PrintStream log) {
+        double[] parameters = initialParameters.clone();
+        double[] firstMoments = new double[COUNT];
+        double[] secondMoments = new double[COUNT];
+        double beta1 = 0.9;
+        double beta2 = 0.999;
+        for (int iteration = 1; iteration <= iterations; iteration++) {
+            double[] sums = pool.invoke(new ErrorTask(parameters, scale, true, 0, positionCount));
+            for (int i = 0; i < COUNT; i++) {
+                double gradient = sums[i] / positionCount;
+                firstMoments[i] = beta1 * firstMoments[i] + (1 - beta1) * gradient;
+                secondMoments[i] = beta2 * secondMoments[i] + (1 - beta2) * gradient * gradient;
+                double firstEstimate = firstMoments[i] / (1 - Math.pow(beta1, iteration));
+                double secondEstimate = secondMoments[i] / (1 - Math.pow(beta2, iteration));
+                parameters[i] -= LEARNING_RATE * firstEstimate / (Math.sqrt(secondEstimate) + 1e-12);
+            }
+            if (log != null && (iteration % 50 == 0 || iteration == iterations)) {
+                log.printf("iteration %d: error %.6f%n", iteration, sums[COUNT] / positionCount);
+            }
+        }
+        return parameters;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Extracts the features of a range of records, each leaf with its own board.
+     */
+    private class ExtractionTask extends RecursiveAction {
+        private final PositionCorpus corpus;
+        private final int start;
+        private final int end;
+
+        ExtractionTask(PositionCorpus corpus, int start, int end) {
+            this.corpus = corpus;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > LEAF_RECORDS) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ExtractionTask(corpus, start, middle), new ExtractionTask(corpus, middle, end));
+                return;
+            }
+            Board board = new Board(PositionCorpus.EMPTY_POSITION);
+            int[] positionFeatures = new int[COUNT];
+            for (int record = start; record < end; record++) {
+                int result = toHalfPoints(corpus.getResult(record));
+                results[record] = (byte) result;
+                if (result < 0) {
+                    continue;
+                }
+                corpus.readPosition(record, board);
+                Evaluator.computeFeatures(board, positionFeatures);
+                for (int i = 0; i < COUNT; i++) {
+                    features[record * COUNT + i] = (short) positionFeatures[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Sums the squared error of a range of positions, in the last slot, and optionally the gradient of the error
+     * with respect to every parameter, in the others.
+     */
+    private class ErrorTask extends RecursiveTask<double[]> {
+        private final double[] parameters;
+        private final double scale;
+        private final boolean isGradientNeeded;
+        private final int start;
+        private final int end;
+
+        ErrorTask(double[] parameters, double scale, boolean isGradientNeeded, int start, int end) {
+            this.parameters = parameters;
+            this.scale = scale;
+            this.isGradientNeeded = isGradientNeeded;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (end - start > LEAF_RECORDS) {
+                int middle = (start + end) >>> 1;
+                ErrorTask left = new ErrorTask(parameters, scale, isGradientNeeded, start, middle);
+                left.fork();
+                double[] sums = new ErrorTask(parameters, scale, isGradientNeeded, middle, end).compute();
+                double[] leftSums = left.join();
+                for (int i = 0; i <= COUNT; i++) {
+                    sums[i] += leftSums[i];
+                }
+                return sums;
+            }
+            double[] sums = new double[COUNT + 1];
+            double slope = scale * LOG_10 / 400;
+            for (int position = start; position < end; position++) {
+                int offset = position * COUNT;
+                double evaluation = 0;
+                for (int i = 0; i < COUNT; i++) {
+                    evaluation += parameters[i] * features[offset + i];
+                }
+                double expected = 1 / (1 + Math.exp(-slope * evaluation));
+                double difference = results[position] / 2.0 - expected;
+                sums[COUNT] += difference * difference;
+                if (isGradientNeeded) {
+                    double factor = -2 * difference * expected * (1 - expected) * slope;
+                    for (int i = 0; i < COUNT; i++) {
+                        sums[i] += factor * features[offset + i];
+                    }
+                }
+            }
+            return sums;
+        }
+    }
+
+    /**
+     * @return white's result in half points, or -1 if the result is unknown.
+     */
+    private static int toHalfPoints(byte result) {
+        switch (result) {
+            case PositionCorpus.RESULT_WHITE_WINS:
+                return 2;
+            case PositionCorpus.RESULT_DRAW:
+                return 1;
+            case PositionCorpus.RESULT_BLACK_WINS:
+                return 0;
+            default:
+                return -1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: EvaluationTuner corpus parameters [thread count] [iterations]");
+            System.exit(2);
+        }
+        Path corpusPath = Paths.get(args[0]);
+        Path outputPath = Paths.get(args[1]);
+        int threadCount = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+
+        EvaluationTuner tuner = new EvaluationTuner(threadCount);
+        try (PositionCorpus corpus = PositionCorpus.open(corpusPath)) {
+            if (!corpus.hasMetadata()) {
+                throw new IllegalArgumentException(corpusPath + " has no results");
+            }
+            long startTime = System.nanoTime();
+            tuner.loadPositions(corpus);
+            System.err.printf("%d labeled positions of %d loaded in %.2fs on %d threads%n", tuner.getPositionCount(),
+                    corpus.getRecordCount(), (System.nanoTime() - startTime) / 1e9, threadCount);
+        }
+        if (tuner.getPositionCount() == 0) {
+            throw new IllegalArgumentException(corpusPath + " has no position with a known result");
+        }
+
+        int[] initialValues = EvaluationParameters.getDefault().toArray();
+        double[] initialParameters = new double[EvaluationParameters.COUNT];
+        for (int i = 0; i < initialParameters.length; i++) {
+            initialParameters[i] = initialValues[i];
+        }
+        long startTime = System.nanoTime();
+        double scale = tuner.fitScale(initialParameters);
+        double initialError = tuner.computeError(initialParameters, scale);
+        System.err.printf("scale %.3f, initial error %.6f%n", scale, initialError);
+        double[] parameters = tuner.tune(initialParameters, scale, iterations, System.err);
+
+        int[] values = new int[EvaluationParameters.COUNT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (int) Math.round(parameters[i]);
+            parameters[i] = values[i];
+        }
+        double finalError = tuner.computeError(parameters, scale);
+        System.err.printf("final error %.6f after %d iterations in %.2fs%n", finalError, iterations,
+                (System.nanoTime() - startTime) / 1e9);
+        tuner.shutdown();
+
+        List<String> comments = new ArrayList<String>();
+        comments.add("The weights of the evaluation in centipawns, loaded once at startup by Chess.Engine.EvaluationParameters.");
+        comments.add(String.format("Tuned by Chess.Analysis.EvaluationTuner on %d positions of %s: error %.6f, was %.6f at scale %.3f.",
+                tuner.getPositionCount(), corpusPath.getFileName(), finalError, initialError, scale));
+        new EvaluationParameters(values).write(outputPath, comments);
+    }
+}
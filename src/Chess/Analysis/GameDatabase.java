@@ -0,0 +1,763 @@
+package Chess.Analysis;
+
+import Chess.Models.Board;
+import Chess.Types.PlayerColor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An embedded database of finished games, indexed by every position they reached.
+ *
+ * A database is a directory of little endian files:
+ * - games-NNNN.dat, the append-only segments of game records: result (byte, see PositionCorpus.RESULT_UNKNOWN), the
+ *   player who moved first (byte, PlayerColor.ordinal()), the move count (unsigned short), the starting position (see
+ *   Board.writePackedPosition) and the moves (see Move) as shorts. A new segment starts before MAX_SEGMENT_BYTES;
+ * - games.offsets, the segment and the offset (ints) of every game. The id of a game is its index in this file;
+ * - index-FIRST-COUNT.run, the sorted runs of the position index, each one covering a range of game ids. A run is a
+ *   RUN_HEADER_BYTES header (magic, version, first game, game count, entry count) then ENTRY_BYTES entries: a position
+ *   hash (long) and the game id in the low 30 bits of an int with the result in the high 2 bits, sorted by hash as
+ *   unsigned then by game id. A game has one entry per distinct position it reached, its starting position included.
+ *
+ * Appending only writes the game. updateIndex replays the games appended since the last update on several threads,
+ * each one radix sorting the entries of its games, and merges them into a new run. Runs are written to a temporary file
+ * then renamed, so a crash leaves the index as it was before the update. Like a binary counter, the newest two runs are
+ * merged while the newer one is at least half as large, which keeps about log2 of the updates runs.
+ *
+ * A query binary searches every memory-mapped run, so it reads a few pages per run however many games the database
+ * holds. Positions are matched by Board.getPositionHash, which leaves out the player to move.
+ *
+ * Appending, reading games and updating the index are synchronized, queries can run on any thread at any time.
+ */
+public class GameDatabase implements Closeable {
+    static final int RUN_MAGIC = 0x49474843; // "CHGI"
+    static final int RUN_VERSION = 1;
+    static final int RUN_HEADER_BYTES = 32;
+    static final int ENTRY_BYTES = 12;
+    static final int GAME_HEADER_BYTES = 4 + Board.PACKED_POSITION_BYTES;
+    static final long MAX_SEGMENT_BYTES = PositionCorpus.MAX_SEGMENT_BYTES;
+    /** The most moves a game can have. **/
+    public static final int MAX_GAME_MOVES = 0xFFFF;
+    /** The most games a database can hold, so their offsets are read in one buffer. **/
+    public static final int MAX_GAMES = 1 << 28;
+    // an entry has the game id in these bits of its int, and the result in the 2 bits above
+    static final int GAME_ID_MASK = (1 << 30) - 1;
+    // games indexed in one run, an update holds about 24 bytes per position of these games
+    static int GAMES_PER_RUN = 1 << 16;
+    // games replayed by one task of an update
+    static int MIN_GAMES_PER_TASK = 1024;
+    static int TASKS_PER_THREAD = 4;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final String OFFSETS_FILE = "games.offsets";
+    private static final PlayerColor[] PLAYER_COLORS = PlayerColor.values();
+
+    /**
+     * How the indexed games that reached a position ended.
+     */
+    public static final class PositionStatistics {
+        public final int gameCount;
+        public final int whiteWins;
+        public final int blackWins;
+        public final int draws;
+        /** The ids of the first games that reached the position, in the order they were appended. **/
+        public final int[] gameIds;
+
+        PositionStatistics(int[] resultCounts, int[] gameIds) {
+            this.whiteWins = resultCounts[PositionCorpus.RESULT_WHITE_WINS];
+            this.blackWins = resultCounts[PositionCorpus.RESULT_BLACK_WINS];
+            this.draws = resultCounts[PositionCorpus.RESULT_DRAW];
+            this.gameCount = whiteWins + blackWins + draws + resultCounts[PositionCorpus.RESULT_UNKNOWN];
+            this.gameIds = gameIds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d games: white won %d, black won %d, %d draws", gameCount, whiteWins, blackWins, draws);
+        }
+    }
+
+    /**
+     * A game read back from the database.
+     */
+    public static final class Game {
+        public final int id;
+        public final byte result;
+        public final PlayerColor firstToMove;
+        /** The position before the first move. **/
+        public final Board startPosition;
+        /** The moves, see Move. **/
+        public final int[] moves;
+
+        Game(int id, byte result, PlayerColor firstToMove, Board startPosition, int[] moves) {
+            this.id = id;
+            this.result = result;
+            this.firstToMove = firstToMove;
+            this.startPosition = startPosition;
+            this.moves = moves;
+        }
+    }
+
+    private final Path directory;
+    private final FileChannel offsetsChannel;
+    private FileChannel segmentChannel;
+    private int segmentIndex;
+    // the bytes of the current segment on disk, the pending games come after them
+    private long segmentSize;
+    private final ByteBuffer pendingGames = ByteBuffer.allocate(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer pendingOffsets = ByteBuffer.allocate(WRITE_BUFFER_BYTES / 16).order(ByteOrder.LITTLE_ENDIAN);
+    // the segment in the high int and the offset in the low int of every game
+    private long[] gameLocations;
+    private int gameCount;
+    // read-only maps of the segments, the current one is mapped again once it has grown
+    private final List<MappedByteBuffer> segmentMaps = new ArrayList<MappedByteBuffer>();
+    // the board a game is copied into to take its moves back
+    private final Board scratchBoard = new Board(PositionCorpus.EMPTY_POSITION);
+    // ordered by game id, replaced as a whole so a query reads the runs that were there when it started
+    private volatile IndexRun[] runs;
+
+    private GameDatabase(Path directory) throws IOException {
+        this.directory = directory;
+        offsetsChannel = FileChannel.open(directory.resolve(OFFSETS_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // a crash can leave half an entry, its game was never appended
+        long offsetsSize = offsetsChannel.size() / 8 * 8;
+        if (offsetsSize / 8 > MAX_GAMES) {
+            throw new IOException(directory + " has more than " + MAX_GAMES + " games");
+        }
+        offsetsChannel.truncate(offsetsSize);
+        gameCount = (int) (offsetsSize / 8);
+        gameLocations = new long[Math.max(1024, gameCount + gameCount / 2)];
+        ByteBuffer offsets = ByteBuffer.allocate((int) offsetsSize).order(ByteOrder.LITTLE_ENDIAN);
+        while (offsets.hasRemaining() && offsetsChannel.read(offsets, offsets.position()) >= 0) {
+        }
+        for (int i = 0; i < gameCount; i++) {
+            gameLocations[i] = ((long) offsets.getInt(i * 8) << 32) | (offsets.getInt(i * 8 + 4) & 0xFFFFFFFFL);
+        }
+        offsetsChannel.position(offsetsSize);
+
+        segmentIndex = gameCount == 0 ? 0 : (int) (gameLocations[gameCount - 1] >>> 32);
+        segmentChannel = openSegment(segmentIndex);
+        // bytes after the last game were written before a crash, the next game goes after them
+        segmentSize = segmentChannel.size();
+        runs = loadRuns();
+    }
+
+    /**
+     * Opens the database in a directory, creating both if needed.
+     */
+    public static GameDatabase open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        return new GameDatabase(directory);
+    }
+
+    public synchronized int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * @return the number of games the queries see, the first ones appended.
+     */
+    public int getIndexedGameCount() {
+        IndexRun[] current = runs;
+        return current.length == 0 ? 0 : current[current.length - 1].firstGame + current[current.length - 1].gameCount;
+    }
+
+    /**
+     * Appends a finished game. Queries only see it after the next updateIndex.
+     * @param board the board the game was played on, its moves are the ones made since its position was loaded.
+     * @param firstToMove the player who made the first move.
+     * @param result one of PositionCorpus.RESULT_UNKNOWN, RESULT_WHITE_WINS, RESULT_BLACK_WINS or RESULT_DRAW.
+     * @return the id of the game.
+     * @throws IllegalArgumentException if the game has more than MAX_GAME_MOVES moves.
+     */
+    public synchronized int append(Board board, PlayerColor firstToMove, byte result) throws IOException {
+        int moveCount = board.getMoveCount();
+        if (moveCount > MAX_GAME_MOVES) {
+            throw new IllegalArgumentException("a game has at most " + MAX_GAME_MOVES + " moves");
+        }
+        if (result < PositionCorpus.RESULT_UNKNOWN || result > PositionCorpus.RESULT_DRAW) {
+            throw new IllegalArgumentException("unknown result " + result);
+        }
+        if (gameCount == MAX_GAMES) {
+            throw new IllegalStateException("the database already has " + MAX_GAMES + " games");
+        }
+        int recordSize = GAME_HEADER_BYTES + 2 * moveCount;
+        if (segmentSize + pendingGames.position() + recordSize > MAX_SEGMENT_BYTES) {
+            flush();
+            segmentChannel.close();
+            if (segmentIndex < segmentMaps.size()) {
+                // the segment will not grow anymore, map all of it the next time it is read
+                segmentMaps.set(segmentIndex, null);
+            }
+            segmentIndex++;
+            segmentChannel = openSegment(segmentIndex);
+            segmentSize = segmentChannel.size();
+        }
+        if (pendingGames.remaining() < recordSize || pendingOffsets.remaining() < 8) {
+            flush();
+        }
+        long offset = segmentSize + pendingGames.position();
+
+        scratchBoard.loadPosition(board);
+        while (scratchBoard.undoLastMove()) {
+        }
+        int recordStart = pendingGames.position();
+        pendingGames.put(result).put((byte) firstToMove.ordinal()).putShort((short) moveCount);
+        scratchBoard.writePackedPosition(pendingGames, recordStart + 4);
+        pendingGames.position(recordStart + GAME_HEADER_BYTES);
+        for (int ply = 0; ply < moveCount; ply++) {
+            pendingGames.putShort((short) board.getMove(ply));
+        }
+        pendingOffsets.putInt(segmentIndex).putInt((int) offset);
+
+        if (gameCount == gameLocations.length) {
+            gameLocations = Arrays.copyOf(gameLocations, gameCount * 2);
+        }
+        gameLocations[gameCount] = ((long) segmentIndex << 32) | offset;
+        return gameCount++;
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if there is no such game.
+     */
+    public synchronized Game readGame(int gameId) throws IOException {
+        if (gameId < 0 || gameId >= gameCount) {
+            throw new IndexOutOfBoundsException("no game " + gameId + " in " + gameCount + " games");
+        }
+        flush();
+        long location = gameLocations[gameId];
+        ByteBuffer segment = mapSegment((int) (location >>> 32));
+        int offset = (int) location;
+        int[] moves = new int[segment.getShort(offset + 2) & 0xFFFF];
+        for (int ply = 0; ply < moves.length; ply++) {
+            moves[ply] = segment.getShort(offset + GAME_HEADER_BYTES + 2 * ply) & 0xFFFF;
+        }
+        Board startPosition = new Board(PositionCorpus.EMPTY_POSITION);
+        startPosition.loadPackedPosition(segment, offset + 4);
+        return new Game(gameId, segment.get(offset), PLAYER_COLORS[segment.get(offset + 1)], startPosition, moves);
+    }
+
+    /**
+     * Indexes the games appended since the last update, GAMES_PER_RUN at a time.
+     * @param threadCount the number of threads replaying the games, usually the number of cores.
+     * @return the number of games indexed.
+     */
+    public synchronized int updateIndex(int threadCount) throws IOException, InterruptedException {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("at least one thread is needed");
+        }
+        flush();
+        int firstGame = getIndexedGameCount();
+        if (firstGame == gameCount) {
+            return 0;
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (int first = firstGame; first < gameCount; first += GAMES_PER_RUN) {
+                addRun(indexGames(first, Math.min(GAMES_PER_RUN, gameCount - first), threadCount, workers));
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return gameCount - firstGame;
+    }
+
+    /**
+     * Finds the indexed games that reached the position on a board.
+     * @param maxGameIds the most game ids to return, the statistics count all the games.
+     */
+    public PositionStatistics findGames(Board board, int maxGameIds) {
+        return findGames(board.getPositionHash(), maxGameIds);
+    }
+
+    /**
+     * Same as findGames, for a position hash given by Board.getPositionHash.
+     */
+    public PositionStatistics findGames(long positionHash, int maxGameIds) {
+        int[] resultCounts = new int[4];
+        int[] gameIds = new int[maxGameIds];
+        int gameIdCount = 0;
+        for (IndexRun run : runs) {
+            gameIdCount = run.collectGames(positionHash, resultCounts, gameIds, gameIdCount);
+        }
+        return new PositionStatistics(resultCounts, Arrays.copyOf(gameIds, gameIdCount));
+    }
+
+    /**
+     * Writes the pending games, then closes the files. Games appended since the last updateIndex are indexed the next
+     * time the database is opened and updated.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            segmentChannel.close();
+            offsetsChannel.close();
+        }
+    }
+
+    /**
+     * Writes the pending games, then their offsets, so an offset never points past the end of a segment.
+     */
+    private void flush() throws IOException {
+        pendingGames.flip();
+        while (pendingGames.hasRemaining()) {
+            segmentSize += segmentChannel.write(pendingGames, segmentSize);
+        }
+        pendingGames.clear();
+        pendingOffsets.flip();
+        while (pendingOffsets.hasRemaining()) {
+            offsetsChannel.write(pendingOffsets);
+        }
+        pendingOffsets.clear();
+    }
+
+    private FileChannel openSegment(int segment) throws IOException {
+        return FileChannel.open(getSegmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private Path getSegmentPath(int segment) {
+        return directory.resolve(String.format("games-%04d.dat", segment));
+    }
+
+    /**
+     * @return a map of all the flushed games of a segment.
+     */
+    private MappedByteBuffer mapSegment(int segment) throws IOException {
+        while (segmentMaps.size() <= segment) {
+            segmentMaps.add(null);
+        }
+        MappedByteBuffer map = segmentMaps.get(segment);
+        if (map == null || (segment == segmentIndex && map.capacity() < segmentSize)) {
+            try (FileChannel channel = FileChannel.open(getSegmentPath(segment), StandardOpenOption.READ)) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            segmentMaps.set(segment, map);
+        }
+        return map;
+    }
+
+    /**
+     * Replays games on the worker threads, then merges their sorted entries into a new run.
+     */
+    private IndexRun indexGames(int firstGame, int count, int threadCount, ExecutorService workers)
+            throws IOException, InterruptedException {
+        final MappedByteBuffer[] maps = new MappedByteBuffer[(int) (gameLocations[firstGame + count - 1] >>> 32) + 1];
+        for (int segment = (int) (gameLocations[firstGame] >>> 32); segment < maps.length; segment++) {
+            maps[segment] = mapSegment(segment);
+        }
+        int taskCount = Math.max(1, Math.min(threadCount * TASKS_PER_THREAD, count / MIN_GAMES_PER_TASK));
+        List<Future<EntryBlock>> tasks = new ArrayList<Future<EntryBlock>>(taskCount);
+        for (int task = 0; task < taskCount; task++) {
+            final int first = firstGame + (int) ((long) count * task / taskCount);
+            final int end = firstGame + (int) ((long) count * (task + 1) / taskCount);
+            tasks.add(workers.submit(new Callable<EntryBlock>() {
+                @Override
+                public EntryBlock call() {
+                    return collectEntries(first, end, maps);
+                }
+            }));
+        }
+        EntryBlock[] blocks = new EntryBlock[taskCount];
+        try {
+            for (int task = 0; task < taskCount; task++) {
+                blocks[task] = tasks.get(task).get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("indexing failed", e.getCause());
+        }
+
+        RunWriter writer = new RunWriter(getRunPath(firstGame, count));
+        try {
+            int[] cursors = new int[taskCount];
+            while (true) {
+                // the first block with the smallest hash, so equal hashes stay in game order
+                int next = -1;
+                for (int block = 0; block < taskCount; block++) {
+                    if (cursors[block] < blocks[block].count && (next < 0 || Long.compareUnsigned(
+                            blocks[block].hashes[cursors[block]], blocks[next].hashes[cursors[next]]) < 0)) {
+                        next = block;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                writer.add(blocks[next].hashes[cursors[next]], blocks[next].values[cursors[next]]);
+                cursors[next]++;
+            }
+            return writer.finish(firstGame, count);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Replays the games from first to end, each one adding one entry per distinct position it reached.
+     */
+    private EntryBlock collectEntries(int first, int end, ByteBuffer[] maps) {
+        EntryBlock block = new EntryBlock((end - first) * 64);
+        Board board = new Board(PositionCorpus.EMPTY_POSITION);
+        long[] gameHashes = new long[256];
+        for (int gameId = first; gameId < end; gameId++) {
+            long location = gameLocations[gameId];
+            ByteBuffer segment = maps[(int) (location >>> 32)];
+            int offset = (int) location;
+            int moveCount = segment.getShort(offset + 2) & 0xFFFF;
+            if (gameHashes.length <= moveCount) {
+                gameHashes = new long[moveCount + 1];
+            }
+            board.loadPackedPosition(segment, offset + 4);
+            gameHashes[0] = board.getPositionHash();
+            for (int ply = 0; ply < moveCount; ply++) {
+                board.makeMove(segment.getShort(offset + GAME_HEADER_BYTES + 2 * ply) & 0xFFFF);
+                gameHashes[ply + 1] = board.getPositionHash();
+            }
+            // a game counts once for a position, however many times it came back to it
+            Arrays.sort(gameHashes, 0, moveCount + 1);
+            int value = gameId | ((segment.get(offset) & 3) << 30);
+            for (int i = 0; i <= moveCount; i++) {
+                if (i == 0 || gameHashes[i] != gameHashes[i - 1]) {
+                    block.add(gameHashes[i], value);
+                }
+            }
+        }
+        block.sort();
+        return block;
+    }
+
+    /**
+     * Adds the run of the newest games, then merges the newest runs while the newer one is at least half as large.
+     */
+    private void addRun(IndexRun run) throws IOException {
+        IndexRun[] updated = Arrays.copyOf(runs, runs.length + 1);
+        updated[updated.length - 1] = run;
+        List<IndexRun> mergedRuns = new ArrayList<IndexRun>();
+        while (updated.length >= 2 && updated[updated.length - 1].entryCount * 2 >= updated[updated.length - 2].entryCount) {
+            IndexRun older = updated[updated.length - 2];
+            IndexRun newer = updated[updated.length - 1];
+            updated = Arrays.copyOf(updated, updated.length - 1);
+            updated[updated.length - 1] = mergeRuns(older, newer);
+            mergedRuns.add(older);
+            mergedRuns.add(newer);
+        }
+        runs = updated;
+        for (IndexRun merged : mergedRuns) {
+            // a run still mapped by a query can fail to be deleted on some systems, opening the database cleans it up
+            try {
+                Files.deleteIfExists(merged.path);
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    private IndexRun mergeRuns(IndexRun older, IndexRun newer) throws IOException {
+        RunWriter writer = new RunWriter(getRunPath(older.firstGame, older.gameCount + newer.gameCount));
+        try {
+            long olderEntry = 0;
+            long newerEntry = 0;
+            while (olderEntry < older.entryCount || newerEntry < newer.entryCount) {
+                // the older run has the smaller game ids, it goes first on equal hashes
+                if (newerEntry == newer.entryCount || (olderEntry < older.entryCount
+                        && Long.compareUnsigned(older.getHash(olderEntry), newer.getHash(newerEntry)) <= 0)) {
+                    writer.add(older.getHash(olderEntry), older.getValue(olderEntry));
+                    olderEntry++;
+                } else {
+                    writer.add(newer.getHash(newerEntry), newer.getValue(newerEntry));
+                    newerEntry++;
+                }
+            }
+            return writer.finish(older.firstGame, older.gameCount + newer.gameCount);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private Path getRunPath(int firstGame, int gameCount) {
+        return directory.resolve(String.format("index-%010d-%010d.run", firstGame, gameCount));
+    }
+
+    /**
+     * Opens the runs that chain from the first game, and deletes the others: the inputs of a merge that was renamed
+     * into place before they were deleted, and the temporary files of an update that did not finish.
+     */
+    private IndexRun[] loadRuns() throws IOException {
+        List<IndexRun> found = new ArrayList<IndexRun>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "index-*")) {
+            for (Path file : files) {
+                if (file.getFileName().toString().endsWith(".run")) {
+                    found.add(IndexRun.open(file));
+                } else {
+                    Files.delete(file);
+                }
+            }
+        }
+        Collections.sort(found, new Comparator<IndexRun>() {
+            @Override
+            public int compare(IndexRun run, IndexRun another) {
+                int order = Integer.compare(run.firstGame, another.firstGame);
+                return order != 0 ? order : Integer.compare(another.gameCount, run.gameCount);
+            }
+        });
+        List<IndexRun> chained = new ArrayList<IndexRun>();
+        int nextGame = 0;
+        for (IndexRun run : found) {
+            if (run.firstGame == nextGame && run.firstGame + run.gameCount <= gameCount) {
+                chained.add(run);
+                nextGame += run.gameCount;
+            } else {
+                Files.delete(run.path);
+            }
+        }
+        return chained.toArray(new IndexRun[chained.size()]);
+    }
+
+    /**
+     * The entries of a range of games, sorted by one worker thread.
+     */
+    private static final class EntryBlock {
+        long[] hashes;
+        int[] values;
+        int count = 0;
+
+        EntryBlock(int capacity) {
+            hashes = new long[Math.max(capacity, 16)];
+            values = new int[hashes.length];
+        }
+
+        void add(long hash, int value) {
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            hashes[count] = hash;
+            values[count] = value;
+            count++;
+        }
+
+        /**
+         * Sorts by hash as unsigned, 16 bits at a time from the lowest. Every pass is stable, so the entries of a hash
+         * stay in game order.
+         */
+        void sort() {
+            long[] sortedHashes = new long[count];
+            int[] sortedValues = new int[count];
+            int[] digitStarts = new int[1 << 16];
+            for (int shift = 0; shift < 64; shift += 16) {
+                Arrays.fill(digitStarts, 0);
+                for (int i = 0; i < count; i++) {
+                    digitStarts[(int) (hashes[i] >>> shift) & 0xFFFF]++;
+                }
+                int total = 0;
+                for (int digit = 0; digit < digitStarts.length; digit++) {
+                    int digitCount = digitStarts[digit];
+                    digitStarts[digit] = total;
+                    total += digitCount;
+                }
+                for (int i = 0; i < count; i++) {
+                    int target = digitStarts[(int) (hashes[i] >>> shift) & 0xFFFF]++;
+                    sortedHashes[target] = hashes[i];
+                    sortedValues[target] = values[i];
+                }
+                long[] swappedHashes = hashes;
+                hashes = sortedHashes;
+                sortedHashes = swappedHashes;
+                int[] swappedValues = values;
+                values = sortedValues;
+                sortedValues = swappedValues;
+            }
+        }
+    }
+
+    /**
+     * Writes the entries of a run to a temporary file, which finish renames into place.
+     */
+    private static final class RunWriter implements Closeable {
+        private final Path path;
+        private final Path temporaryPath;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private long entryCount = 0;
+
+        RunWriter(Path path) throws IOException {
+            this.path = path;
+            temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+            channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            channel.position(RUN_HEADER_BYTES);
+        }
+
+        void add(long hash, int value) throws IOException {
+            if (buffer.remaining() < ENTRY_BYTES) {
+                flushBuffer();
+            }
+            buffer.putLong(hash).putInt(value);
+            entryCount++;
+        }
+
+        IndexRun finish(int firstGame, int gameCount) throws IOException {
+            flushBuffer();
+            buffer.putInt(RUN_MAGIC).putInt(RUN_VERSION).putInt(firstGame).putInt(gameCount).putLong(entryCount).putLong(0);
+            buffer.flip();
+            channel.write(buffer, 0);
+            buffer.clear();
+            channel.close();
+            Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE);
+            return IndexRun.open(path);
+        }
+
+        private void flushBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Deletes the temporary file if the run was not finished.
+         */
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    /**
+     * A memory-mapped run of the index. Runs larger than 2GB are mapped as several segments that never split an entry.
+     */
+    private static final class IndexRun {
+        private static final long ENTRIES_PER_SEGMENT = MAX_SEGMENT_BYTES / ENTRY_BYTES;
+
+        final Path path;
+        final int firstGame;
+        final int gameCount;
+        final long entryCount;
+        private final MappedByteBuffer[] segments;
+
+        private IndexRun(Path path, int firstGame, int gameCount, long entryCount, MappedByteBuffer[] segments) {
+            this.path = path;
+            this.firstGame = firstGame;
+            this.gameCount = gameCount;
+            this.entryCount = entryCount;
+            this.segments = segments;
+        }
+
+        static IndexRun open(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() < RUN_HEADER_BYTES) {
+                    throw new IOException(path + " is not an index run");
+                }
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, RUN_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                long entryCount = header.getLong(16);
+                if (header.getInt(0) != RUN_MAGIC || header.getInt(4) != RUN_VERSION
+                        || channel.size() != RUN_HEADER_BYTES + entryCount * ENTRY_BYTES) {
+                    throw new IOException(path + " is not an index run of version " + RUN_VERSION);
+                }
+                MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((entryCount + ENTRIES_PER_SEGMENT - 1) / ENTRIES_PER_SEGMENT)];
+                for (int i = 0; i < segments.length; i++) {
+                    long firstEntry = i * ENTRIES_PER_SEGMENT;
+                    long segmentEntries = Math.min(ENTRIES_PER_SEGMENT, entryCount - firstEntry);
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, RUN_HEADER_BYTES + firstEntry * ENTRY_BYTES,
+                            segmentEntries * ENTRY_BYTES);
+                    segments[i].order(ByteOrder.LITTLE_ENDIAN);
+                }
+                return new IndexRun(path, header.getInt(8), header.getInt(12), entryCount, segments);
+            }
+        }
+
+        long getHash(long entry) {
+            return segments[(int) (entry / ENTRIES_PER_SEGMENT)].getLong((int) (entry % ENTRIES_PER_SEGMENT) * ENTRY_BYTES);
+        }
+
+        int getValue(long entry) {
+            return segments[(int) (entry / ENTRIES_PER_SEGMENT)].getInt((int) (entry % ENTRIES_PER_SEGMENT) * ENTRY_BYTES + 8);
+        }
+
+        /**
+         * Counts the results of the entries of a hash, and adds their game ids while there is room.
+         * @return the number of game ids in gameIds.
+         */
+        int collectGames(long hash, int[] resultCounts, int[] gameIds, int gameIdCount) {
+            long entry = findFirstEntry(hash);
+            // a common position has many entries, they are read segment by segment without dividing
+            for (int segment = (int) (entry / ENTRIES_PER_SEGMENT); segment < segments.length; segment++) {
+                MappedByteBuffer entries = segments[segment];
+                int offset = segment == entry / ENTRIES_PER_SEGMENT ? (int) (entry % ENTRIES_PER_SEGMENT) * ENTRY_BYTES : 0;
+                for (; offset < entries.capacity(); offset += ENTRY_BYTES) {
+                    if (entries.getLong(offset) != hash) {
+                        return gameIdCount;
+                    }
+                    int value = entries.getInt(offset + 8);
+                    resultCounts[value >>> 30]++;
+                    if (gameIdCount < gameIds.length) {
+                        gameIds[gameIdCount++] = value & GAME_ID_MASK;
+                    }
+                }
+            }
+            return gameIdCount;
+        }
+
+        /**
+         * @return the first entry whose hash is not below hash, or entryCount.
+         */
+        long findFirstEntry(long hash) {
+            long low = 0;
+            long high = entryCount;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (Long.compareUnsigned(getHash(middle), hash) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Usage: GameDatabase [directory] [192 character position] [thread count]
+     * Indexes the games appended since the last update, then prints how the games that reached the position ended.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || !BatchPositionAnalyzer.isValidPosition(args[1])) {
+            System.err.println("usage: GameDatabase directory position [thread count]");
+            System.exit(2);
+        }
+        int threadCount = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        try (GameDatabase database = GameDatabase.open(Paths.get(args[0]))) {
+            long startTime = System.nanoTime();
+            int indexedCount = database.updateIndex(threadCount);
+            System.err.printf("%d games, %d indexed in %.1fs%n", database.getGameCount(), indexedCount,
+                    (System.nanoTime() - startTime) / 1e9);
+            startTime = System.nanoTime();
+            PositionStatistics statistics = database.findGames(new Board(args[1]), 20);
+            double milliseconds = (System.nanoTime() - startTime) / 1e6;
+            System.out.printf("%s, found in %.2fms%ngames %s%n", statistics, milliseconds, Arrays.toString(statistics.gameIds));
+        }
+    }
+}
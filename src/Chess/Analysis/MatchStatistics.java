@@ -0,0 +1,146 @@
+package Chess.Analysis;
+
+/**
+ * The results of a match between a candidate and a baseline, from the candidate's point of view: the Elo difference
+ * with its 95% error margin, and a sequential probability ratio test between two Elo hypotheses.
+ *
+ * The test uses the normal approximation of the game scores: every game adds to the log-likelihood ratio of
+ * "the candidate is elo1 stronger" over "the candidate is elo0 stronger", and the match can stop as soon as the ratio
+ * leaves the bounds set by the error rates alpha and beta.
+ */
+public final class MatchStatistics {
+    public enum Decision {
+        CONTINUE, ACCEPT_ELO0, ACCEPT_ELO1
+    }
+
+    private static final double Z_95 = 1.959964;
+    // Elo differences are clamped to what a score of 1 game in this many can show
+    private static final double MIN_SCORE = 1e-4;
+    // the smallest variance of the score of a game the test assumes, so a sweep still decides
+    private static final double MIN_SCORE_VARIANCE = 0.01;
+
+    private int wins = 0;
+    private int draws = 0;
+    private int losses = 0;
+
+    /**
+     * @param score the candidate's score in one game: 1 for a win, 0.5 for a draw and 0 for a loss.
+     */
+    public void addGame(double score) {
+        if (score > 0.75) {
+            wins++;
+        } else if (score > 0.25) {
+            draws++;
+        } else {
+            losses++;
+        }
+    }
+
+    public int getGameCount() {
+        return wins + draws + losses;
+    }
+
+    public int getWins() {
+        return wins;
+    }
+
+    public int getDraws() {
+        return draws;
+    }
+
+    public int getLosses() {
+        return losses;
+    }
+
+    /**
+     * @return the mean score of the candidate, 0.5 before any game.
+     */
+    public double getScore() {
+        int games = getGameCount();
+        return games == 0 ? 0.5 : (wins + draws * 0.5) / games;
+    }
+
+    public double getEloDifference() {
+        return scoreToElo(getScore());
+    }
+
+    /**
+     * @return half the width of the 95% confidence interval of the Elo difference, infinite before two games or when
+     * the candidate won or lost them all.
+     */
+    public double getEloErrorMargin() {
+        int games = getGameCount();
+        double score = getScore();
+        if (games < 2 || score == 0 || score == 1) {
+            // a sweep says nothing about how large the difference is
+            return Double.POSITIVE_INFINITY;
+        }
+        double margin = Z_95 * Math.sqrt(getScoreVariance() / games);
+        return (scoreToElo(score + margin) - scoreToElo(score - margin)) / 2;
+    }
+
+    /**
+     * @return the log-likelihood ratio of elo1 over elo0, positive when the score is above the mean of their scores.
+     */
+    public double getLogLikelihoodRatio(double elo0, double elo1) {
+        int games = getGameCount();
+        if (games == 0) {
+            return 0;
+        }
+        // all the games ending the same way would measure no variance at all
+        double variance = Math.max(getScoreVariance(), MIN_SCORE_VARIANCE);
+        double score0 = eloToScore(elo0);
+        double score1 = eloToScore(elo1);
+        return games * (score1 - score0) * (2 * getScore() - score0 - score1) / (2 * variance);
+    }
+
+    /**
+     * @param alpha the rate of accepting elo1 when elo0 is true.
+     * @param beta the rate of accepting elo0 when elo1 is true.
+     */
+    public Decision getDecision(double elo0, double elo1, double alpha, double beta) {
+        double ratio = getLogLikelihoodRatio(elo0, elo1);
+        if (ratio >= getUpperBound(alpha, beta)) {
+            return Decision.ACCEPT_ELO1;
+        }
+        if (ratio <= getLowerBound(alpha, beta)) {
+            return Decision.ACCEPT_ELO0;
+        }
+        return Decision.CONTINUE;
+    }
+
+    public static double getLowerBound(double alpha, double beta) {
+        return Math.log(beta / (1 - alpha));
+    }
+
+    public static double getUpperBound(double alpha, double beta) {
+        return Math.log((1 - beta) / alpha);
+    }
+
+    public static double eloToScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    public static double scoreToElo(double score) {
+        score = Math.min(Math.max(score, MIN_SCORE), 1 - MIN_SCORE);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /**
+     * @return the variance of the score of one game, estimated from the results.
+     */
+    private double getScoreVariance() {
+        int games = getGameCount();
+        if (games == 0) {
+            return 0;
+        }
+        double score = getScore();
+        return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score) + losses * score * score) / games;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d games: +%d =%d -%d, Elo %.1f +/- %.1f", getGameCount(), wins, draws, losses,
+                getEloDifference(), getEloErrorMargin());
+    }
+}
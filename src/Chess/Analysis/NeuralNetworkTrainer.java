@@ -0,0 +1,315 @@
+package Chess.Analysis;
+
+import Chess.Engine.Evaluator;
+import Chess.Engine.NeuralEvaluator;
+import Chess.Engine.NeuralNetwork;
+import Chess.Models.Board;
+import Chess.Types.PlayerColor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Trains a NeuralNetwork on self-play games stored in a PositionCorpus with results, then quantizes it for
+ * NeuralEvaluator.
+ *
+ * The network is trained in floating point by stochastic gradient descent: the output, in units of 400 centipawns,
+ * is mapped to an expected score by the same sigmoid as the tuner, and the squared error against a target is
+ * minimized. The target blends the game result with the classical Evaluator's expected score, LAMBDA being the share
+ * of the result, which keeps the early epochs from fitting noise. Only the rows of the active features of the feature
+ * transformer are updated per position.
+ *
+ * Games are assumed to start with white to move, so the player to move in a record follows from its ply. The records
+ * of the last HOLDOUT_SHARE of the corpus are not trained on; their error is reported every epoch, for the float
+ * network and for the quantized one.
+ *
+ * Usage: NeuralNetworkTrainer [corpus file with results] [network file to write] [epochs] [hidden size] [layer size]
+ */
+public class NeuralNetworkTrainer {
+    static double LEARNING_RATE = 0.01;
+    static double LAMBDA = 0.7;
+    static double HOLDOUT_SHARE = 0.05;
+    private static final double LOG_10 = Math.log(10);
+    private static final double MAX_LAYER_WEIGHT = 127.0 / NeuralNetwork.WEIGHT_SCALE;
+
+    private final int hiddenSize;
+    private final int layerSize;
+    private final float[] featureWeights;
+    private final float[] featureBiases;
+    private final float[] hiddenWeights;
+    private final float[] hiddenBiases;
+    private final float[] outputWeights;
+    private float outputBias = 0;
+
+    // scratch space of one position
+    private final int[][] features = new int[2][64];
+    private final int[] featureCounts = new int[2];
+    private final float[][] accumulators;
+    private final float[] input;
+    private final float[] hiddenSums;
+    private final float[] hidden;
+    private final float[] inputGradient;
+    private final Evaluator teacher = new Evaluator();
+
+    public NeuralNetworkTrainer(int hiddenSize, int layerSize, long seed) {
+        this.hiddenSize = hiddenSize;
+        this.layerSize = layerSize;
+        featureWeights = new float[NeuralNetwork.FEATURE_COUNT * hiddenSize];
+        featureBiases = new float[hiddenSize];
+        hiddenWeights = new float[layerSize * 2 * hiddenSize];
+        hiddenBiases = new float[layerSize];
+        outputWeights = new float[layerSize];
+        accumulators = new float[2][hiddenSize];
+        input = new float[2 * hiddenSize];
+        hiddenSums = new float[layerSize];
+        hidden = new float[layerSize];
+        inputGradient = new float[2 * hiddenSize];
+
+        Random random = new Random(seed);
+        for (int i = 0; i < featureWeights.length; i++) {
+            featureWeights[i] = (random.nextFloat() - 0.5f) * 0.04f;
+        }
+        for (int i = 0; i < hiddenSize; i++) {
+            // most accumulators start inside the clipped range, where they learn
+            featureBiases[i] = 0.25f;
+        }
+        float hiddenRange = (float) (1 / Math.sqrt(2 * hiddenSize));
+        for (int i = 0; i < hiddenWeights.length; i++) {
+            hiddenWeights[i] = (random.nextFloat() * 2 - 1) * hiddenRange;
+        }
+        float outputRange = (float) (1 / Math.sqrt(layerSize));
+        for (int i = 0; i < layerSize; i++) {
+            outputWeights[i] = (random.nextFloat() * 2 - 1) * outputRange;
+        }
+    }
+
+    /**
+     * Trains one pass over some records in random order.
+     * @return the mean squared error of the records before their update.
+     */
+    public double trainEpoch(PositionCorpus corpus, int[] records, Random random) {
+        Board board = new Board(PositionCorpus.EMPTY_POSITION);
+        for (int i = records.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int record = records[i];
+            records[i] = records[j];
+            records[j] = record;
+        }
+        double errorSum = 0;
+        for (int record : records) {
+            corpus.readPosition(record, board);
+            PlayerColor color = getSideToMove(corpus, record);
+            double target = getTarget(corpus, record, board, color);
+            double expected = forward(board, color);
+            errorSum += (expected - target) * (expected - target);
+            backward(color, 2 * (expected - target) * expected * (1 - expected) * LOG_10);
+        }
+        return errorSum / records.length;
+    }
+
+    /**
+     * @return the mean squared error of some records, for the float network and for the quantized one.
+     */
+    public double[] computeErrors(PositionCorpus corpus, int[] records, NeuralNetwork quantized) {
+        Board board = new Board(PositionCorpus.EMPTY_POSITION);
+        NeuralEvaluator evaluator = new NeuralEvaluator(quantized, teacher);
+        double floatErrorSum = 0;
+        double quantizedErrorSum = 0;
+        for (int record : records) {
+            corpus.readPosition(record, board);
+            PlayerColor color = getSideToMove(corpus, record);
+            double target = getTarget(corpus, record, board, color);
+            double expected = forward(board, color);
+            floatErrorSum += (expected - target) * (expected - target);
+            evaluator.setPosition(board);
+            double quantizedExpected = toExpectedScore(evaluator.evaluate(board, color) / 400.0);
+            quantizedErrorSum += (quantizedExpected - target) * (quantizedExpected - target);
+        }
+        return new double[]{floatErrorSum / records.length, quantizedErrorSum / records.length};
+    }
+
+    /**
+     * @return the network rounded to the integer weights NeuralEvaluator runs on.
+     */
+    public NeuralNetwork quantize() {
+        short[] quantizedFeatureWeights = new short[featureWeights.length];
+        for (int i = 0; i < featureWeights.length; i++) {
+            quantizedFeatureWeights[i] = toShort(featureWeights[i] * NeuralNetwork.ACTIVATION_SCALE);
+        }
+        short[] quantizedFeatureBiases = new short[hiddenSize];
+        for (int i = 0; i < hiddenSize; i++) {
+            quantizedFeatureBiases[i] = toShort(featureBiases[i] * NeuralNetwork.ACTIVATION_SCALE);
+        }
+        byte[] quantizedHiddenWeights = new byte[hiddenWeights.length];
+        for (int i = 0; i < hiddenWeights.length; i++) {
+            quantizedHiddenWeights[i] = toByte(hiddenWeights[i] * NeuralNetwork.WEIGHT_SCALE);
+        }
+        int[] quantizedHiddenBiases = new int[layerSize];
+        byte[] quantizedOutputWeights = new byte[layerSize];
+        for (int i = 0; i < layerSize; i++) {
+            quantizedHiddenBiases[i] = Math.round(hiddenBiases[i] * NeuralNetwork.ACTIVATION_SCALE * NeuralNetwork.WEIGHT_SCALE);
+            quantizedOutputWeights[i] = toByte(outputWeights[i] * NeuralNetwork.WEIGHT_SCALE);
+        }
+        return new NeuralNetwork(hiddenSize, layerSize, quantizedFeatureWeights, quantizedFeatureBiases,
+                quantizedHiddenWeights, quantizedHiddenBiases, quantizedOutputWeights,
+                Math.round(outputBias * NeuralNetwork.ACTIVATION_SCALE * NeuralNetwork.WEIGHT_SCALE));
+    }
+
+    /**
+     * @return the expected score of the player to move, keeping the activations for backward.
+     */
+    private double forward(Board board, PlayerColor color) {
+        PlayerColor[] perspectives = {color, color.oppositeColor()};
+        for (int side = 0; side < 2; side++) {
+            float[] accumulator = accumulators[side];
+            System.arraycopy(featureBiases, 0, accumulator, 0, hiddenSize);
+            featureCounts[side] = NeuralNetwork.collectFeatures(board, perspectives[side], features[side]);
+            for (int f = 0; f < featureCounts[side]; f++) {
+                int row = features[side][f] * hiddenSize;
+                for (int i = 0; i < hiddenSize; i++) {
+                    accumulator[i] += featureWeights[row + i];
+                }
+            }
+            for (int i = 0; i < hiddenSize; i++) {
+                input[side * hiddenSize + i] = Math.min(Math.max(accumulator[i], 0), 1);
+            }
+        }
+        float output = outputBias;
+        for (int neuron = 0; neuron < layerSize; neuron++) {
+            float sum = hiddenBiases[neuron];
+            int offset = neuron * 2 * hiddenSize;
+            for (int i = 0; i < 2 * hiddenSize; i++) {
+                sum += hiddenWeights[offset + i] * input[i];
+            }
+            hiddenSums[neuron] = sum;
+            hidden[neuron] = Math.min(Math.max(sum, 0), 1);
+            output += outputWeights[neuron] * hidden[neuron];
+        }
+        return toExpectedScore(output);
+    }
+
+    /**
+     * Updates the weights used by the last forward pass.
+     * @param outputGradient the derivative of the error with respect to the output.
+     */
+    private void backward(PlayerColor color, double outputGradient) {
+        float rate = (float) LEARNING_RATE;
+        float gradient = (float) outputGradient;
+        Arrays.fill(inputGradient, 0);
+        for (int neuron = 0; neuron < layerSize; neuron++) {
+            float hiddenGradient = hiddenSums[neuron] > 0 && hiddenSums[neuron] < 1 ? gradient * outputWeights[neuron] : 0;
+            outputWeights[neuron] = clampLayerWeight(outputWeights[neuron] - rate * gradient * hidden[neuron]);
+            if (hiddenGradient == 0) {
+                continue;
+            }
+            int offset = neuron * 2 * hiddenSize;
+            for (int i = 0; i < 2 * hiddenSize; i++) {
+                inputGradient[i] += hiddenGradient * hiddenWeights[offset + i];
+                hiddenWeights[offset + i] = clampLayerWeight(hiddenWeights[offset + i] - rate * hiddenGradient * input[i]);
+            }
+            hiddenBiases[neuron] -= rate * hiddenGradient;
+        }
+        outputBias -= rate * gradient;
+
+        for (int side = 0; side < 2; side++) {
+            float[] accumulator = accumulators[side];
+            int offset = side * hiddenSize;
+            for (int i = 0; i < hiddenSize; i++) {
+                if (accumulator[i] <= 0 || accumulator[i] >= 1) {
+                    inputGradient[offset + i] = 0;
+                }
+                featureBiases[i] -= rate * inputGradient[offset + i];
+            }
+            for (int f = 0; f < featureCounts[side]; f++) {
+                int row = features[side][f] * hiddenSize;
+                for (int i = 0; i < hiddenSize; i++) {
+                    featureWeights[row + i] -= rate * inputGradient[offset + i];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the score to learn for the player to move: the game result blended with the classical evaluation.
+     */
+    private double getTarget(PositionCorpus corpus, long record, Board board, PlayerColor color) {
+        double whiteResult = corpus.getResult(record) == PositionCorpus.RESULT_WHITE_WINS ? 1
+                : corpus.getResult(record) == PositionCorpus.RESULT_DRAW ? 0.5 : 0;
+        double result = color == PlayerColor.WHITE ? whiteResult : 1 - whiteResult;
+        return LAMBDA * result + (1 - LAMBDA) * toExpectedScore(teacher.evaluate(board, color) / 400.0);
+    }
+
+    private static PlayerColor getSideToMove(PositionCorpus corpus, long record) {
+        return corpus.getPly(record) % 2 == 0 ? PlayerColor.WHITE : PlayerColor.BLACK;
+    }
+
+    /**
+     * @param output in units of 400 centipawns.
+     */
+    private static double toExpectedScore(double output) {
+        return 1 / (1 + Math.exp(-output * LOG_10));
+    }
+
+    private static float clampLayerWeight(float weight) {
+        return (float) Math.min(Math.max(weight, -MAX_LAYER_WEIGHT), MAX_LAYER_WEIGHT);
+    }
+
+    private static short toShort(float value) {
+        return (short) Math.min(Math.max(Math.round(value), Short.MIN_VALUE), Short.MAX_VALUE);
+    }
+
+    private static byte toByte(float value) {
+        return (byte) Math.min(Math.max(Math.round(value), -127), 127);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: NeuralNetworkTrainer corpus network [epochs] [hidden size] [layer size]");
+            System.exit(2);
+        }
+        Path corpusPath = Paths.get(args[0]);
+        Path outputPath = Paths.get(args[1]);
+        int epochs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int hiddenSize = args.length > 3 ? Integer.parseInt(args[3]) : 128;
+        int layerSize = args.length > 4 ? Integer.parseInt(args[4]) : 32;
+
+        try (PositionCorpus corpus = PositionCorpus.open(corpusPath)) {
+            if (!corpus.hasMetadata()) {
+                throw new IllegalArgumentException(corpusPath + " has no results");
+            }
+            int holdoutStart = (int) (corpus.getRecordCount() * (1 - HOLDOUT_SHARE));
+            int[] trainingRecords = collectLabeledRecords(corpus, 0, holdoutStart);
+            int[] holdoutRecords = collectLabeledRecords(corpus, holdoutStart, (int) corpus.getRecordCount());
+            if (trainingRecords.length == 0 || holdoutRecords.length == 0) {
+                throw new IllegalArgumentException(corpusPath + " has too few positions with a known result");
+            }
+            System.err.printf("%d training and %d holdout positions, %d x %d x %d x 1 network%n",
+                    trainingRecords.length, holdoutRecords.length, NeuralNetwork.FEATURE_COUNT, hiddenSize, layerSize);
+
+            NeuralNetworkTrainer trainer = new NeuralNetworkTrainer(hiddenSize, layerSize, 1);
+            Random random = new Random(2);
+            for (int epoch = 1; epoch <= epochs; epoch++) {
+                long startTime = System.nanoTime();
+                double trainingError = trainer.trainEpoch(corpus, trainingRecords, random);
+                double[] holdoutErrors = trainer.computeErrors(corpus, holdoutRecords, trainer.quantize());
+                System.err.printf("epoch %d: training error %.6f, holdout error %.6f, quantized %.6f, %.1fs%n", epoch,
+                        trainingError, holdoutErrors[0], holdoutErrors[1], (System.nanoTime() - startTime) / 1e9);
+            }
+            trainer.quantize().write(outputPath);
+        }
+    }
+
+    private static int[] collectLabeledRecords(PositionCorpus corpus, int start, int end) {
+        int count = 0;
+        int[] records = new int[end - start];
+        for (int record = start; record < end; record++) {
+            if (corpus.getResult(record) != PositionCorpus.RESULT_UNKNOWN) {
+                records[count++] = record;
+            }
+        }
+        return Arrays.copyOf(records, count);
+    }
+}
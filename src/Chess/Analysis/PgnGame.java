@@ -0,0 +1,58 @@
+package Chess.Analysis;
+
+import Chess.Models.Board;
+import Chess.Types.PlayerColor;
+
+import java.util.Map;
+
+/**
+ * A game of a PGN file, see PgnReader and PgnWriter.
+ */
+public final class PgnGame {
+    /** The tag pairs, in the order of the file. **/
+    public final Map<String, String> tags;
+    /** The board the game was played on, its moves are the ones made since its position was loaded, like the boards
+     * GameDatabase.append takes. **/
+    public final Board board;
+    public final PlayerColor firstToMove;
+    /** One of PositionCorpus.RESULT_UNKNOWN, RESULT_WHITE_WINS, RESULT_BLACK_WINS or RESULT_DRAW. **/
+    public final byte result;
+
+    public PgnGame(Map<String, String> tags, Board board, PlayerColor firstToMove, byte result) {
+        this.tags = tags;
+        this.board = board;
+        this.firstToMove = firstToMove;
+        this.result = result;
+    }
+
+    /**
+     * @return the PGN result of one of the PositionCorpus.RESULT_ constants, * when the game has not ended.
+     */
+    public static String formatResult(byte result) {
+        switch (result) {
+            case PositionCorpus.RESULT_WHITE_WINS:
+                return "1-0";
+            case PositionCorpus.RESULT_BLACK_WINS:
+                return "0-1";
+            case PositionCorpus.RESULT_DRAW:
+                return "1/2-1/2";
+            default:
+                return "*";
+        }
+    }
+
+    /**
+     * @return the PositionCorpus.RESULT_ constant of a PGN result, RESULT_UNKNOWN for * or anything else.
+     */
+    public static byte parseResult(CharSequence result) {
+        String text = result.toString();
+        if (text.equals("1-0")) {
+            return PositionCorpus.RESULT_WHITE_WINS;
+        } else if (text.equals("0-1")) {
+            return PositionCorpus.RESULT_BLACK_WINS;
+        } else if (text.equals("1/2-1/2")) {
+            return PositionCorpus.RESULT_DRAW;
+        }
+        return PositionCorpus.RESULT_UNKNOWN;
+    }
+}
@@ -0,0 +1,243 @@
+package Chess.Analysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Appends the games of PGN files to a GameDatabase. The invalid games are counted and skipped.
+ *
+ * With one thread, a PgnReader reads the file game after game. With more, the file is cut into chunks of about
+ * CHUNK_BYTES, each one ending before the first tag of a game: a line starting with [ after a line that does not. The
+ * worker threads parse and replay the chunks, and the importing thread appends their games in the order of the file,
+ * with at most two chunks per thread in memory. A comment of several lines with a line starting with [ would be cut in
+ * two, its game is then reported as invalid.
+ */
+public class PgnImporter {
+    static final int CHUNK_BYTES = 1 << 22;
+    /** The most error messages kept, the invalid games are all counted. **/
+    public static final int MAX_ERRORS = 100;
+
+    /**
+     * The games of a chunk, parsed on a worker thread.
+     */
+    private static final class ParsedChunk {
+        final List<PgnGame> games = new ArrayList<PgnGame>();
+        final List<String> errors = new ArrayList<String>();
+        int invalidCount;
+    }
+
+    private final GameDatabase database;
+    private final int threadCount;
+    private long importedCount;
+    private long invalidCount;
+    private final List<String> errors = new ArrayList<String>();
+
+    /**
+     * @param threadCount the threads parsing the games, usually the number of cores.
+     */
+    public PgnImporter(GameDatabase database, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("at least one thread is needed");
+        }
+        this.database = database;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Appends the valid games of a PGN file to the database, without updating its index.
+     * @param input the file, it is read to its end but not closed.
+     */
+    public void importGames(InputStream input) throws IOException, InterruptedException {
+        if (threadCount == 1) {
+            ParsedChunk chunk = new ParsedChunk();
+            PgnReader reader = new PgnReader(input);
+            while (true) {
+                PgnGame game = readGame(reader, chunk);
+                if (game == null) {
+                    break;
+                }
+                database.append(game.board, game.firstToMove, game.result);
+                importedCount++;
+            }
+            addErrors(chunk);
+            return;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(threadCount);
+        ArrayDeque<Future<ParsedChunk>> pendingChunks = new ArrayDeque<Future<ParsedChunk>>();
+        try {
+            byte[] buffer = new byte[CHUNK_BYTES];
+            int length = 0;
+            int lineNumber = 1;
+            boolean isEnd = false;
+            while (!isEnd || length > 0) {
+                while (!isEnd && length < buffer.length) {
+                    int count = input.read(buffer, length, buffer.length - length);
+                    isEnd = count < 0;
+                    length += Math.max(count, 0);
+                }
+                int chunkLength = isEnd ? length : findLastGameStart(buffer, length);
+                if (chunkLength <= 0) {
+                    // a game longer than the buffer
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+                final byte[] chunk = Arrays.copyOf(buffer, chunkLength);
+                final int firstLineNumber = lineNumber;
+                System.arraycopy(buffer, chunkLength, buffer, 0, length - chunkLength);
+                length -= chunkLength;
+                for (byte b : chunk) {
+                    if (b == '\n') {
+                        lineNumber++;
+                    }
+                }
+
+                if (pendingChunks.size() == 2 * threadCount) {
+                    appendGames(pendingChunks.removeFirst());
+                }
+                pendingChunks.addLast(workers.submit(new Callable<ParsedChunk>() {
+                    @Override
+                    public ParsedChunk call() throws IOException {
+                        ParsedChunk parsedChunk = new ParsedChunk();
+                        PgnReader reader = new PgnReader(new ByteArrayInputStream(chunk), firstLineNumber);
+                        PgnGame game;
+                        while ((game = readGame(reader, parsedChunk)) != null) {
+                            parsedChunk.games.add(game);
+                        }
+                        return parsedChunk;
+                    }
+                }));
+            }
+            while (!pendingChunks.isEmpty()) {
+                appendGames(pendingChunks.removeFirst());
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    public long getImportedGameCount() {
+        return importedCount;
+    }
+
+    public long getInvalidGameCount() {
+        return invalidCount;
+    }
+
+    /**
+     * @return the messages of the first MAX_ERRORS invalid games.
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * @return the next valid game, or null at the end of the input. The invalid games are counted in chunk.
+     */
+    private static PgnGame readGame(PgnReader reader, ParsedChunk chunk) throws IOException {
+        while (true) {
+            try {
+                return reader.next();
+            } catch (PgnReader.InvalidGameException e) {
+                chunk.invalidCount++;
+                if (chunk.errors.size() < MAX_ERRORS) {
+                    chunk.errors.add(e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void appendGames(Future<ParsedChunk> pendingChunk) throws IOException, InterruptedException {
+        ParsedChunk chunk;
+        try {
+            chunk = pendingChunk.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("parsing failed", e.getCause());
+        }
+        for (PgnGame game : chunk.games) {
+            database.append(game.board, game.firstToMove, game.result);
+        }
+        importedCount += chunk.games.size();
+        addErrors(chunk);
+    }
+
+    private void addErrors(ParsedChunk chunk) {
+        invalidCount += chunk.invalidCount;
+        for (int i = 0; i < chunk.errors.size() && errors.size() < MAX_ERRORS; i++) {
+            errors.add(chunk.errors.get(i));
+        }
+    }
+
+    /**
+     * @return the offset of the first tag of the last game starting in bytes, after the first byte, or 0 if there is
+     * none.
+     */
+    static int findLastGameStart(byte[] bytes, int length) {
+        for (int i = length - 1; i > 0; i--) {
+            if (bytes[i] == '[' && bytes[i - 1] == '\n' && !isTagLineBefore(bytes, i - 1)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return true if the last line that is not blank before the new line at newline starts with [.
+     */
+    private static boolean isTagLineBefore(byte[] bytes, int newline) {
+        int end = newline;
+        while (end > 0) {
+            int start = end;
+            while (start > 0 && bytes[start - 1] != '\n') {
+                start--;
+            }
+            for (int i = start; i < end; i++) {
+                if (bytes[i] != ' ' && bytes[i] != '\t' && bytes[i] != '\r') {
+                    return bytes[i] == '[';
+                }
+            }
+            end = start - 1;
+        }
+        return false;
+    }
+
+    /**
+     * Usage: PgnImporter [PGN file] [game database directory] [thread count]
+     * Appends the games of the file to the database, then updates its index.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: PgnImporter file.pgn database [thread count]");
+            System.exit(2);
+        }
+        int threadCount = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        try (GameDatabase database = GameDatabase.open(Paths.get(args[1]));
+             InputStream input = Files.newInputStream(Paths.get(args[0]))) {
+            PgnImporter importer = new PgnImporter(database, threadCount);
+            long startTime = System.nanoTime();
+            importer.importGames(input);
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            for (String error : importer.getErrors()) {
+                System.err.println(error);
+            }
+            System.err.printf("%d games imported, %d invalid, in %.1fs: %.0f games/s%n", importer.getImportedGameCount(),
+                    importer.getInvalidGameCount(), seconds, importer.getImportedGameCount() / seconds);
+            startTime = System.nanoTime();
+            int indexedCount = database.updateIndex(threadCount);
+            System.err.printf("%d games indexed in %.1fs%n", indexedCount, (System.nanoTime() - startTime) / 1e9);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package Chess.Analysis;
+
+import Chess.Models.Board;
+import Chess.Types.PlayerColor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the games of a PGN file one at a time, so a file of any size is read with the memory of one game. Every move
+ * is replayed on a Board, see AlgebraicNotation for the notation of the moves and of the variant pieces.
+ *
+ * The starting position is the one of the FEN tag, or the usual one without it. Comments, variations, numeric
+ * annotation glyphs and escape lines (starting with %) are skipped. The result is the termination marker of the
+ * movetext, or the Result tag when the movetext has none. A line starting with [ after the movetext starts the next
+ * game.
+ *
+ * The input is read as bytes: the tag values are decoded as UTF-8, the rest of a PGN file is ASCII.
+ */
+public class PgnReader implements Closeable {
+    /**
+     * A game that is not PGN or one of whose moves is not legal. The rest of the game has been skipped, so reading can
+     * go on with the next one.
+     */
+    public static final class InvalidGameException extends IOException {
+        InvalidGameException(String message) {
+            super(message);
+        }
+    }
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final InputStream input;
+    private final byte[] buffer = new byte[BUFFER_BYTES];
+    private int position;
+    private int limit;
+    private int lineNumber;
+    // whether only whitespace was read since the last new line
+    private boolean isLineStart = true;
+    // the symbol being read and the bytes of the tag value being read, reused for every one
+    private final StringBuilder symbol = new StringBuilder(32);
+    private byte[] tagValue = new byte[256];
+    private final Board startingBoard = AlgebraicNotation.parsePosition(AlgebraicNotation.STARTING_FEN);
+    private int gameCount;
+
+    public PgnReader(InputStream input) {
+        this(input, 1);
+    }
+
+    /**
+     * @param firstLineNumber the line of the file the input starts with, for the messages of InvalidGameException.
+     */
+    public PgnReader(InputStream input, int firstLineNumber) {
+        this.input = input;
+        this.lineNumber = firstLineNumber;
+    }
+
+    /**
+     * @return the next game, or null at the end of the input.
+     * @throws InvalidGameException if the game is not PGN or one of its moves is not legal.
+     */
+    public PgnGame next() throws IOException {
+        if (skipWhitespaceAndComments() < 0) {
+            return null;
+        }
+        gameCount++;
+        int firstLineNumber = lineNumber;
+        String error = null;
+        Map<String, String> tags = new LinkedHashMap<String, String>();
+        while (skipWhitespaceAndComments() == '[') {
+            if (!readTag(tags) && error == null) {
+                error = "line " + lineNumber + ": malformed tag";
+                skipLine();
+            }
+        }
+
+        String fen = tags.get("FEN");
+        Board board = startingBoard;
+        PlayerColor color = PlayerColor.WHITE;
+        if (fen != null) {
+            try {
+                board = AlgebraicNotation.parsePosition(fen);
+                color = AlgebraicNotation.parseColorToMove(fen);
+            } catch (IllegalArgumentException e) {
+                error = error != null ? error : e.getMessage();
+            }
+        }
+        board = new Board(board);
+        PlayerColor firstToMove = color;
+
+        String result = tags.get("Result");
+        while (true) {
+            int c = skipWhitespaceAndComments();
+            if (c < 0 || (c == '[' && isLineStart)) {
+                break;
+            }
+            if (c == '*') {
+                position++;
+                result = "*";
+                break;
+            }
+            isLineStart = false;
+            readSymbol();
+            if (symbol.length() == 0) {
+                position++;
+                error = error != null ? error : "line " + lineNumber + ": unexpected " + (char) c;
+            } else if (isMoveNumber()) {
+                // one dot before a white move and three before a black move
+                while (peek() == '.') {
+                    position++;
+                }
+            } else if (c >= '0' && c <= '9') {
+                result = symbol.toString();
+                if (PgnGame.parseResult(result) != PositionCorpus.RESULT_UNKNOWN) {
+                    break;
+                }
+                error = error != null ? error : "line " + lineNumber + ": " + result + " is not a move of this game";
+            } else if (error == null) {
+                try {
+                    board.makeMove(AlgebraicNotation.parseMove(board, color, symbol));
+                    color = color.oppositeColor();
+                } catch (IllegalArgumentException e) {
+                    error = "line " + lineNumber + ": " + e.getMessage();
+                }
+            }
+        }
+        if (error != null) {
+            throw new InvalidGameException("game " + gameCount + " at line " + firstLineNumber + ", " + error);
+        }
+        return new PgnGame(tags, board, firstToMove, PgnGame.parseResult(result == null ? "*" : result));
+    }
+
+    /**
+     * @return the games read so far, the invalid ones included.
+     */
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Reads a tag pair, [Name "value"], on one line.
+     * @return false if the tag is malformed, the rest of its line is then left to read.
+     */
+    private boolean readTag(Map<String, String> tags) throws IOException {
+        position++;
+        isLineStart = false;
+        skipSpaces();
+        readSymbol();
+        String name = symbol.toString();
+        skipSpaces();
+        if (name.isEmpty() || peek() != '"') {
+            return false;
+        }
+        position++;
+        int length = 0;
+        while (true) {
+            int c = peek();
+            if (c < 0 || c == '\n') {
+                return false;
+            }
+            position++;
+            if (c == '"') {
+                break;
+            } else if (c == '\\') {
+                c = peek();
+                if (c != '"' && c != '\\') {
+                    return false;
+                }
+                position++;
+            }
+            if (length == tagValue.length) {
+                tagValue = Arrays.copyOf(tagValue, length * 2);
+            }
+            tagValue[length++] = (byte) c;
+        }
+        skipSpaces();
+        if (peek() != ']') {
+            return false;
+        }
+        position++;
+        tags.put(name, new String(tagValue, 0, length, StandardCharsets.UTF_8));
+        return true;
+    }
+
+    /**
+     * Reads the letters, digits and marks of a symbol into symbol: a move, a move number, a result or a tag name.
+     */
+    private void readSymbol() throws IOException {
+        symbol.setLength(0);
+        while (true) {
+            int c = peek();
+            boolean isSymbolCharacter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || (c >= 0 && "_+#=:-/!?".indexOf(c) >= 0);
+            if (!isSymbolCharacter) {
+                return;
+            }
+            symbol.append((char) c);
+            position++;
+        }
+    }
+
+    private boolean isMoveNumber() {
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) < '0' || symbol.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skips whitespace, comments, variations, numeric annotation glyphs and escape lines.
+     * @return the next byte, left unread, or -1 at the end of the input.
+     */
+    private int skipWhitespaceAndComments() throws IOException {
+        int variationDepth = 0;
+        while (true) {
+            int c = peek();
+            if (c < 0) {
+                return c;
+            }
+            if (c == '\n') {
+                position++;
+                lineNumber++;
+                isLineStart = true;
+                continue;
+            }
+            if (c == ' ' || c == '\t' || c == '\r') {
+                position++;
+                continue;
+            }
+            if ((c == '%' && isLineStart) || c == ';') {
+                skipLine();
+                continue;
+            }
+            if (c == '[' && isLineStart) {
+                // the next game, even after a variation left open
+                return c;
+            }
+            isLineStart = false;
+            if (c == '{') {
+                skipComment();
+            } else if (c == '(') {
+                variationDepth++;
+                position++;
+            } else if (variationDepth > 0) {
+                if (c == ')') {
+                    variationDepth--;
+                }
+                position++;
+            } else if (c == '$') {
+                position++;
+                while (peek() >= '0' && peek() <= '9') {
+                    position++;
+                }
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private void skipComment() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c < 0) {
+                return;
+            }
+            position++;
+            if (c == '}') {
+                return;
+            } else if (c == '\n') {
+                lineNumber++;
+            }
+        }
+    }
+
+    /**
+     * Skips to the end of the line, the new line is left to read.
+     */
+    private void skipLine() throws IOException {
+        while (peek() >= 0 && peek() != '\n') {
+            position++;
+        }
+    }
+
+    private void skipSpaces() throws IOException {
+        while (peek() == ' ' || peek() == '\t') {
+            position++;
+        }
+    }
+
+    /**
+     * @return the next byte, left unread, or -1 at the end of the input.
+     */
+    private int peek() throws IOException {
+        if (position == limit) {
+            position = 0;
+            limit = 0;
+            int count = 0;
+            while (count == 0) {
+                count = input.read(buffer, 0, buffer.length);
+            }
+            if (count < 0) {
+                return -1;
+            }
+            limit = count;
+        }
+        return buffer[position] & 0xFF;
+    }
+}
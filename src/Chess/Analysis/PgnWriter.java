@@ -0,0 +1,150 @@
+package Chess.Analysis;
+
+import Chess.Models.Board;
+import Chess.Types.PlayerColor;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Writes games to a PGN file, one after the other, in UTF-8.
+ *
+ * A game starts with the seven tags every PGN game has, ? when unknown, then its other tags, then SetUp and FEN when
+ * it does not start from the usual position with white to move. The movetext is in SAN, see AlgebraicNotation, on
+ * lines of at most MAX_LINE_LENGTH characters, and ends with the result.
+ */
+public class PgnWriter implements Closeable, Flushable {
+    static final int MAX_LINE_LENGTH = 80;
+    private static final String[] SEVEN_TAG_ROSTER = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+
+    private final Writer output;
+    // the board the moves of a game are replayed on, to write them in SAN
+    private final Board scratchBoard = new Board(PositionCorpus.EMPTY_POSITION);
+    private final StringBuilder line = new StringBuilder(MAX_LINE_LENGTH + 16);
+    private final StringBuilder word = new StringBuilder(16);
+
+    public PgnWriter(OutputStream output) {
+        this.output = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    public void write(PgnGame game) throws IOException {
+        write(game.tags, game.board, game.firstToMove, game.result);
+    }
+
+    /**
+     * @param tags the tags of the game. Result, SetUp and FEN are written from the game instead.
+     * @param board the board the game was played on, its moves are the ones made since its position was loaded.
+     * @param result one of PositionCorpus.RESULT_UNKNOWN, RESULT_WHITE_WINS, RESULT_BLACK_WINS or RESULT_DRAW.
+     */
+    public void write(Map<String, String> tags, Board board, PlayerColor firstToMove, byte result) throws IOException {
+        scratchBoard.loadPosition(board);
+        while (scratchBoard.undoLastMove()) {
+        }
+        String resultText = PgnGame.formatResult(result);
+        for (String name : SEVEN_TAG_ROSTER) {
+            String value = name.equals("Result") ? resultText : tags.get(name);
+            writeTag(name, value == null ? "?" : value);
+        }
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (!isWrittenFromGame(tag.getKey())) {
+                writeTag(tag.getKey(), tag.getValue());
+            }
+        }
+        String fen = AlgebraicNotation.formatPosition(scratchBoard, firstToMove);
+        if (!fen.equals(AlgebraicNotation.STARTING_FEN)) {
+            writeTag("SetUp", "1");
+            writeTag("FEN", fen);
+        }
+        output.write('\n');
+
+        PlayerColor color = firstToMove;
+        // a game black starts has its first move numbered 1 too
+        int firstPly = firstToMove == PlayerColor.WHITE ? 0 : 1;
+        line.setLength(0);
+        for (int ply = 0; ply < board.getMoveCount(); ply++) {
+            word.setLength(0);
+            if (color == PlayerColor.WHITE || ply == 0) {
+                word.append((firstPly + ply) / 2 + 1).append(color == PlayerColor.WHITE ? ". " : "... ");
+            }
+            int move = board.getMove(ply);
+            AlgebraicNotation.appendMove(scratchBoard, color, move, word);
+            appendWord(word);
+            scratchBoard.makeMove(move);
+            color = color.oppositeColor();
+        }
+        appendWord(resultText);
+        output.append(line).write("\n\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    private boolean isWrittenFromGame(String tagName) {
+        for (String name : SEVEN_TAG_ROSTER) {
+            if (name.equals(tagName)) {
+                return true;
+            }
+        }
+        return tagName.equals("SetUp") || tagName.equals("FEN");
+    }
+
+    private void writeTag(String name, String value) throws IOException {
+        output.append('[').append(name).append(" \"")
+                .append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"]\n");
+    }
+
+    /**
+     * Adds a word to the current line of the movetext, after writing the line if the word does not fit.
+     */
+    private void appendWord(CharSequence text) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + text.length() > MAX_LINE_LENGTH) {
+            output.append(line).write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(text);
+    }
+
+    /**
+     * Usage: PgnWriter [game database directory] [PGN file]
+     * Writes every game of a GameDatabase to a PGN file.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: PgnWriter database file.pgn");
+            System.exit(2);
+        }
+        long startTime = System.nanoTime();
+        try (GameDatabase database = GameDatabase.open(Paths.get(args[0]));
+             PgnWriter writer = new PgnWriter(Files.newOutputStream(Paths.get(args[1])))) {
+            Map<String, String> tags = Collections.emptyMap();
+            for (int id = 0; id < database.getGameCount(); id++) {
+                GameDatabase.Game game = database.readGame(id);
+                for (int move : game.moves) {
+                    game.startPosition.makeMove(move);
+                }
+                writer.write(tags, game.startPosition, game.firstToMove, game.result);
+            }
+            System.err.printf("%d games written in %.1fs%n", database.getGameCount(), (System.nanoTime() - startTime) / 1e9);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package Chess.Analysis;
+
+import Chess.Models.Board;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only, memory-mapped corpus of positions written by PositionCorpusWriter.
+ *
+ * File layout, little endian:
+ * - a HEADER_BYTES header: magic, version, record size, flags, record count, and the offset and size of the game index;
+ * - the records, each one a packed position (see Board.writePackedPosition) optionally followed by METADATA_BYTES of
+ *   game id (int), ply (short) and result (byte);
+ * - the game index, one INDEX_ENTRY_BYTES entry per run of records of a game: game id (int, padded to 8 bytes), first
+ *   record and record count (longs), sorted by game id.
+ *
+ * Records have a fixed width so any record is found by arithmetic, and decoded straight into a Board. Files larger
+ * than 2GB are mapped as several segments that never split a record. All reads are absolute, so one corpus can be
+ * read by many threads at once, each one with its own Board.
+ */
+public class PositionCorpus implements Closeable {
+    static final int MAGIC = 0x43485043; // "CHPC"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int METADATA_BYTES = 8;
+    static final int INDEX_ENTRY_BYTES = 24;
+    static final int FLAG_HAS_METADATA = 1;
+    static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    // a position without pieces, for creating the boards records are decoded into
+    static final String EMPTY_POSITION = new String(new char[64]).replace("\0", "#E2");
+    public static final byte RESULT_UNKNOWN = 0;
+    public static final byte RESULT_WHITE_WINS = 1;
+    public static final byte RESULT_BLACK_WINS = 2;
+    public static final byte RESULT_DRAW = 3;
+
+    private final FileChannel channel;
+    private final int recordSize;
+    private final boolean hasMetadata;
+    private final long recordCount;
+    private final long recordsPerSegment;
+    private final MappedByteBuffer[] segments;
+    private final ByteBuffer index;
+    private final int indexEntryCount;
+
+    private PositionCorpus(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("not a position corpus");
+        }
+        recordSize = header.getInt(8);
+        hasMetadata = (header.getInt(12) & FLAG_HAS_METADATA) != 0;
+        recordCount = header.getLong(16);
+        long dataOffset = header.getLong(24);
+        long indexOffset = header.getLong(32);
+        long indexEntries = header.getLong(40);
+
+        recordsPerSegment = MAX_SEGMENT_BYTES / recordSize;
+        int segmentCount = (int) ((recordCount + recordsPerSegment - 1) / recordsPerSegment);
+        segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long firstRecord = i * recordsPerSegment;
+            long segmentRecords = Math.min(recordsPerSegment, recordCount - firstRecord);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + firstRecord * recordSize, segmentRecords * recordSize);
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (indexEntries * INDEX_ENTRY_BYTES > Integer.MAX_VALUE) {
+            throw new IOException("game index too large");
+        }
+        indexEntryCount = (int) indexEntries;
+        index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, indexEntries * INDEX_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Maps a corpus file. The file stays open until close().
+     */
+    public static PositionCorpus open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new PositionCorpus(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public boolean hasMetadata() {
+        return hasMetadata;
+    }
+
+    /**
+     * Decodes a record into a board, replacing its position.
+     */
+    public void readPosition(long record, Board board) {
+        board.loadPackedPosition(segmentOf(record), offsetOf(record));
+    }
+
+    /**
+     * @return the game id of a record, or -1 if the corpus has no metadata.
+     */
+    public int getGameId(long record) {
+        return hasMetadata ? segmentOf(record).getInt(offsetOf(record) + Board.PACKED_POSITION_BYTES) : -1;
+    }
+
+    /**
+     * @return the ply of a record in its game, or -1 if the corpus has no metadata.
+     */
+    public int getPly(long record) {
+        return hasMetadata ? segmentOf(record).getShort(offsetOf(record) + Board.PACKED_POSITION_BYTES + 4) : -1;
+    }
+
+    /**
+     * @return one of the RESULT_ constants.
+     */
+    public byte getResult(long record) {
+        return hasMetadata ? segmentOf(record).get(offsetOf(record) + Board.PACKED_POSITION_BYTES + 6) : RESULT_UNKNOWN;
+    }
+
+    /**
+     * Finds the first record of a game through the game index.
+     * @return the record, or -1 if the game is not in the corpus.
+     */
+    public long findFirstRecordOfGame(int gameId) {
+        int entry = findIndexEntry(gameId);
+        return entry < 0 ? -1 : index.getLong(entry * INDEX_ENTRY_BYTES + 8);
+    }
+
+    /**
+     * @return the number of consecutive records of a game starting at findFirstRecordOfGame, or 0.
+     */
+    public long getRecordCountOfGame(int gameId) {
+        int entry = findIndexEntry(gameId);
+        return entry < 0 ? 0 : index.getLong(entry * INDEX_ENTRY_BYTES + 16);
+    }
+
+    /**
+     * Splits the records into contiguous slices of nearly equal size, for handing one slice to each thread.
+     * Slice i covers the records from getSliceStart(i, sliceCount) to getSliceStart(i + 1, sliceCount), exclusive.
+     */
+    public long getSliceStart(int slice, int sliceCount) {
+        return recordCount * slice / sliceCount;
+    }
+
+    private int findIndexEntry(int gameId) {
+        int low = 0;
+        int high = indexEntryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = index.getInt(middle * INDEX_ENTRY_BYTES);
+            if (middleId < gameId) {
+                low = middle + 1;
+            } else if (middleId > gameId) {
+                high = middle - 1;
+            } else {
+                // several runs of the same game are next to each other, return the first
+                while (middle > 0 && index.getInt((middle - 1) * INDEX_ENTRY_BYTES) == gameId) {
+                    middle--;
+                }
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private ByteBuffer segmentOf(long record) {
+        return segments[(int) (record / recordsPerSegment)];
+    }
+
+    private int offsetOf(long record) {
+        return (int) (record % recordsPerSegment) * recordSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,157 @@
+package Chess.Analysis;
+
+import Chess.Models.Board;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Appends positions to a new PositionCorpus file. Records are streamed to disk through a fixed buffer; the game index
+ * and the header are written on close(), so a corpus is only readable once its writer is closed.
+ *
+ * Usage: PositionCorpusWriter [positions file] [corpus file], to convert 192 character positions, one per line.
+ */
+public class PositionCorpusWriter implements Closeable {
+    static int BUFFER_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final boolean hasMetadata;
+    private final int recordSize;
+    private final ByteBuffer buffer;
+    private long recordCount = 0;
+    // runs of consecutive records of one game: {game id, first record, record count}
+    private final List<long[]> gameRuns = new ArrayList<long[]>();
+    private long[] currentGameRun;
+
+    /**
+     * @param path the corpus file, replaced if it exists.
+     * @param hasMetadata whether every record carries game id, ply and result.
+     */
+    public PositionCorpusWriter(Path path, boolean hasMetadata) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.hasMetadata = hasMetadata;
+        this.recordSize = Board.PACKED_POSITION_BYTES + (hasMetadata ? PositionCorpus.METADATA_BYTES : 0);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES / recordSize * recordSize).order(ByteOrder.LITTLE_ENDIAN);
+        channel.position(PositionCorpus.HEADER_BYTES);
+    }
+
+    /**
+     * Appends a position to a corpus without metadata.
+     */
+    public void append(Board board) throws IOException {
+        assert !hasMetadata;
+        reserveRecord();
+        board.writePackedPosition(buffer, buffer.position());
+        buffer.position(buffer.position() + recordSize);
+        recordCount++;
+    }
+
+    /**
+     * Appends a position to a corpus with metadata.
+     * @param result one of the PositionCorpus.RESULT_ constants.
+     */
+    public void append(Board board, int gameId, int ply, byte result) throws IOException {
+        assert hasMetadata;
+        reserveRecord();
+        int offset = buffer.position();
+        board.writePackedPosition(buffer, offset);
+        buffer.putInt(offset + Board.PACKED_POSITION_BYTES, gameId);
+        buffer.putShort(offset + Board.PACKED_POSITION_BYTES + 4, (short) ply);
+        buffer.put(offset + Board.PACKED_POSITION_BYTES + 6, result);
+        buffer.put(offset + Board.PACKED_POSITION_BYTES + 7, (byte) 0);
+        buffer.position(offset + recordSize);
+
+        if (currentGameRun == null || currentGameRun[0] != gameId) {
+            currentGameRun = new long[]{gameId, recordCount, 0};
+            gameRuns.add(currentGameRun);
+        }
+        currentGameRun[2]++;
+        recordCount++;
+    }
+
+    private void reserveRecord() throws IOException {
+        if (buffer.remaining() < recordSize) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the game index and the header, then closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+            long indexOffset = channel.position();
+            Collections.sort(gameRuns, new Comparator<long[]>() {
+                @Override
+                public int compare(long[] run, long[] another) {
+                    return Long.compare(run[0], another[0]);
+                }
+            });
+            for (long[] run : gameRuns) {
+                if (buffer.remaining() < PositionCorpus.INDEX_ENTRY_BYTES) {
+                    flushBuffer();
+                }
+                buffer.putInt((int) run[0]).putInt(0).putLong(run[1]).putLong(run[2]);
+            }
+            flushBuffer();
+
+            ByteBuffer header = ByteBuffer.allocate(PositionCorpus.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(PositionCorpus.MAGIC)
+                    .putInt(PositionCorpus.VERSION)
+                    .putInt(recordSize)
+                    .putInt(hasMetadata ? PositionCorpus.FLAG_HAS_METADATA : 0)
+                    .putLong(recordCount)
+                    .putLong(PositionCorpus.HEADER_BYTES)
+                    .putLong(indexOffset)
+                    .putLong(gameRuns.size());
+            header.clear();
+            channel.write(header, 0);
+        } finally {
+            channel.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path outputPath = Paths.get(args[1]);
+        long count = 0;
+        try (BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(args[0]), StandardCharsets.US_ASCII), 1 << 16);
+             PositionCorpusWriter writer = new PositionCorpusWriter(outputPath, false)) {
+            Board board = null;
+            String line;
+            while ((line = input.readLine()) != null) {
+                if (!BatchPositionAnalyzer.isValidPosition(line)) {
+                    continue;
+                }
+                if (board == null) {
+                    board = new Board(line);
+                } else {
+                    board.loadPosition(line);
+                }
+                writer.append(board);
+                count++;
+            }
+        }
+        System.err.println(count + " positions written to " + outputPath);
+    }
+}
@@ -0,0 +1,326 @@
+package Chess.Analysis;
+
+import Chess.Engine.AnalysisListener;
+import Chess.Engine.AnalysisUpdate;
+import Chess.Engine.EndgameTable;
+import Chess.Engine.EvaluationParameters;
+import Chess.Engine.Evaluator;
+import Chess.Engine.NeuralEvaluator;
+import Chess.Engine.NeuralNetwork;
+import Chess.Engine.PositionEvaluator;
+import Chess.Engine.Search;
+import Chess.Models.Board;
+import Chess.Types.PlayerColor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Plays a headless match between a candidate and a baseline engine configuration, many games at once, and stops as
+ * soon as a sequential probability ratio test decides whether the candidate gains elo1 or at most elo0.
+ *
+ * Every opening is played twice, once with each engine moving first, under a clock with an increment. Games end by
+ * checkmate, stalemate, threefold repetition, the fifty-move rule, a flag fall, or as a draw after MAX_GAME_PLIES.
+ * Each worker thread keeps one Search per configuration for all its games. A runner plays one match.
+ *
+ * Openings are read one per line: a 192 character position in the Board format, standard or funky pieces alike,
+ * optionally followed by white or black for the player to move. Lines starting with "# " are comments, a position
+ * never has a space after its first #.
+ *
+ * Finished games can be recorded in a GameDatabase, which is indexed once the match is over.
+ *
+ * Usage: TournamentRunner [openings file] [candidate parameters or network] [baseline parameters or network]
+ *        [thread count] [max games] [base time ms] [increment ms] [elo0] [elo1] [games directory]
+ */
+public class TournamentRunner {
+    static int MAX_GAME_PLIES = 400;
+    // a move may use the remaining clock divided by this, plus the increment
+    static int MOVES_TO_GO = 30;
+    static int GAMES_IN_FLIGHT_PER_THREAD = 2;
+    static double ALPHA = 0.05;
+    static double BETA = 0.05;
+    private static final AnalysisListener IGNORED_DEPTHS = new AnalysisListener() {
+        @Override
+        public void onDepthCompleted(AnalysisUpdate update) {
+        }
+    };
+
+    /**
+     * One side of the match: the evaluation it plays with and how deep it may search. A configuration with a network
+     * evaluates with it, otherwise with the classical weights.
+     */
+    public static final class EngineConfiguration {
+        public final String name;
+        public final EvaluationParameters parameters;
+        public final NeuralNetwork network;
+        public final int maxDepth;
+
+        public EngineConfiguration(String name, EvaluationParameters parameters, NeuralNetwork network, int maxDepth) {
+            this.name = name;
+            this.parameters = parameters;
+            this.network = network;
+            this.maxDepth = maxDepth;
+        }
+
+        /**
+         * Loads a configuration from a parameters file, or from a network file if its name ends with .nnue.
+         */
+        public static EngineConfiguration load(String path) throws IOException {
+            if (path.endsWith(".nnue")) {
+                return new EngineConfiguration(path, EvaluationParameters.getDefault(),
+                        NeuralNetwork.load(Paths.get(path)), Search.MAX_PLY);
+            }
+            return new EngineConfiguration(path, EvaluationParameters.load(Paths.get(path)), null, Search.MAX_PLY);
+        }
+
+        PositionEvaluator createEvaluator() {
+            Evaluator evaluator = new Evaluator(parameters);
+            return network == null ? evaluator : new NeuralEvaluator(network, evaluator);
+        }
+    }
+
+    /**
+     * A starting position and the player to move in it.
+     */
+    public static final class Opening {
+        public final String position;
+        public final PlayerColor sideToMove;
+
+        public Opening(String position, PlayerColor sideToMove) {
+            this.position = position;
+            this.sideToMove = sideToMove;
+        }
+    }
+
+    private final EngineConfiguration candidate;
+    private final EngineConfiguration baseline;
+    private final int threadCount;
+    private final long baseTimeNanos;
+    private final long incrementNanos;
+    // set once the test is decided, stops the games still running
+    private final AtomicBoolean stopFlag = new AtomicBoolean(false);
+    // records the finished games, null if they are not kept
+    private GameDatabase gameDatabase;
+
+    public TournamentRunner(EngineConfiguration candidate, EngineConfiguration baseline, int threadCount,
+                            long baseTimeMillis, long incrementMillis) {
+        this.candidate = candidate;
+        this.baseline = baseline;
+        this.threadCount = threadCount;
+        this.baseTimeNanos = TimeUnit.MILLISECONDS.toNanos(baseTimeMillis);
+        this.incrementNanos = TimeUnit.MILLISECONDS.toNanos(incrementMillis);
+    }
+
+    /**
+     * @param gameDatabase records every finished game, null to keep none.
+     */
+    public void setGameDatabase(GameDatabase gameDatabase) {
+        this.gameDatabase = gameDatabase;
+    }
+
+    /**
+     * Plays games until the test is decided or maxGames have been played.
+     * @param log receives the standings every few games, may be null.
+     * @return the results of the finished games.
+     */
+    public MatchStatistics run(List<Opening> openings, int maxGames, double elo0, double elo1, PrintStream log)
+            throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threadCount);
+        CompletionService<Double> games = new ExecutorCompletionService<Double>(workers);
+        // both searches of a worker thread, reused for all its games
+        final ThreadLocal<Search[]> workerSearches = new ThreadLocal<Search[]>();
+        MatchStatistics statistics = new MatchStatistics();
+        int submittedCount = 0;
+        int inFlightCount = 0;
+        try {
+            while (true) {
+                while (submittedCount < maxGames && inFlightCount < threadCount * GAMES_IN_FLIGHT_PER_THREAD) {
+                    final Opening opening = openings.get(submittedCount / 2 % openings.size());
+                    final boolean isCandidateWhite = submittedCount % 2 == 0;
+                    games.submit(new Callable<Double>() {
+                        @Override
+                        public Double call() {
+                            Search[] searches = workerSearches.get();
+                            if (searches == null) {
+                                searches = new Search[]{createSearch(candidate), createSearch(baseline)};
+                                workerSearches.set(searches);
+                            }
+                            Board board = new Board(opening.position);
+                            double score = playGame(board, opening.sideToMove, isCandidateWhite, searches[0], searches[1]);
+                            if (gameDatabase != null && !Double.isNaN(score)) {
+                                recordGame(board, opening.sideToMove, isCandidateWhite, score);
+                            }
+                            return score;
+                        }
+                    });
+                    submittedCount++;
+                    inFlightCount++;
+                }
+                if (inFlightCount == 0) {
+                    break;
+                }
+                double score = games.take().get();
+                inFlightCount--;
+                if (Double.isNaN(score)) {
+                    continue;
+                }
+                statistics.addGame(score);
+                MatchStatistics.Decision decision = statistics.getDecision(elo0, elo1, ALPHA, BETA);
+                if (log != null && (statistics.getGameCount() % 20 == 0 || decision != MatchStatistics.Decision.CONTINUE)) {
+                    log.printf("%s, LLR %.2f [%.2f, %.2f]%n", statistics,
+                            statistics.getLogLikelihoodRatio(elo0, elo1),
+                            MatchStatistics.getLowerBound(ALPHA, BETA), MatchStatistics.getUpperBound(ALPHA, BETA));
+                }
+                if (decision != MatchStatistics.Decision.CONTINUE) {
+                    stopFlag.set(true);
+                    break;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("a game failed", e.getCause());
+        } finally {
+            stopFlag.set(true);
+            workers.shutdownNow();
+        }
+        return statistics;
+    }
+
+    private Search createSearch(EngineConfiguration configuration) {
+        Search search = new Search(configuration.createEvaluator());
+        search.setStopFlag(stopFlag);
+        return search;
+    }
+
+    /**
+     * Plays one game to the end.
+     * @param board the opening, the moves of the game are made on it.
+     * @return the candidate's score, or NaN if the match was stopped before the game ended.
+     */
+    double playGame(Board board, PlayerColor firstToMove, boolean isCandidateWhite, Search candidateSearch,
+                    Search baselineSearch) {
+        PlayerColor color = firstToMove;
+        // the remaining time of each player, indexed by PlayerColor.ordinal()
+        long[] clocks = {baseTimeNanos, baseTimeNanos};
+        int[] moves = new int[Board.MAX_LEGAL_MOVES];
+        for (int ply = 0; ply < MAX_GAME_PLIES; ply++) {
+            boolean isCandidateToMove = (color == PlayerColor.WHITE) == isCandidateWhite;
+            int moveCount = board.generateLegalMoves(color, moves, 0);
+            if (moveCount == 0) {
+                if (!board.isKingInCheck(color)) {
+                    return 0.5;
+                }
+                return isCandidateToMove ? 0 : 1;
+            }
+            if (board.isDrawByRepetition() || board.isDrawByFiftyMoveRule() || EndgameTable.getDefault().isDraw(board)) {
+                return 0.5;
+            }
+
+            Search search = isCandidateToMove ? candidateSearch : baselineSearch;
+            EngineConfiguration configuration = isCandidateToMove ? candidate : baseline;
+            long startTime = System.nanoTime();
+            // never more than half the clock, the search stops a little after its deadline
+            long moveTime = Math.min(clocks[color.ordinal()] / MOVES_TO_GO + incrementNanos, clocks[color.ordinal()] / 2);
+            search.setDeadline(startTime + moveTime);
+            search.setHintLine(null);
+            AnalysisUpdate update = search.analyze(board, color, 1, configuration.maxDepth, IGNORED_DEPTHS);
+            if (stopFlag.get()) {
+                return Double.NaN;
+            }
+            clocks[color.ordinal()] -= System.nanoTime() - startTime;
+            if (clocks[color.ordinal()] < 0) {
+                return isCandidateToMove ? 0 : 1;
+            }
+            clocks[color.ordinal()] += incrementNanos;
+
+            // a search stopped in its first depth has no line, any legal move will do
+            board.makeMove(update.getBestLine() != null ? update.getBestLine().getFirstMove() : moves[0]);
+            color = color.oppositeColor();
+        }
+        return 0.5;
+    }
+
+    private void recordGame(Board board, PlayerColor firstToMove, boolean isCandidateWhite, double score) {
+        byte result = score == 0.5 ? PositionCorpus.RESULT_DRAW
+                : (score == 1) == isCandidateWhite ? PositionCorpus.RESULT_WHITE_WINS : PositionCorpus.RESULT_BLACK_WINS;
+        try {
+            gameDatabase.append(board, firstToMove, result);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException naming the line of the first invalid opening.
+     */
+    public static List<Opening> loadOpenings(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.US_ASCII);
+        List<Opening> openings = new ArrayList<Opening>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.equals("#") || line.startsWith("# ")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            if (tokens.length > 2 || !BatchPositionAnalyzer.isValidPosition(tokens[0])) {
+                throw new IllegalArgumentException("line " + (i + 1) + ": expected a 192 character position and the player to move");
+            }
+            PlayerColor sideToMove = PlayerColor.WHITE;
+            if (tokens.length == 2) {
+                if (tokens[1].equalsIgnoreCase("black")) {
+                    sideToMove = PlayerColor.BLACK;
+                } else if (!tokens[1].equalsIgnoreCase("white")) {
+                    throw new IllegalArgumentException("line " + (i + 1) + ": expected white or black instead of " + tokens[1]);
+                }
+            }
+            openings.add(new Opening(tokens[0], sideToMove));
+        }
+        if (openings.isEmpty()) {
+            throw new IllegalArgumentException(path + " has no opening");
+        }
+        return openings;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("usage: TournamentRunner openings candidate baseline "
+                    + "[thread count] [max games] [base time ms] [increment ms] [elo0] [elo1] [games directory]");
+            System.exit(2);
+        }
+        List<Opening> openings = loadOpenings(Paths.get(args[0]));
+        EngineConfiguration candidate = EngineConfiguration.load(args[1]);
+        EngineConfiguration baseline = EngineConfiguration.load(args[2]);
+        int threadCount = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int maxGames = args.length > 4 ? Integer.parseInt(args[4]) : 20000;
+        long baseTimeMillis = args.length > 5 ? Long.parseLong(args[5]) : 2000;
+        long incrementMillis = args.length > 6 ? Long.parseLong(args[6]) : 20;
+        double elo0 = args.length > 7 ? Double.parseDouble(args[7]) : 0;
+        double elo1 = args.length > 8 ? Double.parseDouble(args[8]) : 5;
+
+        System.err.printf("%s against %s, %d openings, %dms + %dms per game, SPRT elo0 %.1f elo1 %.1f%n", candidate.name,
+                baseline.name, openings.size(), baseTimeMillis, incrementMillis, elo0, elo1);
+        long startTime = System.nanoTime();
+        TournamentRunner runner = new TournamentRunner(candidate, baseline, threadCount, baseTimeMillis, incrementMillis);
+        GameDatabase gameDatabase = args.length > 9 ? GameDatabase.open(Paths.get(args[9])) : null;
+        runner.setGameDatabase(gameDatabase);
+        MatchStatistics statistics = runner.run(openings, maxGames, elo0, elo1, System.err);
+        if (gameDatabase != null) {
+            gameDatabase.updateIndex(threadCount);
+            gameDatabase.close();
+        }
+        double hours = (System.nanoTime() - startTime) / 3.6e12;
+        MatchStatistics.Decision decision = statistics.getDecision(elo0, elo1, ALPHA, BETA);
+        System.out.printf("%s%n%s%n%.0f games/hour on %d threads%n", statistics,
+                decision == MatchStatistics.Decision.ACCEPT_ELO1 ? "H1 accepted: the candidate gains at least elo1"
+                        : decision == MatchStatistics.Decision.ACCEPT_ELO0 ? "H0 accepted: the candidate gains at most elo0"
+                        : "undecided", statistics.getGameCount() / hours, threadCount);
+    }
+}
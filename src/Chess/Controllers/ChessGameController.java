@@ -1,19 +1,61 @@
 package Chess.Controllers;
 
+import Chess.Engine.AnalysisEngine;
+import Chess.Engine.AnalysisListener;
+import Chess.Engine.AnalysisUpdate;
+import Chess.Engine.EndgameTable;
+import Chess.Engine.PrincipalVariation;
 import Chess.Models.Board;
 import Chess.Models.Coordinate;
+import Chess.Models.Move;
+import Chess.Models.PerformanceCounters;
 import Chess.Models.Piece;
+import Chess.Network.NetworkConnection;
+import Chess.Network.NetworkMessage;
+import Chess.Types.GameStatus;
 import Chess.Types.PlayerColor;
 import Chess.Views.BoardPanel;
 import Chess.Views.BoardPanelDelegate;
 
 import javax.swing.*;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * The controller of the chess game. The lifecycle of the controller is one game of chess.
+ * Rules are evaluated on a background thread against a copy of the board, and the results are published back on the
+ * event dispatch thread, so a click never waits for a move enumeration.
+ * When analysis is enabled, the position is searched after every move and undo, and the best lines are shown as
+ * arrows on the board as each depth completes.
+ * In a network game, only the local player's pieces can be clicked. Their moves are sent as soon as they are made on
+ * the board, and the remote player's moves are checked against this board before they are played.
  */
 public class ChessGameController implements BoardPanelDelegate {
+    // one rules thread shared by every game, so a restart does not leave threads behind
+    static final ExecutorService rulesExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "chess-rules");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    // one analysis thread shared by every game, starting an analysis stops the previous one
+    static final AnalysisEngine analysisEngine = new AnalysisEngine();
+    static int ANALYSIS_LINE_COUNT = 3;
+    // the label and arrows are updated at most this often, however fast the depths complete
+    static int ANALYSIS_UPDATE_INTERVAL_MS = 100;
+    static final Executor swingExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            SwingUtilities.invokeLater(runnable);
+        }
+    };
+
     public ChessGameControllerDelegate delegate;
     public Board boardModel;
     public BoardPanel boardPanel;
@@ -29,6 +71,21 @@ public class ChessGameController implements BoardPanelDelegate {
     Piece lastToPiece;
     Piece lastFromPiece;
 
+    // the reachable moves computation of the last click, cancelled when the user clicks again
+    CompletableFuture<Coordinate[]> pendingReachableMoves;
+    // bumped on every move and undo, results computed for an older version are stale and dropped
+    int boardVersion = 0;
+
+    // the other player in a network game and the color played here, both null when both players share this window
+    NetworkConnection connection;
+    PlayerColor localColor;
+    // moves played in this game, the sequence of the next network move
+    int moveCount = 0;
+
+    boolean isAnalysisEnabled = false;
+    final SwingThrottle<AnalysisUpdate> analysisThrottle = new SwingThrottle<AnalysisUpdate>(ANALYSIS_UPDATE_INTERVAL_MS,
+            update -> onAnalysisUpdate(update));
+
     /**
      * The initializer of ChessGameController. Upon initialization, it creates an instance of the Board JPanel and renders
      * the board UI.
@@ -47,7 +104,6 @@ public class ChessGameController implements BoardPanelDelegate {
         String whitePawns=      "#P0#P0#P0#P0#P0#P0#P0#P0";
         String whiteFirstLine = "#R0#H0#B0#Q0#K0#B0#H0#R0";
         String startingBoardSerializer = blackFirstLine + blackPawns + emptyLine + emptyLine + emptyLine + emptyLine + whitePawns + whiteFirstLine;
-        System.out.println(startingBoardSerializer);
         return startingBoardSerializer;
     }
 
@@ -58,7 +114,6 @@ public class ChessGameController implements BoardPanelDelegate {
         String whitePawns=      "#P0#P0#P0#P0#P0#P0#P0#P0";
         String whiteFirstLine = "#R0#Y0#X0#Q0#K0#B0#Y0#R0";
         String startingBoardSerializer = blackFirstLine + blackPawns + emptyLine + emptyLine + emptyLine + emptyLine + whitePawns + whiteFirstLine;
-        System.out.println(startingBoardSerializer);
         return startingBoardSerializer;
     }
 
@@ -71,6 +126,9 @@ public class ChessGameController implements BoardPanelDelegate {
      */
     public void onClickTile(Coordinate coord) {
         Piece piece = boardModel.getPieceAtCoordinate(coord);
+        if (localColor != null && turnColor != localColor) {
+            return;
+        }
         if (validMoves != null && Arrays.asList(validMoves).contains(coord)) {
             onMakeMove(coord);
         } else if (piece != null && piece.color == turnColor) {
@@ -80,27 +138,27 @@ public class ChessGameController implements BoardPanelDelegate {
 
     void onMakeMove(Coordinate toLocation) {
         Piece currentPiece = boardModel.getPieceAtCoordinate(currentPieceLocation);
-
-        // Check stalemate before the move and notify the delegate if there is one
-        if (boardModel.isPlayerInStalemate(currentPiece.color)) {
-            if (delegate != null) {
-                delegate.onStalemate();
-            }
-            return;
-        }
+        cancelPendingReachableMoves();
 
         // for undo
         this.lastPieceFromLocation = this.currentPieceLocation;
         this.lastPieceToLocation = toLocation;
         //This is nullable. Code will be easy and elegant if java has optional like Kotlin or Swift, oh well..
+        // pieces are immutable, the references can be put back as they are
         this.lastToPiece = boardModel.getPieceAtCoordinate(toLocation);
-        if (this.lastToPiece != null) {
-            this.lastToPiece = new Piece(this.lastToPiece);
-        }
-        this.lastFromPiece = new Piece(boardModel.getPieceAtCoordinate(currentPieceLocation));
+        this.lastFromPiece = currentPiece;
 
         //make a move on the board model
         boardModel.moveTo(toLocation,currentPieceLocation);
+        boardVersion++;
+        moveCount++;
+        if (connection != null && currentPiece.color == localColor) {
+            // before anything else, the other player is waiting for it
+            connection.send(NetworkMessage.move(moveCount - 1, boardModel.getLastMove(), boardModel.getPositionHash()));
+        }
+        if (delegate != null) {
+            delegate.onMoveMade(boardModel.getLastMove(), boardModel.getPositionHash());
+        }
 
         //notify the delegate of this class that turn ownership has changed
         turnColor = turnColor.oppositeColor();
@@ -113,36 +171,141 @@ public class ChessGameController implements BoardPanelDelegate {
         this.currentPieceLocation = null;
         this.validMoves = null;
 
-        // check winning at the end of the move.
-        if (boardModel.isPlayerWinning(currentPiece.color)) {
-            if (delegate != null) {
-                delegate.onWin(currentPiece.color);
-            }
-            return;
-        }
+        evaluateGameStatus(currentPiece.color);
+        startAnalysis();
+    }
 
-        // king check at the end of the move and notify the user. No need to go through the delegate here.
-        if (boardModel.isKingInCheck(currentPiece.color.oppositeColor())) {
-            JOptionPane.showMessageDialog(null, currentPiece.color.oppositeColor() + " King is in check");
-            return;
+    /**
+     * Plays a move of the remote player, after checking it is the one expected on this board.
+     * @return null if the move was played, otherwise why the two boards no longer agree.
+     */
+    public String playRemoteMove(NetworkMessage message) {
+        if (message.sequence != moveCount) {
+            return "expected move " + (moveCount + 1) + " but received move " + (message.sequence + 1);
         }
+        if (turnColor == localColor) {
+            return "received a move on " + localColor + "'s turn";
+        }
+        if (!boardModel.isLegalMove(message.move, turnColor)) {
+            return "received the illegal move " + Move.toString(message.move);
+        }
+        cancelPendingReachableMoves();
+        this.currentPieceLocation = Coordinate.fromSquare(Move.getFromSquare(message.move));
+        onMakeMove(Coordinate.fromSquare(Move.getToSquare(message.move)));
+        if (boardModel.getPositionHash() != message.positionHash) {
+            return "the positions differ after " + Move.toString(message.move);
+        }
+        return null;
+    }
+
+    /**
+     * Makes this a network game against the player on the other end of connection, or a local game again.
+     * @param localColor the color played in this window, null with a null connection.
+     */
+    public void setConnection(NetworkConnection connection, PlayerColor localColor) {
+        this.connection = connection;
+        this.localColor = localColor;
+    }
+
+    /**
+     * Evaluates the position after a move on a copy of the board in the background, and notifies on the event
+     * dispatch thread unless the board has changed since.
+     * The status is the opponent's after the move: the player who just moved had a legal move, so checking them
+     * before the move could never find one.
+     * @param moverColor the color of the player who just moved
+     */
+    void evaluateGameStatus(final PlayerColor moverColor) {
+        final Board snapshot = new Board(boardModel);
+        final int snapshotVersion = boardVersion;
+        final PlayerColor opponentColor = moverColor.oppositeColor();
+        CompletableFuture.supplyAsync(() -> {
+            GameStatus status = snapshot.evaluateStatus(opponentColor);
+            if (status == GameStatus.STALEMATE) {
+                return (Runnable) () -> {
+                    if (delegate != null) {
+                        delegate.onStalemate();
+                    }
+                };
+            }
+            // check winning at the end of the move.
+            if (status == GameStatus.CHECKMATE) {
+                return (Runnable) () -> {
+                    if (delegate != null) {
+                        delegate.onWin(moverColor);
+                    }
+                };
+            }
+            // only repetitions since the last capture or pawn move are compared, by hash
+            if (EndgameTable.getDefault().isDraw(snapshot)) {
+                return (Runnable) () -> {
+                    if (delegate != null) {
+                        delegate.onDraw("insufficient material");
+                    }
+                };
+            }
+            if (snapshot.isDrawByRepetition() || snapshot.isDrawByFiftyMoveRule()) {
+                final String reason = snapshot.isDrawByRepetition() ? "threefold repetition" : "the fifty-move rule";
+                return (Runnable) () -> {
+                    if (delegate != null) {
+                        delegate.onDraw(reason);
+                    }
+                };
+            }
+            // king check at the end of the move and notify the user. No need to go through the delegate here.
+            if (status == GameStatus.CHECK) {
+                return (Runnable) () -> JOptionPane.showMessageDialog(null, opponentColor + " King is in check");
+            }
+            return (Runnable) () -> { };
+        }, rulesExecutor).thenAcceptAsync(notification -> {
+            if (snapshotVersion == boardVersion) {
+                notification.run();
+            }
+        }, swingExecutor);
     }
 
     /**
-     * Get all legal moves a piece can make at coord and update the UI to highlight all legal moves
+     * Get all legal moves a piece can make at coord in the background and update the UI to highlight all legal moves.
+     * Until they arrive no move can be made, and a newer click replaces them.
      */
-    void onShowReachableMoves(Coordinate coord) {
-        this.validMoves = boardModel.computeReachableMoves(coord);
-        this.boardPanel.setTileHighlighted(this.validMoves, turnColor);
+    void onShowReachableMoves(final Coordinate coord) {
+        cancelPendingReachableMoves();
         this.currentPieceLocation = coord;
+        this.validMoves = null;
+        final Board snapshot = new Board(boardModel);
+        final int snapshotVersion = boardVersion;
+        final PlayerColor color = turnColor;
+        pendingReachableMoves = CompletableFuture.supplyAsync(() -> {
+            long startTime = System.nanoTime();
+            Coordinate[] reachableMoves = snapshot.computeReachableMoves(coord);
+            PerformanceCounters.getDefault().setMoveGenerationNanos(System.nanoTime() - startTime);
+            return reachableMoves;
+        }, rulesExecutor);
+        pendingReachableMoves.thenAcceptAsync(reachableMoves -> {
+            if (coord != currentPieceLocation || snapshotVersion != boardVersion) {
+                return;
+            }
+            this.validMoves = reachableMoves;
+            this.boardPanel.setTileHighlighted(reachableMoves, color);
+        }, swingExecutor);
+    }
+
+    private void cancelPendingReachableMoves() {
+        if (pendingReachableMoves != null) {
+            pendingReachableMoves.cancel(false);
+            pendingReachableMoves = null;
+        }
     }
 
     /**
      * Undo the last turn on board and notifies the delegate of turn change.
      */
     public void undoLastTurn() {
-        boardModel.setPieceAtCoordinate(lastToPiece, lastPieceToLocation);
-        boardModel.setPieceAtCoordinate(lastFromPiece, lastPieceFromLocation);
+        cancelPendingReachableMoves();
+        boardModel.undoLastMove();
+        boardVersion++;
+        moveCount--;
+        this.currentPieceLocation = null;
+        this.validMoves = null;
         this.turnColor = this.turnColor.oppositeColor();
         boardPanel.updateViewForUndo(lastPieceFromLocation, lastFromPiece, lastPieceToLocation, lastToPiece);
         this.lastToPiece = null;
@@ -152,10 +315,73 @@ public class ChessGameController implements BoardPanelDelegate {
         if (delegate != null) {
             delegate.onTurnChange(turnColor);
         }
+        startAnalysis();
     }
 
+    /**
+     * A move sent to the other player cannot be taken back.
+     */
     public boolean isUndoAvailable() {
-        return this.lastPieceToLocation != null;
+        return this.lastPieceToLocation != null && connection == null;
+    }
+
+    /**
+     * Starts or stops analyzing the position after every move. Stopping clears the arrows.
+     */
+    public void setAnalysisEnabled(boolean enabled) {
+        isAnalysisEnabled = enabled;
+        if (enabled) {
+            startAnalysis();
+        } else {
+            analysisEngine.stop();
+            analysisThrottle.clear();
+            boardPanel.clearAnalysisArrows();
+        }
+    }
+
+    public boolean isAnalysisEnabled() {
+        return isAnalysisEnabled;
+    }
+
+    /**
+     * Restarts the analysis on the current position. Updates are throttled to the event dispatch thread.
+     */
+    void startAnalysis() {
+        if (!isAnalysisEnabled) {
+            return;
+        }
+        analysisThrottle.clear();
+        analysisEngine.start(boardModel, turnColor, ANALYSIS_LINE_COUNT, new AnalysisListener() {
+            @Override
+            public void onDepthCompleted(AnalysisUpdate update) {
+                analysisThrottle.publish(update);
+            }
+        });
+    }
+
+    /**
+     * Shows the lines of a completed depth, unless they were found for an older position or analysis was stopped.
+     */
+    void onAnalysisUpdate(AnalysisUpdate update) {
+        if (!isAnalysisEnabled || update.rootHash != boardModel.getPositionHash() || update.sideToMove != turnColor) {
+            return;
+        }
+        Coordinate[] from = new Coordinate[update.lines.size()];
+        Coordinate[] to = new Coordinate[update.lines.size()];
+        // the scores are shown from white's point of view
+        StringBuilder summary = new StringBuilder("<html>depth " + update.depth);
+        for (int i = 0; i < update.lines.size(); i++) {
+            PrincipalVariation line = update.lines.get(i);
+            from[i] = Coordinate.fromSquare(Move.getFromSquare(line.getFirstMove()));
+            to[i] = Coordinate.fromSquare(Move.getToSquare(line.getFirstMove()));
+            int whiteScore = update.sideToMove == PlayerColor.WHITE ? line.score : -line.score;
+            summary.append("<br>").append(PrincipalVariation.formatScore(whiteScore)).append(' ')
+                    .append(Move.toString(line.getFirstMove()));
+        }
+        boardPanel.setAnalysisArrows(from, to);
+        if (delegate != null) {
+            delegate.onAnalysisUpdate(summary.append("</html>").toString());
+        }
     }
 
     public void setDelegate(ChessGameControllerDelegate delegate) {
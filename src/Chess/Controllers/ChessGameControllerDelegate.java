@@ -4,6 +4,9 @@ import Chess.Types.PlayerColor;
 
 public interface ChessGameControllerDelegate {
     public void onTurnChange(PlayerColor newColor);
+    public void onMoveMade(int move, long positionHash);
     public void onStalemate();
+    public void onDraw(String reason);
     public void onWin(PlayerColor winnerColor);
+    public void onAnalysisUpdate(String summary);
 }
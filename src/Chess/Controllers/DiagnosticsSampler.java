@@ -0,0 +1,76 @@
+package Chess.Controllers;
+
+import Chess.Models.PerformanceCounters;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.function.Consumer;
+
+/**
+ * Reads PerformanceCounters on a Swing timer and hands a summary to the event dispatch thread: the nodes per second
+ * searched since the last sample, the depth of the analysis, the hit rate of the pawn table, the time the legal moves
+ * of the last click took and the time of the last frame of the board.
+ *
+ * The counters are only read, INTERVAL_MS apart, so the engine and the rules do not pay for being watched.
+ */
+class DiagnosticsSampler {
+    static int INTERVAL_MS = 500;
+
+    private final PerformanceCounters counters;
+    private final Consumer<String> consumer;
+    private final Timer timer;
+    // the node count and time of the previous sample, only used on the event dispatch thread
+    private long lastNodeCount;
+    private long lastSampleTime;
+
+    DiagnosticsSampler(PerformanceCounters counters, Consumer<String> consumer) {
+        this.counters = counters;
+        this.consumer = consumer;
+        this.timer = new Timer(INTERVAL_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                sample();
+            }
+        });
+    }
+
+    /**
+     * Must be called on the event dispatch thread, like stop.
+     */
+    void start() {
+        lastNodeCount = counters.getSearchNodeCount();
+        lastSampleTime = System.nanoTime();
+        timer.start();
+    }
+
+    void stop() {
+        timer.stop();
+    }
+
+    private void sample() {
+        long nodeCount = counters.getSearchNodeCount();
+        long sampleTime = System.nanoTime();
+        long nodesPerSecond = (nodeCount - lastNodeCount) * 1000000000L / Math.max(sampleTime - lastSampleTime, 1);
+        lastNodeCount = nodeCount;
+        lastSampleTime = sampleTime;
+        consumer.accept(format(nodesPerSecond, counters.getSearchDepth(), counters.getHashProbeCount(),
+                counters.getHashHitCount(), counters.getMoveGenerationNanos(), counters.getFrameNanos()));
+    }
+
+    /**
+     * @return the summary of a sample as html, a dash for the figures not measured yet.
+     */
+    static String format(long nodesPerSecond, int depth, long hashProbeCount, long hashHitCount,
+                         long moveGenerationNanos, long frameNanos) {
+        StringBuilder text = new StringBuilder("<html>");
+        text.append("nodes/s ").append(nodesPerSecond < 10000 ? nodesPerSecond + "" : nodesPerSecond / 1000 + "k");
+        text.append("<br>depth ").append(depth > 0 ? Integer.toString(depth) : "-");
+        text.append("<br>hash ").append(hashProbeCount > 0
+                ? String.format("%.1f%%", 100.0 * hashHitCount / hashProbeCount) : "-");
+        text.append("<br>moves ").append(moveGenerationNanos >= 0
+                ? String.format("%.0fus", moveGenerationNanos / 1e3) : "-");
+        text.append("<br>frame ").append(frameNanos >= 0 ? String.format("%.1fms", frameNanos / 1e6) : "-");
+        return text.append("</html>").toString();
+    }
+}
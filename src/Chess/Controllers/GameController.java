@@ -1,22 +1,43 @@
 package Chess.Controllers;
 
+import Chess.Analysis.GameDatabase;
+import Chess.Analysis.PositionCorpus;
 import Chess.Models.Board;
+import Chess.Models.PerformanceCounters;
+import Chess.Network.ConnectionListener;
+import Chess.Network.NetworkConnection;
+import Chess.Network.NetworkMessage;
+import Chess.Network.SpectatorHub;
 import Chess.Types.PlayerColor;
 import Chess.Views.BoardPanel;
 import Chess.Views.GameControlPanel;
 import Chess.Views.GameControlPanelDelegate;
 import Chess.Views.OnboardingPanel;
+import Chess.Views.OnboardingPanelDelegate;
+import Chess.Views.PieceSpriteAtlas;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 
 /**
  * The game controller that will be the entry to the chess game.
  * This controller manages the GameControlPanel and let it communicates with the ChessGameController, which is
  * a child controller of GameController. Therefore, this controller will manage the lifecycle of a game, eg. restart,
  * forfeit, start, funky mode, etc..
+ * A network game is hosted as white and joined as black. The host picks the starting position, and restarts and
+ * forfeits on either side are mirrored on the other one.
+ * Games can be watched by spectators connecting to a SpectatorHub, given by the port on the command line.
+ * Finished games are saved in the GameDatabase of GAMES_DIRECTORY, on a thread of their own.
  */
-public class GameController implements GameControlPanelDelegate, ChessGameControllerDelegate {
+public class GameController implements GameControlPanelDelegate, OnboardingPanelDelegate, ChessGameControllerDelegate {
+    static final String DEFAULT_PORT = "5555";
+    static final String GAMES_DIRECTORY = "Games";
 
     GameControllerState state = GameControllerState.ONBOARDING;
 
@@ -36,14 +57,63 @@ public class GameController implements GameControlPanelDelegate, ChessGameContro
     int whitePlayerScore = 0;
 
     boolean isFunky = false;
+    // kept across games, so analysis carries on after a restart
+    boolean isAnalyzing = false;
+
+    // the other player of a network game, its events are handled on the event dispatch thread
+    NetworkConnection connection;
+    PlayerColor localColor;
+    // bumped for every connection and when it ends, events of older connections are dropped
+    int connectionGeneration = 0;
+    // broadcasts the games to spectators, null if there are none
+    final SpectatorHub spectatorHub;
+    // saves the finished games, null if they are not kept
+    final GameDatabase gameDatabase;
+    final ExecutorService gameWriter;
+    // a game is saved the first time it ends, not again if it goes on
+    boolean isGameRecorded = false;
+    // updates the diagnostics of the control panel, null if they are not shown
+    final DiagnosticsSampler diagnosticsSampler;
 
     /**
      * Initilizer for GameController. Upon initialization, it subscribe to the user-side change a control panel will make
      * and initialize the layout of its panels(onboarding, controlPanel and ChessGameController's boardPanel).
      */
     GameController() {
+        this(null, null, false);
+    }
+
+    /**
+     * @param spectatorHub the hub broadcasting the games, or null.
+     * @param gameDatabase the database the finished games are saved in, or null.
+     * @param isDiagnosticsShown true to show the performance of the engine and the rules on the control panel.
+     */
+    GameController(SpectatorHub spectatorHub, GameDatabase gameDatabase, boolean isDiagnosticsShown) {
+        this.spectatorHub = spectatorHub;
+        this.gameDatabase = gameDatabase;
+        gameWriter = gameDatabase == null ? null : Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "chess-games");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
         controlPanel.setDelegate(this);
+        onboardingPanel.setDelegate(this);
+        controlPanel.setDiagnosticsVisible(isDiagnosticsShown);
         initializeViews();
+        if (isDiagnosticsShown) {
+            diagnosticsSampler = new DiagnosticsSampler(PerformanceCounters.getDefault(), new Consumer<String>() {
+                @Override
+                public void accept(String text) {
+                    controlPanel.setDiagnosticsText(text);
+                }
+            });
+            diagnosticsSampler.start();
+        } else {
+            diagnosticsSampler = null;
+        }
     }
 
     /**
@@ -51,19 +121,22 @@ public class GameController implements GameControlPanelDelegate, ChessGameContro
      */
     void initializeViews() {
         rootWindow = new JFrame("Chess");
-        rootWindow.setVisible(true);
         rootWindow.getContentPane().setLayout(null);
         Dimension boardSize = new Dimension(
                 BoardPanel.TILE_SIZE.width * 8,
                 BoardPanel.TILE_SIZE.width * 8 + BoardPanel.MENU_BAR_HEIGHT);
-        controlPanel.setSize(new Dimension(GameControlPanel.PANEL_WIDTH,boardSize.height));
+        // the controls fill the height of the board, the diagnostics go below them
+        int controlPanelHeight = boardSize.height
+                + (controlPanel.isDiagnosticsVisible() ? GameControlPanel.DIAGNOSTICS_LABEL_HEIGHT : 0);
+        controlPanel.setSize(new Dimension(GameControlPanel.PANEL_WIDTH,controlPanelHeight));
         onboardingPanel.setBounds(GameControlPanel.PANEL_WIDTH,0,boardSize.width,boardSize.height);
         rootWindow.getContentPane().add(controlPanel);
         rootWindow.getContentPane().add(onboardingPanel);
-        Dimension windowSize = new Dimension(boardSize.width + GameControlPanel.PANEL_WIDTH, boardSize.height);
+        Dimension windowSize = new Dimension(boardSize.width + GameControlPanel.PANEL_WIDTH, controlPanelHeight);
         rootWindow.setSize(windowSize);
         rootWindow.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         rootWindow.setResizable(false);
+        rootWindow.setVisible(true);
     }
 
     /**
@@ -72,10 +145,16 @@ public class GameController implements GameControlPanelDelegate, ChessGameContro
      */
     void startNewGame() {
         if (chessController != null) {
+            chessController.setAnalysisEnabled(false);
             rootWindow.getContentPane().remove(chessController.boardPanel);
         }
         chessController = new ChessGameController(isFunky);
         chessController.setDelegate(this);
+        chessController.setConnection(connection, localColor);
+        isGameRecorded = false;
+        controlPanel.setAnalysisText("");
+        chessController.setAnalysisEnabled(isAnalyzing);
+        publishPosition();
         onTurnChange(PlayerColor.WHITE);
         chessController.boardPanel.setBounds(100,0,512,530);
         rootWindow.getContentPane().remove(onboardingPanel);
@@ -91,24 +170,45 @@ public class GameController implements GameControlPanelDelegate, ChessGameContro
         this.setState(GameControllerState.IN_GAME);
     }
     public void onClickRestart() {
+        if (connection != null) {
+            connection.send(NetworkMessage.restart());
+        }
         startNewGame();
     }
 
     public void onClickReset() {
+        endNetworkGame(null);
         setState(GameControllerState.ONBOARDING);
     }
 
     public void onClickForfeit() {
-        if (chessController.turnColor == PlayerColor.BLACK) {
+        // in a network game only the local player can give up, whoever's turn it is
+        if (connection != null) {
+            connection.send(NetworkMessage.forfeit(localColor));
+            forfeit(localColor);
+        } else {
+            forfeit(chessController.turnColor);
+        }
+    }
+
+    /**
+     * A player loses the game, and a new one starts.
+     * @param forfeitingColor the color of the player giving up.
+     */
+    void forfeit(PlayerColor forfeitingColor) {
+        if (forfeitingColor == PlayerColor.BLACK) {
             this.setWhitePlayerScore(whitePlayerScore + 1);
+            recordGame(PositionCorpus.RESULT_WHITE_WINS);
         } else {
             this.setBlackPlayerScore(blackPlayerScore + 1);
+            recordGame(PositionCorpus.RESULT_BLACK_WINS);
         }
         startNewGame();
     }
 
     public void onClickUndo() {
         chessController.undoLastTurn();
+        publishPosition();
         controlPanel.setUndoEnabled(chessController.isUndoAvailable());
     }
 
@@ -116,6 +216,173 @@ public class GameController implements GameControlPanelDelegate, ChessGameContro
         isFunky = true;
     }
 
+    public void onClickAnalysis() {
+        setAnalyzing(!isAnalyzing);
+    }
+
+    // Delegate methods for OnboardingPanelDelegate.
+    // They set up a network game, which starts when the other player connects
+    public void onClickHost() {
+        String port = askNetworkGameDetails(PlayerColor.WHITE, "Port to host the game on", DEFAULT_PORT);
+        if (port == null) {
+            return;
+        }
+        try {
+            openConnection(NetworkConnection.host(Integer.parseInt(port.trim()), createConnectionListener()), PlayerColor.WHITE);
+            onboardingPanel.setNetworkStatus("Waiting for black on port " + connection.getLocalPort());
+        } catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, "Cannot host on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    public void onClickJoin() {
+        String address = askNetworkGameDetails(PlayerColor.BLACK, "Address of the host", "localhost:" + DEFAULT_PORT);
+        if (address == null) {
+            return;
+        }
+        try {
+            int separator = address.lastIndexOf(':');
+            String host = separator < 0 ? address.trim() : address.substring(0, separator).trim();
+            int port = Integer.parseInt(separator < 0 ? DEFAULT_PORT : address.substring(separator + 1).trim());
+            openConnection(NetworkConnection.connect(host, port, createConnectionListener()), PlayerColor.BLACK);
+            onboardingPanel.setNetworkStatus("Connecting to " + host + ":" + port);
+        } catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, "Cannot join " + address + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks the local player has a name and asks where to play.
+     * @return the answer, or null if there is no name or the question was cancelled.
+     */
+    private String askNetworkGameDetails(PlayerColor color, String question, String defaultAnswer) {
+        if (controlPanel.getPlayerName(color).length() == 0) {
+            JOptionPane.showMessageDialog(null,  "Please enter " + color.toString().toLowerCase() + " player's name");
+            return null;
+        }
+        return JOptionPane.showInputDialog(rootWindow, question, defaultAnswer);
+    }
+
+    private void openConnection(NetworkConnection connection, PlayerColor localColor) {
+        this.connection = connection;
+        this.localColor = localColor;
+    }
+
+    /**
+     * Listens to the next connection on the event dispatch thread. Events arriving after that connection was closed
+     * here are dropped.
+     */
+    private ConnectionListener createConnectionListener() {
+        final int generation = ++connectionGeneration;
+        return new ConnectionListener() {
+            @Override
+            public void onConnected() {
+                runIfCurrent(new Runnable() {
+                    @Override
+                    public void run() {
+                        onNetworkConnected();
+                    }
+                });
+            }
+
+            @Override
+            public void onMessage(final NetworkMessage message) {
+                runIfCurrent(new Runnable() {
+                    @Override
+                    public void run() {
+                        onNetworkMessage(message);
+                    }
+                });
+            }
+
+            @Override
+            public void onDisconnected(final String reason) {
+                runIfCurrent(new Runnable() {
+                    @Override
+                    public void run() {
+                        endNetworkGame("the connection was lost: " + reason);
+                    }
+                });
+            }
+
+            private void runIfCurrent(final Runnable handler) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == connectionGeneration && connection != null) {
+                            handler.run();
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * The host starts the game and tells the guest which position it starts from. The guest waits for that.
+     */
+    void onNetworkConnected() {
+        if (localColor == PlayerColor.WHITE) {
+            onboardingPanel.setNetworkStatus("");
+            setState(GameControllerState.IN_GAME);
+            connection.send(NetworkMessage.hello(isFunky, chessController.boardModel.getPositionHash()));
+        } else {
+            onboardingPanel.setNetworkStatus("Waiting for white to start");
+        }
+    }
+
+    void onNetworkMessage(NetworkMessage message) {
+        switch (message.type) {
+            case HELLO:
+                if (message.sequence != NetworkMessage.PROTOCOL_VERSION) {
+                    endNetworkGame("the host plays version " + message.sequence + " of the game");
+                    return;
+                }
+                isFunky = message.move != 0;
+                onboardingPanel.setNetworkStatus("");
+                setState(GameControllerState.IN_GAME);
+                if (chessController.boardModel.getPositionHash() != message.positionHash) {
+                    endNetworkGame("the host starts from another position");
+                }
+                break;
+            case MOVE:
+                String error = chessController == null ? "received a move before the game started"
+                        : chessController.playRemoteMove(message);
+                if (error != null) {
+                    endNetworkGame("the boards no longer agree, " + error);
+                }
+                break;
+            case RESTART:
+                startNewGame();
+                break;
+            case FORFEIT:
+                forfeit(message.getForfeitingColor());
+                break;
+        }
+    }
+
+    /**
+     * Closes the network game, the game on the board goes on with both players at this window.
+     * @param reason told to the user, or null to end it silently.
+     */
+    void endNetworkGame(String reason) {
+        if (connection == null) {
+            return;
+        }
+        connection.close();
+        connection = null;
+        connectionGeneration++;
+        localColor = null;
+        onboardingPanel.setNetworkStatus("");
+        if (chessController != null) {
+            chessController.setConnection(null, null);
+            controlPanel.setUndoEnabled(chessController.isUndoAvailable());
+        }
+        if (reason != null) {
+            JOptionPane.showMessageDialog(null, "Network game ended, " + reason);
+        }
+    }
+
     // Delegate methods for ChessGameControllerDelegate.
     // They respond to the game events on the board
     @Override
@@ -125,14 +392,77 @@ public class GameController implements GameControlPanelDelegate, ChessGameContro
         } else {
             this.setBlackPlayerScore(whitePlayerScore + 1);
         }
+        if (spectatorHub != null) {
+            spectatorHub.publishResult(winnerColor);
+        }
+        recordGame(winnerColor == PlayerColor.WHITE ? PositionCorpus.RESULT_WHITE_WINS : PositionCorpus.RESULT_BLACK_WINS);
         JOptionPane.showMessageDialog(null, winnerColor.toString() + " player won");
     }
 
     @Override
     public void onStalemate() {
+        if (spectatorHub != null) {
+            spectatorHub.publishResult(null);
+        }
+        recordGame(PositionCorpus.RESULT_DRAW);
         JOptionPane.showMessageDialog(null,  "Stalemate");
     }
 
+    @Override
+    public void onDraw(String reason) {
+        if (spectatorHub != null) {
+            spectatorHub.publishResult(null);
+        }
+        recordGame(PositionCorpus.RESULT_DRAW);
+        JOptionPane.showMessageDialog(null,  "Draw by " + reason);
+    }
+
+    @Override
+    public void onAnalysisUpdate(String summary) {
+        controlPanel.setAnalysisText(summary);
+    }
+
+    @Override
+    public void onMoveMade(int move, long positionHash) {
+        if (spectatorHub != null) {
+            spectatorHub.publishMove(move, positionHash);
+        }
+    }
+
+    /**
+     * Saves the game on the board and indexes it, away from the event dispatch thread. Games start with white.
+     */
+    void recordGame(final byte result) {
+        if (gameDatabase == null || isGameRecorded) {
+            return;
+        }
+        isGameRecorded = true;
+        // a copy keeps the moves, the game on the board can go on meanwhile
+        final Board board = new Board(chessController.boardModel);
+        gameWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gameDatabase.append(board, PlayerColor.WHITE, result);
+                    gameDatabase.updateIndex(1);
+                } catch (IOException e) {
+                    System.err.println("The game could not be saved: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts the spectators over from the position on the board, after a new game or an undo.
+     */
+    void publishPosition() {
+        if (spectatorHub != null) {
+            spectatorHub.publishPosition(chessController.boardModel, chessController.turnColor, chessController.moveCount);
+        }
+    }
+
     @Override
     public void onTurnChange(PlayerColor newColor) {
         controlPanel.setCurrentTurnColor(newColor);
@@ -151,6 +481,7 @@ public class GameController implements GameControlPanelDelegate, ChessGameContro
             this.setWhitePlayerName(null);
             this.setWhitePlayerScore(0);
             isFunky = false;
+            setAnalyzing(false);
             if (chessController != null) {
                 rootWindow.getContentPane().remove(chessController.boardPanel);
                 onboardingPanel.setBounds(100,0,512,530);
@@ -164,6 +495,17 @@ public class GameController implements GameControlPanelDelegate, ChessGameContro
         this.controlPanel.setState(state);
     }
 
+    public void setAnalyzing(boolean isAnalyzing) {
+        this.isAnalyzing = isAnalyzing;
+        this.controlPanel.setAnalyzing(isAnalyzing);
+        if (chessController != null) {
+            chessController.setAnalysisEnabled(isAnalyzing);
+        }
+        if (!isAnalyzing) {
+            this.controlPanel.setAnalysisText("");
+        }
+    }
+
     public void setBlackPlayerName(String blackPlayerName) {
         this.blackPlayerName = blackPlayerName;
         this.controlPanel.setPlayerName(blackPlayerName, PlayerColor.BLACK);
@@ -184,8 +526,41 @@ public class GameController implements GameControlPanelDelegate, ChessGameContro
         this.controlPanel.setPlayerScore(whitePlayerScore, PlayerColor.WHITE);
     }
 
-    public static void main(String args[]) {
-        new GameController();
+    /**
+     * Entry of the game. The sprites start decoding in the background while the onboarding panel shows, and the
+     * window is built on the event dispatch thread.
+     * @param args optionally, the port spectators can watch the games on, and --diagnostics to show the performance
+     *             of the engine and the rules, eg. to watch a kiosk.
+     */
+    public static void main(String args[]) throws IOException {
+        PieceSpriteAtlas.preload();
+        String port = null;
+        boolean isDiagnosticsShown = false;
+        for (String arg : args) {
+            if (arg.equals("--diagnostics")) {
+                isDiagnosticsShown = true;
+            } else {
+                port = arg;
+            }
+        }
+        final boolean isDiagnosticsEnabled = isDiagnosticsShown;
+        final SpectatorHub spectatorHub = port != null ? SpectatorHub.open(Integer.parseInt(port)) : null;
+        if (spectatorHub != null) {
+            System.out.println("Spectators can watch on port " + spectatorHub.getLocalPort());
+        }
+        GameDatabase database = null;
+        try {
+            database = GameDatabase.open(Paths.get(GAMES_DIRECTORY));
+        } catch (IOException e) {
+            System.err.println("Games will not be saved: " + e.getMessage());
+        }
+        final GameDatabase gameDatabase = database;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                new GameController(spectatorHub, gameDatabase, isDiagnosticsEnabled);
+            }
+        });
     }
 
 }
@@ -0,0 +1,71 @@
+package Chess.Controllers;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Hands values published by a background thread to the event dispatch thread, at most once per interval.
+ * Only the latest value is delivered, the ones it replaced are dropped, and publishing never blocks.
+ */
+public class SwingThrottle<T> {
+    private final AtomicReference<T> latestValue = new AtomicReference<T>();
+    // true while a delivery is queued on the event dispatch thread or waiting on the timer
+    private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+    private final Consumer<T> consumer;
+    private final Timer timer;
+    // only used on the event dispatch thread
+    private long lastDeliveryTime;
+
+    public SwingThrottle(int intervalMillis, Consumer<T> consumer) {
+        this.consumer = consumer;
+        this.timer = new Timer(intervalMillis, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                deliver();
+            }
+        });
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Publishes a value from any thread.
+     */
+    public void publish(T value) {
+        latestValue.set(value);
+        if (isScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    long wait = lastDeliveryTime + timer.getDelay() - System.currentTimeMillis();
+                    if (wait > 0) {
+                        timer.setInitialDelay((int) wait);
+                        timer.restart();
+                        timer.setInitialDelay(timer.getDelay());
+                    } else {
+                        deliver();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the value waiting to be delivered, if any. Must be called on the event dispatch thread.
+     */
+    public void clear() {
+        latestValue.set(null);
+    }
+
+    private void deliver() {
+        lastDeliveryTime = System.currentTimeMillis();
+        isScheduled.set(false);
+        T value = latestValue.getAndSet(null);
+        if (value != null) {
+            consumer.accept(value);
+        }
+    }
+}
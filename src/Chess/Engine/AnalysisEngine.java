@@ -0,0 +1,126 @@
+package Chess.Engine;
+
+import Chess.Models.Board;
+import Chess.Models.Move;
+import Chess.Models.PerformanceCounters;
+import Chess.Types.PlayerColor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Analyzes positions in the background, one at a time, streaming the lines of every completed depth to a listener
+ * on the analysis thread. Starting a new analysis stops the previous one.
+ *
+ * When the new position follows the best line of the previous analysis, the rest of that line is searched first,
+ * and the move ordering history of the search is kept, so the analysis picks up where it left off.
+ *
+ * Positions are evaluated by the network in Assets/network.nnue if there is one, by the classical Evaluator otherwise.
+ *
+ * The nodes, depths and pawn table hits of the analyses are published to PerformanceCounters.getDefault().
+ */
+public class AnalysisEngine {
+    public static final int MAX_DEPTH = 32;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "chess-analysis");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    // only used on the analysis thread
+    private final PositionEvaluator evaluator = createEvaluator();
+    private final Search search = new Search(evaluator);
+    private AtomicBoolean stopFlag = new AtomicBoolean(true);
+    private volatile int[] lastBestLine = new int[0];
+
+    public AnalysisEngine() {
+        search.setPerformanceCounters(PerformanceCounters.getDefault());
+    }
+
+    /**
+     * @return an evaluator with the network in NeuralNetwork.DEFAULT_PATH if there is one, the classical one otherwise.
+     * @throws IllegalStateException if the network cannot be read.
+     */
+    static PositionEvaluator createEvaluator() {
+        Path networkPath = Paths.get(NeuralNetwork.DEFAULT_PATH);
+        if (!Files.exists(networkPath)) {
+            return new Evaluator();
+        }
+        try {
+            return new NeuralEvaluator(NeuralNetwork.load(networkPath));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("cannot load the network from " + NeuralNetwork.DEFAULT_PATH, e);
+        }
+    }
+
+    /**
+     * Stops the current analysis and starts analyzing a position.
+     * @param board the position, it is copied so the caller may keep changing it.
+     * @param sideToMove the player to move.
+     * @param lineCount the number of best lines to report.
+     */
+    public synchronized void start(Board board, final PlayerColor sideToMove, final int lineCount,
+                                   final AnalysisListener listener) {
+        stop();
+        final Board position = new Board(board);
+        final AtomicBoolean runStopFlag = new AtomicBoolean(false);
+        stopFlag = runStopFlag;
+
+        int[] previousLine = lastBestLine;
+        final int[] hintLine;
+        int lastMove = board.getLastMove();
+        if (previousLine.length > 1 && lastMove != Move.NONE && previousLine[0] == lastMove) {
+            hintLine = Arrays.copyOfRange(previousLine, 1, previousLine.length);
+        } else {
+            hintLine = new int[0];
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (runStopFlag.get()) {
+                    return;
+                }
+                search.setStopFlag(runStopFlag);
+                search.setHintLine(hintLine);
+                search.analyze(position, sideToMove, lineCount, MAX_DEPTH, new AnalysisListener() {
+                    @Override
+                    public void onDepthCompleted(AnalysisUpdate update) {
+                        PrincipalVariation bestLine = update.getBestLine();
+                        if (bestLine != null) {
+                            lastBestLine = bestLine.moves;
+                        }
+                        if (evaluator instanceof Evaluator) {
+                            Evaluator pawnTableOwner = (Evaluator) evaluator;
+                            PerformanceCounters.getDefault().setHashCounts(pawnTableOwner.getPawnProbeCount(),
+                                    pawnTableOwner.getPawnHitCount());
+                        }
+                        listener.onDepthCompleted(update);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stops the current analysis, if any. A stopped analysis reports no further depths.
+     */
+    public synchronized void stop() {
+        stopFlag.set(true);
+    }
+
+    public void shutdown() {
+        stop();
+        executor.shutdownNow();
+    }
+}
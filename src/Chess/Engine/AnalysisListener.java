@@ -0,0 +1,8 @@
+package Chess.Engine;
+
+public interface AnalysisListener {
+    /**
+     * Called on the search thread after every completed depth. It should return quickly.
+     */
+    public void onDepthCompleted(AnalysisUpdate update);
+}
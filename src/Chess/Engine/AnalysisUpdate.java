@@ -0,0 +1,35 @@
+package Chess.Engine;
+
+import Chess.Types.PlayerColor;
+
+import java.util.List;
+
+/**
+ * The result of one completed depth of an analysis, best line first.
+ */
+public final class AnalysisUpdate {
+    // the position analyzed, to tell updates for an older position apart
+    public final long rootHash;
+    public final PlayerColor sideToMove;
+    public final int depth;
+    public final List<PrincipalVariation> lines;
+    public final long nodeCount;
+    public final long elapsedMillis;
+
+    public AnalysisUpdate(long rootHash, PlayerColor sideToMove, int depth, List<PrincipalVariation> lines,
+                          long nodeCount, long elapsedMillis) {
+        this.rootHash = rootHash;
+        this.sideToMove = sideToMove;
+        this.depth = depth;
+        this.lines = lines;
+        this.nodeCount = nodeCount;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return the best line, or null if the player to move has no legal move.
+     */
+    public PrincipalVariation getBestLine() {
+        return lines.isEmpty() ? null : lines.get(0);
+    }
+}
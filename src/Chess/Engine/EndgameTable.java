@@ -0,0 +1,259 @@
+package Chess.Engine;
+
+import Chess.Models.Board;
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Endings recognized by their material, read from an endgames file (see Assets/endgames.txt) and found by
+ * Board.getMaterialKey in a table of their own, so a search finds out in one probe whether a position is a known draw,
+ * a known win, or has its evaluation scaled.
+ *
+ * Every ending is defined for the first player's pieces against the second's, and also holds with the colors swapped.
+ * A lookup probes an open addressing table, it does not allocate.
+ */
+public final class EndgameTable {
+    static final String DEFAULT_PATH = "Assets/endgames.txt";
+    /** The evaluation of a known win, plus how far the losing king is driven. It stays below the mate scores. **/
+    public static final int KNOWN_WIN_SCORE = 10000;
+    /** The scale factor that leaves the evaluation as it is. **/
+    public static final int NORMAL_SCALE = 64;
+    // the letters of the pieces in the file, indexed by PieceType.ordinal(), as in the SAN of the PGN files
+    private static final String PIECE_LETTERS = "KQBNRPDE";
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+    private static EndgameTable defaultTable;
+
+    public enum Rule {
+        /** Neither player can mate whatever they play, the position is a draw at once. **/
+        DRAW,
+        /** The strong side mates by driving the other king to the edge, the evaluation tells how far it is. **/
+        WIN,
+        /** The evaluation is multiplied by the scale factor, then divided by NORMAL_SCALE. **/
+        SCALE
+    }
+
+    /**
+     * An ending of the file, for one of the two color assignments.
+     */
+    public static final class Endgame {
+        /** The pieces of each player, eg. KQ K, the strong side first. **/
+        public final String material;
+        public final Rule rule;
+        /** The player with the first pieces of the material. **/
+        public final PlayerColor strongSide;
+        public final int scaleFactor;
+
+        public Endgame(String material, Rule rule, PlayerColor strongSide, int scaleFactor) {
+            this.material = material;
+            this.rule = rule;
+            this.strongSide = strongSide;
+            this.scaleFactor = scaleFactor;
+        }
+
+        /**
+         * @param evaluator evaluates the position when the rule needs it.
+         * @return the score of the position for a player in centipawns.
+         */
+        public int evaluate(Board board, PlayerColor color, PositionEvaluator evaluator) {
+            switch (rule) {
+                case DRAW:
+                    return 0;
+                case WIN:
+                    int score = KNOWN_WIN_SCORE + evaluator.evaluate(board, strongSide) + getMatingBonus(board);
+                    return color == strongSide ? score : -score;
+                default:
+                    return evaluator.evaluate(board, color) * scaleFactor / NORMAL_SCALE;
+            }
+        }
+
+        /**
+         * @return a bonus for the losing king near the edge and the kings close to each other, which is how the
+         * strong side mates with a lone piece.
+         */
+        private int getMatingBonus(Board board) {
+            int strongKing = Long.numberOfTrailingZeros(board.getPieceSquares(PieceType.KING, strongSide));
+            int weakKing = Long.numberOfTrailingZeros(board.getPieceSquares(PieceType.KING, strongSide.oppositeColor()));
+            int edgeDistance = Math.min(Math.min(weakKing / 8, 7 - weakKing / 8), Math.min(weakKing % 8, 7 - weakKing % 8));
+            int kingDistance = Math.max(Math.abs(strongKing / 8 - weakKing / 8), Math.abs(strongKing % 8 - weakKing % 8));
+            return 40 * (3 - edgeDistance) + 10 * (7 - kingDistance);
+        }
+    }
+
+    private final List<Endgame> endgames;
+    // open addressing by material key, a key of 0 is an empty slot
+    private final long[] keys;
+    private final Endgame[] values;
+    private final int mask;
+
+    public EndgameTable(List<Endgame> endgames) {
+        this.endgames = new ArrayList<Endgame>(endgames);
+        int capacity = Integer.highestOneBit(Math.max(endgames.size(), 1) * 4);
+        keys = new long[capacity];
+        values = new Endgame[capacity];
+        mask = capacity - 1;
+        for (Endgame endgame : endgames) {
+            long key = computeMaterialKey(endgame.material, endgame.strongSide);
+            int slot = (int) key & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = endgame;
+        }
+    }
+
+    /**
+     * The endings of DEFAULT_PATH, read on first use.
+     * @throws IllegalStateException if the file cannot be read or is not valid.
+     */
+    public static synchronized EndgameTable getDefault() {
+        if (defaultTable == null) {
+            try {
+                defaultTable = load(Paths.get(DEFAULT_PATH));
+            } catch (IOException | IllegalArgumentException e) {
+                throw new IllegalStateException("cannot load the endgames from " + DEFAULT_PATH, e);
+            }
+        }
+        return defaultTable;
+    }
+
+    public static EndgameTable load(Path path) throws IOException {
+        return parse(Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses one "<pieces> <pieces> <rule> [scale factor]" per line, eg. "KR K win" or "KD KP scale 40".
+     * @throws IllegalArgumentException naming the line of the first error.
+     */
+    public static EndgameTable parse(List<String> lines) {
+        List<Endgame> endgames = new ArrayList<Endgame>();
+        for (int i = 0; i < lines.size(); i++) {
+            int lineNumber = i + 1;
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            if (words.length < 3 || !isMaterial(words[0]) || !isMaterial(words[1])) {
+                throw new IllegalArgumentException("line " + lineNumber + ": expected the pieces of both players and a rule");
+            }
+            Rule rule;
+            try {
+                rule = Rule.valueOf(words[2].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("line " + lineNumber + ": unknown rule " + words[2]);
+            }
+            int scaleFactor = NORMAL_SCALE;
+            if (rule == Rule.SCALE) {
+                try {
+                    scaleFactor = Integer.parseInt(words[3]);
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                    throw new IllegalArgumentException("line " + lineNumber + ": scale needs a factor");
+                }
+            }
+            String material = words[0] + " " + words[1];
+            endgames.add(new Endgame(material, rule, PlayerColor.WHITE, scaleFactor));
+            endgames.add(new Endgame(material, rule, PlayerColor.BLACK, scaleFactor));
+        }
+        return new EndgameTable(endgames);
+    }
+
+    /**
+     * Writes the endings in the format read by parse, after the given comment lines.
+     */
+    public void write(Path path, List<String> comments) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (String comment : comments) {
+            lines.add(comment.isEmpty() ? "#" : "# " + comment);
+        }
+        if (!comments.isEmpty()) {
+            lines.add("");
+        }
+        for (Endgame endgame : endgames) {
+            if (endgame.strongSide == PlayerColor.WHITE) {
+                String[] pieces = endgame.material.split(" ");
+                String rule = endgame.rule.toString().toLowerCase();
+                lines.add(String.format("%-8s %-8s %s", pieces[0], pieces[1],
+                        endgame.rule == Rule.SCALE ? rule + " " + endgame.scaleFactor : rule));
+            }
+        }
+        Files.write(path, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the ending of a board, or null if its material is not in the table.
+     */
+    public Endgame lookUp(Board board) {
+        long key = board.getMaterialKey();
+        for (int slot = (int) key & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if neither player can mate, whatever they play.
+     */
+    public boolean isDraw(Board board) {
+        Endgame endgame = lookUp(board);
+        return endgame != null && endgame.rule == Rule.DRAW;
+    }
+
+    /**
+     * @return the endings of the table, each one for both colors.
+     */
+    public List<Endgame> getEndgames() {
+        return endgames;
+    }
+
+    /**
+     * @return the material of a board in the format of the file, the pieces of one player then the other's.
+     */
+    public static String describeMaterial(Board board, PlayerColor first) {
+        return describePieces(board, first) + " " + describePieces(board, first.oppositeColor());
+    }
+
+    private static String describePieces(Board board, PlayerColor color) {
+        StringBuilder pieces = new StringBuilder();
+        for (PieceType type : PIECE_TYPES) {
+            int count = Long.bitCount(board.getPieceSquares(type, color));
+            for (int i = 0; i < count; i++) {
+                pieces.append(PIECE_LETTERS.charAt(type.ordinal()));
+            }
+        }
+        return pieces.toString();
+    }
+
+    private static long computeMaterialKey(String material, PlayerColor first) {
+        int[] pieceCounts = new int[PIECE_TYPES.length * 2];
+        String[] pieces = material.split(" ");
+        for (int side = 0; side < 2; side++) {
+            PlayerColor color = side == 0 ? first : first.oppositeColor();
+            for (char letter : pieces[side].toCharArray()) {
+                pieceCounts[PIECE_LETTERS.indexOf(letter) * 2 + color.ordinal()]++;
+            }
+        }
+        return Board.computeMaterialKey(pieceCounts);
+    }
+
+    private static boolean isMaterial(String pieces) {
+        int kingCount = 0;
+        for (char letter : pieces.toCharArray()) {
+            if (PIECE_LETTERS.indexOf(letter) < 0) {
+                return false;
+            }
+            kingCount += letter == 'K' ? 1 : 0;
+        }
+        return kingCount == 1;
+    }
+}
@@ -0,0 +1,147 @@
+package Chess.Engine;
+
+import Chess.Types.PieceType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The weights of the Evaluator, read from a parameters file (see Assets/evaluation.txt) and written back by the
+ * tuner. The evaluation is the sum of every weight times its feature, see Evaluator.computeFeatures, so the weights
+ * are kept as one flat array in this order:
+ * - the value of every PieceType;
+ * - the bonus of every PieceType per step towards the center;
+ * - the bonus per row a pawn has advanced;
+ * - the bonuses of the pawn structure: per passed, isolated and doubled pawn, and per pawn shielding its king.
+ */
+public final class EvaluationParameters {
+    static final String DEFAULT_PATH = "Assets/evaluation.txt";
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+    public static final int PIECE_VALUE_OFFSET = 0;
+    public static final int CENTRALIZATION_OFFSET = PIECE_VALUE_OFFSET + PIECE_TYPES.length;
+    public static final int PAWN_ADVANCE_INDEX = CENTRALIZATION_OFFSET + PIECE_TYPES.length;
+    public static final int PASSED_PAWN_INDEX = PAWN_ADVANCE_INDEX + 1;
+    public static final int ISOLATED_PAWN_INDEX = PASSED_PAWN_INDEX + 1;
+    public static final int DOUBLED_PAWN_INDEX = ISOLATED_PAWN_INDEX + 1;
+    public static final int KING_SHIELD_INDEX = DOUBLED_PAWN_INDEX + 1;
+    public static final int COUNT = KING_SHIELD_INDEX + 1;
+    private static EvaluationParameters defaultParameters;
+
+    private final int[] values;
+
+    public EvaluationParameters(int[] values) {
+        if (values.length != COUNT) {
+            throw new IllegalArgumentException("expected " + COUNT + " parameters instead of " + values.length);
+        }
+        this.values = values.clone();
+    }
+
+    /**
+     * The parameters in DEFAULT_PATH, read on first use.
+     * @throws IllegalStateException if the file cannot be read or is not valid.
+     */
+    public static synchronized EvaluationParameters getDefault() {
+        if (defaultParameters == null) {
+            try {
+                defaultParameters = load(Paths.get(DEFAULT_PATH));
+            } catch (IOException | IllegalArgumentException e) {
+                throw new IllegalStateException("cannot load the evaluation parameters from " + DEFAULT_PATH, e);
+            }
+        }
+        return defaultParameters;
+    }
+
+    public static EvaluationParameters load(Path path) throws IOException {
+        return parse(Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses one "name value" pair per line, eg. "value QUEEN 900". Every parameter must be given once.
+     * @throws IllegalArgumentException naming the line of the first error.
+     */
+    public static EvaluationParameters parse(List<String> lines) {
+        int[] values = new int[COUNT];
+        boolean[] isDefined = new boolean[COUNT];
+        List<String> names = Arrays.asList(getNames());
+        for (int i = 0; i < lines.size(); i++) {
+            int lineNumber = i + 1;
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.lastIndexOf(' ');
+            if (separator < 0) {
+                throw new IllegalArgumentException("line " + lineNumber + ": expected a name and a value");
+            }
+            String name = line.substring(0, separator).trim().replaceAll("\\s+", " ");
+            int index = names.indexOf(name);
+            if (index < 0) {
+                throw new IllegalArgumentException("line " + lineNumber + ": unknown parameter " + name);
+            }
+            if (isDefined[index]) {
+                throw new IllegalArgumentException("line " + lineNumber + ": " + name + " is already defined");
+            }
+            try {
+                values[index] = Integer.parseInt(line.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("line " + lineNumber + ": " + name + " is not an integer");
+            }
+            isDefined[index] = true;
+        }
+        for (int i = 0; i < COUNT; i++) {
+            if (!isDefined[i]) {
+                throw new IllegalArgumentException("missing parameter " + names.get(i));
+            }
+        }
+        return new EvaluationParameters(values);
+    }
+
+    /**
+     * Writes the parameters in the format read by parse, after the given comment lines.
+     */
+    public void write(Path path, List<String> comments) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (String comment : comments) {
+            lines.add("# " + comment);
+        }
+        String[] names = getNames();
+        for (int i = 0; i < COUNT; i++) {
+            if (i == CENTRALIZATION_OFFSET || i == PAWN_ADVANCE_INDEX || i == KING_SHIELD_INDEX) {
+                lines.add("");
+            }
+            lines.add(String.format("%-30s %d", names[i], values[i]));
+        }
+        Files.write(path, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the names of the parameters, in the order of the flat array.
+     */
+    public static String[] getNames() {
+        String[] names = new String[COUNT];
+        for (PieceType type : PIECE_TYPES) {
+            names[PIECE_VALUE_OFFSET + type.ordinal()] = "value " + type;
+            names[CENTRALIZATION_OFFSET + type.ordinal()] = "centralization " + type;
+        }
+        names[PAWN_ADVANCE_INDEX] = "pawn_advance";
+        names[PASSED_PAWN_INDEX] = "passed_pawn";
+        names[ISOLATED_PAWN_INDEX] = "isolated_pawn";
+        names[DOUBLED_PAWN_INDEX] = "doubled_pawn";
+        names[KING_SHIELD_INDEX] = "king_shield";
+        return names;
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public int[] toArray() {
+        return values.clone();
+    }
+}
@@ -0,0 +1,281 @@
+package Chess.Engine;
+
+import Chess.Models.Board;
+import Chess.Models.Piece;
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+/**
+ * Static evaluation of a position in centipawns: material, pieces near the center, advanced pawns and the pawn
+ * structure, weighted by EvaluationParameters.
+ *
+ * The evaluation is linear in its weights: it is the sum of every weight times a feature of the position counted for
+ * one player minus the other, see computeFeatures. The tuner relies on this to fit the weights without evaluating
+ * positions again.
+ *
+ * It keeps no state between moves, except a pawn table: the pawns change with few moves, so the score of their
+ * structure is cached by Board.getPawnKey, with the shield of each king for the last square it was scored on. The
+ * table belongs to the evaluator, which is used by one thread at a time, like the Search owning it.
+ */
+public class Evaluator implements PositionEvaluator {
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+    private static final PlayerColor[] PLAYER_COLORS = PlayerColor.values();
+    // 0 on the edge of the board up to 3 in the four center squares, indexed by square
+    private static final int[] CENTRALITY = buildCentrality();
+    static final int PAWN_TABLE_ENTRIES = 1 << 16;
+    private static final long COLUMN_MASK = 0x0101010101010101L;
+    // the columns next to a column, indexed by column
+    private static final long[] ADJACENT_COLUMNS = buildAdjacentColumns();
+    // the squares of the opposing pawns that can stop a pawn, indexed by PlayerColor.ordinal() and square
+    private static final long[][] PASSED_MASKS = buildPassedMasks();
+    // the three squares in front of a king, indexed by PlayerColor.ordinal() and square, 64 when there is no king
+    private static final long[][] SHIELD_MASKS = buildShieldMasks();
+
+    // indexed by PieceType.ordinal()
+    private final int[] pieceValues = new int[PIECE_TYPES.length];
+    // per step towards the center, indexed by PieceType.ordinal()
+    private final int[] centralizationBonuses = new int[PIECE_TYPES.length];
+    // per row a pawn has advanced
+    private final int pawnAdvanceBonus;
+    private final int passedPawnBonus;
+    private final int isolatedPawnBonus;
+    private final int doubledPawnBonus;
+    // per pawn in front of its king
+    private final int kingShieldBonus;
+
+    // the pawn table, indexed by the low bits of the pawn key. An empty entry has the key and score of no pawns, 0
+    private final long[] pawnKeys = new long[PAWN_TABLE_ENTRIES];
+    // the score of the pawn structure without the shields, white's minus black's
+    private final int[] pawnScores = new int[PAWN_TABLE_ENTRIES];
+    // the king square each shield was scored for and its score, indexed by entry * 2 + PlayerColor.ordinal()
+    private final int[] shieldKingSquares = new int[2 * PAWN_TABLE_ENTRIES];
+    private final int[] shieldScores = new int[2 * PAWN_TABLE_ENTRIES];
+    private long pawnProbeCount;
+    private long pawnHitCount;
+
+    /**
+     * An evaluator with the parameters of Assets/evaluation.txt.
+     */
+    public Evaluator() {
+        this(EvaluationParameters.getDefault());
+    }
+
+    public Evaluator(EvaluationParameters parameters) {
+        for (PieceType type : PIECE_TYPES) {
+            pieceValues[type.ordinal()] = parameters.get(EvaluationParameters.PIECE_VALUE_OFFSET + type.ordinal());
+            centralizationBonuses[type.ordinal()] = parameters.get(EvaluationParameters.CENTRALIZATION_OFFSET + type.ordinal());
+        }
+        pawnAdvanceBonus = parameters.get(EvaluationParameters.PAWN_ADVANCE_INDEX);
+        passedPawnBonus = parameters.get(EvaluationParameters.PASSED_PAWN_INDEX);
+        isolatedPawnBonus = parameters.get(EvaluationParameters.ISOLATED_PAWN_INDEX);
+        doubledPawnBonus = parameters.get(EvaluationParameters.DOUBLED_PAWN_INDEX);
+        kingShieldBonus = parameters.get(EvaluationParameters.KING_SHIELD_INDEX);
+    }
+
+    @Override
+    public int evaluate(Board board, PlayerColor color) {
+        int score = evaluateSide(board, color) - evaluateSide(board, color.oppositeColor());
+        int pawnScore = evaluatePawns(board);
+        return color == PlayerColor.WHITE ? score + pawnScore : score - pawnScore;
+    }
+
+    /**
+     * @return the evaluations that probed the pawn table.
+     */
+    public long getPawnProbeCount() {
+        return pawnProbeCount;
+    }
+
+    /**
+     * @return the evaluations that found their pawn structure in the pawn table.
+     */
+    public long getPawnHitCount() {
+        return pawnHitCount;
+    }
+
+    @Override
+    public int getPieceValue(PieceType type) {
+        return pieceValues[type.ordinal()];
+    }
+
+    @Override
+    public void setPosition(Board board) {
+    }
+
+    @Override
+    public void onMoveMade(Board board, int move, Piece captured) {
+    }
+
+    @Override
+    public void onMoveUndone() {
+    }
+
+    private int evaluateSide(Board board, PlayerColor color) {
+        int score = 0;
+        for (PieceType type : PIECE_TYPES) {
+            long pieces = board.getPieceSquares(type, color);
+            score += Long.bitCount(pieces) * pieceValues[type.ordinal()];
+            int bonus = centralizationBonuses[type.ordinal()];
+            while (pieces != 0) {
+                int square = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+                score += CENTRALITY[square] * bonus;
+                if (type == PieceType.PAWN) {
+                    score += getPawnAdvance(square, color) * pawnAdvanceBonus;
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * @return the score of the pawn structure and the king shields, white's minus black's, from the pawn table.
+     */
+    private int evaluatePawns(Board board) {
+        long key = board.getPawnKey();
+        int entry = (int) key & (PAWN_TABLE_ENTRIES - 1);
+        long whitePawns = board.getPieceSquares(PieceType.PAWN, PlayerColor.WHITE);
+        long blackPawns = board.getPieceSquares(PieceType.PAWN, PlayerColor.BLACK);
+        pawnProbeCount++;
+        if (pawnKeys[entry] == key) {
+            pawnHitCount++;
+        } else {
+            pawnKeys[entry] = key;
+            pawnScores[entry] = scorePawnStructure(whitePawns, blackPawns, PlayerColor.WHITE)
+                    - scorePawnStructure(blackPawns, whitePawns, PlayerColor.BLACK);
+            shieldKingSquares[2 * entry] = -1;
+            shieldKingSquares[2 * entry + 1] = -1;
+        }
+        int score = pawnScores[entry];
+        for (PlayerColor color : PLAYER_COLORS) {
+            int index = 2 * entry + color.ordinal();
+            int kingSquare = Long.numberOfTrailingZeros(board.getPieceSquares(PieceType.KING, color));
+            if (shieldKingSquares[index] != kingSquare) {
+                long pawns = color == PlayerColor.WHITE ? whitePawns : blackPawns;
+                shieldKingSquares[index] = kingSquare;
+                shieldScores[index] = Long.bitCount(pawns & SHIELD_MASKS[color.ordinal()][kingSquare]) * kingShieldBonus;
+            }
+            score += color == PlayerColor.WHITE ? shieldScores[index] : -shieldScores[index];
+        }
+        return score;
+    }
+
+    private int scorePawnStructure(long pawns, long opposingPawns, PlayerColor color) {
+        return countPassedPawns(pawns, opposingPawns, color) * passedPawnBonus
+                + countIsolatedPawns(pawns) * isolatedPawnBonus + countDoubledPawns(pawns) * doubledPawnBonus;
+    }
+
+    /**
+     * Counts the features of a position, white's minus black's, so that evaluating it for white is the sum of
+     * features[i] * EvaluationParameters.get(i).
+     * @param features filled with EvaluationParameters.COUNT features.
+     */
+    public static void computeFeatures(Board board, int[] features) {
+        for (int i = 0; i < EvaluationParameters.COUNT; i++) {
+            features[i] = 0;
+        }
+        for (PlayerColor color : PlayerColor.values()) {
+            int sign = color == PlayerColor.WHITE ? 1 : -1;
+            for (PieceType type : PIECE_TYPES) {
+                long pieces = board.getPieceSquares(type, color);
+                features[EvaluationParameters.PIECE_VALUE_OFFSET + type.ordinal()] += sign * Long.bitCount(pieces);
+                while (pieces != 0) {
+                    int square = Long.numberOfTrailingZeros(pieces);
+                    pieces &= pieces - 1;
+                    features[EvaluationParameters.CENTRALIZATION_OFFSET + type.ordinal()] += sign * CENTRALITY[square];
+                    if (type == PieceType.PAWN) {
+                        features[EvaluationParameters.PAWN_ADVANCE_INDEX] += sign * getPawnAdvance(square, color);
+                    }
+                }
+            }
+            long pawns = board.getPieceSquares(PieceType.PAWN, color);
+            long opposingPawns = board.getPieceSquares(PieceType.PAWN, color.oppositeColor());
+            int kingSquare = Long.numberOfTrailingZeros(board.getPieceSquares(PieceType.KING, color));
+            features[EvaluationParameters.PASSED_PAWN_INDEX] += sign * countPassedPawns(pawns, opposingPawns, color);
+            features[EvaluationParameters.ISOLATED_PAWN_INDEX] += sign * countIsolatedPawns(pawns);
+            features[EvaluationParameters.DOUBLED_PAWN_INDEX] += sign * countDoubledPawns(pawns);
+            features[EvaluationParameters.KING_SHIELD_INDEX] +=
+                    sign * Long.bitCount(pawns & SHIELD_MASKS[color.ordinal()][kingSquare]);
+        }
+    }
+
+    private static int countPassedPawns(long pawns, long opposingPawns, PlayerColor color) {
+        int count = 0;
+        while (pawns != 0) {
+            int square = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+            if ((opposingPawns & PASSED_MASKS[color.ordinal()][square]) == 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int countIsolatedPawns(long pawns) {
+        int count = 0;
+        for (int column = 0; column < 8; column++) {
+            if ((pawns & ADJACENT_COLUMNS[column]) == 0) {
+                count += Long.bitCount(pawns & COLUMN_MASK << column);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the pawns behind another pawn of their color.
+     */
+    private static int countDoubledPawns(long pawns) {
+        int count = 0;
+        for (int column = 0; column < 8; column++) {
+            count += Math.max(Long.bitCount(pawns & COLUMN_MASK << column) - 1, 0);
+        }
+        return count;
+    }
+
+    private static int getPawnAdvance(int square, PlayerColor color) {
+        int row = square / 8;
+        return color == PlayerColor.WHITE ? 6 - row : row - 1;
+    }
+
+    private static long[] buildAdjacentColumns() {
+        long[] columns = new long[8];
+        for (int column = 0; column < 8; column++) {
+            columns[column] = (column > 0 ? COLUMN_MASK << (column - 1) : 0) | (column < 7 ? COLUMN_MASK << (column + 1) : 0);
+        }
+        return columns;
+    }
+
+    private static long[][] buildPassedMasks() {
+        long[][] masks = new long[2][64];
+        for (int square = 0; square < 64; square++) {
+            long columns = ADJACENT_COLUMNS[square % 8] | COLUMN_MASK << (square % 8);
+            // white pawns move towards row 0, black pawns towards row 7
+            long rowsAbove = (1L << (square / 8 * 8)) - 1;
+            long rowsBelow = square / 8 == 7 ? 0 : -1L << (square / 8 * 8 + 8);
+            masks[PlayerColor.WHITE.ordinal()][square] = columns & rowsAbove;
+            masks[PlayerColor.BLACK.ordinal()][square] = columns & rowsBelow;
+        }
+        return masks;
+    }
+
+    private static long[][] buildShieldMasks() {
+        long[][] masks = new long[2][65];
+        for (int square = 0; square < 64; square++) {
+            long columns = ADJACENT_COLUMNS[square % 8] | COLUMN_MASK << (square % 8);
+            int row = square / 8;
+            masks[PlayerColor.WHITE.ordinal()][square] = row > 0 ? columns & 0xFFL << (row * 8 - 8) : 0;
+            masks[PlayerColor.BLACK.ordinal()][square] = row < 7 ? columns & 0xFFL << (row * 8 + 8) : 0;
+        }
+        return masks;
+    }
+
+    private static int[] buildCentrality() {
+        int[] centrality = new int[64];
+        for (int square = 0; square < 64; square++) {
+            int rowDistance = Math.abs(2 * (square / 8) - 7) / 2;
+            int columnDistance = Math.abs(2 * (square % 8) - 7) / 2;
+            centrality[square] = 3 - Math.max(rowDistance, columnDistance);
+        }
+        return centrality;
+    }
+}
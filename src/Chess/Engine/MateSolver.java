@@ -0,0 +1,475 @@
+package Chess.Engine;
+
+import Chess.Models.Board;
+import Chess.Models.Move;
+import Chess.Types.GameStatus;
+import Chess.Types.PlayerColor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Proves forced mates with depth-first proof-number search (df-pn), for puzzles too deep for the alpha-beta search,
+ * with standard and funky pieces alike since moves come from the Board.
+ *
+ * The attacker's nodes are OR nodes, a mate after any one of their moves is enough, and the defender's nodes are AND
+ * nodes, every move has to be mated. The proof number of a node is the least number of leaves to prove for a mate, its
+ * disproof number the least number to prove there is none. The search goes down to the most proving child and comes
+ * back up as soon as the numbers of a node reach the thresholds set by its parent, so it keeps only the current path on
+ * the stack and the numbers of the nodes it has seen in its table.
+ *
+ * A mate in n moves is proven within 2n - 1 plies. The plies left are part of the key of a table entry, so a position
+ * reached with fewer plies left is another, smaller problem: the nodes form a graph without cycles, and repetitions
+ * never come into play. The fifty-move rule is ignored. The shortest mate is found by proving mates in 1, 2... moves in
+ * turn, each one reusing the proofs of the previous ones.
+ *
+ * The table has a fixed number of entries, set by its size in bytes. When a bucket is full, the entry whose subtree
+ * took the least work is replaced. An evicted node is searched again when needed, so a small table costs time, never
+ * correctness. A solver runs on one thread and reuses its table and board for every puzzle.
+ */
+public class MateSolver {
+    public enum Outcome {
+        /** The attacker mates within the moves given, the solution tree shows how. **/
+        MATE,
+        /** The defender escapes every mate within the moves given. **/
+        NO_MATE,
+        /** The node limit or the stop flag ended the search first. **/
+        UNKNOWN
+    }
+
+    /**
+     * A move of the solution tree.
+     */
+    public static final class SolutionNode {
+        public final int move;
+        /** After an attacker's move, every reply of the defender. After a defender's move, the attacker's answer. The
+         * mating move has none. **/
+        public final List<SolutionNode> replies;
+
+        SolutionNode(int move, List<SolutionNode> replies) {
+            this.move = move;
+            this.replies = replies;
+        }
+
+        /**
+         * @return the number of moves of the tree, this one included.
+         */
+        public long getSize() {
+            long size = 1;
+            for (SolutionNode reply : replies) {
+                size += reply.getSize();
+            }
+            return size;
+        }
+    }
+
+    public static final class Result {
+        public final Outcome outcome;
+        /** The attacker's moves of the longest line of the solution, 0 without a mate. **/
+        public final int mateInMoves;
+        /** The attacker's first move, null without a mate. **/
+        public final SolutionNode solution;
+        public final long nodeCount;
+
+        Result(Outcome outcome, int mateInMoves, SolutionNode solution, long nodeCount) {
+            this.outcome = outcome;
+            this.mateInMoves = mateInMoves;
+            this.solution = solution;
+            this.nodeCount = nodeCount;
+        }
+    }
+
+    public static final int INFINITE_PROOF = Integer.MAX_VALUE;
+    public static final int MAX_MATE_MOVES = 127;
+    private static final int MAX_PLIES = 2 * MAX_MATE_MOVES - 1;
+    private static final int BUCKET_SIZE = 4;
+    // the key, the proof and disproof numbers, the work and the generation of an entry
+    static final int ENTRY_BYTES = 21;
+    private static final AtomicBoolean NEVER_STOPPED = new AtomicBoolean(false);
+    // one random key per number of plies left, mixed into the position hash
+    private static final long[] PLIES_LEFT_KEYS = buildPliesLeftKeys();
+
+    // the table, BUCKET_SIZE entries per bucket. A key is never 0, which marks an empty entry
+    private final long[] keys;
+    private final int[] proofNumbers;
+    private final int[] disproofNumbers;
+    // the nodes searched below an entry, capped, the entries with the least are replaced first
+    private final int[] workCounts;
+    // the mate length being proven when an entry was stored, the entries of shorter ones are replaced first
+    private final byte[] generations;
+    private final int bucketMask;
+    private byte generation;
+
+    // a copy of the solved position, reused by the next puzzles
+    private Board board;
+    private PlayerColor attacker;
+    private AtomicBoolean stopFlag = NEVER_STOPPED;
+    private long nodeLimit = Long.MAX_VALUE;
+    private long nodeCount;
+    private boolean isStopped;
+    // one move list per ply, with the key and the numbers of the position after every move. A node reads the numbers
+    // of its children from the table once, then keeps what their searches return, so replacing their entries while it
+    // is searching them only costs a second search when the node is visited again
+    private int[][] moveLists = new int[0][];
+    private long[][] childKeys = new long[0][];
+    private int[][] childProofNumbers = new int[0][];
+    private int[][] childDisproofNumbers = new int[0][];
+    // the numbers of the last node searched
+    private int lastProofNumber;
+    private int lastDisproofNumber;
+
+    /**
+     * @param tableBytes the memory of the table, rounded down to a power of two entries.
+     */
+    public MateSolver(long tableBytes) {
+        long entryCount = Long.highestOneBit(Math.max(tableBytes / ENTRY_BYTES, BUCKET_SIZE));
+        entryCount = Math.min(entryCount, 1 << 28);
+        keys = new long[(int) entryCount];
+        proofNumbers = new int[(int) entryCount];
+        disproofNumbers = new int[(int) entryCount];
+        workCounts = new int[(int) entryCount];
+        generations = new byte[(int) entryCount];
+        bucketMask = (int) (entryCount / BUCKET_SIZE) - 1;
+    }
+
+    /**
+     * Sets the flag stopping the next searches, they end with Outcome.UNKNOWN.
+     */
+    public void setStopFlag(AtomicBoolean stopFlag) {
+        this.stopFlag = stopFlag;
+    }
+
+    /**
+     * Sets the nodes after which the next searches stop, like the stop flag.
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Looks for the shortest mate within maxMoves moves of the attacker.
+     * @param rootBoard the position, it is searched on a copy.
+     * @param attacker the player to move, who tries to mate.
+     * @throws IllegalArgumentException if maxMoves is not between 1 and MAX_MATE_MOVES.
+     */
+    public Result solve(Board rootBoard, PlayerColor attacker, int maxMoves) {
+        if (maxMoves < 1 || maxMoves > MAX_MATE_MOVES) {
+            throw new IllegalArgumentException("a mate takes between 1 and " + MAX_MATE_MOVES + " moves");
+        }
+        int maxPlies = 2 * maxMoves - 1;
+        if (board == null) {
+            board = new Board(rootBoard);
+        } else {
+            board.loadPosition(rootBoard);
+        }
+        board.reserveMoves(maxPlies);
+        if (moveLists.length <= maxPlies) {
+            moveLists = new int[maxPlies + 1][Board.MAX_LEGAL_MOVES];
+            childKeys = new long[maxPlies + 1][Board.MAX_LEGAL_MOVES];
+            childProofNumbers = new int[maxPlies + 1][Board.MAX_LEGAL_MOVES];
+            childDisproofNumbers = new int[maxPlies + 1][Board.MAX_LEGAL_MOVES];
+        }
+        // the side to move is not part of the keys, the entries of another attacker cannot be reused
+        Arrays.fill(keys, 0);
+        this.attacker = attacker;
+        nodeCount = 0;
+        isStopped = false;
+
+        for (int moves = 1; moves <= maxMoves; moves++) {
+            int pliesLeft = 2 * moves - 1;
+            generation = (byte) moves;
+            long key = getKey(board.getPositionHash(), pliesLeft);
+            search(key, 0, pliesLeft, attacker, INFINITE_PROOF, INFINITE_PROOF);
+            if (isStopped) {
+                return new Result(Outcome.UNKNOWN, 0, null, nodeCount);
+            }
+            if (lastProofNumber == 0) {
+                SolutionNode solution = buildAttackerMove(0, pliesLeft);
+                return isStopped ? new Result(Outcome.UNKNOWN, 0, null, nodeCount)
+                        : new Result(Outcome.MATE, moves, solution, nodeCount);
+            }
+        }
+        return new Result(Outcome.NO_MATE, 0, null, nodeCount);
+    }
+
+    /**
+     * Searches the node of the board until its proof number reaches proofThreshold or its disproof number reaches
+     * disproofThreshold, then stores its numbers in the table and in lastProofNumber and lastDisproofNumber. Thresholds
+     * are exclusive, INFINITE_PROOF searches until the node is proven or disproven.
+     * @param pliesLeft the plies left to mate, the attacker is to move when it is odd.
+     */
+    private void search(long key, int ply, int pliesLeft, PlayerColor color, int proofThreshold, int disproofThreshold) {
+        nodeCount++;
+        long firstNode = nodeCount;
+        boolean isAttacking = color == attacker;
+        int[] moves = moveLists[ply];
+        int moveCount = pliesLeft == 0 ? 0 : board.generateLegalMoves(color, moves, 0);
+        if (moveCount == 0) {
+            // only a checkmated defender proves a mate, anything else at the end of a line disproves it
+            boolean isMate = !isAttacking && (pliesLeft == 0 ? board.evaluateStatus(color) == GameStatus.CHECKMATE
+                    : board.isKingInCheck(color));
+            store(key, isMate ? 0 : INFINITE_PROOF, isMate ? INFINITE_PROOF : 0, 1);
+            return;
+        }
+        if (pliesLeft == 1) {
+            // the last move has to mate, the moves are tried right away instead of filling the table with their leaves
+            boolean isMate = false;
+            for (int i = 0; i < moveCount && !isMate; i++) {
+                nodeCount++;
+                board.makeMove(moves[i]);
+                isMate = board.evaluateStatus(color.oppositeColor()) == GameStatus.CHECKMATE;
+                board.undoLastMove();
+            }
+            store(key, isMate ? 0 : INFINITE_PROOF, isMate ? INFINITE_PROOF : 0, nodeCount - firstNode + 1);
+            return;
+        }
+        long[] keysAfter = childKeys[ply];
+        int[] proofsAfter = childProofNumbers[ply];
+        int[] disproofsAfter = childDisproofNumbers[ply];
+        for (int i = 0; i < moveCount; i++) {
+            board.makeMove(moves[i]);
+            keysAfter[i] = getKey(board.getPositionHash(), pliesLeft - 1);
+            board.undoLastMove();
+            int entry = findEntry(keysAfter[i]);
+            // a child not searched yet counts as one leaf either way
+            proofsAfter[i] = entry < 0 ? 1 : proofNumbers[entry];
+            disproofsAfter[i] = entry < 0 ? 1 : disproofNumbers[entry];
+        }
+
+        while (true) {
+            // the number to minimize is the proof number at OR nodes and the disproof number at AND nodes, the other
+            // one is the sum of the children's
+            long sum = 0;
+            int best = INFINITE_PROOF;
+            int secondBest = INFINITE_PROOF;
+            int bestIndex = 0;
+            int bestSummed = 0;
+            for (int i = 0; i < moveCount; i++) {
+                int minimized = isAttacking ? proofsAfter[i] : disproofsAfter[i];
+                int summed = isAttacking ? disproofsAfter[i] : proofsAfter[i];
+                sum = summed == INFINITE_PROOF || sum == INFINITE_PROOF ? INFINITE_PROOF : Math.min(sum + summed, INFINITE_PROOF - 1);
+                if (minimized < best) {
+                    secondBest = best;
+                    best = minimized;
+                    bestIndex = i;
+                    bestSummed = summed;
+                } else if (minimized < secondBest) {
+                    secondBest = minimized;
+                }
+            }
+            int proof = isAttacking ? best : (int) sum;
+            int disproof = isAttacking ? (int) sum : best;
+            if (proof >= proofThreshold || disproof >= disproofThreshold || isStopped()) {
+                store(key, proof, disproof, nodeCount - firstNode + 1);
+                return;
+            }
+
+            // the best child is searched until it is no longer the best, or until this node reaches its thresholds
+            int minimizedThreshold = isAttacking ? proofThreshold : disproofThreshold;
+            int summedThreshold = isAttacking ? disproofThreshold : proofThreshold;
+            int childMinimizedThreshold = (int) Math.min(minimizedThreshold, secondBest == INFINITE_PROOF ? INFINITE_PROOF : secondBest + 1L);
+            int childSummedThreshold = summedThreshold == INFINITE_PROOF ? INFINITE_PROOF
+                    : (int) Math.min(summedThreshold - sum + bestSummed, INFINITE_PROOF - 1);
+            board.makeMove(moves[bestIndex]);
+            search(keysAfter[bestIndex], ply + 1, pliesLeft - 1, color.oppositeColor(),
+                    isAttacking ? childMinimizedThreshold : childSummedThreshold,
+                    isAttacking ? childSummedThreshold : childMinimizedThreshold);
+            board.undoLastMove();
+            proofsAfter[bestIndex] = lastProofNumber;
+            disproofsAfter[bestIndex] = lastDisproofNumber;
+        }
+    }
+
+    /**
+     * @return true if the node of the board is proven, searching it again if it was replaced in the table.
+     */
+    private boolean prove(long key, int ply, int pliesLeft, PlayerColor color) {
+        int entry = findEntry(key);
+        if (entry >= 0 && proofNumbers[entry] == 0) {
+            return true;
+        }
+        search(key, ply, pliesLeft, color, INFINITE_PROOF, INFINITE_PROOF);
+        return lastProofNumber == 0;
+    }
+
+    /**
+     * Picks the attacker's move of a proven node, the one of the shortest mate the table knows of, and builds the tree
+     * of the defender's replies.
+     */
+    private SolutionNode buildAttackerMove(int ply, int pliesLeft) {
+        int[] moves = moveLists[ply];
+        int moveCount = board.generateLegalMoves(attacker, moves, 0);
+        int bestMove = Move.NONE;
+        int bestPliesLeft = pliesLeft;
+        for (int i = 0; i < moveCount && bestPliesLeft > 0; i++) {
+            board.makeMove(moves[i]);
+            // the defender is to move with an even number of plies left
+            for (int childPliesLeft = 0; childPliesLeft < bestPliesLeft; childPliesLeft += 2) {
+                int entry = findEntry(getKey(board.getPositionHash(), childPliesLeft));
+                if (entry >= 0 && proofNumbers[entry] == 0) {
+                    bestMove = moves[i];
+                    bestPliesLeft = childPliesLeft;
+                    break;
+                }
+            }
+            board.undoLastMove();
+        }
+        if (bestMove == Move.NONE) {
+            // the proofs were replaced in the table, search them again
+            for (int i = 0; i < moveCount && !isStopped; i++) {
+                board.makeMove(moves[i]);
+                boolean isProven = prove(getKey(board.getPositionHash(), pliesLeft - 1), ply + 1, pliesLeft - 1,
+                        attacker.oppositeColor());
+                board.undoLastMove();
+                if (isProven) {
+                    bestMove = moves[i];
+                    bestPliesLeft = pliesLeft - 1;
+                    break;
+                }
+            }
+            if (bestMove == Move.NONE) {
+                return null;
+            }
+        }
+        board.makeMove(bestMove);
+        List<SolutionNode> replies = buildDefenderReplies(ply + 1, bestPliesLeft);
+        board.undoLastMove();
+        return new SolutionNode(bestMove, replies);
+    }
+
+    /**
+     * @return every move of the defender in a proven node, each one with the attacker's answer.
+     */
+    private List<SolutionNode> buildDefenderReplies(int ply, int pliesLeft) {
+        PlayerColor defender = attacker.oppositeColor();
+        int[] moves = moveLists[ply];
+        int moveCount = pliesLeft == 0 ? 0 : board.generateLegalMoves(defender, moves, 0);
+        if (moveCount == 0) {
+            return Collections.emptyList();
+        }
+        List<SolutionNode> replies = new ArrayList<SolutionNode>(moveCount);
+        for (int i = 0; i < moveCount; i++) {
+            int move = moves[i];
+            board.makeMove(move);
+            SolutionNode answer = prove(getKey(board.getPositionHash(), pliesLeft - 1), ply + 1, pliesLeft - 1, attacker)
+                    ? buildAttackerMove(ply + 1, pliesLeft - 1) : null;
+            board.undoLastMove();
+            if (answer == null) {
+                // stopped, the caller drops the tree
+                return replies;
+            }
+            replies.add(new SolutionNode(move, Collections.singletonList(answer)));
+        }
+        return replies;
+    }
+
+    private static long getKey(long positionHash, int pliesLeft) {
+        long key = positionHash ^ PLIES_LEFT_KEYS[pliesLeft];
+        return key == 0 ? 1 : key;
+    }
+
+    /**
+     * @return the index of the entry of key, or -1 if it is not in the table.
+     */
+    private int findEntry(long key) {
+        int bucket = ((int) (key >>> 32) & bucketMask) * BUCKET_SIZE;
+        for (int i = bucket; i < bucket + BUCKET_SIZE; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Stores the numbers of a node in its entry, or in an empty one, or instead of the entry of its bucket stored for a
+     * shorter mate, or else the one that took the least work. Without the generations, the large subtrees of the
+     * shorter mates would keep their entries for good.
+     */
+    private void store(long key, int proof, int disproof, long work) {
+        int bucket = ((int) (key >>> 32) & bucketMask) * BUCKET_SIZE;
+        int target = bucket;
+        for (int i = bucket; i < bucket + BUCKET_SIZE; i++) {
+            if (keys[i] == key || keys[i] == 0) {
+                target = i;
+                break;
+            }
+            boolean isOlder = generations[i] != generation;
+            boolean isTargetOlder = generations[target] != generation;
+            if (isOlder != isTargetOlder ? isOlder : workCounts[i] < workCounts[target]) {
+                target = i;
+            }
+        }
+        lastProofNumber = proof;
+        lastDisproofNumber = disproof;
+        keys[target] = key;
+        proofNumbers[target] = proof;
+        disproofNumbers[target] = disproof;
+        workCounts[target] = (int) Math.min(work, Integer.MAX_VALUE);
+        generations[target] = generation;
+    }
+
+    private boolean isStopped() {
+        if (!isStopped && (nodeCount >= nodeLimit || stopFlag.get())) {
+            isStopped = true;
+        }
+        return isStopped;
+    }
+
+    private static long[] buildPliesLeftKeys() {
+        // a fixed seed, like the Zobrist keys of the board
+        Random random = new Random(0x6D61746EL);
+        long[] keys = new long[MAX_PLIES + 1];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+        return keys;
+    }
+
+    /**
+     * Writes the solution tree, one move per line, the replies indented under their move.
+     */
+    public static void printSolution(SolutionNode node, int indent, StringBuilder output) {
+        for (int i = 0; i < indent; i++) {
+            output.append("  ");
+        }
+        output.append(Move.toString(node.move)).append('\n');
+        for (SolutionNode reply : node.replies) {
+            printSolution(reply, indent + 1, output);
+        }
+    }
+
+    /**
+     * Usage: MateSolver [192 character position] [white or black to move and mate] [max moves] [table MB]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: MateSolver position white|black [max moves] [table MB]");
+            System.exit(2);
+        }
+        PlayerColor attacker = args[1].equalsIgnoreCase("black") ? PlayerColor.BLACK : PlayerColor.WHITE;
+        int maxMoves = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long tableBytes = (args.length > 3 ? Long.parseLong(args[3]) : 256) << 20;
+        MateSolver solver = new MateSolver(tableBytes);
+        long startTime = System.currentTimeMillis();
+        Result result = solver.solve(new Board(args[0]), attacker, maxMoves);
+        long time = System.currentTimeMillis() - startTime;
+        if (result.outcome != Outcome.MATE) {
+            System.out.printf("%s within %d moves, %d nodes in %dms%n", result.outcome == Outcome.NO_MATE ? "no mate" : "unknown",
+                    maxMoves, result.nodeCount, time);
+            return;
+        }
+        StringBuilder output = new StringBuilder();
+        printSolution(result.solution, 0, output);
+        System.out.printf("mate in %d, %d nodes in %dms, %d moves in the solution%n%s", result.mateInMoves,
+                result.nodeCount, time, result.solution.getSize(), output);
+    }
+}
@@ -0,0 +1,148 @@
+package Chess.Engine;
+
+import Chess.Models.Board;
+import Chess.Models.Move;
+import Chess.Models.Piece;
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+/**
+ * Evaluates positions with a NeuralNetwork, keeping the accumulators of the feature transformer up to date as the
+ * search makes and takes back moves.
+ *
+ * There is one pair of accumulators per ply, preallocated. A move copies the accumulators of its parent and only adds
+ * and subtracts the rows of the pieces it moved or captured, so taking it back is just going back one ply. When a king
+ * moves, every feature of its perspective changes and that accumulator is recomputed from the board.
+ *
+ * The inner loops run over int16 and int8 arrays with int32 sums in plain Java, which the JIT compiler vectorizes.
+ */
+public class NeuralEvaluator implements PositionEvaluator {
+    private static final PlayerColor[] PLAYER_COLORS = PlayerColor.values();
+
+    private final NeuralNetwork network;
+    // only used for ordering captures
+    private final PositionEvaluator pieceValues;
+    private final int hiddenSize;
+    // per ply, the accumulator of each perspective one after the other, indexed by PlayerColor.ordinal()
+    private final short[][] accumulators = new short[Search.MAX_PLY + 2][];
+    private int ply = 0;
+    // the clipped accumulators of the player to move then of the opponent, reused by every evaluation
+    private final byte[] clippedInput;
+    private final int[] features = new int[64];
+
+    public NeuralEvaluator(NeuralNetwork network) {
+        this(network, new Evaluator());
+    }
+
+    /**
+     * @param pieceValues gives the values used for ordering captures.
+     */
+    public NeuralEvaluator(NeuralNetwork network, PositionEvaluator pieceValues) {
+        this.network = network;
+        this.pieceValues = pieceValues;
+        this.hiddenSize = network.hiddenSize;
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = new short[2 * hiddenSize];
+        }
+        clippedInput = new byte[2 * hiddenSize];
+    }
+
+    @Override
+    public int evaluate(Board board, PlayerColor color) {
+        short[] accumulator = accumulators[ply];
+        int ownOffset = color.ordinal() * hiddenSize;
+        int opponentOffset = color.oppositeColor().ordinal() * hiddenSize;
+        for (int i = 0; i < hiddenSize; i++) {
+            clippedInput[i] = clip(accumulator[ownOffset + i]);
+            clippedInput[hiddenSize + i] = clip(accumulator[opponentOffset + i]);
+        }
+
+        byte[] hiddenWeights = network.hiddenWeights;
+        int inputSize = 2 * hiddenSize;
+        int output = network.outputBias;
+        for (int neuron = 0; neuron < network.layerSize; neuron++) {
+            int sum = network.hiddenBiases[neuron];
+            int weightOffset = neuron * inputSize;
+            for (int i = 0; i < inputSize; i++) {
+                sum += clippedInput[i] * hiddenWeights[weightOffset + i];
+            }
+            int activation = Math.min(Math.max(sum / NeuralNetwork.WEIGHT_SCALE, 0), NeuralNetwork.ACTIVATION_SCALE);
+            output += activation * network.outputWeights[neuron];
+        }
+        return (int) ((long) output * NeuralNetwork.OUTPUT_CENTIPAWNS
+                / (NeuralNetwork.ACTIVATION_SCALE * NeuralNetwork.WEIGHT_SCALE));
+    }
+
+    @Override
+    public int getPieceValue(PieceType type) {
+        return pieceValues.getPieceValue(type);
+    }
+
+    @Override
+    public void setPosition(Board board) {
+        ply = 0;
+        for (PlayerColor perspective : PLAYER_COLORS) {
+            refresh(board, perspective, accumulators[0]);
+        }
+    }
+
+    @Override
+    public void onMoveMade(Board board, int move, Piece captured) {
+        short[] parent = accumulators[ply];
+        short[] accumulator = accumulators[++ply];
+        System.arraycopy(parent, 0, accumulator, 0, parent.length);
+        int from = Move.getFromSquare(move);
+        int to = Move.getToSquare(move);
+        Piece moved = board.getPieceAtSquare(to);
+        for (PlayerColor perspective : PLAYER_COLORS) {
+            if (moved.type == PieceType.KING && moved.color == perspective) {
+                refresh(board, perspective, accumulator);
+                continue;
+            }
+            int kingSquare = NeuralNetwork.getKingSquare(board, perspective);
+            int offset = perspective.ordinal() * hiddenSize;
+            subtractFeature(accumulator, offset, NeuralNetwork.getFeatureIndex(perspective, kingSquare, moved.type, moved.color, from));
+            addFeature(accumulator, offset, NeuralNetwork.getFeatureIndex(perspective, kingSquare, moved.type, moved.color, to));
+            if (captured != null) {
+                subtractFeature(accumulator, offset, NeuralNetwork.getFeatureIndex(perspective, kingSquare, captured.type, captured.color, to));
+            }
+        }
+    }
+
+    @Override
+    public void onMoveUndone() {
+        ply--;
+    }
+
+    /**
+     * Recomputes the accumulator of a perspective from the pieces on the board.
+     */
+    private void refresh(Board board, PlayerColor perspective, short[] accumulator) {
+        int offset = perspective.ordinal() * hiddenSize;
+        System.arraycopy(network.featureBiases, 0, accumulator, offset, hiddenSize);
+        int featureCount = NeuralNetwork.collectFeatures(board, perspective, features);
+        for (int i = 0; i < featureCount; i++) {
+            addFeature(accumulator, offset, features[i]);
+        }
+    }
+
+    private void addFeature(short[] accumulator, int offset, int feature) {
+        short[] weights = network.featureWeights;
+        int row = feature * hiddenSize;
+        for (int i = 0; i < hiddenSize; i++) {
+            accumulator[offset + i] += weights[row + i];
+        }
+    }
+
+    private void subtractFeature(short[] accumulator, int offset, int feature) {
+        short[] weights = network.featureWeights;
+        int row = feature * hiddenSize;
+        for (int i = 0; i < hiddenSize; i++) {
+            accumulator[offset + i] -= weights[row + i];
+        }
+    }
+
+    private static byte clip(short value) {
+        return (byte) Math.min(Math.max(value, 0), NeuralNetwork.ACTIVATION_SCALE);
+    }
+}
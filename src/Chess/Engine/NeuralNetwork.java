@@ -0,0 +1,165 @@
+package Chess.Engine;
+
+import Chess.Models.Board;
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The quantized weights of an efficiently updatable neural evaluation, see NeuralEvaluator.
+ *
+ * The network has three layers:
+ * - the feature transformer, one row of hiddenSize int16 weights per input feature plus int16 biases. The accumulator
+ *   of a perspective is the biases plus the rows of its active features, so a move only adds and subtracts a few rows;
+ * - a hidden layer of layerSize neurons with int8 weights and int32 biases, fed with the accumulators of the player to
+ *   move then of the opponent, both clipped to [0, ACTIVATION_SCALE];
+ * - the output neuron with int8 weights and an int32 bias, clipping the hidden neurons the same way.
+ *
+ * A feature is a piece on a square for a king square, as seen from one perspective: its own king square, the type of
+ * the piece, whether it is the perspective's own, and its square. Black's squares are mirrored top to bottom so both
+ * perspectives share the same weights.
+ *
+ * File layout, little endian: magic, version, hiddenSize, layerSize, then the arrays in the order above.
+ */
+public final class NeuralNetwork {
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+    public static final int PIECE_PLANES = PIECE_TYPES.length * 2;
+    public static final int FEATURE_COUNT = 64 * PIECE_PLANES * 64;
+    /** An activation of 1.0 in the accumulators and the hidden layer. **/
+    public static final int ACTIVATION_SCALE = 127;
+    /** A weight of 1.0 in the hidden and output layers, so weights stay within [-2, 2). **/
+    public static final int WEIGHT_SCALE = 64;
+    /** The centipawns of an output of 1.0, a one in ten chance to lose. **/
+    public static final int OUTPUT_CENTIPAWNS = 400;
+    /** The network the analysis engine plays with when the file exists. **/
+    public static final String DEFAULT_PATH = "Assets/network.nnue";
+    static final int MAGIC = 0x554E4E43; // "CNNU"
+    static final int VERSION = 1;
+
+    final int hiddenSize;
+    final int layerSize;
+    // FEATURE_COUNT rows of hiddenSize
+    final short[] featureWeights;
+    final short[] featureBiases;
+    // layerSize rows of 2 * hiddenSize, the player to move first
+    final byte[] hiddenWeights;
+    final int[] hiddenBiases;
+    final byte[] outputWeights;
+    final int outputBias;
+
+    public NeuralNetwork(int hiddenSize, int layerSize, short[] featureWeights, short[] featureBiases,
+                         byte[] hiddenWeights, int[] hiddenBiases, byte[] outputWeights, int outputBias) {
+        if (featureWeights.length != FEATURE_COUNT * hiddenSize || featureBiases.length != hiddenSize
+                || hiddenWeights.length != layerSize * 2 * hiddenSize || hiddenBiases.length != layerSize
+                || outputWeights.length != layerSize) {
+            throw new IllegalArgumentException("the weights do not match " + hiddenSize + " by " + layerSize + " layers");
+        }
+        this.hiddenSize = hiddenSize;
+        this.layerSize = layerSize;
+        this.featureWeights = featureWeights;
+        this.featureBiases = featureBiases;
+        this.hiddenWeights = hiddenWeights;
+        this.hiddenBiases = hiddenBiases;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the file is not a network of this version.
+     */
+    public static NeuralNetwork load(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IllegalArgumentException(path + " is not a network of version " + VERSION);
+        }
+        int hiddenSize = buffer.getInt();
+        int layerSize = buffer.getInt();
+        long expectedBytes = 16 + 2L * FEATURE_COUNT * hiddenSize + 2L * hiddenSize + 2L * layerSize * hiddenSize
+                + 4L * layerSize + layerSize + 4;
+        if (hiddenSize <= 0 || layerSize <= 0 || buffer.capacity() != expectedBytes) {
+            throw new IllegalArgumentException(path + " has the wrong size for " + hiddenSize + " by " + layerSize + " layers");
+        }
+        short[] featureWeights = new short[FEATURE_COUNT * hiddenSize];
+        buffer.asShortBuffer().get(featureWeights);
+        buffer.position(buffer.position() + featureWeights.length * 2);
+        short[] featureBiases = new short[hiddenSize];
+        buffer.asShortBuffer().get(featureBiases);
+        buffer.position(buffer.position() + featureBiases.length * 2);
+        byte[] hiddenWeights = new byte[layerSize * 2 * hiddenSize];
+        buffer.get(hiddenWeights);
+        int[] hiddenBiases = new int[layerSize];
+        buffer.asIntBuffer().get(hiddenBiases);
+        buffer.position(buffer.position() + hiddenBiases.length * 4);
+        byte[] outputWeights = new byte[layerSize];
+        buffer.get(outputWeights);
+        int outputBias = buffer.getInt();
+        return new NeuralNetwork(hiddenSize, layerSize, featureWeights, featureBiases, hiddenWeights, hiddenBiases,
+                outputWeights, outputBias);
+    }
+
+    public void write(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(16 + featureWeights.length * 2 + featureBiases.length * 2
+                + hiddenWeights.length + hiddenBiases.length * 4 + outputWeights.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(hiddenSize).putInt(layerSize);
+        buffer.asShortBuffer().put(featureWeights);
+        buffer.position(buffer.position() + featureWeights.length * 2);
+        buffer.asShortBuffer().put(featureBiases);
+        buffer.position(buffer.position() + featureBiases.length * 2);
+        buffer.put(hiddenWeights);
+        buffer.asIntBuffer().put(hiddenBiases);
+        buffer.position(buffer.position() + hiddenBiases.length * 4);
+        buffer.put(outputWeights);
+        buffer.putInt(outputBias);
+        Files.write(path, buffer.array());
+    }
+
+    public int getHiddenSize() {
+        return hiddenSize;
+    }
+
+    public int getLayerSize() {
+        return layerSize;
+    }
+
+    /**
+     * @param perspective the player whose accumulator the feature belongs to.
+     * @param kingSquare the square of the perspective's king, row * 8 + column.
+     * @return the feature of a piece on a square, between 0 and FEATURE_COUNT.
+     */
+    public static int getFeatureIndex(PlayerColor perspective, int kingSquare, PieceType type, PlayerColor color, int square) {
+        int mirror = perspective == PlayerColor.WHITE ? 0 : 56;
+        int plane = type.ordinal() * 2 + (color == perspective ? 0 : 1);
+        return (((kingSquare ^ mirror) * PIECE_PLANES + plane) << 6) + (square ^ mirror);
+    }
+
+    /**
+     * @return the square of a player's king, or 0 if they have none.
+     */
+    public static int getKingSquare(Board board, PlayerColor color) {
+        long kings = board.getPieceSquares(PieceType.KING, color);
+        return kings == 0 ? 0 : Long.numberOfTrailingZeros(kings);
+    }
+
+    /**
+     * Collects the active features of a perspective.
+     * @param features filled with the features, at most 64.
+     * @return the number of features.
+     */
+    public static int collectFeatures(Board board, PlayerColor perspective, int[] features) {
+        int kingSquare = getKingSquare(board, perspective);
+        int count = 0;
+        for (PlayerColor color : PlayerColor.values()) {
+            for (PieceType type : PIECE_TYPES) {
+                for (long pieces = board.getPieceSquares(type, color); pieces != 0; pieces &= pieces - 1) {
+                    features[count++] = getFeatureIndex(perspective, kingSquare, type, color, Long.numberOfTrailingZeros(pieces));
+                }
+            }
+        }
+        return count;
+    }
+}
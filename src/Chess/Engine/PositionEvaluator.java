@@ -0,0 +1,39 @@
+package Chess.Engine;
+
+import Chess.Models.Board;
+import Chess.Models.Piece;
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+/**
+ * A static evaluation used by Search. The search tells it about every move it makes and takes back on its board, so
+ * an evaluator may keep state that is updated incrementally instead of being recomputed at every node. An evaluator
+ * serves one search at a time.
+ */
+public interface PositionEvaluator {
+    /**
+     * @return the score of the position for a player in centipawns, positive if they are ahead.
+     */
+    public int evaluate(Board board, PlayerColor color);
+
+    /**
+     * @return the rough value of a piece in centipawns, for ordering captures.
+     */
+    public int getPieceValue(PieceType type);
+
+    /**
+     * Called when a search starts on a new position.
+     */
+    public void setPosition(Board board);
+
+    /**
+     * Called after a move is made on the board.
+     * @param captured the piece that was on the destination square, or null.
+     */
+    public void onMoveMade(Board board, int move, Piece captured);
+
+    /**
+     * Called after the last move is taken back on the board.
+     */
+    public void onMoveUndone();
+}
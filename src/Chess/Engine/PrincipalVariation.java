@@ -0,0 +1,42 @@
+package Chess.Engine;
+
+import Chess.Models.Move;
+
+/**
+ * One line found by the search: the moves both players are expected to play, and the score of the position at the
+ * end of it for the player to move at the root.
+ */
+public final class PrincipalVariation {
+    public final int score;
+    // encoded by Move, the first one is played at the root
+    public final int[] moves;
+
+    public PrincipalVariation(int score, int[] moves) {
+        this.score = score;
+        this.moves = moves;
+    }
+
+    public int getFirstMove() {
+        return moves.length == 0 ? Move.NONE : moves[0];
+    }
+
+    /**
+     * @return the score in pawns, eg. +0.35, or the moves to mate, eg. #3 or #-2.
+     */
+    public static String formatScore(int score) {
+        if (Search.isMateScore(score)) {
+            int plies = Search.MATE_SCORE - Math.abs(score);
+            return (score > 0 ? "#" : "#-") + (plies + 1) / 2;
+        }
+        return String.format("%+.2f", score / 100.0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder(formatScore(score));
+        for (int move : moves) {
+            line.append(' ').append(Move.toString(move));
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,403 @@
+package Chess.Engine;
+
+import Chess.Models.Board;
+import Chess.Models.Move;
+import Chess.Models.PerformanceCounters;
+import Chess.Models.Piece;
+import Chess.Types.PlayerColor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Iterative-deepening alpha-beta search with a quiescence search on captures, reporting the best few lines of every
+ * completed depth. Moves are ordered by the line of the previous depth, then captures by the value they win, then
+ * killer and history heuristics, which are kept from one analysis to the next.
+ *
+ * A search runs on one thread and works on its own copy of the board with makeMove and undoLastMove, telling the
+ * evaluator about each one so it can update its state incrementally. Repetitions and the fifty-move rule score as
+ * draws, and so do the endings of the EndgameTable neither player can win, which are not searched any further. The
+ * other endings of the table are evaluated by their own rule.
+ *
+ * Everything the search works with is allocated once per Search, up to MAX_PLY: the board and its move history, the
+ * move lists and ordering scores of every ply, the line tables and the root moves. After the first analysis, only the
+ * results of each completed depth are allocated, never a node, so timed moves do not wait on the garbage collector.
+ */
+public class Search {
+    public static final int MAX_PLY = 64;
+    public static final int INFINITE_SCORE = 32000;
+    /** Mate in n plies scores MATE_SCORE - n. **/
+    public static final int MATE_SCORE = 31000;
+    private static final AtomicBoolean NEVER_STOPPED = new AtomicBoolean(false);
+    private static final int CLOCK_CHECK_NODES = 256;
+
+    private final PositionEvaluator evaluator;
+    private final EndgameTable endgameTable;
+    // a copy of the analyzed position, reused by the next analyses
+    private Board board;
+    private AtomicBoolean stopFlag = NEVER_STOPPED;
+    // System.nanoTime() after which the analysis stops, the clock is read every CLOCK_CHECK_NODES nodes
+    private long deadline = Long.MAX_VALUE;
+    private boolean isTimeUp;
+    private long nodeCount;
+    // the nodes and depths of the analyses are published there, if not null
+    private PerformanceCounters counters;
+    private long publishedNodeCount;
+
+    // one move list per ply, with the ordering score of every move
+    private final int[][] moveLists = new int[MAX_PLY + 1][Board.MAX_LEGAL_MOVES];
+    private final int[][] moveScores = new int[MAX_PLY + 1][Board.MAX_LEGAL_MOVES];
+    // triangular table of the best line from every ply
+    private final int[][] pvTable = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+    // the best line of the previous depth, searched first
+    private final int[] previousLine = new int[MAX_PLY + 1];
+    private int previousLineLength = 0;
+    private final int[] rootMoves = new int[Board.MAX_LEGAL_MOVES];
+    private int rootMoveCount;
+    // root moves already reported as a better line of the current depth
+    private final boolean[] isExcluded = new boolean[Board.MAX_LEGAL_MOVES];
+    private final int[][] killerMoves = new int[MAX_PLY + 1][2];
+    // quiet moves that caused cutoffs, indexed by PlayerColor.ordinal() and from + to * 64
+    private final int[][] historyScores = new int[2][64 * 64];
+    private int lastRootScore;
+
+    public Search(PositionEvaluator evaluator) {
+        this(evaluator, EndgameTable.getDefault());
+    }
+
+    public Search(PositionEvaluator evaluator, EndgameTable endgameTable) {
+        this.evaluator = evaluator;
+        this.endgameTable = endgameTable;
+    }
+
+    /**
+     * Sets the flag stopping the next analyses. Results of a stopped depth are dropped.
+     */
+    public void setStopFlag(AtomicBoolean stopFlag) {
+        this.stopFlag = stopFlag;
+    }
+
+    /**
+     * Publishes the nodes searched every CLOCK_CHECK_NODES nodes and every completed depth to counters, which must
+     * not be written by another search.
+     */
+    public void setPerformanceCounters(PerformanceCounters counters) {
+        this.counters = counters;
+    }
+
+    /**
+     * Sets the time the next analyses stop at, like the stop flag.
+     * @param deadline a System.nanoTime() value, or Long.MAX_VALUE to search until maxDepth or the stop flag.
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Sets a line to search first at the first depth, eg. the rest of the previous best line after its first move
+     * was played.
+     */
+    public void setHintLine(int[] line) {
+        previousLineLength = line == null ? 0 : Math.min(line.length, previousLine.length);
+        if (line != null) {
+            System.arraycopy(line, 0, previousLine, 0, previousLineLength);
+        }
+    }
+
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    public static boolean isMateScore(int score) {
+        return Math.abs(score) > MATE_SCORE - MAX_PLY * 2;
+    }
+
+    /**
+     * Searches a position one depth at a time until maxDepth, the stop flag or the deadline.
+     * @param rootBoard the position, it is searched on a copy.
+     * @param color the player to move.
+     * @param lineCount the number of best lines to report, each one starting with a different move.
+     * @param listener told about every completed depth, on this thread.
+     * @return the last completed depth.
+     */
+    public AnalysisUpdate analyze(Board rootBoard, PlayerColor color, int lineCount, int maxDepth, AnalysisListener listener) {
+        if (board == null) {
+            board = new Board(rootBoard);
+        } else {
+            board.loadPosition(rootBoard);
+        }
+        board.reserveMoves(MAX_PLY + 1);
+        evaluator.setPosition(board);
+        nodeCount = 0;
+        publishedNodeCount = 0;
+        if (counters != null) {
+            counters.setSearchDepth(0);
+        }
+        isTimeUp = false;
+        long startTime = System.currentTimeMillis();
+        for (int[] scores : historyScores) {
+            // keep what earlier analyses learned, but let this one take over quickly
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] /= 4;
+            }
+        }
+
+        rootMoveCount = board.generateLegalMoves(color, rootMoves, 0);
+        AnalysisUpdate lastUpdate = new AnalysisUpdate(board.getPositionHash(), color, 0,
+                new ArrayList<PrincipalVariation>(), 0, 0);
+        if (rootMoveCount == 0) {
+            listener.onDepthCompleted(lastUpdate);
+            return lastUpdate;
+        }
+
+        maxDepth = Math.min(maxDepth, MAX_PLY);
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            orderRootMoves();
+            List<PrincipalVariation> lines = new ArrayList<PrincipalVariation>();
+            Arrays.fill(isExcluded, 0, rootMoveCount, false);
+            for (int lineIndex = 0; lineIndex < Math.min(lineCount, rootMoveCount); lineIndex++) {
+                int bestIndex = searchRoot(depth, color);
+                if (isStopped()) {
+                    return lastUpdate;
+                }
+                isExcluded[bestIndex] = true;
+                lines.add(new PrincipalVariation(lastRootScore, Arrays.copyOf(pvTable[0], pvLength[0])));
+                if (lineIndex == 0) {
+                    System.arraycopy(pvTable[0], 0, previousLine, 0, pvLength[0]);
+                    previousLineLength = pvLength[0];
+                }
+            }
+            lastUpdate = new AnalysisUpdate(board.getPositionHash(), color, depth, lines, nodeCount,
+                    System.currentTimeMillis() - startTime);
+            publishNodeCount();
+            if (counters != null) {
+                counters.setSearchDepth(depth);
+            }
+            listener.onDepthCompleted(lastUpdate);
+            if (isMateScore(lines.get(0).score) && MATE_SCORE - Math.abs(lines.get(0).score) <= depth) {
+                // no deeper search can find a shorter mate
+                break;
+            }
+        }
+        return lastUpdate;
+    }
+
+    /**
+     * Searches the root moves that are not excluded with a full window.
+     * @return the index of the best move, its score is in lastRootScore and its line in pvTable[0].
+     */
+    private int searchRoot(int depth, PlayerColor color) {
+        int alpha = -INFINITE_SCORE;
+        int bestIndex = -1;
+        pvLength[0] = 0;
+        for (int i = 0; i < rootMoveCount; i++) {
+            if (isExcluded[i]) {
+                continue;
+            }
+            int move = rootMoves[i];
+            makeMove(move);
+            boolean isOnPreviousLine = previousLineLength > 0 && previousLine[0] == move;
+            int score = -search(depth - 1, 1, -INFINITE_SCORE, -alpha, color.oppositeColor(), isOnPreviousLine);
+            undoMove();
+            if (isStopped()) {
+                return bestIndex;
+            }
+            if (score > alpha || bestIndex < 0) {
+                alpha = score;
+                bestIndex = i;
+                updateLine(0, move);
+            }
+        }
+        lastRootScore = alpha;
+        return bestIndex;
+    }
+
+    private int search(int depth, int ply, int alpha, int beta, PlayerColor color, boolean isOnPreviousLine) {
+        pvLength[ply] = ply;
+        if (board.isRepetition() || board.isDrawByFiftyMoveRule() || endgameTable.isDraw(board)) {
+            return 0;
+        }
+        if (depth <= 0 || ply >= MAX_PLY) {
+            return quiescence(ply, alpha, beta, color);
+        }
+        nodeCount++;
+        if (isStopped()) {
+            return 0;
+        }
+
+        int[] moves = moveLists[ply];
+        int moveCount = board.generateLegalMoves(color, moves, 0);
+        if (moveCount == 0) {
+            return board.isKingInCheck(color) ? -MATE_SCORE + ply : 0;
+        }
+        int lineMove = isOnPreviousLine && ply < previousLineLength ? previousLine[ply] : Move.NONE;
+        scoreMoves(ply, moveCount, color, lineMove);
+
+        for (int i = 0; i < moveCount; i++) {
+            int move = selectNextMove(ply, i, moveCount);
+            boolean isCapture = board.getPieceAtSquare(Move.getToSquare(move)) != null;
+            makeMove(move);
+            int score = -search(depth - 1, ply + 1, -beta, -alpha, color.oppositeColor(), move == lineMove);
+            undoMove();
+            if (score > alpha) {
+                alpha = score;
+                updateLine(ply, move);
+                if (alpha >= beta) {
+                    if (!isCapture) {
+                        if (killerMoves[ply][0] != move) {
+                            killerMoves[ply][1] = killerMoves[ply][0];
+                            killerMoves[ply][0] = move;
+                        }
+                        historyScores[color.ordinal()][move] += depth * depth;
+                    }
+                    break;
+                }
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * Searches captures only, until the position is quiet, so the evaluation is not taken in the middle of an exchange.
+     */
+    private int quiescence(int ply, int alpha, int beta, PlayerColor color) {
+        pvLength[ply] = ply;
+        nodeCount++;
+        EndgameTable.Endgame endgame = endgameTable.lookUp(board);
+        if (endgame != null && endgame.rule == EndgameTable.Rule.DRAW) {
+            return 0;
+        }
+        int standPat = endgame == null ? evaluator.evaluate(board, color) : endgame.evaluate(board, color, evaluator);
+        if (standPat >= beta || ply >= MAX_PLY || isStopped()) {
+            return standPat;
+        }
+        alpha = Math.max(alpha, standPat);
+
+        int[] moves = moveLists[ply];
+        int moveCount = board.generateLegalMoves(color, moves, 0);
+        long opponents = board.getColorSquares(color.oppositeColor());
+        int captureCount = 0;
+        for (int i = 0; i < moveCount; i++) {
+            if ((opponents & (1L << Move.getToSquare(moves[i]))) != 0) {
+                moves[captureCount++] = moves[i];
+            }
+        }
+        scoreMoves(ply, captureCount, color, Move.NONE);
+        for (int i = 0; i < captureCount; i++) {
+            int move = selectNextMove(ply, i, captureCount);
+            makeMove(move);
+            int score = -quiescence(ply + 1, -beta, -alpha, color.oppositeColor());
+            undoMove();
+            if (score > alpha) {
+                alpha = score;
+                updateLine(ply, move);
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        return alpha;
+    }
+
+    private void makeMove(int move) {
+        Piece captured = board.getPieceAtSquare(Move.getToSquare(move));
+        board.makeMove(move);
+        evaluator.onMoveMade(board, move, captured);
+    }
+
+    private void undoMove() {
+        board.undoLastMove();
+        evaluator.onMoveUndone();
+    }
+
+    private boolean isStopped() {
+        if (nodeCount % CLOCK_CHECK_NODES == 0) {
+            if (!isTimeUp && deadline != Long.MAX_VALUE) {
+                isTimeUp = System.nanoTime() - deadline > 0;
+            }
+            publishNodeCount();
+        }
+        return isTimeUp || stopFlag.get();
+    }
+
+    private void publishNodeCount() {
+        if (counters != null) {
+            counters.addSearchNodes(nodeCount - publishedNodeCount);
+            publishedNodeCount = nodeCount;
+        }
+    }
+
+    /**
+     * Scores the moves of a ply for ordering: the move of the previous line, captures of valuable pieces by cheap
+     * ones, killer moves, then quiet moves by history.
+     */
+    private void scoreMoves(int ply, int moveCount, PlayerColor color, int lineMove) {
+        int[] moves = moveLists[ply];
+        int[] scores = moveScores[ply];
+        for (int i = 0; i < moveCount; i++) {
+            int move = moves[i];
+            Piece captured = board.getPieceAtSquare(Move.getToSquare(move));
+            if (move == lineMove) {
+                scores[i] = Integer.MAX_VALUE;
+            } else if (captured != null) {
+                Piece mover = board.getPieceAtSquare(Move.getFromSquare(move));
+                scores[i] = (1 << 29) + evaluator.getPieceValue(captured.type) * 16 - evaluator.getPieceValue(mover.type) / 16;
+            } else if (move == killerMoves[ply][0]) {
+                scores[i] = 1 << 28;
+            } else if (move == killerMoves[ply][1]) {
+                scores[i] = (1 << 28) - 1;
+            } else {
+                scores[i] = Math.min(historyScores[color.ordinal()][move], (1 << 28) - 2);
+            }
+        }
+    }
+
+    /**
+     * Swaps the best scored move after index to index, so a cutoff does not pay for sorting the rest.
+     */
+    private int selectNextMove(int ply, int index, int moveCount) {
+        int[] moves = moveLists[ply];
+        int[] scores = moveScores[ply];
+        int bestIndex = index;
+        for (int i = index + 1; i < moveCount; i++) {
+            if (scores[i] > scores[bestIndex]) {
+                bestIndex = i;
+            }
+        }
+        int move = moves[bestIndex];
+        moves[bestIndex] = moves[index];
+        moves[index] = move;
+        int score = scores[bestIndex];
+        scores[bestIndex] = scores[index];
+        scores[index] = score;
+        return move;
+    }
+
+    private void updateLine(int ply, int move) {
+        pvTable[ply][ply] = move;
+        int childLength = ply + 1 <= MAX_PLY ? pvLength[ply + 1] : ply + 1;
+        for (int i = ply + 1; i < childLength; i++) {
+            pvTable[ply][i] = pvTable[ply + 1][i];
+        }
+        pvLength[ply] = Math.max(childLength, ply + 1);
+    }
+
+    /**
+     * Puts the first move of the previous best line in front, keeping the order of the others.
+     */
+    private void orderRootMoves() {
+        if (previousLineLength == 0) {
+            return;
+        }
+        for (int i = 0; i < rootMoveCount; i++) {
+            if (rootMoves[i] == previousLine[0]) {
+                System.arraycopy(rootMoves, 0, rootMoves, 1, i);
+                rootMoves[0] = previousLine[0];
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package Chess.Models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shared attack tables, one per set of direction factors and range. Pieces moving the same way share a table, eg. the
+ * rook lines of the queen and the rook, and every table is built once per process.
+ */
+final class AttackTables {
+    // found by MagicAttackTable for the unlimited straight and diagonal riders, kept here so startup does not repeat the search
+    private static final long[] STRAIGHT_MAGICS = {
+            0x0380056010400080L, 0x0500108040002900L, 0x1080100008802000L, 0x0200082201041040L,
+            0x11800A8008000400L, 0x0A00820004000810L, 0x1080208002000100L, 0x0100088020520100L,
+            0x0020802040008000L, 0x0201402000401000L, 0x5002002212408200L, 0x4001000810010020L,
+            0x1008800800040082L, 0x0080800200040080L, 0x4002000841440200L, 0x5002000094004122L,
+            0x61018480004000A0L, 0x0010014020004000L, 0x4408490011002000L, 0x0000420020081200L,
+            0x0082050008010010L, 0x000A008004000280L, 0x1000840001021008L, 0x00A0AA0000885401L,
+            0x0000400180018020L, 0x80400040C0201004L, 0x0170040020080020L, 0x0000090100201000L,
+            0x0800080080040080L, 0x00CC010040020040L, 0x0842005200040118L, 0x0C20228200041145L,
+            0x304440002C800080L, 0x0000201002400048L, 0x1801002001001040L, 0x0380480082801004L,
+            0x10D6000812002004L, 0x0400800400800200L, 0x0000220114001810L, 0x0000205082000401L,
+            0x0022804008218001L, 0x0004500420094000L, 0x0020008010028024L, 0x0010000800808010L,
+            0x0009010800110005L, 0x0011000804010002L, 0x884028039004004AL, 0x4220004081020004L,
+            0x402A248001024100L, 0x10A0028040002280L, 0x1300260010408200L, 0x0018008008100080L,
+            0x8040080004008080L, 0x0040800400120180L, 0x1000089001020400L, 0x0420848041142A00L,
+            0x10202280050040D5L, 0x0001002240148206L, 0x020089200300C011L, 0x0101002045500089L,
+            0xC042000910200482L, 0x0022008410010802L, 0x0000008201100804L, 0x0102010020804402L
+    };
+    private static final long[] DIAGONAL_MAGICS = {
+            0x2004100082088200L, 0x0008260084010100L, 0x0010240040C88000L, 0x4004404084080800L,
+            0x0A05104000084000L, 0x2000822020000400L, 0x4005441028080110L, 0x004124021201204CL,
+            0xC000200342080100L, 0x0470100480AC0044L, 0x018094190202000CL, 0x4012940400860405L,
+            0x0202011040000000L, 0x1028621104204400L, 0x0000004202104205L, 0x00080200C2088410L,
+            0x0008001102080820L, 0x0004109014880040L, 0x0501001001002104L, 0x0420440401022010L,
+            0x4082000402310860L, 0x000A000108010402L, 0x3001002082982001L, 0x00660C4441420808L,
+            0x2020080120080932L, 0x181120000802040AL, 0x82081800040020A0L, 0x0010040080440008L,
+            0x0020020022C05001L, 0xA100A48008080400L, 0x800B010126545000L, 0x0001002206061100L,
+            0x4208480810042002L, 0x00028C3002200200L, 0x000C0448080401A0L, 0x1008600801010104L,
+            0x0001080200002200L, 0x8211005300020108L, 0x0024040C28408080L, 0x0024004840520710L,
+            0x4491281824104020L, 0x0000680804000802L, 0x0013005090015A00L, 0x8130014200820808L,
+            0x01F0082303404402L, 0x00201400A2001020L, 0x1020280E10802048L, 0x0810040884800420L,
+            0x0004048219210014L, 0x2008A10410144944L, 0x4000020102A20001L, 0x02044000420A0200L,
+            0x8000403002020000L, 0x8200042024010810L, 0x20400C2822006004L, 0x020C030414008202L,
+            0x0141005050080801L, 0x0002008401011008L, 0x5000803101080910L, 0x300800000A104402L,
+            0x00080200100A0204L, 0x030080A484880200L, 0x4000110408082842L, 0x0121010108030141L
+    };
+
+    private static final String STRAIGHT_KEY = tableKey(new int[][]{{1, 0}, {0, 1}, {-1, 0}, {0, -1}}, MagicAttackTable.UNLIMITED_RANGE);
+    private static final String DIAGONAL_KEY = tableKey(new int[][]{{1, 1}, {1, -1}, {-1, 1}, {-1, -1}}, MagicAttackTable.UNLIMITED_RANGE);
+    private static final Map<String, MagicAttackTable> TABLES = new HashMap<String, MagicAttackTable>();
+
+    private AttackTables() {
+    }
+
+    /**
+     * Returns the table of a rider or leaper, building it on first use.
+     * @param directionFactors pairs of (row, column) steps, in any order.
+     * @param range the most steps taken along a ray, 1 for a leaper or MagicAttackTable.UNLIMITED_RANGE.
+     */
+    static synchronized MagicAttackTable get(int[][] directionFactors, int range) {
+        String key = tableKey(directionFactors, range);
+        MagicAttackTable table = TABLES.get(key);
+        if (table == null) {
+            long[] knownMagics = key.equals(STRAIGHT_KEY) ? STRAIGHT_MAGICS : key.equals(DIAGONAL_KEY) ? DIAGONAL_MAGICS : null;
+            // seeded from the key so a table is laid out the same on every run
+            table = new MagicAttackTable(directionFactors, range, knownMagics, 0x5EED0000L ^ key.hashCode());
+            TABLES.put(key, table);
+        }
+        return table;
+    }
+
+    private static String tableKey(int[][] directionFactors, int range) {
+        String[] factors = new String[directionFactors.length];
+        for (int i = 0; i < directionFactors.length; i++) {
+            factors[i] = directionFactors[i][0] + "," + directionFactors[i][1];
+        }
+        Arrays.sort(factors);
+        return range + ":" + String.join(" ", factors);
+    }
+}
@@ -1,14 +1,58 @@
 package Chess.Models;
 
+import Chess.Types.GameStatus;
 import Chess.Types.PieceType;
 import Chess.Types.PlayerColor;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Random;
 
 // Board manages the board, check for rule compliance.
 public class Board {
     private Piece[][] boardData;
+    // one bit per occupied square (row * 8 + column), indexed by PlayerColor.ordinal() and PieceType.ordinal()
+    private long[] colorOccupancy = new long[2];
+    private long[] pieceOccupancy = new long[PieceType.values().length];
+
+    // legality masks of legalityColor for the current position, see updateLegalityMasks
+    private boolean isLegalityValid = false;
+    private PlayerColor legalityColor;
+    private long checkers;
+    private long evasionMask;
+    private long pinnedPieces;
+    private long[] pinRays = new long[64];
+
+    // Zobrist hash of the pieces on the board, updated with every change of a square
+    private long positionHash = 0;
+    // Zobrist hash of the number of pieces of every type and color, see getMaterialKey
+    private long materialKey = 0;
+    // Zobrist hash of the pawns alone, see getPawnKey
+    private long pawnKey = 0;
+    // plies since the last capture or pawn move
+    private int halfmoveClock = 0;
+    // one entry per move made, for undo and repetitions: the hash and clock before the move, the move (see Move) and
+    // the captured piece
+    private int historyLength = 0;
+    private long[] hashHistory = new long[64];
+    private int[] halfmoveClockHistory = new int[64];
+    private int[] moveHistory = new int[64];
+    private Piece[] capturedHistory = new Piece[64];
+
+    /** Size of a position written by writePackedPosition. **/
+    public static final int PACKED_POSITION_BYTES = 24;
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+    private static final PlayerColor[] PLAYER_COLORS = PlayerColor.values();
+    // how every piece moves, compiled from Assets/pieces.txt
+    private static final PieceDefinitions DEFINITIONS = PieceDefinitions.getDefault();
+    // one random key per piece and square, indexed by PieceType.ordinal() * 2 + PlayerColor.ordinal() and square
+    private static final long[][] ZOBRIST_KEYS = buildZobristKeys();
+    // one random key per piece and count, the nth piece of a type and color adds the key at index n - 1
+    private static final long[][] MATERIAL_KEYS = buildMaterialKeys();
+    /** Plies without a capture or a pawn move after which the game is drawn. **/
+    public static final int FIFTY_MOVE_RULE_PLIES = 100;
+    /** An upper bound of the legal moves of a player: p pieces reach at most 64 - p squares each. **/
+    public static final int MAX_LEGAL_MOVES = 32 * 32;
 
     /** Board constructor
      * @param serializer Serializer have 192 characters total, every 3 bits represent a tile on the board. '#' marks the start of a tile, followed by a
@@ -16,9 +60,17 @@ public class Board {
      *                   Knight. The last bit is a number representing color, '1' for black, '0' for white, '2' for empty. Eg. #H0#R0#K0....
      * **/
     public Board(String serializer) {
+        boardData = new Piece[8][8];
+        loadPosition(serializer);
+    }
+
+    /** Replaces the whole position, so one board can be reused for many positions.
+     * @param serializer the 192 character position, same format as the constructor.
+     * **/
+    public void loadPosition(String serializer) {
         assert serializer.length() == 192;
         assert serializer.charAt(0) == '#';
-        boardData = new Piece[8][8];
+        clearPosition();
         for(int i = 0; i < 192; i+=3) {
             char pieceBit = serializer.charAt(i+1);
             char directionBit = serializer.charAt(i+2);
@@ -26,9 +78,159 @@ public class Board {
             int col = (i /3) - row * 8;
             if (pieceBit != 'E') {
                 PlayerColor color = directionBit == '0' ? PlayerColor.WHITE : PlayerColor.BLACK;
-                boardData[row][col] = new Piece(pieceBit, color);
+                setPieceAtSquare(Piece.fromSerializerCode(pieceBit, color), row, col);
+            }
+        }
+        isLegalityValid = false;
+    }
+
+    /** Replaces the whole position with a copy of another board, including its moves, reusing this board's arrays.
+     * @param another the board to copy
+     * **/
+    public void loadPosition(Board another) {
+        for (int row = 0; row < 8; row++) {
+            System.arraycopy(another.boardData[row], 0, boardData[row], 0, 8);
+        }
+        System.arraycopy(another.colorOccupancy, 0, colorOccupancy, 0, colorOccupancy.length);
+        System.arraycopy(another.pieceOccupancy, 0, pieceOccupancy, 0, pieceOccupancy.length);
+        positionHash = another.positionHash;
+        materialKey = another.materialKey;
+        pawnKey = another.pawnKey;
+        halfmoveClock = another.halfmoveClock;
+        Arrays.fill(capturedHistory, 0, historyLength, null);
+        historyLength = 0;
+        reserveMoves(another.historyLength);
+        historyLength = another.historyLength;
+        System.arraycopy(another.hashHistory, 0, hashHistory, 0, historyLength);
+        System.arraycopy(another.halfmoveClockHistory, 0, halfmoveClockHistory, 0, historyLength);
+        System.arraycopy(another.moveHistory, 0, moveHistory, 0, historyLength);
+        System.arraycopy(another.capturedHistory, 0, capturedHistory, 0, historyLength);
+        isLegalityValid = false;
+    }
+
+    /** Makes room for moveCount more moves, so making them and taking them back allocates nothing.
+     * **/
+    public void reserveMoves(int moveCount) {
+        int required = historyLength + moveCount;
+        if (required > hashHistory.length) {
+            int capacity = Math.max(required, hashHistory.length * 2);
+            hashHistory = Arrays.copyOf(hashHistory, capacity);
+            halfmoveClockHistory = Arrays.copyOf(halfmoveClockHistory, capacity);
+            moveHistory = Arrays.copyOf(moveHistory, capacity);
+            capturedHistory = Arrays.copyOf(capturedHistory, capacity);
+        }
+    }
+
+    /** Writes the position as a fixed-width record of PACKED_POSITION_BYTES bytes, in the byte order of the buffer.
+     * The record is the occupancy of the board, one bit per square, followed by a 4 bit code per occupied square in
+     * square order: the PieceType.ordinal() in the low 3 bits and the PlayerColor.ordinal() in the high bit.
+     * @param buffer the buffer to write to, its position is left untouched.
+     * @param offset the index of the first byte of the record.
+     * @throws IllegalStateException if more than 32 pieces are on the board.
+     * **/
+    public void writePackedPosition(ByteBuffer buffer, int offset) {
+        long occupancy = colorOccupancy[0] | colorOccupancy[1];
+        if (Long.bitCount(occupancy) > 32) {
+            throw new IllegalStateException("a packed position holds at most 32 pieces");
+        }
+        long lowPieceCodes = 0;
+        long highPieceCodes = 0;
+        int pieceIndex = 0;
+        for (long pieces = occupancy; pieces != 0; pieces &= pieces - 1, pieceIndex++) {
+            int square = Long.numberOfTrailingZeros(pieces);
+            Piece piece = boardData[square / 8][square % 8];
+            long code = piece.type.ordinal() | (piece.color.ordinal() << 3);
+            if (pieceIndex < 16) {
+                lowPieceCodes |= code << (4 * pieceIndex);
+            } else {
+                highPieceCodes |= code << (4 * (pieceIndex - 16));
             }
         }
+        buffer.putLong(offset, occupancy);
+        buffer.putLong(offset + 8, lowPieceCodes);
+        buffer.putLong(offset + 16, highPieceCodes);
+    }
+
+    /** Replaces the whole position with one written by writePackedPosition, without going through a String.
+     * @param buffer the buffer to read from, its position is left untouched.
+     * @param offset the index of the first byte of the record.
+     * **/
+    public void loadPackedPosition(ByteBuffer buffer, int offset) {
+        clearPosition();
+        long occupancy = buffer.getLong(offset);
+        long pieceCodes = buffer.getLong(offset + 8);
+        int pieceIndex = 0;
+        for (long pieces = occupancy; pieces != 0; pieces &= pieces - 1, pieceIndex++) {
+            if (pieceIndex == 16) {
+                pieceCodes = buffer.getLong(offset + 16);
+            }
+            int square = Long.numberOfTrailingZeros(pieces);
+            int code = (int) (pieceCodes >>> (4 * (pieceIndex % 16))) & 0xF;
+            setPieceAtSquare(Piece.of(PIECE_TYPES[code & 7], PLAYER_COLORS[code >>> 3]), square / 8, square % 8);
+        }
+        isLegalityValid = false;
+    }
+
+    /** Copy constructor, the copy shares nothing mutable with the original so it can be read on another thread.
+     * Pieces are immutable, so only the rows are copied.
+     * @param another the board to copy
+     * **/
+    public Board(Board another) {
+        boardData = new Piece[8][];
+        for (int row = 0; row < 8; row++) {
+            boardData[row] = another.boardData[row].clone();
+        }
+        colorOccupancy = another.colorOccupancy.clone();
+        pieceOccupancy = another.pieceOccupancy.clone();
+        positionHash = another.positionHash;
+        materialKey = another.materialKey;
+        pawnKey = another.pawnKey;
+        halfmoveClock = another.halfmoveClock;
+        historyLength = another.historyLength;
+        hashHistory = another.hashHistory.clone();
+        halfmoveClockHistory = another.halfmoveClockHistory.clone();
+        moveHistory = another.moveHistory.clone();
+        capturedHistory = another.capturedHistory.clone();
+    }
+
+    /** Empties the board and forgets the moves made on it.
+     * **/
+    private void clearPosition() {
+        for (Piece[] row : boardData) {
+            Arrays.fill(row, null);
+        }
+        Arrays.fill(colorOccupancy, 0);
+        Arrays.fill(pieceOccupancy, 0);
+        positionHash = 0;
+        materialKey = 0;
+        pawnKey = 0;
+        halfmoveClock = 0;
+        historyLength = 0;
+        Arrays.fill(capturedHistory, null);
+    }
+
+    private static long[][] buildMaterialKeys() {
+        // a fixed seed too, the position keys keep theirs
+        Random random = new Random(0x4D4B4559L);
+        long[][] keys = new long[PieceType.values().length * 2][64];
+        for (long[] countKeys : keys) {
+            for (int i = 0; i < 64; i++) {
+                countKeys[i] = random.nextLong();
+            }
+        }
+        return keys;
+    }
+
+    private static long[][] buildZobristKeys() {
+        // a fixed seed, so hashes can be stored and compared across runs
+        Random random = new Random(0x2B5C81D3L);
+        long[][] keys = new long[PieceType.values().length * 2][64];
+        for (long[] squareKeys : keys) {
+            for (int square = 0; square < 64; square++) {
+                squareKeys[square] = random.nextLong();
+            }
+        }
+        return keys;
     }
 
     /** Prints the board. For debug use.
@@ -61,133 +263,353 @@ public class Board {
         return this.boardData[coord.row][coord.column];
     }
 
+    /**
+     * @param square row * 8 + column
+     * @return the piece on the square, or null.
+     */
+    public Piece getPieceAtSquare(int square) {
+        return this.boardData[square / 8][square % 8];
+    }
+
+    /**
+     * @return one bit per square (row * 8 + column) holding a piece of the type and color.
+     */
+    public long getPieceSquares(PieceType type, PlayerColor color) {
+        return pieceOccupancy[type.ordinal()] & colorOccupancy[color.ordinal()];
+    }
+
+    /**
+     * @return one bit per square (row * 8 + column) holding a piece of the color.
+     */
+    public long getColorSquares(PlayerColor color) {
+        return colorOccupancy[color.ordinal()];
+    }
+
     public void setPieceAtCoordinate(Piece piece, Coordinate coord) {
-        boardData[coord.row][coord.column] = piece;
+        setPieceAtSquare(piece, coord.row, coord.column);
+    }
+
+    private void setPieceAtSquare(Piece piece, int row, int column) {
+        int square = row * 8 + column;
+        long bit = 1L << square;
+        Piece previousPiece = boardData[row][column];
+        if (previousPiece != null) {
+            colorOccupancy[previousPiece.color.ordinal()] &= ~bit;
+            pieceOccupancy[previousPiece.type.ordinal()] &= ~bit;
+            int index = previousPiece.type.ordinal() * 2 + previousPiece.color.ordinal();
+            positionHash ^= ZOBRIST_KEYS[index][square];
+            materialKey ^= MATERIAL_KEYS[index][Long.bitCount(getPieceSquares(previousPiece.type, previousPiece.color))];
+            if (previousPiece.type == PieceType.PAWN) {
+                pawnKey ^= ZOBRIST_KEYS[index][square];
+            }
+        }
+        if (piece != null) {
+            int index = piece.type.ordinal() * 2 + piece.color.ordinal();
+            materialKey ^= MATERIAL_KEYS[index][Long.bitCount(getPieceSquares(piece.type, piece.color))];
+            colorOccupancy[piece.color.ordinal()] |= bit;
+            pieceOccupancy[piece.type.ordinal()] |= bit;
+            positionHash ^= ZOBRIST_KEYS[index][square];
+            if (piece.type == PieceType.PAWN) {
+                pawnKey ^= ZOBRIST_KEYS[index][square];
+            }
+        }
+        boardData[row][column] = piece;
+        isLegalityValid = false;
     }
 
     /** Compute the eligible spots a piece can move from a given location
      * @param pieceLocation the coordinate of the piece
      * **/
     public Coordinate[] computeReachableMoves(Coordinate pieceLocation) {
-        return computeReachableMoves(pieceLocation, false, this.boardData);
+        Piece piece = boardData[pieceLocation.row][pieceLocation.column];
+        assert piece != null;
+
+        long legalTargets = computeLegalTargets(pieceLocation.toSquare());
+        Coordinate[] validMoveLocations = new Coordinate[Long.bitCount(legalTargets)];
+        for (int i = 0; legalTargets != 0; i++) {
+            validMoveLocations[i] = Coordinate.fromSquare(Long.numberOfTrailingZeros(legalTargets));
+            legalTargets &= legalTargets - 1;
+        }
+        return validMoveLocations;
     }
 
-    /** Compute the eligible spots a piece can move from a given location
-     * @param pieceLocation the coordinate of the piece.
-     * @param isSimulated flag for simulation run, if turned on, it will not run checks for king for each move.
-     * @param boardData the board data in this computation.
-     * @return an array of coordinates eligible for moves
+    /** Compute the legal destinations of the piece on a square.
+     * Legality comes from the pins and checks of the position, computed once per position and side instead of
+     * trying every move on a copy of the board.
+     * @param square the square of the piece, row * 8 + column.
+     * @return one bit per legal destination square.
      * **/
-    private Coordinate[] computeReachableMoves(Coordinate pieceLocation, boolean isSimulated, Piece[][] boardData) {
-        Piece piece = boardData[pieceLocation.row][pieceLocation.column];
-        ArrayList<Coordinate> validMoveLocations = new ArrayList<Coordinate>();
+    private long computeLegalTargets(int square) {
+        Piece piece = boardData[square / 8][square % 8];
         assert piece != null;
-        if (!isSimulated) {
-            System.out.println("Current piece: " + piece.type.toString() + " at (" + pieceLocation.row + ", " + pieceLocation.column + ")");
+        PlayerColor color = piece.color;
+        updateLegalityMasks(color);
+        long targets = computePseudoLegalTargets(piece, square);
+
+        if (piece.type == PieceType.KING) {
+            // the king cannot step onto an attacked square, and it does not shield the square behind it from a rider
+            long occupancyWithoutKing = (colorOccupancy[0] | colorOccupancy[1]) & ~(1L << square);
+            long safeTargets = 0;
+            while (targets != 0) {
+                int target = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                if (computeAttackers(target, color.oppositeColor(), occupancyWithoutKing) == 0) {
+                    safeTargets |= 1L << target;
+                }
+            }
+            return safeTargets;
         }
 
-        for (MoveType moveType : piece.moveTypes) {
-            ArrayList<Coordinate> validMoves = scanMoves(pieceLocation, moveType, isSimulated, boardData);
-            validMoveLocations.addAll(validMoves);
+        targets &= evasionMask;
+        if ((pinnedPieces & (1L << square)) != 0) {
+            targets &= pinRays[square];
         }
-        Coordinate[] arrayHolder = new Coordinate[validMoveLocations.size()];
-        return validMoveLocations.toArray(arrayHolder);
+        return targets;
     }
 
-    /** Internal methods for scanning the board in the search of spots that the current piece can move to.
+    /** Internal method for the destinations of a piece without looking at its own king.
      */
-    private ArrayList<Coordinate> scanMoves(Coordinate pieceLocation, MoveType moveType, boolean isSimulated, Piece[][] boardData) {
-        ArrayList<Coordinate> validMoveLocations = new ArrayList<Coordinate>();
-        Piece sourcePiece = boardData[pieceLocation.row][pieceLocation.column];
-        assert  sourcePiece != null;
-        Coordinate[] directionFactors = moveType.getDirectionFactors(sourcePiece.color);
-        for (Coordinate directionFactor : directionFactors ) {
-            Coordinate nextLocation = pieceLocation.getNextCoordinate(directionFactor);
-            while (nextLocation.row < 8 && nextLocation.row >= 0 &&
-                    nextLocation.column < 8 && nextLocation.column >= 0) {
-                Coordinate currentLocation = nextLocation;
-                Piece curPiece = boardData[currentLocation.row][currentLocation.column];
-                if (curPiece == null && moveType == MoveType.SIDE_ATTACK) {
-                    // nothing to do here for a sad pawn.
-                    break;
-                } else if (curPiece == null) {
-                    // the sky is limit.. the piece can keep move further.
-                    nextLocation = currentLocation.getNextCoordinate(directionFactor);
-                } else if (sourcePiece.color == curPiece.color ||
-                        moveType == MoveType.UP_ONCE ||
-                        moveType == MoveType.UP_TWICE) {
-                    // the piece on the current player's side is in the way, nothing to do here for the piece of same color or for pawns of any color.
-                    break;
-                }
-                if (isSimulated) {
-                    // we only need to check one level deep for checkmate
-                    validMoveLocations.add(currentLocation);
-                } else {
-                    Piece[][] simulatedBoardData = getSimulatedBoardDataWithMove(pieceLocation, currentLocation);
-                    if (!isKingInCheck(sourcePiece.color, simulatedBoardData)) {
-                        validMoveLocations.add(currentLocation);
-                    } else {
-                        break;
-                    }
-                }
-                if (sourcePiece.rangeType == RangeType.ONE_MOVE || curPiece != null) {
-                    // For ONE_MOVE type like pawns, knights, they can't move more than one step
-                    // or if there is a piece from the opposing side in the way, we cannot move further
-                    break;
-                }
+    private long computePseudoLegalTargets(Piece piece, int square) {
+        long occupancy = colorOccupancy[0] | colorOccupancy[1];
+        return DEFINITIONS.getMovement(piece).targets(square, occupancy, colorOccupancy[piece.color.oppositeColor().ordinal()]);
+    }
 
+    /** Internal method for the pieces of a color attacking a square.
+     * @param occupancy the blockers for riding pieces.
+     */
+    private long computeAttackers(int square, PlayerColor attackerColor, long occupancy) {
+        return computeAttackers(square, attackerColor, occupancy, DEFINITIONS.getRiderGroups(attackerColor))
+                | computeAttackers(square, attackerColor, occupancy, DEFINITIONS.getLeaperGroups(attackerColor));
+    }
+
+    /** Internal method for the pieces of a color in some attack groups attacking a square.
+     * The groups hold the attacks reversed, so the attackers are found by looking from the square back to the pieces.
+     */
+    private long computeAttackers(int square, PlayerColor attackerColor, long occupancy, PieceDefinitions.AttackGroup[] groups) {
+        long attackers = 0;
+        for (PieceDefinitions.AttackGroup group : groups) {
+            long pieces = 0;
+            for (int pieceType : group.pieceTypes) {
+                pieces |= pieceOccupancy[pieceType];
             }
+            attackers |= group.table.attacks(square, occupancy) & group.fromSquares & pieces;
         }
-        return validMoveLocations;
+        return attackers & colorOccupancy[attackerColor.ordinal()];
+    }
+
+    /** Internal method computing checkers, pinned pieces and the check evasion mask for a side.
+     * They stay valid until the board changes.
+     */
+    private void updateLegalityMasks(PlayerColor color) {
+        if (isLegalityValid && legalityColor == color) {
+            return;
+        }
+        isLegalityValid = true;
+        legalityColor = color;
+        checkers = 0;
+        pinnedPieces = 0;
+        evasionMask = ~0L;
+        int kingSquare = findKingSquare(color);
+        if (kingSquare < 0) {
+            // nothing to protect on boards without a king
+            return;
+        }
+
+        long occupancy = colorOccupancy[0] | colorOccupancy[1];
+        PlayerColor opponentColor = color.oppositeColor();
+        long leapingCheckers = computeAttackers(kingSquare, opponentColor, occupancy, DEFINITIONS.getLeaperGroups(opponentColor));
+        checkers = leapingCheckers | computeAttackers(kingSquare, opponentColor, occupancy, DEFINITIONS.getRiderGroups(opponentColor));
+        if (Long.bitCount(checkers) > 1) {
+            // double check, only the king can move
+            evasionMask = 0;
+        } else if (leapingCheckers != 0) {
+            // a leap cannot be blocked, only captured
+            evasionMask = checkers;
+        } else if (checkers != 0) {
+            // capture the checker or step into its line
+            evasionMask = checkers | DEFINITIONS.between(kingSquare, Long.numberOfTrailingZeros(checkers));
+        }
+
+        // riders that would attack the king on an empty board
+        long snipers = computeAttackers(kingSquare, opponentColor, 0, DEFINITIONS.getRiderGroups(opponentColor));
+        while (snipers != 0) {
+            int sniperSquare = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = DEFINITIONS.between(kingSquare, sniperSquare) & occupancy;
+            if (Long.bitCount(blockers) == 1 && (blockers & colorOccupancy[color.ordinal()]) != 0) {
+                pinnedPieces |= blockers;
+                pinRays[Long.numberOfTrailingZeros(blockers)] = DEFINITIONS.between(kingSquare, sniperSquare) | (1L << sniperSquare);
+            }
+        }
+    }
+
+    private long piecesOfType(PieceType type) {
+        return pieceOccupancy[type.ordinal()];
+    }
+
+    private int findKingSquare(PlayerColor color) {
+        long king = piecesOfType(PieceType.KING) & colorOccupancy[color.ordinal()];
+        return king == 0 ? -1 : Long.numberOfTrailingZeros(king);
     }
 
     /**
      * Moves piece from one location to another. If there exists an opponent's piece at destination, KILL.
+     * The move is recorded, see undoLastMove, and counts towards repetitions and the fifty-move rule.
      * @param toLocation the location of the source
      * @param fromLocation the destination location
      */
     public void moveTo(Coordinate toLocation, Coordinate fromLocation) {
-        Piece destinationPiece = boardData[toLocation.row][toLocation.column];
-        if (destinationPiece != null) {
-            //broadcast kill
-        }
-        Piece sourcePiece = boardData[fromLocation.row][fromLocation.column];
+        makeMove(Move.encode(fromLocation.toSquare(), toLocation.toSquare()));
+    }
+
+    /**
+     * Same as moveTo, for a move encoded by Move.
+     */
+    public void makeMove(int move) {
+        int fromSquare = Move.getFromSquare(move);
+        int toSquare = Move.getToSquare(move);
+        Piece destinationPiece = boardData[toSquare / 8][toSquare % 8];
+        Piece sourcePiece = boardData[fromSquare / 8][fromSquare % 8];
         assert  sourcePiece != null;
-        boardData[toLocation.row][toLocation.column] = sourcePiece;
-        boardData[fromLocation.row][fromLocation.column] = null;
 
-        if (sourcePiece.type == PieceType.PAWN) {
-            sourcePiece.setHasMadeFirstMoveForPawn();
+        reserveMoves(1);
+        hashHistory[historyLength] = positionHash;
+        halfmoveClockHistory[historyLength] = halfmoveClock;
+        moveHistory[historyLength] = move;
+        capturedHistory[historyLength] = destinationPiece;
+        historyLength++;
+        // captures and pawn moves cannot be undone over the board, no earlier position can come back
+        halfmoveClock = destinationPiece != null || sourcePiece.type == PieceType.PAWN ? 0 : halfmoveClock + 1;
+
+        setPieceAtSquare(sourcePiece, toSquare / 8, toSquare % 8);
+        setPieceAtSquare(null, fromSquare / 8, fromSquare % 8);
+    }
+
+    /**
+     * @return the last move made and not taken back, or Move.NONE.
+     */
+    public int getLastMove() {
+        return historyLength == 0 ? Move.NONE : moveHistory[historyLength - 1];
+    }
+
+    /**
+     * @return the number of moves made since the position was loaded and not taken back.
+     */
+    public int getMoveCount() {
+        return historyLength;
+    }
+
+    /**
+     * @param ply between 0 and getMoveCount(), 0 for the first move made since the position was loaded.
+     * @return the move made at that ply, see Move.
+     */
+    public int getMove(int ply) {
+        return moveHistory[ply];
+    }
+
+    /**
+     * Takes back the last move made with moveTo, putting back the captured piece if any.
+     * @return false if there is no move to take back.
+     */
+    public boolean undoLastMove() {
+        if (historyLength == 0) {
+            return false;
         }
+        historyLength--;
+        int move = moveHistory[historyLength];
+        int fromSquare = Move.getFromSquare(move);
+        int toSquare = Move.getToSquare(move);
+        setPieceAtSquare(boardData[toSquare / 8][toSquare % 8], fromSquare / 8, fromSquare % 8);
+        setPieceAtSquare(capturedHistory[historyLength], toSquare / 8, toSquare % 8);
+        capturedHistory[historyLength] = null;
+        halfmoveClock = halfmoveClockHistory[historyLength];
+        assert positionHash == hashHistory[historyLength];
+        return true;
     }
 
-    /** Internal methods for checking if the king is in check.
+    /**
+     * @return the Zobrist hash of the pieces on the board. The side to move is not part of it.
      */
-    private boolean isKingInCheck(PlayerColor kingColor, Piece[][] newBoardData) {
-        Coordinate kingLocation = null;
-        for (int row = 0; row < newBoardData.length; row++) {
-            for (int col = 0; col < newBoardData[row].length; col++) {
-                Piece piece = newBoardData[row][col];
-                if (piece != null && piece.type == PieceType.KING && piece.color == kingColor) {
-                    kingLocation = new Coordinate(row, col);
-                }
+    public long getPositionHash() {
+        return positionHash;
+    }
+
+    /**
+     * @return a hash of the number of pieces of every type and color, whatever their squares. A move only changes it
+     * when it captures.
+     */
+    public long getMaterialKey() {
+        return materialKey;
+    }
+
+    /**
+     * @return the position hash of the pawns alone, the other pieces left out. Only the moves of a pawn and its
+     * captures change it.
+     */
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    /**
+     * @param pieceCounts the number of pieces of every type and color, indexed by PieceType.ordinal() * 2 +
+     *                    PlayerColor.ordinal().
+     * @return the material key of the boards with these pieces, see getMaterialKey.
+     */
+    public static long computeMaterialKey(int[] pieceCounts) {
+        long key = 0;
+        for (int index = 0; index < pieceCounts.length; index++) {
+            for (int i = 0; i < pieceCounts[index]; i++) {
+                key ^= MATERIAL_KEYS[index][i];
             }
         }
-        assert kingLocation != null;
-        for (int row = 0; row < newBoardData.length; row++) {
-            for (int col = 0; col < newBoardData[row].length; col++) {
-                Piece piece = newBoardData[row][col];
-                if (piece != null && piece.color != kingColor) {
-                   Coordinate[] potentialMoves = computeReachableMoves(new Coordinate(row, col), true, newBoardData);
-                   if (Arrays.asList(potentialMoves).contains(kingLocation)) {
-                       return true;
-                   }
-                }
+        return key;
+    }
+
+    /**
+     * @return the plies made since the last capture or pawn move.
+     */
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * Counts the earlier occurrences of the current position with the same player to move.
+     * Only the positions since the last capture or pawn move can repeat, and only every other one has the same player
+     * to move, so this reads at most halfmoveClock / 2 hashes.
+     * @param limit stop counting at this many occurrences.
+     */
+    public int getRepetitionCount(int limit) {
+        int count = 0;
+        int oldest = Math.max(0, historyLength - halfmoveClock);
+        for (int i = historyLength - 2; i >= oldest && count < limit; i -= 2) {
+            if (hashHistory[i] == positionHash) {
+                count++;
             }
         }
-        return false;
+        return count;
+    }
+
+    /**
+     * @return true if the current position has occurred before with the same player to move. A search scores it
+     * as a draw, since the side that repeated can repeat again.
+     */
+    public boolean isRepetition() {
+        return getRepetitionCount(1) > 0;
     }
 
+    /**
+     * @return true if the current position has occurred three times with the same player to move.
+     */
+    public boolean isDrawByRepetition() {
+        return getRepetitionCount(2) >= 2;
+    }
+
+    /**
+     * @return true if no capture or pawn move has been made in the last fifty moves of each player.
+     */
+    public boolean isDrawByFiftyMoveRule() {
+        return halfmoveClock >= FIFTY_MOVE_RULE_PLIES;
+    }
 
     /**
      * Checks if the king is in check
@@ -195,95 +617,94 @@ public class Board {
      * @return a boolean indicating if the king is in check
      */
     public boolean isKingInCheck(PlayerColor kingColor) {
-        return isKingInCheck(kingColor, this.boardData);
+        int kingSquare = findKingSquare(kingColor);
+        return kingSquare >= 0 && computeAttackers(kingSquare, kingColor.oppositeColor(), colorOccupancy[0] | colorOccupancy[1]) != 0;
     }
 
     public boolean isPlayerInStalemate(PlayerColor color) {
-        return !isKingInCheck(color) && getCountForReachableMoves(color) == 0;
+        return evaluateStatus(color) == GameStatus.STALEMATE;
     }
 
     /**
      * Checks if a player has won the game
      * @param color
-     * @return a boolean indicating if the player has won
+     * @return a boolean indicating if the player has checkmated the opponent
      */
     public boolean isPlayerWinning(PlayerColor color) {
-        int validMovesCount = getCountForReachableMoves(color.oppositeColor());
-        return validMovesCount == 0;
+        return evaluateStatus(color.oppositeColor()) == GameStatus.CHECKMATE;
     }
 
-    private int getCountForReachableMoves(PlayerColor color) {
-        int validMovesCount = 0;
-        for (int row = 0; row < this.boardData.length; row++) {
-            for (int col = 0; col < this.boardData[row].length; col++) {
-                Piece piece = this.boardData[row][col];
-                if (piece != null && piece.color == color) {
-                    Coordinate[] potentialMoves = computeReachableMoves(new Coordinate(row, col));
-                    if (potentialMoves.length > 0) {
-                        for (Coordinate move : potentialMoves) {
-                            System.out.println("r: " + move.row + ", c: " + move.column);
-                        }
-                    }
-                    validMovesCount += potentialMoves.length;
-                }
+    /**
+     * Tells whether a player is in check and whether they can move, as if it were their turn. Looking for legal moves
+     * stops at the first piece that has one.
+     * @param color the player to move
+     * @return the state of the game for that player
+     */
+    public GameStatus evaluateStatus(PlayerColor color) {
+        boolean isInCheck = isKingInCheck(color);
+        if (hasLegalMove(color)) {
+            return isInCheck ? GameStatus.CHECK : GameStatus.ONGOING;
+        }
+        return isInCheck ? GameStatus.CHECKMATE : GameStatus.STALEMATE;
+    }
+
+    private boolean hasLegalMove(PlayerColor color) {
+        long pieces = colorOccupancy[color.ordinal()];
+        while (pieces != 0) {
+            int square = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            if (computeLegalTargets(square) != 0) {
+                return true;
             }
         }
-        return validMovesCount;
+        return false;
     }
 
-    /** Internal method for generating a simulated board for detecting checks for king.
+    /**
+     * @param move a move encoded by Move.
+     * @return true if the piece on the source square of the move is the player's and can legally go to its destination.
      */
-    private Piece[][] getSimulatedBoardDataWithMove(Coordinate fromLocation, Coordinate toLocation) {
-        Piece[][] newBoardData = java.util.Arrays.stream(boardData).map(el -> el.clone()).toArray($ -> boardData.clone());
-        Piece sourcePiece = newBoardData[fromLocation.row][fromLocation.column];
-        newBoardData[toLocation.row][toLocation.column] = sourcePiece;
-        newBoardData[fromLocation.row][fromLocation.column] = null;
-        return newBoardData;
+    public boolean isLegalMove(int move, PlayerColor color) {
+        int fromSquare = Move.getFromSquare(move);
+        Piece piece = boardData[fromSquare / 8][fromSquare % 8];
+        return piece != null && piece.color == color && (computeLegalTargets(fromSquare) & (1L << Move.getToSquare(move))) != 0;
     }
 
-}
+    /**
+     * Lists the legal moves of a player, without allocating.
+     * @param moves receives the moves, encoded by Move. It must have room for MAX_LEGAL_MOVES moves.
+     * @param offset the index of the first move written.
+     * @return the number of moves written.
+     */
+    public int generateLegalMoves(PlayerColor color, int[] moves, int offset) {
+        int count = 0;
+        long pieces = colorOccupancy[color.ordinal()];
+        while (pieces != 0) {
+            int square = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            long targets = computeLegalTargets(square);
+            while (targets != 0) {
+                moves[offset + count++] = Move.encode(square, Long.numberOfTrailingZeros(targets));
+                targets &= targets - 1;
+            }
+        }
+        return count;
+    }
 
-/**
- * MoveType: The type of moves a piece can perform on the board.
- * Each type of pieces can have multiple types of moves.
- */
-enum MoveType {
-    STRAIGHT, DIAGONAL, UP_ONCE, SIDE_ATTACK, KNIGHT, UP_TWICE, ELEPHANT, YOLO;
-    public Coordinate[] getDirectionFactors(PlayerColor color) {
-        if (this == MoveType.DIAGONAL) {
-            return new Coordinate[] {
-                    new Coordinate(1,1),new Coordinate(1,-1),
-                    new Coordinate(-1,1),new Coordinate(-1,-1)};
-        } else if (this == MoveType.STRAIGHT){
-            return new Coordinate[] {
-                    new Coordinate(1,0),new Coordinate(0,1),
-                    new Coordinate(-1,0),new Coordinate(0,-1)};
-        } else if (this == MoveType.UP_ONCE) {
-            int verticalDirection = color == PlayerColor.WHITE ? -1 : 1;
-            return new Coordinate[] {new Coordinate(verticalDirection,0)};
-        } else if (this == MoveType.KNIGHT){
-            return new Coordinate[] {
-                    new Coordinate(2,1),new Coordinate(2,-1),
-                    new Coordinate(-2,1), new Coordinate(-2,-1),
-                    new Coordinate(1,2),new Coordinate(1,-2),
-                    new Coordinate(-1,2),new Coordinate(-1,-2)};
-        } else if (this == MoveType.SIDE_ATTACK) {
-            int verticalDirection = color == PlayerColor.WHITE ? -1 : 1;
-            return new Coordinate[] {
-                    new Coordinate(verticalDirection,1), new Coordinate(verticalDirection,-1)};
-        } else if (this == MoveType.UP_TWICE){
-            int verticalDirection = color == PlayerColor.WHITE ? -2 : 2;
-            return new Coordinate[] {new Coordinate(verticalDirection,0)};
-        } else if (this == MoveType.ELEPHANT) {
-            return new Coordinate[]{
-                    new Coordinate(1,1), new Coordinate(1,-1),
-                    new Coordinate(-1,1), new Coordinate(-1,-1),
-                    new Coordinate(-1,0), new Coordinate(1,0),
-                    new Coordinate(0,1), new Coordinate(0,-1),
-            };
-        } else {
-            assert false;
-            return new Coordinate[]{};
+    /**
+     * Counts the legal moves of a player.
+     * @param color
+     * @return the number of legal moves of all the pieces of the player
+     */
+    public int getCountForReachableMoves(PlayerColor color) {
+        int validMovesCount = 0;
+        long pieces = colorOccupancy[color.ordinal()];
+        while (pieces != 0) {
+            int square = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            validMovesCount += Long.bitCount(computeLegalTargets(square));
         }
+        return validMovesCount;
     }
-}
\ No newline at end of file
+
+}
@@ -11,6 +11,21 @@ public final class Coordinate {
         this.column = column;
     }
 
+    /**
+     * Builds a coordinate from a square index, the layout used by the attack tables.
+     * @param square row * 8 + column, 0 is the top-left corner and 63 the bottom-right corner.
+     */
+    public static Coordinate fromSquare(int square) {
+        return new Coordinate(square >>> 3, square & 7);
+    }
+
+    /**
+     * @return the square index of this coordinate, row * 8 + column.
+     */
+    public int toSquare() {
+        return this.row * 8 + this.column;
+    }
+
     /**
      * Computes the next coordinate in the direction.
      * @param directionFactor of the same type Coordinate, it defines the direction the user wants to explore from the current location. Eg. (1,0) is downward, (0,1) is rightward
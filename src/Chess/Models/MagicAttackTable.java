@@ -0,0 +1,142 @@
+package Chess.Models;
+
+import java.util.Random;
+
+/**
+ * Occupancy-indexed attack table for a riding piece, eg. rook, bishop or drunken knight, or for a leaper.
+ * Squares are indexed as row * 8 + column, the same layout Coordinate uses, and a set of squares is a long with
+ * one bit per square.
+ *
+ * For every square the table keeps a mask of the squares that can block one of the rays, and a magic multiplier
+ * that hashes every subset of that mask into a dense index. The full attack set for any occupancy is then one
+ * multiply, one shift and one array read. Magics are searched once when the table is built, with a fixed seed so
+ * the layout is the same on every run. The search can take a good part of a second for the rook rays, so tables
+ * may be given magics found by an earlier run, which are only verified.
+ *
+ * A rider may be limited to a number of steps along each ray. With a range of 1 nothing can block, the masks are
+ * empty and the table degenerates into one attack set per square, which is how leapers are stored.
+ */
+final class MagicAttackTable {
+    /** The range of a rider that only stops at a blocker or the edge of the board. **/
+    static final int UNLIMITED_RANGE = 7;
+
+    private final long[] masks = new long[64];
+    private final long[] magics = new long[64];
+    private final int[] shifts = new int[64];
+    private final int[] offsets = new int[64];
+    private final long[] attacks;
+
+    /**
+     * Builds the table for a rider moving along the given direction factors.
+     * @param directionFactors pairs of (row, column) steps, eg. {1,0} for downward.
+     * @param range the most steps taken along a ray, 1 for a leaper or UNLIMITED_RANGE.
+     * @param knownMagics magics to try first for every square, or null to search all of them.
+     * @param seed the seed for the magic search.
+     */
+    MagicAttackTable(int[][] directionFactors, int range, long[] knownMagics, long seed) {
+        Random random = new Random(seed);
+        int tableSize = 0;
+        for (int square = 0; square < 64; square++) {
+            masks[square] = relevantBlockers(square, directionFactors, range);
+            offsets[square] = tableSize;
+            tableSize += 1 << Long.bitCount(masks[square]);
+        }
+        attacks = new long[tableSize];
+        for (int square = 0; square < 64; square++) {
+            findMagic(square, directionFactors, range, knownMagics == null ? 0 : knownMagics[square], random);
+        }
+    }
+
+    /**
+     * Looks up the squares attacked from a square.
+     * @param square the square of the rider.
+     * @param occupancy every occupied square on the board, of both colors.
+     * @return the attacked squares, including the first blocker of every ray.
+     */
+    long attacks(int square, long occupancy) {
+        return attacks[offsets[square] + (int) (((occupancy & masks[square]) * magics[square]) >>> shifts[square])];
+    }
+
+    private void findMagic(int square, int[][] directionFactors, int range, long knownMagic, Random random) {
+        long mask = masks[square];
+        int bits = Long.bitCount(mask);
+        int size = 1 << bits;
+        long[] occupancies = new long[size];
+        long[] references = new long[size];
+        // enumerate every subset of the mask
+        long subset = 0;
+        for (int i = 0; i < size; i++) {
+            occupancies[i] = subset;
+            references[i] = walkRays(square, directionFactors, range, subset);
+            subset = (subset - mask) & mask;
+        }
+
+        shifts[square] = 64 - bits;
+        long[] candidate = new long[size];
+        int[] epoch = new int[size];
+        for (int attempt = 1; ; attempt++) {
+            long magic = attempt == 1 && knownMagic != 0 ? knownMagic : random.nextLong() & random.nextLong() & random.nextLong();
+            if (bits >= 6 && Long.bitCount((mask * magic) >>> 56) < 6) {
+                // too few high bits to spread the mask over the index, cannot be a magic
+                continue;
+            }
+            boolean isValid = true;
+            for (int i = 0; i < size && isValid; i++) {
+                int index = (int) ((occupancies[i] * magic) >>> shifts[square]);
+                if (epoch[index] != attempt) {
+                    epoch[index] = attempt;
+                    candidate[index] = references[i];
+                } else if (candidate[index] != references[i]) {
+                    isValid = false;
+                }
+            }
+            if (isValid) {
+                magics[square] = magic;
+                System.arraycopy(candidate, 0, attacks, offsets[square], size);
+                return;
+            }
+        }
+    }
+
+    /**
+     * The squares whose occupancy can change the attack set: every square on a ray except the last one reached.
+     */
+    private static long relevantBlockers(int square, int[][] directionFactors, int range) {
+        long mask = 0;
+        for (int[] factor : directionFactors) {
+            int row = square / 8 + factor[0];
+            int column = square % 8 + factor[1];
+            for (int step = 1; step < range && isOnBoard(row + factor[0], column + factor[1]) && isOnBoard(row, column); step++) {
+                mask |= 1L << (row * 8 + column);
+                row += factor[0];
+                column += factor[1];
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Slow reference walk used to fill the table, one step at a time until a blocker, the range or the edge of the board.
+     */
+    static long walkRays(int square, int[][] directionFactors, int range, long occupancy) {
+        long attackSet = 0;
+        for (int[] factor : directionFactors) {
+            int row = square / 8 + factor[0];
+            int column = square % 8 + factor[1];
+            for (int step = 1; step <= range && isOnBoard(row, column); step++) {
+                long bit = 1L << (row * 8 + column);
+                attackSet |= bit;
+                if ((occupancy & bit) != 0) {
+                    break;
+                }
+                row += factor[0];
+                column += factor[1];
+            }
+        }
+        return attackSet;
+    }
+
+    private static boolean isOnBoard(int row, int column) {
+        return row >= 0 && row < 8 && column >= 0 && column < 8;
+    }
+}
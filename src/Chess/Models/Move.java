@@ -0,0 +1,39 @@
+package Chess.Models;
+
+/**
+ * A move packed into an int, for move lists and searches that should not allocate: the source square in the low
+ * 6 bits and the destination square in the next 6, both row * 8 + column.
+ */
+public final class Move {
+    /** No move. It cannot be a real move, whose squares differ. **/
+    public static final int NONE = 0;
+
+    private Move() {
+    }
+
+    public static int encode(int fromSquare, int toSquare) {
+        return fromSquare | (toSquare << 6);
+    }
+
+    public static int getFromSquare(int move) {
+        return move & 63;
+    }
+
+    public static int getToSquare(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    /**
+     * @return the move in coordinate notation, eg. e2e4 with white at the bottom of the board.
+     */
+    public static String toString(int move) {
+        return squareName(getFromSquare(move)) + squareName(getToSquare(move));
+    }
+
+    /**
+     * @return the name of a square, a8 for the top-left corner and h1 for the bottom-right corner.
+     */
+    public static String squareName(int square) {
+        return "" + (char) ('a' + square % 8) + (char) ('8' - square / 8);
+    }
+}
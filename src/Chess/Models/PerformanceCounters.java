@@ -0,0 +1,97 @@
+package Chess.Models;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters the engine, the rules and the board view publish for the diagnostics of the control panel, read by a
+ * timer on the event dispatch thread.
+ *
+ * Every counter has a single writer thread: the analysis thread for the search counters, the rules thread for the
+ * move generation time and the event dispatch thread for the frame time. A writer stores with lazySet, which orders
+ * the store without a fence, so publishing costs about a plain field write and never waits on a reader.
+ */
+public final class PerformanceCounters {
+    private static final PerformanceCounters DEFAULT = new PerformanceCounters();
+
+    // nodes searched since the start, across analyses
+    private final AtomicLong searchNodeCount = new AtomicLong();
+    // the last completed depth of the current analysis
+    private final AtomicInteger searchDepth = new AtomicInteger();
+    private final AtomicLong hashProbeCount = new AtomicLong();
+    private final AtomicLong hashHitCount = new AtomicLong();
+    // -1 until measured
+    private final AtomicLong moveGenerationNanos = new AtomicLong(-1);
+    private final AtomicLong frameNanos = new AtomicLong(-1);
+
+    /**
+     * The counters of the game window.
+     */
+    public static PerformanceCounters getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Adds to the nodes searched. Only called on the thread of the search.
+     */
+    public void addSearchNodes(long count) {
+        searchNodeCount.lazySet(searchNodeCount.get() + count);
+    }
+
+    public long getSearchNodeCount() {
+        return searchNodeCount.get();
+    }
+
+    public void setSearchDepth(int depth) {
+        searchDepth.lazySet(depth);
+    }
+
+    public int getSearchDepth() {
+        return searchDepth.get();
+    }
+
+    /**
+     * @param probeCount the evaluations that probed a hash table of the evaluator, since it was created.
+     * @param hitCount the probes that found their entry.
+     */
+    public void setHashCounts(long probeCount, long hitCount) {
+        hashProbeCount.lazySet(probeCount);
+        hashHitCount.lazySet(hitCount);
+    }
+
+    public long getHashProbeCount() {
+        return hashProbeCount.get();
+    }
+
+    public long getHashHitCount() {
+        return hashHitCount.get();
+    }
+
+    /**
+     * @param nanos the time the legal moves of the last clicked piece took to generate.
+     */
+    public void setMoveGenerationNanos(long nanos) {
+        moveGenerationNanos.lazySet(nanos);
+    }
+
+    /**
+     * @return the time of the last move generation, or -1 if there was none.
+     */
+    public long getMoveGenerationNanos() {
+        return moveGenerationNanos.get();
+    }
+
+    /**
+     * @param nanos the time the last frame of the board took to paint on the event dispatch thread.
+     */
+    public void setFrameNanos(long nanos) {
+        frameNanos.lazySet(nanos);
+    }
+
+    /**
+     * @return the time of the last frame, or -1 if none was painted.
+     */
+    public long getFrameNanos() {
+        return frameNanos.get();
+    }
+}
@@ -4,83 +4,57 @@ import Chess.Types.PlayerColor;
 
 /**
  * A piece has the following attributes:
- * MoveType: the types of move it can perform on the board
- * PieceType: One of the six chess pieces
- * RangeType: Either UNLIMITED or ONE_MOVE, eg. King is ONE_MOVE and Queen is UNLIMITED.
+ * PieceType: One of the chess pieces, or one of the custom pieces
  * PlayerColor: the color of the piece
+ * How each type moves is defined in Assets/pieces.txt, see PieceDefinitions.
+ *
+ * Pieces are immutable and there is exactly one instance per PieceType and PlayerColor, shared by every board and
+ * thread, so they can be compared with ==. Whether a pawn may still step twice depends on its square.
  */
-public class Piece {
-    public MoveType[] moveTypes;
-    public PieceType type;
-    public RangeType rangeType = RangeType.UNLIMITED;
-    public PlayerColor color;
+public final class Piece {
+    // the letter of each PieceType in the Board serializer, indexed by PieceType.ordinal()
+    static final char[] SERIALIZER_CODES = {'K', 'Q', 'B', 'H', 'R', 'P', 'Y', 'X'};
+    // the shared instances, indexed by PieceType.ordinal() and PlayerColor.ordinal()
+    private static final Piece[][] PIECES = createPieces();
 
-    /**
-     * The constructor for Piece class.
-     * @param serializerCode The code
-     * @param color color of the piece
-     */
-    Piece(char serializerCode,PlayerColor color) {
-        this.color = color;
-        switch (serializerCode) {
-            case 'K':
-                this.type = PieceType.KING;
-                this.moveTypes = new MoveType[]{MoveType.STRAIGHT, MoveType.DIAGONAL};
-                this.rangeType = RangeType.ONE_MOVE;
-                break;
-            case 'Q':
-                this.type = PieceType.QUEEN;
-                this.moveTypes = new MoveType[]{MoveType.STRAIGHT, MoveType.DIAGONAL};
-                break;
-            case 'B':
-                this.type = PieceType.BISHOP;
-                this.moveTypes = new MoveType[]{MoveType.DIAGONAL};
-                break;
-            case 'H':
-                this.type = PieceType.KNIGHT;
-                this.rangeType = RangeType.ONE_MOVE;
-                this.moveTypes = new MoveType[]{MoveType.KNIGHT};
-                break;
-            case 'R':
-                this.type = PieceType.ROOK;
-                this.moveTypes = new MoveType[]{MoveType.STRAIGHT};
-                break;
-            case 'P':
-                this.type = PieceType.PAWN;
-                this.rangeType = RangeType.ONE_MOVE;
-                this.moveTypes = new MoveType[]{MoveType.UP_ONCE, MoveType.SIDE_ATTACK, MoveType.UP_TWICE};
-                break;
-            case 'X':
-                this.type = PieceType.ELEPHANT;
-                this.rangeType = RangeType.ONE_MOVE;
-                this.moveTypes = new MoveType[]{MoveType.ELEPHANT};
-                break;
-            case 'Y':
-                this.type = PieceType.DRUNKEN_KNIGHT;
-                this.rangeType = RangeType.UNLIMITED;
-                this.moveTypes = new MoveType[]{MoveType.KNIGHT};
-                break;
+    public final PieceType type;
+    public final PlayerColor color;
 
-                default:
-                    assert false;
-                    break;
-        }
+    private Piece(PieceType type, PlayerColor color) {
+        this.type = type;
+        this.color = color;
     }
 
-    public Piece(Piece another) {
-        this.moveTypes = another.moveTypes;
-        this.type = another.type;
-        this.rangeType = another.rangeType;
-        this.color = another.color;
+    /**
+     * @return the shared piece of a type and color.
+     */
+    public static Piece of(PieceType type, PlayerColor color) {
+        return PIECES[type.ordinal()][color.ordinal()];
     }
 
-    void setHasMadeFirstMoveForPawn() {
-        assert this.type == PieceType.PAWN;
-        this.moveTypes = new MoveType[]{MoveType.UP_ONCE, MoveType.SIDE_ATTACK};
+    /**
+     * @param serializerCode the letter of the piece in the Board serializer
+     * @param color color of the piece
+     * @return the shared piece.
+     */
+    static Piece fromSerializerCode(char serializerCode, PlayerColor color) {
+        for (int i = 0; i < SERIALIZER_CODES.length; i++) {
+            if (SERIALIZER_CODES[i] == serializerCode) {
+                return PIECES[i][color.ordinal()];
+            }
+        }
+        assert false;
+        return null;
     }
-}
-
 
-enum RangeType {
-    ONE_MOVE, UNLIMITED
+    private static Piece[][] createPieces() {
+        Piece[][] pieces = new Piece[PieceType.values().length][];
+        for (PieceType type : PieceType.values()) {
+            pieces[type.ordinal()] = new Piece[PlayerColor.values().length];
+            for (PlayerColor color : PlayerColor.values()) {
+                pieces[type.ordinal()][color.ordinal()] = new Piece(type, color);
+            }
+        }
+        return pieces;
+    }
 }
@@ -0,0 +1,335 @@
+package Chess.Models;
+
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How every piece moves, read from a definitions file (see Assets/pieces.txt for the format) and compiled into
+ * attack tables. A piece is a list of components, each one a set of offsets that are leapt or ridden, with a range,
+ * whether it moves, captures or both, and whether it is only usable from the starting row.
+ *
+ * Besides the movement of every piece, the definitions compile the reverse lookups Board uses to find the attackers
+ * of a square, and the squares between two squares on every riding line for pins and check blocking.
+ */
+public final class PieceDefinitions {
+    public static final String DEFAULT_PATH = "Assets/pieces.txt";
+    // the starting rows, indexed by PlayerColor.ordinal(), for components marked initial
+    private static final long[] STARTING_ROWS = {0x000000000000FF00L, 0x00FF000000000000L};
+    private static PieceDefinitions defaultDefinitions;
+
+    /**
+     * The pieces of one color with a capturing component sharing the same table, for finding attackers by looking
+     * from the attacked square back to the pieces.
+     */
+    static final class AttackGroup {
+        // the attacks of the component reversed, from the attacked square to the squares attacking it
+        final MagicAttackTable table;
+        final long fromSquares;
+        int[] pieceTypes = new int[0];
+
+        AttackGroup(MagicAttackTable table, long fromSquares) {
+            this.table = table;
+            this.fromSquares = fromSquares;
+        }
+    }
+
+    private final PieceMovement[][] movements;
+    private final AttackGroup[][] riderGroups;
+    private final AttackGroup[][] leaperGroups;
+    private final long[] between = new long[64 * 64];
+    private final boolean[] isBetweenDefined = new boolean[64 * 64];
+
+    /**
+     * One parsed line of the definitions file, with the offsets as seen from white.
+     */
+    private static final class Component {
+        PieceType type;
+        List<int[]> factors = new ArrayList<int[]>();
+        int range;
+        boolean isQuiet = true;
+        boolean isCapture = true;
+        boolean isInitial = false;
+        int lineNumber;
+    }
+
+    private PieceDefinitions(List<Component> components) {
+        int typeCount = PieceType.values().length;
+        int colorCount = PlayerColor.values().length;
+        movements = new PieceMovement[typeCount][colorCount];
+        riderGroups = new AttackGroup[colorCount][];
+        leaperGroups = new AttackGroup[colorCount][];
+        for (PlayerColor color : PlayerColor.values()) {
+            List<AttackGroup> riders = new ArrayList<AttackGroup>();
+            List<AttackGroup> leapers = new ArrayList<AttackGroup>();
+            for (PieceType type : PieceType.values()) {
+                List<MagicAttackTable> tables = new ArrayList<MagicAttackTable>();
+                List<Long> quietMasks = new ArrayList<Long>();
+                List<Long> captureMasks = new ArrayList<Long>();
+                List<Long> fromSquares = new ArrayList<Long>();
+                for (Component component : components) {
+                    if (component.type != type) {
+                        continue;
+                    }
+                    long componentFromSquares = component.isInitial ? STARTING_ROWS[color.ordinal()] : ~0L;
+                    for (int[][] factors : splitIntoLines(component, color)) {
+                        tables.add(AttackTables.get(factors, component.range));
+                        quietMasks.add(component.isQuiet ? ~0L : 0L);
+                        captureMasks.add(component.isCapture ? ~0L : 0L);
+                        fromSquares.add(componentFromSquares);
+                        if (component.range > 1) {
+                            addBetween(factors, component.range, component.lineNumber);
+                        }
+                        if (component.isCapture) {
+                            MagicAttackTable reverseTable = AttackTables.get(negate(factors), component.range);
+                            addToAttackGroup(component.range > 1 ? riders : leapers, reverseTable, componentFromSquares, type);
+                        }
+                    }
+                }
+                movements[type.ordinal()][color.ordinal()] = new PieceMovement(
+                        tables.toArray(new MagicAttackTable[tables.size()]),
+                        toLongArray(quietMasks), toLongArray(captureMasks), toLongArray(fromSquares));
+            }
+            riderGroups[color.ordinal()] = riders.toArray(new AttackGroup[riders.size()]);
+            leaperGroups[color.ordinal()] = leapers.toArray(new AttackGroup[leapers.size()]);
+        }
+    }
+
+    /**
+     * The definitions in DEFAULT_PATH, read on first use.
+     * @throws IllegalStateException if the file cannot be read or is not valid.
+     */
+    static synchronized PieceDefinitions getDefault() {
+        if (defaultDefinitions == null) {
+            try {
+                defaultDefinitions = load(Paths.get(DEFAULT_PATH));
+            } catch (IOException | IllegalArgumentException e) {
+                throw new IllegalStateException("cannot load the piece definitions from " + DEFAULT_PATH, e);
+            }
+        }
+        return defaultDefinitions;
+    }
+
+    public static PieceDefinitions load(Path path) throws IOException {
+        return parse(Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param lines the lines of a definitions file.
+     * @throws IllegalArgumentException naming the line of the first error.
+     */
+    public static PieceDefinitions parse(List<String> lines) {
+        List<Component> components = new ArrayList<Component>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            components.add(parseComponent(line, i + 1));
+        }
+        return new PieceDefinitions(components);
+    }
+
+    PieceMovement getMovement(Piece piece) {
+        return movements[piece.type.ordinal()][piece.color.ordinal()];
+    }
+
+    /**
+     * Destinations of a piece on a square, without looking at its own king.
+     * @param occupancy every occupied square, of both colors.
+     * @param opponents the squares of the opponent's pieces.
+     */
+    public long getTargets(Piece piece, int square, long occupancy, long opponents) {
+        return getMovement(piece).targets(square, occupancy, opponents);
+    }
+
+    /**
+     * @return the groups of the riding pieces of a color, whose attacks can be blocked.
+     */
+    AttackGroup[] getRiderGroups(PlayerColor attackerColor) {
+        return riderGroups[attackerColor.ordinal()];
+    }
+
+    /**
+     * @return the groups of the leaping pieces of a color, whose attacks cannot be blocked.
+     */
+    AttackGroup[] getLeaperGroups(PlayerColor attackerColor) {
+        return leaperGroups[attackerColor.ordinal()];
+    }
+
+    /**
+     * @return the squares strictly between two squares on the line of a riding component, or 0.
+     */
+    long between(int fromSquare, int toSquare) {
+        return between[fromSquare * 64 + toSquare];
+    }
+
+    private static Component parseComponent(String line, int lineNumber) {
+        String[] tokens = line.split("\\s+");
+        Component component = new Component();
+        component.lineNumber = lineNumber;
+        if (tokens.length < 3) {
+            throw new IllegalArgumentException("line " + lineNumber + ": expected a piece type, leap or ride, and offsets");
+        }
+        try {
+            component.type = PieceType.valueOf(tokens[0]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("line " + lineNumber + ": unknown piece type " + tokens[0]);
+        }
+        if (tokens[1].equals("leap")) {
+            component.range = 1;
+        } else if (tokens[1].equals("ride")) {
+            component.range = MagicAttackTable.UNLIMITED_RANGE;
+        } else if (tokens[1].matches("ride[1-7]")) {
+            component.range = tokens[1].charAt(4) - '0';
+        } else {
+            throw new IllegalArgumentException("line " + lineNumber + ": expected leap, ride or rideN instead of " + tokens[1]);
+        }
+
+        boolean isSymmetric = false;
+        for (int i = 2; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (token.matches("-?[0-7],-?[0-7]")) {
+                String[] offsets = token.split(",");
+                int[] factor = {Integer.parseInt(offsets[0]), Integer.parseInt(offsets[1])};
+                if (factor[0] == 0 && factor[1] == 0) {
+                    throw new IllegalArgumentException("line " + lineNumber + ": 0,0 is not a move");
+                }
+                addFactor(component.factors, factor[0], factor[1]);
+            } else if (token.equals("symmetric")) {
+                isSymmetric = true;
+            } else if (token.equals("move")) {
+                component.isCapture = false;
+            } else if (token.equals("capture")) {
+                component.isQuiet = false;
+            } else if (token.equals("initial")) {
+                component.isInitial = true;
+            } else {
+                throw new IllegalArgumentException("line " + lineNumber + ": unknown option " + token);
+            }
+        }
+        if (component.factors.isEmpty()) {
+            throw new IllegalArgumentException("line " + lineNumber + ": no offsets");
+        }
+        if (!component.isQuiet && !component.isCapture) {
+            throw new IllegalArgumentException("line " + lineNumber + ": move and capture exclude each other");
+        }
+        if (isSymmetric) {
+            List<int[]> factors = component.factors;
+            component.factors = new ArrayList<int[]>();
+            for (int[] factor : factors) {
+                for (int[] orientation : new int[][]{{1, 1}, {1, -1}, {-1, 1}, {-1, -1}}) {
+                    addFactor(component.factors, factor[0] * orientation[0], factor[1] * orientation[1]);
+                    addFactor(component.factors, factor[1] * orientation[0], factor[0] * orientation[1]);
+                }
+            }
+        }
+        return component;
+    }
+
+    private static void addFactor(List<int[]> factors, int row, int column) {
+        for (int[] factor : factors) {
+            if (factor[0] == row && factor[1] == column) {
+                return;
+            }
+        }
+        factors.add(new int[]{row, column});
+    }
+
+    /**
+     * The offsets of a component for a color. The offsets of a rider are split by line shape, eg. the queen into
+     * straight and diagonal lines, so every table keeps to the size of a rook or bishop table.
+     */
+    private static List<int[][]> splitIntoLines(Component component, PlayerColor color) {
+        Map<Integer, List<int[]>> lines = new LinkedHashMap<Integer, List<int[]>>();
+        for (int[] factor : component.factors) {
+            int row = color == PlayerColor.WHITE ? factor[0] : -factor[0];
+            int shape = component.range == 1 ? 0 : Math.min(Math.abs(row), Math.abs(factor[1])) * 8 + Math.max(Math.abs(row), Math.abs(factor[1]));
+            List<int[]> line = lines.get(shape);
+            if (line == null) {
+                line = new ArrayList<int[]>();
+                lines.put(shape, line);
+            }
+            line.add(new int[]{row, factor[1]});
+        }
+        List<int[][]> factorSets = new ArrayList<int[][]>();
+        for (List<int[]> line : lines.values()) {
+            factorSets.add(line.toArray(new int[line.size()][]));
+        }
+        return factorSets;
+    }
+
+    private static long[] toLongArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private static int[][] negate(int[][] factors) {
+        int[][] negated = new int[factors.length][];
+        for (int i = 0; i < factors.length; i++) {
+            negated[i] = new int[]{-factors[i][0], -factors[i][1]};
+        }
+        return negated;
+    }
+
+    private static void addToAttackGroup(List<AttackGroup> groups, MagicAttackTable table, long fromSquares, PieceType type) {
+        AttackGroup group = null;
+        for (AttackGroup candidate : groups) {
+            if (candidate.table == table && candidate.fromSquares == fromSquares) {
+                group = candidate;
+            }
+        }
+        if (group == null) {
+            group = new AttackGroup(table, fromSquares);
+            groups.add(group);
+        }
+        for (int pieceType : group.pieceTypes) {
+            if (pieceType == type.ordinal()) {
+                return;
+            }
+        }
+        int[] pieceTypes = new int[group.pieceTypes.length + 1];
+        System.arraycopy(group.pieceTypes, 0, pieceTypes, 0, group.pieceTypes.length);
+        pieceTypes[group.pieceTypes.length] = type.ordinal();
+        group.pieceTypes = pieceTypes;
+    }
+
+    /**
+     * Records the squares between the two ends of every ray of a rider, in both directions.
+     * Two riders whose lines join the same squares through different squares cannot be told apart, so they are rejected.
+     */
+    private void addBetween(int[][] factors, int range, int lineNumber) {
+        for (int from = 0; from < 64; from++) {
+            for (int[] factor : factors) {
+                long squares = 0;
+                int row = from / 8 + factor[0];
+                int column = from % 8 + factor[1];
+                for (int step = 1; step <= range && row >= 0 && row < 8 && column >= 0 && column < 8; step++) {
+                    int to = row * 8 + column;
+                    for (int index : new int[]{from * 64 + to, to * 64 + from}) {
+                        if (isBetweenDefined[index] && between[index] != squares) {
+                            throw new IllegalArgumentException("line " + lineNumber + ": rides through squares another rider jumps over");
+                        }
+                        isBetweenDefined[index] = true;
+                        between[index] = squares;
+                    }
+                    squares |= 1L << to;
+                    row += factor[0];
+                    column += factor[1];
+                }
+            }
+        }
+    }
+}
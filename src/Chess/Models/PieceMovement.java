@@ -0,0 +1,37 @@
+package Chess.Models;
+
+/**
+ * The compiled movement of one piece type for one color: a list of attack tables, each one with the squares it may
+ * end on and the squares it may start from. Every piece goes through the same loop, whatever its definition.
+ */
+final class PieceMovement {
+    private final MagicAttackTable[] tables;
+    // ~0 if the component of the same index moves to empty squares, or 0
+    private final long[] quietMasks;
+    // ~0 if the component of the same index captures, or 0
+    private final long[] captureMasks;
+    // the squares the component of the same index can be used from
+    private final long[] fromSquares;
+
+    PieceMovement(MagicAttackTable[] tables, long[] quietMasks, long[] captureMasks, long[] fromSquares) {
+        this.tables = tables;
+        this.quietMasks = quietMasks;
+        this.captureMasks = captureMasks;
+        this.fromSquares = fromSquares;
+    }
+
+    /**
+     * Destinations of the piece on a square, without looking at its own king.
+     * @param occupancy every occupied square, of both colors.
+     * @param opponents the squares of the opponent's pieces.
+     */
+    long targets(int square, long occupancy, long opponents) {
+        long targets = 0;
+        for (int i = 0; i < tables.length; i++) {
+            long isUsable = -((fromSquares[i] >>> square) & 1);
+            long destinations = (~occupancy & quietMasks[i]) | (opponents & captureMasks[i]);
+            targets |= tables[i].attacks(square, occupancy) & destinations & isUsable;
+        }
+        return targets;
+    }
+}
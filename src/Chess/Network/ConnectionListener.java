@@ -0,0 +1,13 @@
+package Chess.Network;
+
+/**
+ * Receives the events of a NetworkConnection, on its network thread.
+ */
+public interface ConnectionListener {
+    public void onConnected();
+    public void onMessage(NetworkMessage message);
+    /**
+     * Not called when the connection is closed on this side.
+     */
+    public void onDisconnected(String reason);
+}
@@ -0,0 +1,212 @@
+package Chess.Network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A connection to one other instance, over a non-blocking TCP channel served by its own daemon thread.
+ *
+ * Either side can host: the host listens on a port and takes the first instance that connects, then stops listening.
+ * Messages are sent from any thread, they are queued and the network thread is woken up to write them. Nagle's
+ * algorithm is turned off, so a frame leaves as soon as it is written instead of waiting for more.
+ */
+public class NetworkConnection {
+    private static final int BUFFERED_MESSAGES = 64;
+
+    private final ConnectionListener listener;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private SocketChannel channel;
+    private boolean isConnected = false;
+    private final ConcurrentLinkedQueue<NetworkMessage> outgoing = new ConcurrentLinkedQueue<NetworkMessage>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(NetworkMessage.SIZE * BUFFERED_MESSAGES);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(NetworkMessage.SIZE * BUFFERED_MESSAGES);
+    private volatile boolean isClosed = false;
+
+    private NetworkConnection(ConnectionListener listener, ServerSocketChannel serverChannel, SocketChannel channel,
+                              String threadName) throws IOException {
+        this.listener = listener;
+        this.serverChannel = serverChannel;
+        this.channel = channel;
+        selector = Selector.open();
+        if (serverChannel != null) {
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } else {
+            channel.register(selector, SelectionKey.OP_CONNECT);
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Listens for one instance to connect.
+     * @param port the port to listen on, 0 for any free port.
+     */
+    public static NetworkConnection host(int port, ConnectionListener listener) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(port));
+            return new NetworkConnection(listener, serverChannel, null, "chess-network-host");
+        } catch (IOException e) {
+            serverChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Connects to an instance hosting on host and port. The listener is told when the connection is made.
+     */
+    public static NetworkConnection connect(String host, int port, ConnectionListener listener) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            configure(channel);
+            channel.connect(new InetSocketAddress(host, port));
+            return new NetworkConnection(listener, null, channel, "chess-network-guest");
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the port a host listens on, or -1 once connected.
+     */
+    public int getLocalPort() {
+        return serverChannel != null && serverChannel.isOpen() ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * Sends a message, or queues it until the connection is made. It can be called from any thread.
+     */
+    public void send(NetworkMessage message) {
+        outgoing.add(message);
+        selector.wakeup();
+    }
+
+    /**
+     * Closes the connection after writing what can be written right away. The listener is not told.
+     */
+    public void close() {
+        isClosed = true;
+        selector.wakeup();
+    }
+
+    private static void configure(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    private void serve() {
+        String reason = "the connection was closed";
+        try {
+            if (channel != null && channel.isConnected()) {
+                // connected right away, there will be no connect event
+                onConnected();
+            }
+            while (!isClosed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isConnectable()) {
+                        channel.finishConnect();
+                        onConnected();
+                    } else if (key.isReadable()) {
+                        read();
+                    }
+                }
+                flush();
+            }
+            flush();
+        } catch (EOFException e) {
+            reason = "the other player left";
+        } catch (IOException e) {
+            reason = e.getMessage();
+        } finally {
+            closeChannels();
+        }
+        if (!isClosed) {
+            isClosed = true;
+            listener.onDisconnected(reason);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel accepted = serverChannel.accept();
+        if (accepted == null) {
+            return;
+        }
+        configure(accepted);
+        channel = accepted;
+        // only one opponent
+        serverChannel.close();
+        onConnected();
+    }
+
+    private void onConnected() throws IOException {
+        channel.register(selector, SelectionKey.OP_READ);
+        isConnected = true;
+        listener.onConnected();
+    }
+
+    private void read() throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            throw new EOFException();
+        }
+        readBuffer.flip();
+        while (readBuffer.remaining() >= NetworkMessage.SIZE) {
+            listener.onMessage(NetworkMessage.read(readBuffer));
+        }
+        readBuffer.compact();
+    }
+
+    /**
+     * Writes the queued messages, and asks to be woken up when the channel can take the rest.
+     */
+    private void flush() throws IOException {
+        if (!isConnected) {
+            return;
+        }
+        while (writeBuffer.remaining() >= NetworkMessage.SIZE && !outgoing.isEmpty()) {
+            outgoing.poll().write(writeBuffer);
+        }
+        writeBuffer.flip();
+        channel.write(writeBuffer);
+        writeBuffer.compact();
+        boolean hasPendingWrites = writeBuffer.position() > 0 || !outgoing.isEmpty();
+        channel.keyFor(selector).interestOps(SelectionKey.OP_READ | (hasPendingWrites ? SelectionKey.OP_WRITE : 0));
+    }
+
+    private void closeChannels() {
+        try {
+            selector.close();
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // nothing left to tell the other side
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package Chess.Network;
+
+import Chess.Types.PlayerColor;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * A message between two instances playing one game, sent as a fixed-size frame of SIZE bytes: the type, the sequence,
+ * the move as a short and the position hash, big endian.
+ *
+ * - HELLO is sent by the host once the guest connects. The sequence is the protocol version, the move is 1 for the
+ *   funky starting position and 0 otherwise, and the hash is the one of the starting position.
+ * - MOVE is one move, see Move. The sequence is the number of moves played before it in the game, and the hash is the
+ *   one of the position after it, so the receiver can tell when the two boards stop agreeing.
+ * - RESTART mirrors the button of the same name, it carries nothing.
+ * - FORFEIT is sent by the player giving up, the move is the ordinal of their color. Both windows charge that color
+ *   rather than the player to move, which may differ between them while a MOVE is on its way.
+ */
+public final class NetworkMessage {
+    public enum Type {
+        HELLO, MOVE, RESTART, FORFEIT
+    }
+
+    public static final int SIZE = 15;
+    public static final int PROTOCOL_VERSION = 2;
+    private static final Type[] TYPES = Type.values();
+    private static final PlayerColor[] PLAYER_COLORS = PlayerColor.values();
+
+    public final Type type;
+    public final int sequence;
+    public final int move;
+    public final long positionHash;
+
+    private NetworkMessage(Type type, int sequence, int move, long positionHash) {
+        this.type = type;
+        this.sequence = sequence;
+        this.move = move;
+        this.positionHash = positionHash;
+    }
+
+    public static NetworkMessage hello(boolean isFunky, long startingPositionHash) {
+        return new NetworkMessage(Type.HELLO, PROTOCOL_VERSION, isFunky ? 1 : 0, startingPositionHash);
+    }
+
+    public static NetworkMessage move(int sequence, int move, long positionHash) {
+        return new NetworkMessage(Type.MOVE, sequence, move, positionHash);
+    }
+
+    public static NetworkMessage restart() {
+        return new NetworkMessage(Type.RESTART, 0, 0, 0);
+    }
+
+    /**
+     * @param forfeitingColor the color of the player giving up the game.
+     */
+    public static NetworkMessage forfeit(PlayerColor forfeitingColor) {
+        return new NetworkMessage(Type.FORFEIT, 0, forfeitingColor.ordinal(), 0);
+    }
+
+    /**
+     * @return the color of the player giving up, for a FORFEIT message.
+     */
+    public PlayerColor getForfeitingColor() {
+        assert type == Type.FORFEIT;
+        return PLAYER_COLORS[move];
+    }
+
+    /**
+     * Writes the frame at the position of the buffer, which must have SIZE bytes remaining.
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.put((byte) type.ordinal()).putInt(sequence).putShort((short) move).putLong(positionHash);
+    }
+
+    /**
+     * Reads a frame at the position of the buffer, which must have SIZE bytes remaining.
+     * @throws ProtocolException if the frame is not a message.
+     */
+    public static NetworkMessage read(ByteBuffer buffer) throws ProtocolException {
+        int type = buffer.get();
+        if (type < 0 || type >= TYPES.length) {
+            throw new ProtocolException("unknown message type " + type);
+        }
+        NetworkMessage message = new NetworkMessage(TYPES[type], buffer.getInt(), buffer.getShort() & 0xFFFF,
+                buffer.getLong());
+        if (message.type == Type.FORFEIT && message.move >= PLAYER_COLORS.length) {
+            throw new ProtocolException("unknown forfeiting color " + message.move);
+        }
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + sequence + " " + move + " " + Long.toHexString(positionHash);
+    }
+}
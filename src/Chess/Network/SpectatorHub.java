@@ -0,0 +1,442 @@
+package Chess.Network;
+
+import Chess.Models.Board;
+import Chess.Types.PlayerColor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Broadcasts one game to any number of spectators connected over TCP, from a single selector thread.
+ *
+ * Spectators only listen. A spectator who joins receives a snapshot of the current position, then every frame
+ * published after it:
+ * - SNAPSHOT, SNAPSHOT_BYTES bytes: the type, the player to move, the number of moves played, the position hash and
+ *   the position as written by Board.writePackedPosition. It is also sent to everyone when a game starts or a move is
+ *   taken back;
+ * - MOVE, MOVE_BYTES bytes: the type, the number of moves played before it, the move as a short and the hash after it,
+ *   the same layout as a NetworkMessage;
+ * - RESULT, RESULT_BYTES bytes: the type and the winner's PlayerColor.ordinal(), or DRAW.
+ *
+ * Every frame is encoded once into a ring of the last LOG_CAPACITY frames, shared by all spectators. Each spectator
+ * only has a cursor into the ring, which is their bounded queue: what they have not received yet is written in one
+ * gathering write, and a spectator falling more than LOG_CAPACITY frames behind is disconnected rather than slowing
+ * down the others.
+ *
+ * The publish methods can be called from any thread; the frames keep the order of the calls.
+ *
+ * A connection that cannot be set up is closed and reported on stderr, the hub keeps serving the others. When
+ * accepting itself fails, eg. out of file descriptors, accepting pauses for ACCEPT_RETRY_MILLIS at a time until it
+ * succeeds again.
+ */
+public class SpectatorHub {
+    public static final byte SNAPSHOT = 16;
+    public static final byte MOVE = (byte) NetworkMessage.Type.MOVE.ordinal();
+    public static final byte RESULT = 17;
+    public static final int SNAPSHOT_BYTES = 14 + Board.PACKED_POSITION_BYTES;
+    public static final int MOVE_BYTES = NetworkMessage.SIZE;
+    public static final int RESULT_BYTES = 2;
+    /** The winner of a RESULT frame for a drawn game. **/
+    public static final int DRAW = 2;
+    static final int LOG_CAPACITY = 1024;
+    // frames written to a spectator at once
+    private static final int MAX_BATCH = 64;
+    // kernel buffer of one spectator, on top of their frames in the ring
+    private static final int SEND_BUFFER_BYTES = 64 * 1024;
+    // how long accepting pauses after it failed, rather than failing again on every select
+    private static final long ACCEPT_RETRY_MILLIS = 100;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final SelectionKey serverKey;
+    private final ConcurrentLinkedQueue<Frame> published = new ConcurrentLinkedQueue<Frame>();
+    private volatile boolean isClosed = false;
+    private volatile int spectatorCount = 0;
+    private volatile long droppedCount = 0;
+
+    // everything below belongs to the hub thread
+    private final List<Spectator> spectators = new ArrayList<Spectator>();
+    private final ByteBuffer[] log = new ByteBuffer[LOG_CAPACITY];
+    // the number of frames ever added to the log, the next one goes to log[head % LOG_CAPACITY]
+    private long head = 0;
+    // the position after the published frames, null before the first game
+    private Board board;
+    private PlayerColor sideToMove;
+    private int moveCount;
+    // the winner's PlayerColor.ordinal() or DRAW once the game is over, -1 before
+    private int result = -1;
+    // what a spectator joining now receives first, rebuilt after every frame
+    private ByteBuffer joinFrames;
+    private final ByteBuffer[] batch = new ByteBuffer[MAX_BATCH + 1];
+    private final ByteBuffer discardBuffer = ByteBuffer.allocate(64);
+    // when accepting resumes after a failure, 0 while accepting
+    private long acceptPausedUntil = 0;
+    // the last accept failed, its failures are reported once until one succeeds
+    private boolean isAcceptFailing = false;
+
+    /**
+     * A frame to broadcast, with the position it starts from for a snapshot.
+     */
+    private static final class Frame {
+        final ByteBuffer bytes;
+        final Board position;
+        final PlayerColor sideToMove;
+        final int moveCount;
+
+        Frame(ByteBuffer bytes, Board position, PlayerColor sideToMove, int moveCount) {
+            this.bytes = bytes;
+            this.position = position;
+            this.sideToMove = sideToMove;
+            this.moveCount = moveCount;
+        }
+    }
+
+    private static final class Spectator {
+        final SocketChannel channel;
+        // the snapshot they joined with, until it is written
+        ByteBuffer joinFrames;
+        // the next frame of the log to write, and how much of it was already written
+        long nextFrame;
+        int frameOffset = 0;
+        // their socket is full, wait until it can take more
+        boolean isWaitingForWrite = false;
+
+        Spectator(SocketChannel channel, ByteBuffer joinFrames, long nextFrame) {
+            this.channel = channel;
+            this.joinFrames = joinFrames;
+            this.nextFrame = nextFrame;
+        }
+    }
+
+    private SpectatorHub(ServerSocketChannel serverChannel) throws IOException {
+        this.serverChannel = serverChannel;
+        selector = Selector.open();
+        serverKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "chess-spectators");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Listens for spectators.
+     * @param port the port to listen on, 0 for any free port.
+     */
+    public static SpectatorHub open(int port) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(port), 1024);
+            return new SpectatorHub(serverChannel);
+        } catch (IOException e) {
+            serverChannel.close();
+            throw e;
+        }
+    }
+
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getSpectatorCount() {
+        return spectatorCount;
+    }
+
+    /**
+     * @return the spectators disconnected for falling too far behind.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Starts the broadcast over from a position, for a new game or a move taken back.
+     * @param position copied, so it can be changed after the call.
+     * @param moveCount the moves played in the game up to the position.
+     */
+    public void publishPosition(Board position, PlayerColor sideToMove, int moveCount) {
+        publish(new Frame(null, new Board(position), sideToMove, moveCount));
+    }
+
+    /**
+     * @param positionHash the hash of the position after the move.
+     */
+    public void publishMove(int move, long positionHash) {
+        ByteBuffer bytes = ByteBuffer.allocate(MOVE_BYTES);
+        // the sequence is only known on the hub thread
+        NetworkMessage.move(0, move, positionHash).write(bytes);
+        publish(new Frame(bytes, null, null, 0));
+    }
+
+    /**
+     * @param winner the winner, or null for a draw.
+     */
+    public void publishResult(PlayerColor winner) {
+        ByteBuffer bytes = ByteBuffer.allocate(RESULT_BYTES);
+        bytes.put(RESULT).put((byte) (winner == null ? DRAW : winner.ordinal()));
+        publish(new Frame(bytes, null, null, 0));
+    }
+
+    public void close() {
+        isClosed = true;
+        selector.wakeup();
+    }
+
+    private void publish(Frame frame) {
+        published.add(frame);
+        selector.wakeup();
+    }
+
+    private void serve() {
+        try {
+            while (!isClosed) {
+                if (!published.isEmpty()) {
+                    selector.selectNow();
+                } else if (acceptPausedUntil != 0) {
+                    selector.select(Math.max(1, acceptPausedUntil - System.currentTimeMillis()));
+                } else {
+                    selector.select();
+                }
+                if (acceptPausedUntil != 0 && System.currentTimeMillis() >= acceptPausedUntil) {
+                    acceptPausedUntil = 0;
+                    serverKey.interestOps(SelectionKey.OP_ACCEPT);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Spectator spectator = (Spectator) key.attachment();
+                    if (key.isReadable()) {
+                        discardInput(spectator);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        spectator.isWaitingForWrite = false;
+                        write(spectator);
+                    }
+                }
+                // everything published since the last pass goes out in one write per spectator
+                if (addPublishedFrames()) {
+                    broadcast();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Spectators disconnected: " + e.getMessage());
+        } finally {
+            try {
+                selector.close();
+                serverChannel.close();
+                for (Spectator spectator : spectators) {
+                    spectator.channel.close();
+                }
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                if (!isAcceptFailing) {
+                    System.err.println("Spectators not accepted for now: " + e.getMessage());
+                    isAcceptFailing = true;
+                }
+                acceptPausedUntil = System.currentTimeMillis() + ACCEPT_RETRY_MILLIS;
+                serverKey.interestOps(0);
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            isAcceptFailing = false;
+            Spectator spectator = new Spectator(channel, joinFrames == null ? null : joinFrames.duplicate(), head);
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, SEND_BUFFER_BYTES);
+                channel.register(selector, SelectionKey.OP_READ, spectator);
+            } catch (IOException e) {
+                System.err.println("Spectator dropped while connecting: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException closeException) {
+                    // gone either way
+                }
+                continue;
+            }
+            spectators.add(spectator);
+            spectatorCount = spectators.size();
+            write(spectator);
+        }
+    }
+
+    /**
+     * Spectators have nothing to say, reading only tells when they leave.
+     */
+    private void discardInput(Spectator spectator) {
+        int read;
+        try {
+            discardBuffer.clear();
+            read = spectator.channel.read(discardBuffer);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            disconnect(spectator);
+        }
+    }
+
+    /**
+     * Moves the published frames to the log, keeping the position they lead to for the spectators joining later.
+     * A burst is moved in parts small enough for the spectators to keep up with.
+     * @return true if there were any.
+     */
+    private boolean addPublishedFrames() {
+        int count = 0;
+        Frame frame;
+        while (count < LOG_CAPACITY / 4 && (frame = published.poll()) != null) {
+            count++;
+            ByteBuffer bytes;
+            if (frame.position != null) {
+                board = frame.position;
+                sideToMove = frame.sideToMove;
+                moveCount = frame.moveCount;
+                result = -1;
+                bytes = encodeSnapshot();
+            } else if (frame.bytes.get(0) == MOVE) {
+                if (board == null) {
+                    continue;
+                }
+                bytes = frame.bytes;
+                bytes.putInt(1, moveCount);
+                board.makeMove(bytes.getShort(5) & 0xFFFF);
+                sideToMove = sideToMove.oppositeColor();
+                moveCount++;
+            } else {
+                bytes = frame.bytes;
+                result = bytes.get(1);
+            }
+            bytes.clear();
+            log[(int) (head % LOG_CAPACITY)] = bytes;
+            head++;
+        }
+
+        if (count == 0) {
+            return false;
+        }
+        if (board != null) {
+            joinFrames = ByteBuffer.allocate(SNAPSHOT_BYTES + (result < 0 ? 0 : RESULT_BYTES));
+            joinFrames.put(encodeSnapshot());
+            if (result >= 0) {
+                joinFrames.put(RESULT).put((byte) result);
+            }
+            joinFrames.flip();
+        }
+        return true;
+    }
+
+    private ByteBuffer encodeSnapshot() {
+        ByteBuffer bytes = ByteBuffer.allocate(SNAPSHOT_BYTES);
+        bytes.put(SNAPSHOT).put((byte) sideToMove.ordinal()).putInt(moveCount).putLong(board.getPositionHash());
+        board.writePackedPosition(bytes, bytes.position());
+        bytes.clear();
+        return bytes;
+    }
+
+    private void broadcast() throws IOException {
+        // backwards, so disconnecting does not skip anyone
+        for (int i = spectators.size() - 1; i >= 0; i--) {
+            Spectator spectator = spectators.get(i);
+            if (head - spectator.nextFrame > LOG_CAPACITY) {
+                droppedCount++;
+                disconnect(spectator);
+            } else if (!spectator.isWaitingForWrite) {
+                write(spectator);
+            }
+        }
+    }
+
+    /**
+     * Writes what a spectator has not received yet, as far as their socket takes it.
+     */
+    private void write(Spectator spectator) throws IOException {
+        int count = 0;
+        if (spectator.joinFrames != null) {
+            batch[count++] = spectator.joinFrames;
+        }
+        int firstLogFrame = count;
+        for (long frame = spectator.nextFrame; frame < head && count < batch.length; frame++) {
+            ByteBuffer bytes = log[(int) (frame % LOG_CAPACITY)];
+            // the log frames are shared, their position is only meaningful for this write
+            bytes.position(frame == spectator.nextFrame ? spectator.frameOffset : 0);
+            batch[count++] = bytes;
+        }
+        if (count == 0) {
+            return;
+        }
+
+        try {
+            spectator.channel.write(batch, 0, count);
+        } catch (IOException e) {
+            disconnect(spectator);
+            return;
+        }
+        boolean isComplete = true;
+        if (spectator.joinFrames != null) {
+            if (spectator.joinFrames.hasRemaining()) {
+                isComplete = false;
+            } else {
+                spectator.joinFrames = null;
+            }
+        }
+        for (int i = firstLogFrame; i < count && isComplete; i++) {
+            if (batch[i].hasRemaining()) {
+                spectator.frameOffset = batch[i].position();
+                isComplete = false;
+            } else {
+                spectator.nextFrame++;
+                spectator.frameOffset = 0;
+            }
+        }
+        if (!isComplete || spectator.nextFrame < head) {
+            spectator.isWaitingForWrite = true;
+            spectator.channel.keyFor(selector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else if (spectator.channel.keyFor(selector).interestOps() != SelectionKey.OP_READ) {
+            spectator.channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void disconnect(Spectator spectator) {
+        spectators.remove(spectator);
+        spectatorCount = spectators.size();
+        try {
+            spectator.channel.close();
+        } catch (IOException e) {
+            // gone either way
+        }
+    }
+}
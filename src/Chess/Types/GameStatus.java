@@ -0,0 +1,12 @@
+package Chess.Types;
+
+/**
+ * The state of the game for the player to move, see Board.evaluateStatus.
+ */
+public enum GameStatus {
+    ONGOING, CHECK, CHECKMATE, STALEMATE;
+
+    public boolean isGameOver() {
+        return this == CHECKMATE || this == STALEMATE;
+    }
+}
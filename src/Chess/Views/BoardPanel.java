@@ -2,33 +2,57 @@ package Chess.Views;
 
 import Chess.Models.Board;
 import Chess.Models.Coordinate;
+import Chess.Models.PerformanceCounters;
 import Chess.Models.Piece;
 import Chess.Types.PlayerColor;
 
 import java.awt.*;
+import java.awt.geom.Line2D;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
-import javax.imageio.ImageIO;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import javax.swing.*;
-import javax.swing.border.Border;
 
 
 /**
  * The view component for the game.
+ * The board is painted by this one component: tiles, pieces from the shared sprite atlas and highlight borders.
+ * Every change repaints only the tiles it touches, and moves slide the piece over a few frames driven by a Swing timer.
  */
 public class BoardPanel extends JPanel {
     public static Dimension TILE_SIZE = new Dimension(64,64);
     public static int MENU_BAR_HEIGHT = 18;
     static Color darkBackgroundColor = new Color(175,138,104);
     static Color lightBackgroundColor = new Color(237,217,185);
-    Map<String, Image> chessPieceImageMap = new HashMap<String, Image>();
-    JButton[][] pieceButtons;
+    static int HIGHLIGHT_BORDER_WIDTH = 4;
+    static int ANIMATION_DURATION_MS = 120;
+    static int ANIMATION_FRAME_MS = 15;
+    static Color bestLineColor = new Color(40, 150, 60, 170);
+    static Color otherLineColor = new Color(40, 110, 170, 120);
+
+    // shared by every panel, decoded once per process
+    PieceSpriteAtlas spriteAtlas;
+    // the pieces as currently shown, indexed by row and column
+    Piece[][] tilePieces = new Piece[8][8];
+    // one bit per highlighted tile, row * 8 + column
+    long highlightedTiles = 0;
+    Color highlightColor;
+    // the source and destination tile of the best analysis line, bordered under the move highlights
+    long analysisTiles = 0;
+    // the first move of each analysis line, best first, drawn as arrows over the pieces
+    Coordinate[] analysisFrom = new Coordinate[0];
+    Coordinate[] analysisTo = new Coordinate[0];
     public BoardPanelDelegate delegate;
 
+    // the piece sliding to animationTo, it is drawn on top of the tiles until the animation ends
+    Timer animationTimer;
+    Piece animatedPiece;
+    Coordinate animationFrom;
+    Coordinate animationTo;
+    long animationStartTime;
+    Rectangle lastAnimationBounds;
+
     /**
      * Initializer for BoardPanel, a JPanel instance.
      * Upon initialization, boardPanel prepares the image assets and renders the chess board and
@@ -36,10 +60,26 @@ public class BoardPanel extends JPanel {
      * @param boardModel the board data model of type Board, used to load and retrieve game state.
      */
     public BoardPanel(Board boardModel) {
-        super(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        super(null, true);
         this.setPreferredSize(new Dimension( TILE_SIZE.width * 8,TILE_SIZE.height * 8 + MENU_BAR_HEIGHT));
-        createSlicedImages();
+        this.setOpaque(true);
+        spriteAtlas = PieceSpriteAtlas.getShared();
         renderPieces(boardModel);
+        animationTimer = new Timer(ANIMATION_FRAME_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                onAnimationFrame();
+            }
+        });
+        this.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                Coordinate coord = getCoordinateAtPoint(e.getPoint());
+                if (coord != null && delegate != null) {
+                    delegate.onClickTile(coord);
+                }
+            }
+        });
     }
 
     /**
@@ -49,25 +89,52 @@ public class BoardPanel extends JPanel {
      */
     public void setTileHighlighted(Coordinate[] coords, PlayerColor color) {
         removeHighlightedBorderFromAllTiles();
+        highlightColor = color.getSwingColor();
         for (Coordinate coord : coords) {
-            JButton currentButton = pieceButtons[coord.row][coord.column];
-            assert currentButton != null;
-            Border coloredBorder = BorderFactory.createLineBorder(color.getSwingColor(), 4);
-            currentButton.getBorder().getClass();
-            currentButton.setBorder(coloredBorder);
+            highlightedTiles |= 1L << coord.toSquare();
+            repaintTile(coord);
         }
     }
 
     /**
-     * One call to remove all highlights on the board
+     * One call to remove all highlights on the board. Only the highlighted tiles are repainted.
      */
     public void removeHighlightedBorderFromAllTiles() {
-        for (JButton[] row : pieceButtons) {
-            for (JButton button: row) {
-                Border emptyBorder = BorderFactory.createEmptyBorder();
-                button.setBorder(emptyBorder);
-            }
+        long tiles = highlightedTiles;
+        highlightedTiles = 0;
+        while (tiles != 0) {
+            repaintTile(Coordinate.fromSquare(Long.numberOfTrailingZeros(tiles)));
+            tiles &= tiles - 1;
+        }
+    }
+
+    /**
+     * Shows the first move of each analysis line as an arrow, the best one first and bolder, and borders the tiles
+     * of the best one. Only the area of the old and new arrows is repainted.
+     * @param from the source of each move.
+     * @param to the destination of each move, in the same order.
+     */
+    public void setAnalysisArrows(Coordinate[] from, Coordinate[] to) {
+        Rectangle dirtyBounds = getAnalysisBounds();
+        analysisFrom = from;
+        analysisTo = to;
+        analysisTiles = 0;
+        if (from.length > 0) {
+            analysisTiles = (1L << from[0].toSquare()) | (1L << to[0].toSquare());
+        }
+        Rectangle bounds = getAnalysisBounds();
+        if (dirtyBounds == null) {
+            dirtyBounds = bounds;
+        } else if (bounds != null) {
+            dirtyBounds = dirtyBounds.union(bounds);
         }
+        if (dirtyBounds != null) {
+            repaint(dirtyBounds);
+        }
+    }
+
+    public void clearAnalysisArrows() {
+        setAnalysisArrows(new Coordinate[0], new Coordinate[0]);
     }
 
     public void setDelegate(BoardPanelDelegate delegate) {
@@ -81,6 +148,7 @@ public class BoardPanel extends JPanel {
         removeHighlightedBorderFromAllTiles();
         setTileEmpty(fromLocation);
         setTilePiece(toLocation, sourcePiece);
+        startAnimation(sourcePiece, fromLocation, toLocation);
     }
 
     /**
@@ -98,99 +166,190 @@ public class BoardPanel extends JPanel {
             setTileEmpty(toLocation);
         } else {
             setTilePiece(toLocation, toPiece);
+            // the piece goes back the way it came
+            startAnimation(toPiece, fromLocation, toLocation);
         }
+    }
 
+    /**
+     * Paints the tiles inside the clip, then the sliding piece if a move is being animated. The time it takes is
+     * published as the frame time of PerformanceCounters.
+     */
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        long startTime = System.nanoTime();
+        Rectangle clip = graphics.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        int firstRow = Math.max(0, clip.y / TILE_SIZE.height);
+        int lastRow = Math.min(7, (clip.y + clip.height - 1) / TILE_SIZE.height);
+        int firstColumn = Math.max(0, clip.x / TILE_SIZE.width);
+        int lastColumn = Math.min(7, (clip.x + clip.width - 1) / TILE_SIZE.width);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                paintTile(graphics, row, column);
+            }
+        }
+        if (clip.y + clip.height > TILE_SIZE.height * 8) {
+            // the strip below the board, kept for the menu bar of the window
+            graphics.setColor(getBackground());
+            graphics.fillRect(clip.x, TILE_SIZE.height * 8, clip.width, clip.y + clip.height - TILE_SIZE.height * 8);
+        }
+        if (animatedPiece != null) {
+            Rectangle bounds = getAnimationBounds();
+            drawPiece(graphics, animatedPiece, bounds.x, bounds.y);
+        }
+        // the weaker lines first, so the best one ends up on top
+        for (int i = analysisFrom.length - 1; i >= 0; i--) {
+            drawArrow((Graphics2D) graphics, analysisFrom[i], analysisTo[i], i == 0);
+        }
+        PerformanceCounters.getDefault().setFrameNanos(System.nanoTime() - startTime);
     }
+
+    private void drawArrow(Graphics2D graphics, Coordinate from, Coordinate to, boolean isBest) {
+        Graphics2D arrowGraphics = (Graphics2D) graphics.create();
+        arrowGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        arrowGraphics.setColor(isBest ? bestLineColor : otherLineColor);
+        float width = isBest ? TILE_SIZE.width / 7f : TILE_SIZE.width / 12f;
+        arrowGraphics.setStroke(new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        double x1 = (from.column + 0.5) * TILE_SIZE.width;
+        double y1 = (from.row + 0.5) * TILE_SIZE.height;
+        double x2 = (to.column + 0.5) * TILE_SIZE.width;
+        double y2 = (to.row + 0.5) * TILE_SIZE.height;
+        double angle = Math.atan2(y2 - y1, x2 - x1);
+        double headLength = width * 2.5;
+        // stop the shaft at the base of the head so the translucent colors do not overlap
+        arrowGraphics.draw(new Line2D.Double(x1, y1, x2 - Math.cos(angle) * headLength, y2 - Math.sin(angle) * headLength));
+        Polygon head = new Polygon();
+        head.addPoint((int) Math.round(x2), (int) Math.round(y2));
+        head.addPoint((int) Math.round(x2 - headLength * Math.cos(angle - 0.5) * 1.2), (int) Math.round(y2 - headLength * Math.sin(angle - 0.5) * 1.2));
+        head.addPoint((int) Math.round(x2 - headLength * Math.cos(angle + 0.5) * 1.2), (int) Math.round(y2 - headLength * Math.sin(angle + 0.5) * 1.2));
+        arrowGraphics.fillPolygon(head);
+        arrowGraphics.dispose();
+    }
+
     /**
-     * Private helper method for rendering chess pieces.
+     * @return the area covered by the analysis arrows, or null if there are none.
+     */
+    private Rectangle getAnalysisBounds() {
+        Rectangle bounds = null;
+        for (int i = 0; i < analysisFrom.length; i++) {
+            Rectangle tiles = getTileBounds(analysisFrom[i]).union(getTileBounds(analysisTo[i]));
+            bounds = bounds == null ? tiles : bounds.union(tiles);
+        }
+        return bounds;
+    }
+
+    private void paintTile(Graphics graphics, int row, int column) {
+        int x = column * TILE_SIZE.width;
+        int y = row * TILE_SIZE.height;
+        boolean isLightColor = (row + column) % 2 == 0;
+        graphics.setColor(isLightColor ? lightBackgroundColor : darkBackgroundColor);
+        graphics.fillRect(x, y, TILE_SIZE.width, TILE_SIZE.height);
+        Piece piece = tilePieces[row][column];
+        boolean isAnimationTarget = animatedPiece != null && animationTo.row == row && animationTo.column == column;
+        if (piece != null && !isAnimationTarget) {
+            drawPiece(graphics, piece, x, y);
+        }
+        if ((analysisTiles & (1L << (row * 8 + column))) != 0) {
+            graphics.setColor(bestLineColor);
+            for (int i = 0; i < HIGHLIGHT_BORDER_WIDTH / 2; i++) {
+                graphics.drawRect(x + i, y + i, TILE_SIZE.width - 1 - 2 * i, TILE_SIZE.height - 1 - 2 * i);
+            }
+        }
+        if ((highlightedTiles & (1L << (row * 8 + column))) != 0) {
+            graphics.setColor(highlightColor);
+            for (int i = 0; i < HIGHLIGHT_BORDER_WIDTH; i++) {
+                graphics.drawRect(x + i, y + i, TILE_SIZE.width - 1 - 2 * i, TILE_SIZE.height - 1 - 2 * i);
+            }
+        }
+    }
+
+    private void drawPiece(Graphics graphics, Piece piece, int x, int y) {
+        spriteAtlas.drawSprite((Graphics2D) graphics, piece.type, piece.color, x, y);
+    }
+
+    /**
+     * Private helper method for taking the pieces to render from the board model.
      */
     private void renderPieces(Board boardModel) {
-        pieceButtons = new JButton[8][8];
-        for (int i = 0; i < pieceButtons.length; i++) {
-            boolean isLightColor = i % 2 == 0;
-            for (int j = 0; j < pieceButtons[i].length; j++) {
-                Piece piece = boardModel.getPieceAtCoordinate(new Coordinate(i,j));
-                JButton button = new JButton();
-                if (piece == null) {
-                    ImageIcon clearIcon = new ImageIcon(
-                            new BufferedImage(TILE_SIZE.width, TILE_SIZE.height, BufferedImage.TYPE_INT_ARGB));
-                    button.setIcon(clearIcon);
-                } else {
-                    String pieceColor = piece.color.toString();
-                    String pieceName = piece.type.toString();
-                    Image image = chessPieceImageMap.get(pieceColor + pieceName);
-                    ImageIcon icon = new ImageIcon(image);
-                    button.setIcon(icon);
-                }
-                pieceButtons[i][j] = button;
-                Border emptyBorder = BorderFactory.createEmptyBorder();
-                button.setBorder(emptyBorder);
-                button.setMargin(new Insets(0,0,0,0));
-                button.setOpaque(true);
-                button.setPreferredSize(new Dimension(TILE_SIZE.width,TILE_SIZE.height));
-                button.setBackground(isLightColor ? lightBackgroundColor : darkBackgroundColor);
-                final Coordinate coord = new Coordinate(i,j);
-                button.addActionListener(new ActionListener() {
-                    @Override
-                    public void actionPerformed(ActionEvent e) {
-                        if (delegate != null) {
-                            delegate.onClickTile(coord);
-                        }
-                    }
-                });
-                this.add(button);
-                isLightColor = !isLightColor;
+        for (int i = 0; i < tilePieces.length; i++) {
+            for (int j = 0; j < tilePieces[i].length; j++) {
+                tilePieces[i][j] = boardModel.getPieceAtCoordinate(new Coordinate(i,j));
             }
         }
     }
 
     private void setTileEmpty(Coordinate coord) {
-        ImageIcon clearIcon = new ImageIcon(
-                new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB));
-        pieceButtons[coord.row][coord.column].setIcon(clearIcon);
+        tilePieces[coord.row][coord.column] = null;
+        repaintTile(coord);
     }
 
     private void setTilePiece(Coordinate coord, Piece piece) {
-        System.out.println("setting " + coord.row + coord.column);
-        String pieceColor = piece.color.toString();
-        String pieceName = piece.type.toString();
-        Image image = chessPieceImageMap.get(pieceColor + pieceName);
-        ImageIcon icon = new ImageIcon(image);
-        pieceButtons[coord.row][coord.column].setIcon(icon);
+        tilePieces[coord.row][coord.column] = piece;
+        repaintTile(coord);
+    }
+
+    private void repaintTile(Coordinate coord) {
+        repaint(getTileBounds(coord));
+    }
+
+    private Rectangle getTileBounds(Coordinate coord) {
+        return new Rectangle(coord.column * TILE_SIZE.width, coord.row * TILE_SIZE.height, TILE_SIZE.width, TILE_SIZE.height);
+    }
+
+    private Coordinate getCoordinateAtPoint(Point point) {
+        int row = point.y / TILE_SIZE.height;
+        int column = point.x / TILE_SIZE.width;
+        if (point.x < 0 || point.y < 0 || row > 7 || column > 7) {
+            return null;
+        }
+        return new Coordinate(row, column);
     }
 
     /**
-     * Prepare the image asset for rendering.
-     * Referenced from https://stackoverflow.com/questions/21077322/create-a-chess-board-with-jpanel
+     * Starts sliding a piece that is already on its destination tile. A running animation is finished first.
      */
-    private void createSlicedImages() {
-        try {
-            String[] piecesName = new String[] {"PAWN","BISHOP","KNIGHT","ROOK","QUEEN","KING"};
-            BufferedImage chessPieceImage = ImageIO.read(new File("Assets/chesspieces.png"));
-            for (int row = 0; row < 2; row++) {
-                for (int col = 0; col < 6; col++) {
-                    String color = row == 0 ? "WHITE" : "BLACK";
-                    Image icon = chessPieceImage.getSubimage(col * TILE_SIZE.width, row * TILE_SIZE.height, TILE_SIZE.width, TILE_SIZE.height);
-                    chessPieceImageMap.put(color + piecesName[col], icon);
-                    if (piecesName[col].equals("PAWN")) {
-                        //temp for elephant and yolo todo: make icons
-
-                    }
-                }
-            }
-            Image whiteElephantIcon = ImageIO.read(new File("Assets/white_elephant.png"));
-            Image blackElephantIcon = ImageIO.read(new File("Assets/black_elephant.png"));
-            Image whiteDrunken = ImageIO.read(new File("Assets/white_drunken_knight.png"));
-            Image blackDrunken= ImageIO.read(new File("Assets/black_drunken_knight.png"));
-            chessPieceImageMap.put("WHITE" + "DRUNKEN_KNIGHT", whiteDrunken);
-            chessPieceImageMap.put("BLACK" + "DRUNKEN_KNIGHT", blackDrunken);
-            chessPieceImageMap.put("WHITE" + "ELEPHANT", whiteElephantIcon);
-            chessPieceImageMap.put("BLACK" + "ELEPHANT", blackElephantIcon);
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
+    private void startAnimation(Piece piece, Coordinate fromLocation, Coordinate toLocation) {
+        finishAnimation();
+        animatedPiece = piece;
+        animationFrom = fromLocation;
+        animationTo = toLocation;
+        animationStartTime = System.currentTimeMillis();
+        lastAnimationBounds = getAnimationBounds();
+        repaint(lastAnimationBounds);
+        animationTimer.start();
+    }
+
+    /**
+     * Repaints the area the sliding piece left and the area it moved to.
+     */
+    private void onAnimationFrame() {
+        if (System.currentTimeMillis() - animationStartTime >= ANIMATION_DURATION_MS) {
+            finishAnimation();
+            return;
         }
+        Rectangle bounds = getAnimationBounds();
+        repaint(bounds.union(lastAnimationBounds));
+        lastAnimationBounds = bounds;
     }
 
-}
+    private void finishAnimation() {
+        if (animatedPiece == null) {
+            return;
+        }
+        animationTimer.stop();
+        animatedPiece = null;
+        repaint(lastAnimationBounds);
+        repaintTile(animationTo);
+    }
 
+    private Rectangle getAnimationBounds() {
+        double progress = Math.min(1.0, (System.currentTimeMillis() - animationStartTime) / (double) ANIMATION_DURATION_MS);
+        int x = (int) Math.round((animationFrom.column + (animationTo.column - animationFrom.column) * progress) * TILE_SIZE.width);
+        int y = (int) Math.round((animationFrom.row + (animationTo.row - animationFrom.row) * progress) * TILE_SIZE.height);
+        return new Rectangle(x, y, TILE_SIZE.width, TILE_SIZE.height);
+    }
+
+}
@@ -16,6 +16,8 @@ import java.awt.event.ActionListener;
 public class GameControlPanel extends JPanel {
     public static int PANEL_WIDTH = 100;
     public static int ELEMENT_HEIGHT  = 30;
+    public static int ANALYSIS_LABEL_HEIGHT = 60;
+    public static int DIAGNOSTICS_LABEL_HEIGHT = 60;
 
     public GameControlPanelDelegate delegate;
 
@@ -34,6 +36,9 @@ public class GameControlPanel extends JPanel {
     JButton resetButton = new JButton("Reset");
     JButton undoButton = new JButton("Undo");
     JButton funkyButton = new JButton("HELL YEAH");
+    JButton analysisButton = new JButton("Analyze");
+    JLabel analysisLabel = new JLabel("", SwingConstants.CENTER);
+    JLabel diagnosticsLabel = new JLabel("", SwingConstants.LEFT);
 
     public GameControlPanel(GameControllerState gameState){
         super(new FlowLayout(FlowLayout.LEFT, 0, 0));
@@ -59,6 +64,14 @@ public class GameControlPanel extends JPanel {
         turnDisplayLabel.setPreferredSize(elementSize);
         funkyLabel.setPreferredSize(elementSize);
         funkyButton.setPreferredSize(elementSize);
+        analysisButton.setPreferredSize(elementSize);
+        analysisLabel.setPreferredSize(new Dimension(PANEL_WIDTH, ANALYSIS_LABEL_HEIGHT));
+        analysisLabel.setVerticalAlignment(SwingConstants.TOP);
+        analysisLabel.setFont(analysisLabel.getFont().deriveFont(10f));
+        diagnosticsLabel.setPreferredSize(new Dimension(PANEL_WIDTH, DIAGNOSTICS_LABEL_HEIGHT));
+        diagnosticsLabel.setVerticalAlignment(SwingConstants.TOP);
+        diagnosticsLabel.setFont(diagnosticsLabel.getFont().deriveFont(9f));
+        diagnosticsLabel.setVisible(false);
 
         blackPlayerNameField.setBackground(this.getBackground());
         whitePlayerNameField.setBackground(this.getBackground());
@@ -76,9 +89,11 @@ public class GameControlPanel extends JPanel {
         this.add(turnDisplayLabel);
         this.add(forfeitButton);
         this.add(undoButton);
-        this.add(Box.createRigidArea(new Dimension(PANEL_WIDTH, 20))); // ditto
+        this.add(analysisButton);
+        this.add(analysisLabel); // also pads the funky button
         this.add(funkyLabel);
         this.add(funkyButton);
+        this.add(diagnosticsLabel);
     }
 
     // Setup triggers for buttons and link them to their corresponding delegate methods.
@@ -136,6 +151,15 @@ public class GameControlPanel extends JPanel {
             }
         });
 
+        analysisButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (delegate != null) {
+                    delegate.onClickAnalysis();
+                }
+            }
+        });
+
         funkyButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -164,6 +188,10 @@ public class GameControlPanel extends JPanel {
         this.resetButton.setEnabled(isInGame);
         this.forfeitButton.setEnabled(isInGame);
         this.funkyButton.setEnabled(!isInGame);
+        this.analysisButton.setEnabled(isInGame);
+        if (!isInGame) {
+            setAnalysisText("");
+        }
     }
 
     public void setPlayerName(String name, PlayerColor color) {
@@ -174,6 +202,10 @@ public class GameControlPanel extends JPanel {
         }
     }
 
+    public String getPlayerName(PlayerColor color) {
+        return color == PlayerColor.WHITE ? whitePlayerNameField.getText() : blackPlayerNameField.getText();
+    }
+
     public void setPlayerScore(int score, PlayerColor color) {
         if (color == PlayerColor.WHITE) {
             whitePlayerScoreLabel.setText("Score: " + Integer.toString(score));
@@ -190,6 +222,40 @@ public class GameControlPanel extends JPanel {
         }
     }
 
+    /**
+     * @param isAnalyzing true to offer stopping the analysis, false to offer starting it.
+     */
+    public void setAnalyzing(boolean isAnalyzing) {
+        analysisButton.setText(isAnalyzing ? "Stop" : "Analyze");
+    }
+
+    /**
+     * Shows the latest analysis, it may be html.
+     */
+    public void setAnalysisText(String text) {
+        analysisLabel.setText(text);
+    }
+
+    /**
+     * Shows the diagnostics section below the other controls, or hides it.
+     * The panel needs DIAGNOSTICS_LABEL_HEIGHT more height to show it.
+     */
+    public void setDiagnosticsVisible(boolean visible) {
+        diagnosticsLabel.setVisible(visible);
+        revalidate();
+    }
+
+    public boolean isDiagnosticsVisible() {
+        return diagnosticsLabel.isVisible();
+    }
+
+    /**
+     * Shows the latest performance figures, it may be html.
+     */
+    public void setDiagnosticsText(String text) {
+        diagnosticsLabel.setText(text);
+    }
+
     public void setUndoEnabled(boolean enabled) {
         this.undoButton.setEnabled(enabled);
     }
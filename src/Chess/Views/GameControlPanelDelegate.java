@@ -7,4 +7,5 @@ public interface GameControlPanelDelegate {
     public void onClickForfeit();
     public void onClickUndo();
     public void onClickFunky();
+    public void onClickAnalysis();
 }
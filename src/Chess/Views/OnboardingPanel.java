@@ -2,14 +2,59 @@ package Chess.Views;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 
 /**
- * Static onboarding view for showing welcome message and instructions.
+ * Onboarding view for showing welcome message and instructions, and for starting a game with a player on another
+ * computer.
  */
 public class OnboardingPanel extends JPanel {
+    public OnboardingPanelDelegate delegate;
+
+    JButton hostButton = new JButton("Host a network game");
+    JButton joinButton = new JButton("Join a network game");
+    JLabel networkStatusLabel = new JLabel("", SwingConstants.CENTER);
+
     public OnboardingPanel() {
+        super(new FlowLayout(FlowLayout.CENTER, 100, 10));
         JLabel welcomeMessageLabel = new JLabel("<html><center><br>Welcome!<br><br>To start game, first enter players' nicknames on the left side of this window.</center></html>", SwingConstants.CENTER);
         this.add(welcomeMessageLabel);
+        this.add(hostButton);
+        this.add(joinButton);
+        this.add(networkStatusLabel);
         this.setBackground(Color.white);
+
+        hostButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (delegate != null) {
+                    delegate.onClickHost();
+                }
+            }
+        });
+
+        joinButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (delegate != null) {
+                    delegate.onClickJoin();
+                }
+            }
+        });
+    }
+
+    public void setDelegate(OnboardingPanelDelegate delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Shows where a network game is at before it starts, and disables the buttons while it is being set up.
+     * @param status the text to show, empty when no network game is being set up.
+     */
+    public void setNetworkStatus(String status) {
+        networkStatusLabel.setText(status);
+        hostButton.setEnabled(status.isEmpty());
+        joinButton.setEnabled(status.isEmpty());
     }
 }
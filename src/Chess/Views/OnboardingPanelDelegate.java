@@ -0,0 +1,6 @@
+package Chess.Views;
+
+public interface OnboardingPanelDelegate {
+    public void onClickHost();
+    public void onClickJoin();
+}
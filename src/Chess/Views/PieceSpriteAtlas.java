@@ -0,0 +1,187 @@
+package Chess.Views;
+
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import javax.imageio.ImageIO;
+
+/**
+ * The piece sprites of the game, decoded once per process and shared by every BoardPanel.
+ * All sprites live in one image, one column per PieceType.ordinal() and one row per PlayerColor.ordinal().
+ * HiDPI screens get the sprites of a second atlas twice the size, from the image files ending in @2x next to the
+ * regular ones, eg. Assets/chesspieces@2x.png. A sprite without such a file is drawn from the regular atlas.
+ * The atlases never change after loading.
+ */
+public final class PieceSpriteAtlas {
+    private static final int HIGH_RESOLUTION_SCALE = 2;
+
+    private static CompletableFuture<PieceSpriteAtlas> sharedAtlas;
+
+    private final BufferedImage atlasImage;
+    private final BufferedImage highResolutionAtlasImage;
+    // whether highResolutionAtlasImage has the sprite, indexed by PlayerColor.ordinal() then PieceType.ordinal()
+    private final boolean[][] hasHighResolutionSprite;
+
+    private PieceSpriteAtlas(BufferedImage atlasImage, BufferedImage highResolutionAtlasImage,
+                             boolean[][] hasHighResolutionSprite) {
+        this.atlasImage = atlasImage;
+        this.highResolutionAtlasImage = highResolutionAtlasImage;
+        this.hasHighResolutionSprite = hasHighResolutionSprite;
+    }
+
+    /**
+     * Starts decoding the sprites in the background, the image files are read in parallel.
+     * Calling it again returns the same load.
+     */
+    public static synchronized CompletableFuture<PieceSpriteAtlas> preload() {
+        if (sharedAtlas == null) {
+            sharedAtlas = load();
+        }
+        return sharedAtlas;
+    }
+
+    /**
+     * Returns the shared atlas, waiting for the background load if it is still running.
+     * The game cannot run without its sprites, so a failed load exits like before.
+     */
+    public static PieceSpriteAtlas getShared() {
+        try {
+            return preload().join();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Draws one sprite, from the high resolution atlas when the graphics are scaled up and it has the sprite.
+     */
+    public void drawSprite(Graphics2D graphics, PieceType type, PlayerColor color, int x, int y) {
+        Dimension tileSize = BoardPanel.TILE_SIZE;
+        AffineTransform transform = graphics.getTransform();
+        boolean isScaledUp = Math.max(transform.getScaleX(), transform.getScaleY()) > 1;
+        boolean isHighResolution = isScaledUp && hasHighResolutionSprite[color.ordinal()][type.ordinal()];
+        BufferedImage image = isHighResolution ? highResolutionAtlasImage : atlasImage;
+        int spriteWidth = image.getWidth() / PieceType.values().length;
+        int spriteHeight = image.getHeight() / 2;
+        int spriteX = type.ordinal() * spriteWidth;
+        int spriteY = color.ordinal() * spriteHeight;
+        graphics.drawImage(image,
+                x, y, x + tileSize.width, y + tileSize.height,
+                spriteX, spriteY, spriteX + spriteWidth, spriteY + spriteHeight, null);
+    }
+
+    /**
+     * Reads the five image files and their @2x versions on the common pool, and assembles the atlases once they are
+     * all decoded.
+     * Referenced from https://stackoverflow.com/questions/21077322/create-a-chess-board-with-jpanel
+     */
+    private static CompletableFuture<PieceSpriteAtlas> load() {
+        final SpriteFiles regularFiles = new SpriteFiles("", false);
+        final SpriteFiles highResolutionFiles = new SpriteFiles("@2x", true);
+        return CompletableFuture.allOf(regularFiles.getLoad(), highResolutionFiles.getLoad())
+                .thenApply(done -> {
+                    BufferedImage atlasImage = createAtlasImage(1);
+                    regularFiles.drawInto(atlasImage, 1);
+                    BufferedImage highResolutionAtlasImage = createAtlasImage(HIGH_RESOLUTION_SCALE);
+                    boolean[][] hasHighResolutionSprite = highResolutionFiles.drawInto(highResolutionAtlasImage,
+                            HIGH_RESOLUTION_SCALE);
+                    return new PieceSpriteAtlas(atlasImage, highResolutionAtlasImage, hasHighResolutionSprite);
+                });
+    }
+
+    private static BufferedImage createAtlasImage(int scale) {
+        Dimension tileSize = BoardPanel.TILE_SIZE;
+        return new BufferedImage(tileSize.width * scale * PieceType.values().length, tileSize.height * scale * 2,
+                BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * The image files of one resolution, read in parallel.
+     */
+    private static final class SpriteFiles {
+        private final CompletableFuture<BufferedImage> chessPieces;
+        private final CompletableFuture<BufferedImage> whiteElephant;
+        private final CompletableFuture<BufferedImage> blackElephant;
+        private final CompletableFuture<BufferedImage> whiteDrunken;
+        private final CompletableFuture<BufferedImage> blackDrunken;
+
+        /**
+         * @param suffix added to the file names before their extension.
+         * @param isOptional whether a missing file is left out instead of failing the load.
+         */
+        SpriteFiles(String suffix, boolean isOptional) {
+            chessPieces = readImage("Assets/chesspieces" + suffix + ".png", isOptional);
+            whiteElephant = readImage("Assets/white_elephant" + suffix + ".png", isOptional);
+            blackElephant = readImage("Assets/black_elephant" + suffix + ".png", isOptional);
+            whiteDrunken = readImage("Assets/white_drunken_knight" + suffix + ".png", isOptional);
+            blackDrunken = readImage("Assets/black_drunken_knight" + suffix + ".png", isOptional);
+        }
+
+        CompletableFuture<Void> getLoad() {
+            return CompletableFuture.allOf(chessPieces, whiteElephant, blackElephant, whiteDrunken, blackDrunken);
+        }
+
+        /**
+         * Draws the sprites into an atlas whose tiles are scale times BoardPanel.TILE_SIZE.
+         * @return whether each sprite was drawn, indexed by PlayerColor.ordinal() then PieceType.ordinal().
+         */
+        boolean[][] drawInto(BufferedImage atlasImage, int scale) {
+            boolean[][] isDrawn = new boolean[2][PieceType.values().length];
+            Graphics2D atlasGraphics = atlasImage.createGraphics();
+            Dimension tileSize = new Dimension(BoardPanel.TILE_SIZE.width * scale, BoardPanel.TILE_SIZE.height * scale);
+            PieceType[] piecesType = new PieceType[] {PieceType.PAWN, PieceType.BISHOP, PieceType.KNIGHT, PieceType.ROOK, PieceType.QUEEN, PieceType.KING};
+            BufferedImage chessPieceImage = chessPieces.join();
+            if (chessPieceImage != null) {
+                for (int row = 0; row < 2; row++) {
+                    for (int col = 0; col < 6; col++) {
+                        PlayerColor color = row == 0 ? PlayerColor.WHITE : PlayerColor.BLACK;
+                        Image icon = chessPieceImage.getSubimage(col * tileSize.width, row * tileSize.height, tileSize.width, tileSize.height);
+                        drawIntoAtlas(atlasGraphics, tileSize, icon, piecesType[col], color, isDrawn);
+                    }
+                }
+            }
+            drawIntoAtlas(atlasGraphics, tileSize, whiteElephant.join(), PieceType.ELEPHANT, PlayerColor.WHITE, isDrawn);
+            drawIntoAtlas(atlasGraphics, tileSize, blackElephant.join(), PieceType.ELEPHANT, PlayerColor.BLACK, isDrawn);
+            drawIntoAtlas(atlasGraphics, tileSize, whiteDrunken.join(), PieceType.DRUNKEN_KNIGHT, PlayerColor.WHITE, isDrawn);
+            drawIntoAtlas(atlasGraphics, tileSize, blackDrunken.join(), PieceType.DRUNKEN_KNIGHT, PlayerColor.BLACK, isDrawn);
+            atlasGraphics.dispose();
+            return isDrawn;
+        }
+    }
+
+    /**
+     * @return the decoded image, or null for a missing optional file.
+     */
+    private static CompletableFuture<BufferedImage> readImage(final String path, final boolean isOptional) {
+        return CompletableFuture.supplyAsync(() -> {
+            File file = new File(path);
+            if (isOptional && !file.exists()) {
+                return null;
+            }
+            try {
+                return ImageIO.read(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static void drawIntoAtlas(Graphics2D atlasGraphics, Dimension tileSize, Image image, PieceType type,
+                                      PlayerColor color, boolean[][] isDrawn) {
+        if (image == null) {
+            return;
+        }
+        atlasGraphics.drawImage(image, type.ordinal() * tileSize.width, color.ordinal() * tileSize.height,
+                tileSize.width, tileSize.height, null);
+        isDrawn[color.ordinal()][type.ordinal()] = true;
+    }
+}
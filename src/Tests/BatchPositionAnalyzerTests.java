@@ -0,0 +1,114 @@
+package Tests;
+
+import Chess.Analysis.BatchPositionAnalyzer;
+import Chess.Models.Board;
+import Chess.Types.PlayerColor;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class BatchPositionAnalyzerTests extends TestCase {
+    public void testRowsComeBackInInputOrder() throws Exception {
+        // several batches of valid positions, with invalid lines here and there
+        Random random = new Random(43);
+        List<String> lines = new ArrayList<String>();
+        List<String> expectedRows = new ArrayList<String>();
+        for (int i = 0; i < 2600; i++) {
+            String line;
+            switch (i % 97) {
+                case 0:
+                    line = "";
+                    break;
+                case 1:
+                    line = BoardTests.getStartingBoard().substring(3);
+                    break;
+                case 2:
+                    line = "#Z0" + BoardTests.getStartingBoard().substring(3);
+                    break;
+                case 3:
+                    line = BoardTests.getStartingBoard();
+                    break;
+                case 4:
+                    line = BoardTests.getCheckmatedBoard();
+                    break;
+                case 5:
+                    line = BoardTests.getStalematedBoard();
+                    break;
+                case 6:
+                    line = "#R9" + BoardTests.getStartingBoard().substring(3);
+                    break;
+                case 7:
+                    // an empty square with the color of a piece
+                    line = BoardTests.getStartingBoard().substring(0, 48) + "#E0"
+                            + BoardTests.getStartingBoard().substring(51);
+                    break;
+                default:
+                    line = BoardTests.createRandomPosition(random);
+            }
+            lines.add(line);
+            expectedRows.add((i + 1) + "," + describe(line));
+        }
+        StringBuilder input = new StringBuilder();
+        for (String line : lines) {
+            input.append(line).append('\n');
+        }
+
+        // one thread waits on the oldest batch before reading on, three run batches side by side
+        for (int threadCount : new int[]{1, 3}) {
+            StringWriter output = new StringWriter();
+            long count = new BatchPositionAnalyzer(threadCount).analyze(
+                    new BufferedReader(new StringReader(input.toString())), output);
+            assertEquals(lines.size(), count);
+            String[] rows = output.toString().split("\n");
+            assertEquals(BatchPositionAnalyzer.CSV_HEADER, rows[0]);
+            assertEquals(lines.size() + 1, rows.length);
+            for (int i = 0; i < lines.size(); i++) {
+                assertEquals(expectedRows.get(i), rows[i + 1]);
+            }
+        }
+        assertTrue(expectedRows.get(0).endsWith(",-1,-1,invalid,invalid"));
+        assertTrue(expectedRows.get(2).endsWith(",-1,-1,invalid,invalid"));
+        assertTrue(expectedRows.get(3).endsWith(",20,20,none,none"));
+        assertTrue(expectedRows.get(4).endsWith(",none,checkmate"));
+        assertTrue(expectedRows.get(5).endsWith(",none,stalemate"));
+        assertTrue(expectedRows.get(6).endsWith(",-1,-1,invalid,invalid"));
+        assertTrue(expectedRows.get(7).endsWith(",-1,-1,invalid,invalid"));
+        int checkCount = 0;
+        for (String row : expectedRows) {
+            checkCount += row.contains(",check") ? 1 : 0;
+        }
+        assertTrue(checkCount + " positions with a check", checkCount > 100);
+    }
+
+    public void testEmptyInput() throws Exception {
+        StringWriter output = new StringWriter();
+        assertEquals(0, new BatchPositionAnalyzer(2).analyze(new BufferedReader(new StringReader("")), output));
+        assertEquals(BatchPositionAnalyzer.CSV_HEADER + "\n", output.toString());
+    }
+
+    /**
+     * @return the expected columns after the line number, from a board of its own rather than a reused one.
+     */
+    private static String describe(String line) {
+        if (!line.matches("(#[KQBHRPXY][01]|#E2){64}")) {
+            return "-1,-1,invalid,invalid";
+        }
+        Board board = new Board(line);
+        int whiteMoves = board.getCountForReachableMoves(PlayerColor.WHITE);
+        int blackMoves = board.getCountForReachableMoves(PlayerColor.BLACK);
+        return whiteMoves + "," + blackMoves + "," + describeStatus(board, PlayerColor.WHITE, whiteMoves) + ","
+                + describeStatus(board, PlayerColor.BLACK, blackMoves);
+    }
+
+    private static String describeStatus(Board board, PlayerColor color, int moveCount) {
+        if (moveCount == 0) {
+            return board.isKingInCheck(color) ? "checkmate" : "stalemate";
+        }
+        return board.isKingInCheck(color) ? "check" : "none";
+    }
+}
@@ -2,14 +2,19 @@ package Tests;
 
 import Chess.Models.Board;
 import Chess.Models.Coordinate;
+import Chess.Types.GameStatus;
 import Chess.Types.PlayerColor;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import junit.framework.TestCase;
 
 public class BoardTests extends TestCase{
+    // the pieces a random position is drawn from besides the kings, as serializer codes
+    private static final String RANDOM_PIECE_CODES = "QBHRPPPYX";
+
     public void testConstruction() {
         Board board = new Board(getStartingBoard());
         assertEquals("KING", board.getPieceNameAtCoordinate(new Coordinate(7,4)));
@@ -23,6 +28,18 @@ public class BoardTests extends TestCase{
         assert Arrays.deepEquals(correctReachableMoves, reachableMoves);
     }
 
+    public void testComputeReachableMovesForPawnsAfterFirstMove() {
+        Board board = new Board(getBoardWithPawns());
+        Board copy = new Board(board);
+        board.moveTo(new Coordinate(5,3), new Coordinate(6,3));
+        Coordinate[] reachableMoves = board.computeReachableMoves(new Coordinate(5,3));
+        assert Arrays.deepEquals(new Coordinate[]{new Coordinate(4,3)}, reachableMoves);
+
+        // the pawn on the copy has not moved
+        assertSame(board.getPieceAtCoordinate(new Coordinate(5,3)), copy.getPieceAtCoordinate(new Coordinate(6,3)));
+        assertEquals(3, copy.computeReachableMoves(new Coordinate(6,3)).length);
+    }
+
     public void testComputeReachableMovesForKing() {
         Board board = new Board(getBoardWithKing());
         Coordinate[] reachableMoves = board.computeReachableMoves(new Coordinate(4,3));
@@ -93,6 +110,40 @@ public class BoardTests extends TestCase{
         assert Arrays.deepEquals(correctReachableMovesList.toArray(), reachableMoves);
     }
 
+    public void testComputeReachableMovesForDrunkenKnight() {
+        Board board = new Board(getBoardWithDrunkenKnight());
+        Coordinate[] reachableMoves = board.computeReachableMoves(new Coordinate(4,3));
+        Coordinate[] correctReachableMoves = new Coordinate[]{
+                new Coordinate(0,1), new Coordinate(2,2),
+                new Coordinate(2,4), new Coordinate(2,7),
+                new Coordinate(3,1), new Coordinate(3,5),
+                new Coordinate(5,1), new Coordinate(5,5),
+                new Coordinate(6,2), new Coordinate(6,7)};
+        reachableMoves = sortCoordinateArray(reachableMoves);
+        assertTrue(Arrays.deepEquals(correctReachableMoves, reachableMoves));
+
+        // the frozen rules agree on the destinations
+        long referenceTargets = new ReferenceBoard(getBoardWithDrunkenKnight()).getLegalTargets(4 * 8 + 3);
+        assertEquals(correctReachableMoves.length, Long.bitCount(referenceTargets));
+        for (Coordinate coordinate : correctReachableMoves) {
+            assertTrue((referenceTargets & (1L << coordinate.toSquare())) != 0);
+        }
+    }
+
+    public void testComputeReachableMovesForPieceBlockingCheck() {
+        Board board = new Board(getBoardWithRookBlockingCheck());
+        Coordinate[] reachableMoves = board.computeReachableMoves(new Coordinate(3,0));
+        Coordinate[] correctReachableMoves = new Coordinate[]{new Coordinate(3,4)};
+        assert Arrays.deepEquals(correctReachableMoves, reachableMoves);
+    }
+
+    public void testComputeReachableMovesForPinnedDrunkenKnight() {
+        Board board = new Board(getBoardWithPinnedDrunkenKnight());
+        Coordinate[] reachableMoves = board.computeReachableMoves(new Coordinate(5,3));
+        Coordinate[] correctReachableMoves = new Coordinate[]{new Coordinate(3,2)};
+        assert Arrays.deepEquals(correctReachableMoves, reachableMoves);
+    }
+
     public void testMoveTo() {
         Board board = new Board(getRandomBoard());
         Coordinate sourceLocation = new Coordinate(7,5); //bishop
@@ -117,6 +168,63 @@ public class BoardTests extends TestCase{
         assert board.isPlayerInStalemate(PlayerColor.BLACK);
     }
 
+    public void testEvaluateStatus() {
+        Board board = new Board(getStartingBoard());
+        assertEquals(GameStatus.ONGOING, board.evaluateStatus(PlayerColor.WHITE));
+        assertEquals(GameStatus.CHECKMATE, new Board(getFoolsMate()).evaluateStatus(PlayerColor.WHITE));
+
+        // a stalemate is not a win
+        board = new Board(getStalematedBoard());
+        assertEquals(GameStatus.STALEMATE, board.evaluateStatus(PlayerColor.BLACK));
+        assert !board.isPlayerWinning(PlayerColor.WHITE);
+    }
+
+    public void testUndoLastMove() {
+        Board board = new Board(getRandomBoard());
+        long positionHash = board.getPositionHash();
+        Coordinate sourceLocation = new Coordinate(7,5); //bishop
+        Coordinate[] reachableMoves = board.computeReachableMoves(sourceLocation);
+        board.moveTo(reachableMoves[reachableMoves.length - 1], sourceLocation);
+        assert board.getPositionHash() != positionHash;
+        assert board.undoLastMove();
+        assertEquals(positionHash, board.getPositionHash());
+        assertEquals("BISHOP", board.getPieceNameAtCoordinate(sourceLocation));
+        assert !board.undoLastMove();
+    }
+
+    public void testIsDrawByRepetition() {
+        Board board = new Board(getStartingBoard());
+        shuffleKnights(board);
+        assertEquals(1, board.getRepetitionCount(3));
+        assert !board.isDrawByRepetition();
+        shuffleKnights(board);
+        assert board.isDrawByRepetition();
+
+        // a pawn move makes every earlier position unreachable
+        board.moveTo(new Coordinate(4,4), new Coordinate(6,4));
+        assertEquals(0, board.getHalfmoveClock());
+        assert !board.isRepetition();
+    }
+
+    public void testIsDrawByFiftyMoveRule() {
+        Board board = new Board(getStartingBoard());
+        for (int i = 0; i < 24; i++) {
+            shuffleKnights(board);
+        }
+        assert !board.isDrawByFiftyMoveRule();
+        shuffleKnights(board);
+        assertEquals(100, board.getHalfmoveClock());
+        assert board.isDrawByFiftyMoveRule();
+    }
+
+    // both players move a knight out and back, four plies
+    static void shuffleKnights(Board board) {
+        board.moveTo(new Coordinate(5,5), new Coordinate(7,6));
+        board.moveTo(new Coordinate(2,5), new Coordinate(0,6));
+        board.moveTo(new Coordinate(7,6), new Coordinate(5,5));
+        board.moveTo(new Coordinate(0,6), new Coordinate(2,5));
+    }
+
 
     static String getStartingBoard() {
         String blackFirstLine = "#R1#H1#B1#Q1#K1#B1#H1#R1";
@@ -128,6 +236,23 @@ public class BoardTests extends TestCase{
         return startingBoardSerializer;
     }
 
+    /**
+     * Plays random legal moves on a board, stopping early when the player to move has none.
+     * @return the board, for chaining.
+     */
+    static Board playRandomGame(Board board, PlayerColor color, Random random, int plies) {
+        int[] moves = new int[Board.MAX_LEGAL_MOVES];
+        for (int ply = 0; ply < plies; ply++) {
+            int moveCount = board.generateLegalMoves(color, moves, 0);
+            if (moveCount == 0) {
+                break;
+            }
+            board.makeMove(moves[random.nextInt(moveCount)]);
+            color = color.oppositeColor();
+        }
+        return board;
+    }
+
     static String getRandomBoard() {
         String blackFirstLine = "#R1#H1#B1#Q1#K1#B1#H1#R1";
         String blackPawns=      "#P1#P1#P1#E2#P1#P1#P1#P1";
@@ -180,6 +305,36 @@ public class BoardTests extends TestCase{
         return boardSerializer;
     }
 
+    static String getBoardWithDrunkenKnight() {
+        String line0 =     "#K1#E2#E2#E2#E2#E2#E2#E2";
+        String line2 =     "#E2#E2#E2#E2#R1#E2#E2#E2";
+        String line4 =     "#E2#E2#E2#Y0#E2#E2#E2#E2";
+        String line6 =     "#E2#E2#E2#E2#P0#E2#E2#E2";
+        String line7 =     "#E2#E2#E2#E2#E2#E2#E2#K0";
+        String emptyLine = "#E2#E2#E2#E2#E2#E2#E2#E2";
+        String boardSerializer = line0 + emptyLine + line2 + emptyLine + line4 + emptyLine + line6 + line7;
+        return boardSerializer;
+    }
+
+    static String getBoardWithRookBlockingCheck() {
+        String line0 =     "#K1#E2#E2#E2#R1#E2#E2#E2";
+        String line3 =     "#R0#E2#E2#E2#E2#E2#E2#E2";
+        String line7 =     "#E2#E2#E2#E2#K0#E2#E2#E2";
+        String emptyLine = "#E2#E2#E2#E2#E2#E2#E2#E2";
+        String boardSerializer = line0 + emptyLine + emptyLine + line3 + emptyLine + emptyLine + emptyLine + line7;
+        return boardSerializer;
+    }
+
+    static String getBoardWithPinnedDrunkenKnight() {
+        String line0 =     "#K1#E2#E2#E2#E2#E2#E2#E2";
+        String line3 =     "#E2#E2#Y1#E2#E2#E2#E2#E2";
+        String line5 =     "#E2#E2#E2#Y0#E2#E2#E2#E2";
+        String line7 =     "#E2#E2#E2#E2#K0#E2#E2#E2";
+        String emptyLine = "#E2#E2#E2#E2#E2#E2#E2#E2";
+        String boardSerializer = line0 + emptyLine + emptyLine + line3 + emptyLine + line5 + emptyLine + line7;
+        return boardSerializer;
+    }
+
     static String getBoardWithBishop() {
         String line0 = "#K1#E2#E2#E2#E2#E2#E2#R1";
         String line4 =     "#E2#E2#E2#B0#E2#E2#K0#E2";
@@ -240,10 +395,33 @@ public class BoardTests extends TestCase{
         return boardSerializer;
     }
 
+    /**
+     * @return a position with both kings and a random density of other pieces, which may be in check or mate.
+     */
+    static String createRandomPosition(Random random) {
+        String[] squares = new String[64];
+        Arrays.fill(squares, "#E2");
+        int whiteKingSquare = random.nextInt(64);
+        int blackKingSquare;
+        do {
+            blackKingSquare = random.nextInt(64);
+        } while (blackKingSquare == whiteKingSquare);
+        squares[whiteKingSquare] = "#K0";
+        squares[blackKingSquare] = "#K1";
+        double density = 0.05 + 0.4 * random.nextDouble();
+        for (int square = 0; square < 64; square++) {
+            if (squares[square].equals("#E2") && random.nextDouble() < density) {
+                squares[square] = "#" + RANDOM_PIECE_CODES.charAt(random.nextInt(RANDOM_PIECE_CODES.length()))
+                        + random.nextInt(2);
+            }
+        }
+        return String.join("", squares);
+    }
+
     static Coordinate[] sortCoordinateArray(Coordinate[] coordinates) {
         List<Coordinate> coordinateList = Arrays.asList(coordinates);
         coordinateList.sort((Coordinate c1, Coordinate c2)-> (c1.row * 8 + c1.column - c2.row * 8 - c2.column));
-        return (Coordinate[])coordinateList.toArray();
+        return coordinateList.toArray(new Coordinate[0]);
     }
 
 }
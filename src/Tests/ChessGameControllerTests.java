@@ -0,0 +1,143 @@
+package Tests;
+
+import Chess.Controllers.ChessGameController;
+import Chess.Controllers.ChessGameControllerDelegate;
+import Chess.Models.Board;
+import Chess.Models.Coordinate;
+import Chess.Types.PlayerColor;
+import Chess.Views.BoardPanel;
+
+import javax.swing.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class ChessGameControllerTests extends TestCase {
+    private ChessGameController controller;
+    private RecordingBoardPanel boardPanel;
+    // the game events the controller notified, eg. onWin[BLACK]
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    public void testOnlyTheLatestSelectionIsHighlighted() throws Exception {
+        createController();
+        // the pawn's moves are still being computed when the knight is selected
+        SwingUtilities.invokeAndWait(() -> {
+            controller.onClickTile(new Coordinate(6,5));
+            controller.onClickTile(new Coordinate(7,6));
+        });
+        waitForSize(boardPanel.highlights, 1);
+        Coordinate[] knightMoves = new Coordinate[]{new Coordinate(5,5), new Coordinate(5,7)};
+        assertTrue(Arrays.deepEquals(knightMoves, BoardTests.sortCoordinateArray(boardPanel.highlights.get(0))));
+
+        // the rules thread and the event dispatch thread keep the order of the clicks
+        select(6,5);
+        select(7,6);
+        assertEquals(3, boardPanel.highlights.size());
+        assertTrue(Arrays.deepEquals(knightMoves, BoardTests.sortCoordinateArray(boardPanel.highlights.get(2))));
+    }
+
+    public void testStatusOfAMoveTakenBackIsDropped() throws Exception {
+        createController();
+        // fool's mate
+        play(6,5, 5,5);
+        play(1,4, 3,4);
+        play(6,6, 4,6);
+        select(0,3);
+        // the mate is taken back before its status can arrive
+        SwingUtilities.invokeAndWait(() -> {
+            controller.onClickTile(new Coordinate(4,7));
+            controller.undoLastTurn();
+        });
+        // the status was computed on the rules thread before these highlights, and delivered before them
+        select(0,3);
+        assertFalse(events.toString(), events.contains("onWin[BLACK]"));
+
+        SwingUtilities.invokeAndWait(() -> controller.onClickTile(new Coordinate(4,7)));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!events.contains("onWin[BLACK]")) {
+            assertTrue(events.toString(), System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        assertEquals(Arrays.asList("onTurnChange[BLACK]", "onTurnChange[WHITE]", "onTurnChange[BLACK]",
+                "onTurnChange[WHITE]", "onTurnChange[BLACK]", "onTurnChange[WHITE]", "onWin[BLACK]"), getGameEvents());
+    }
+
+    private void createController() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            controller = new ChessGameController(false);
+            boardPanel = new RecordingBoardPanel(controller.boardModel);
+            controller.boardPanel = boardPanel;
+            controller.setDelegate((ChessGameControllerDelegate) Proxy.newProxyInstance(
+                    ChessGameControllerDelegate.class.getClassLoader(),
+                    new Class<?>[]{ChessGameControllerDelegate.class}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            events.add(method.getName() + (args == null ? "" : Arrays.toString(args)));
+                            return null;
+                        }
+                    }));
+        });
+    }
+
+    /**
+     * Clicks a piece and waits for its moves to be highlighted.
+     */
+    private void select(int row, int column) throws Exception {
+        int highlightCount = boardPanel.highlights.size();
+        SwingUtilities.invokeAndWait(() -> controller.onClickTile(new Coordinate(row, column)));
+        waitForSize(boardPanel.highlights, highlightCount + 1);
+    }
+
+    private void play(int fromRow, int fromColumn, int toRow, int toColumn) throws Exception {
+        select(fromRow, fromColumn);
+        Coordinate to = new Coordinate(toRow, toColumn);
+        assertTrue(Arrays.asList(boardPanel.highlights.get(boardPanel.highlights.size() - 1)).contains(to));
+        SwingUtilities.invokeAndWait(() -> controller.onClickTile(to));
+    }
+
+    /**
+     * @return the turn changes and the results, without the notifications the test does not follow.
+     */
+    private List<String> getGameEvents() {
+        List<String> gameEvents = new ArrayList<String>();
+        synchronized (events) {
+            for (String event : events) {
+                if (event.startsWith("onTurnChange") || event.startsWith("onWin") || event.startsWith("onStalemate")
+                        || event.startsWith("onDraw")) {
+                    gameEvents.add(event);
+                }
+            }
+        }
+        return gameEvents;
+    }
+
+    private static void waitForSize(List<?> list, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (list.size() < size) {
+            assertTrue("waited for " + size + " items, got " + list.size(), System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Keeps the moves of every selection highlighted, in order.
+     */
+    private static final class RecordingBoardPanel extends BoardPanel {
+        final List<Coordinate[]> highlights = Collections.synchronizedList(new ArrayList<Coordinate[]>());
+
+        RecordingBoardPanel(Board boardModel) {
+            super(boardModel);
+        }
+
+        @Override
+        public void setTileHighlighted(Coordinate[] coords, PlayerColor color) {
+            highlights.add(coords);
+            super.setTileHighlighted(coords, color);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package Tests;
+
+import Chess.Analysis.AlgebraicNotation;
+import Chess.Engine.AnalysisListener;
+import Chess.Engine.AnalysisUpdate;
+import Chess.Engine.EndgameTable;
+import Chess.Engine.Evaluator;
+import Chess.Engine.Search;
+import Chess.Models.Board;
+import Chess.Models.Move;
+import Chess.Types.PlayerColor;
+
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class EndgameTests extends TestCase {
+    private static final AnalysisListener IGNORE_UPDATES = new AnalysisListener() {
+        @Override
+        public void onDepthCompleted(AnalysisUpdate update) {
+        }
+    };
+
+    public void testMaterialKeyFollowsCaptures() {
+        Random random = new Random(7);
+        Board board = AlgebraicNotation.parsePosition("rdbqkbdr/pppppppp/8/8/8/8/PPPPPPPP/REBQKBER w - - 0 1");
+        int[] moves = new int[Board.MAX_LEGAL_MOVES];
+        PlayerColor color = PlayerColor.WHITE;
+        for (int ply = 0; ply < 200; ply++) {
+            int moveCount = board.generateLegalMoves(color, moves, 0);
+            if (moveCount == 0) {
+                break;
+            }
+            board.makeMove(moves[random.nextInt(moveCount)]);
+            color = color.oppositeColor();
+            // the same pieces on other squares have the same key
+            Board copy = AlgebraicNotation.parsePosition(AlgebraicNotation.formatPosition(board, color));
+            assertEquals(copy.getMaterialKey(), board.getMaterialKey());
+        }
+        long key = board.getMaterialKey();
+        while (board.undoLastMove()) {
+        }
+        assertEquals(AlgebraicNotation.parsePosition(AlgebraicNotation.STARTING_FEN.replace("n", "d")
+                .replace("N", "E")).getMaterialKey(), board.getMaterialKey());
+        assert key != board.getMaterialKey();
+    }
+
+    public void testEndingsAreFoundForBothColors() {
+        EndgameTable table = EndgameTable.parse(Arrays.asList("# comment", "", "K K draw", "KB K draw", "KQ K win",
+                "KD KP scale 40"));
+        assertTrue(table.isDraw(AlgebraicNotation.parsePosition("8/8/3k4/8/8/2K5/8/8 w - - 0 1")));
+        assertTrue(table.isDraw(AlgebraicNotation.parsePosition("8/8/3k4/8/8/2K5/8/6b1 w - - 0 1")));
+        assertFalse(table.isDraw(AlgebraicNotation.parsePosition("8/8/3k4/8/8/2K5/8/5bb1 w - - 0 1")));
+
+        EndgameTable.Endgame endgame = table.lookUp(AlgebraicNotation.parsePosition("8/8/3k4/8/8/2K5/8/6q1 w - - 0 1"));
+        assertEquals(EndgameTable.Rule.WIN, endgame.rule);
+        assertEquals(PlayerColor.BLACK, endgame.strongSide);
+        endgame = table.lookUp(AlgebraicNotation.parsePosition("8/8/3k4/8/3P4/2K5/8/6d1 w - - 0 1"));
+        assertEquals(40, endgame.scaleFactor);
+        assertNull(table.lookUp(AlgebraicNotation.parsePosition("8/8/3k4/8/3P4/2K5/8/8 w - - 0 1")));
+
+        try {
+            EndgameTable.parse(Arrays.asList("K K draw", "KD K scale"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("line 2"));
+        }
+    }
+
+    public void testSearchKnowsEndings() {
+        EndgameTable table = EndgameTable.parse(Arrays.asList("KN K draw", "KR K win"));
+        Search search = new Search(new Evaluator(), table);
+        // the bishop is worth more than the knight, trading it for a knight that cannot mate saves black
+        Board board = AlgebraicNotation.parsePosition("8/8/3k4/8/8/2Kn4/8/4B3 b - - 0 1");
+        AnalysisUpdate update = search.analyze(board, PlayerColor.BLACK, 1, 4, IGNORE_UPDATES);
+        assertEquals(0, update.lines.get(0).score);
+        assertEquals("d3e1", Move.toString(update.lines.get(0).moves[0]));
+
+        // taking the bishop leaves a rook that mates
+        board = AlgebraicNotation.parsePosition("8/8/3k4/8/8/2K5/8/3bR3 w - - 0 1");
+        update = search.analyze(board, PlayerColor.WHITE, 1, 4, IGNORE_UPDATES);
+        assertTrue(update.lines.get(0).score + "", update.lines.get(0).score > EndgameTable.KNOWN_WIN_SCORE);
+        assertEquals("e1d1", Move.toString(update.lines.get(0).moves[0]));
+    }
+}
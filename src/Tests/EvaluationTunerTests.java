@@ -0,0 +1,140 @@
+package Tests;
+
+import Chess.Analysis.EvaluationTuner;
+import Chess.Analysis.PositionCorpus;
+import Chess.Analysis.PositionCorpusWriter;
+import Chess.Engine.EvaluationParameters;
+import Chess.Engine.Evaluator;
+import Chess.Models.Board;
+import Chess.Types.PlayerColor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class EvaluationTunerTests extends TestCase {
+    private static final int POSITION_COUNT = 3000;
+
+    public void testGradientMatchesFiniteDifferences() throws Exception {
+        EvaluationTuner tuner = createTuner();
+        try {
+            double[] parameters = getDefaultParameters();
+            double scale = 1.0;
+            double[] gradient = tuner.computeGradient(parameters, scale);
+            int checkedCount = 0;
+            for (int i = 0; i < EvaluationParameters.COUNT; i++) {
+                double step = 1e-3;
+                double[] shifted = parameters.clone();
+                shifted[i] = parameters[i] + step;
+                double errorAbove = tuner.computeError(shifted, scale);
+                shifted[i] = parameters[i] - step;
+                double errorBelow = tuner.computeError(shifted, scale);
+                double difference = (errorAbove - errorBelow) / (2 * step);
+                assertEquals(EvaluationParameters.getNames()[i], difference, gradient[i],
+                        1e-4 * Math.max(Math.abs(difference), 1e-6));
+                checkedCount += gradient[i] != 0 ? 1 : 0;
+            }
+            // most parameters have features in the corpus
+            assertTrue(checkedCount + " parameters with a gradient", checkedCount > EvaluationParameters.COUNT / 2);
+        } finally {
+            tuner.shutdown();
+        }
+    }
+
+    public void testTuningLowersTheError() throws Exception {
+        EvaluationTuner tuner = createTuner();
+        try {
+            // the records without a result are left out
+            assertEquals(POSITION_COUNT - POSITION_COUNT / 10, tuner.getPositionCount());
+            double[] parameters = getDefaultParameters();
+            for (int i = 0; i < parameters.length; i++) {
+                parameters[i] /= 4;
+            }
+            double scale = tuner.fitScale(parameters);
+            double initialError = tuner.computeError(parameters, scale);
+            double[] tuned = tuner.tune(parameters, scale, 100, null);
+            double tunedError = tuner.computeError(tuned, scale);
+            assertTrue(tunedError + " after tuning, " + initialError + " before", tunedError < initialError * 0.99);
+        } finally {
+            tuner.shutdown();
+        }
+    }
+
+    public void testParametersWriteThenParse() throws Exception {
+        int[] values = new int[EvaluationParameters.COUNT];
+        Random random = new Random(37);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(2001) - 1000;
+        }
+        Path path = Files.createTempFile("evaluation", ".txt");
+        try {
+            new EvaluationParameters(values).write(path, Arrays.asList("tuned on nothing", "second comment"));
+            EvaluationParameters read = EvaluationParameters.load(path);
+            assertTrue(Arrays.equals(values, read.toArray()));
+
+            // the default parameters come back the same way
+            EvaluationParameters.getDefault().write(path, Collections.<String>emptyList());
+            assertTrue(Arrays.equals(EvaluationParameters.getDefault().toArray(),
+                    EvaluationParameters.load(path).toArray()));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * @return a tuner on 2 threads, loaded with positions of random games whose results follow the evaluation with
+     * some noise, one in ten without a result.
+     */
+    private static EvaluationTuner createTuner() throws Exception {
+        Path path = Files.createTempFile("corpus", ".bin");
+        EvaluationTuner tuner = new EvaluationTuner(2);
+        try {
+            Evaluator evaluator = new Evaluator();
+            Random random = new Random(41);
+            int[] moves = new int[Board.MAX_LEGAL_MOVES];
+            try (PositionCorpusWriter writer = new PositionCorpusWriter(path, true)) {
+                Board board = new Board(BoardTests.getStartingBoard());
+                PlayerColor color = PlayerColor.WHITE;
+                int ply = 0;
+                for (int record = 0; record < POSITION_COUNT; record++) {
+                    int moveCount = board.generateLegalMoves(color, moves, 0);
+                    if (moveCount == 0 || ply > 120) {
+                        board = new Board(BoardTests.getStartingBoard());
+                        color = PlayerColor.WHITE;
+                        ply = 0;
+                        moveCount = board.generateLegalMoves(color, moves, 0);
+                    }
+                    board.makeMove(moves[random.nextInt(moveCount)]);
+                    color = color.oppositeColor();
+                    ply++;
+                    int evaluation = evaluator.evaluate(board, PlayerColor.WHITE) + (int) (random.nextGaussian() * 150);
+                    byte result = evaluation > 100 ? PositionCorpus.RESULT_WHITE_WINS
+                            : evaluation < -100 ? PositionCorpus.RESULT_BLACK_WINS : PositionCorpus.RESULT_DRAW;
+                    writer.append(board, record / 100, ply,
+                            record % 10 == 9 ? PositionCorpus.RESULT_UNKNOWN : result);
+                }
+            }
+            try (PositionCorpus corpus = PositionCorpus.open(path)) {
+                tuner.loadPositions(corpus);
+            }
+            return tuner;
+        } catch (Exception e) {
+            tuner.shutdown();
+            throw e;
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static double[] getDefaultParameters() {
+        int[] values = EvaluationParameters.getDefault().toArray();
+        double[] parameters = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            parameters[i] = values[i];
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,128 @@
+package Tests;
+
+import Chess.Analysis.GameDatabase;
+import Chess.Analysis.PositionCorpus;
+import Chess.Models.Board;
+import Chess.Types.PlayerColor;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import junit.framework.TestCase;
+
+public class GameDatabaseTests extends TestCase {
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("games");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.toFile().listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+        Files.delete(directory);
+    }
+
+    public void testGameRoundTrip() throws Exception {
+        Board board = BoardTests.playRandomGame(new Board(BoardTests.getStartingBoard()), PlayerColor.WHITE,
+                new Random(1), 30);
+        try (GameDatabase database = GameDatabase.open(directory)) {
+            assertEquals(0, database.append(board, PlayerColor.WHITE, PositionCorpus.RESULT_BLACK_WINS));
+            GameDatabase.Game game = database.readGame(0);
+            assertEquals(PositionCorpus.RESULT_BLACK_WINS, game.result);
+            assertEquals(PlayerColor.WHITE, game.firstToMove);
+            assertEquals(new Board(BoardTests.getStartingBoard()).getPositionHash(), game.startPosition.getPositionHash());
+            assertEquals(board.getMoveCount(), game.moves.length);
+            for (int move : game.moves) {
+                game.startPosition.makeMove(move);
+            }
+            assertEquals(board.getPositionHash(), game.startPosition.getPositionHash());
+        }
+    }
+
+    public void testIndexFindsEveryGameThatReachedAPosition() throws Exception {
+        Random random = new Random(7);
+        List<Board> games = new ArrayList<Board>();
+        List<Byte> results = new ArrayList<Byte>();
+        try (GameDatabase database = GameDatabase.open(directory)) {
+            // two updates, the second one indexes only the games appended after the first one
+            for (int update = 0; update < 2; update++) {
+                for (int i = 0; i < 1500; i++) {
+                    Board board = BoardTests.playRandomGame(new Board(BoardTests.getStartingBoard()),
+                            PlayerColor.WHITE, random, 4 + random.nextInt(20));
+                    byte result = (byte) random.nextInt(4);
+                    database.append(board, PlayerColor.WHITE, result);
+                    games.add(board);
+                    results.add(result);
+                }
+                assertEquals(1500, database.updateIndex(2));
+                assertEquals(games.size(), database.getIndexedGameCount());
+                assertFindsGames(database, games, results, random);
+            }
+        }
+        // the index is read back from the files, and has nothing to add
+        try (GameDatabase database = GameDatabase.open(directory)) {
+            assertEquals(games.size(), database.getGameCount());
+            assertEquals(0, database.updateIndex(1));
+            assertFindsGames(database, games, results, random);
+        }
+    }
+
+    /**
+     * Looks up positions of random games, and compares with the games that reached them move by move.
+     */
+    private static void assertFindsGames(GameDatabase database, List<Board> games, List<Byte> results, Random random) {
+        List<Set<Long>> gameHashes = new ArrayList<Set<Long>>();
+        for (Board game : games) {
+            gameHashes.add(getPositionHashes(game));
+        }
+        for (int query = 0; query < 20; query++) {
+            Board game = games.get(random.nextInt(games.size()));
+            long hash = getPositionHash(game, random.nextInt(game.getMoveCount() + 1));
+            List<Integer> expectedIds = new ArrayList<Integer>();
+            int[] expectedCounts = new int[4];
+            for (int id = 0; id < games.size(); id++) {
+                if (gameHashes.get(id).contains(hash)) {
+                    expectedIds.add(id);
+                    expectedCounts[results.get(id)]++;
+                }
+            }
+            GameDatabase.PositionStatistics statistics = database.findGames(hash, 10);
+            assertEquals(expectedIds.size(), statistics.gameCount);
+            assertEquals(expectedCounts[PositionCorpus.RESULT_WHITE_WINS], statistics.whiteWins);
+            assertEquals(expectedCounts[PositionCorpus.RESULT_BLACK_WINS], statistics.blackWins);
+            assertEquals(expectedCounts[PositionCorpus.RESULT_DRAW], statistics.draws);
+            assertEquals(Math.min(10, expectedIds.size()), statistics.gameIds.length);
+            for (int i = 0; i < statistics.gameIds.length; i++) {
+                assertEquals((int) expectedIds.get(i), statistics.gameIds[i]);
+            }
+        }
+    }
+
+    private static long getPositionHash(Board game, int ply) {
+        Board board = new Board(game);
+        while (board.getMoveCount() > ply) {
+            board.undoLastMove();
+        }
+        return board.getPositionHash();
+    }
+
+    private static Set<Long> getPositionHashes(Board game) {
+        Set<Long> hashes = new HashSet<Long>();
+        Board board = new Board(game);
+        hashes.add(board.getPositionHash());
+        while (board.undoLastMove()) {
+            hashes.add(board.getPositionHash());
+        }
+        return hashes;
+    }
+}
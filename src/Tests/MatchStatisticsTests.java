@@ -0,0 +1,81 @@
+package Tests;
+
+import Chess.Analysis.MatchStatistics;
+
+import junit.framework.TestCase;
+
+public class MatchStatisticsTests extends TestCase {
+    public void testEloAndScoreAreInverses() {
+        for (int elo = -800; elo <= 800; elo += 25) {
+            assertEquals(elo, MatchStatistics.scoreToElo(MatchStatistics.eloToScore(elo)), 1e-6);
+        }
+        for (double score = 0.01; score < 1; score += 0.01) {
+            assertEquals(score, MatchStatistics.eloToScore(MatchStatistics.scoreToElo(score)), 1e-9);
+        }
+        assertEquals(0.5, MatchStatistics.eloToScore(0), 1e-12);
+        assertTrue(MatchStatistics.eloToScore(10) > 0.5);
+    }
+
+    public void testLogLikelihoodRatioFollowsTheScore() {
+        // 60% is above both hypotheses, 45% below both, 50% below the mean of 0 and 10 Elo
+        assertTrue(createMatch(50, 20, 30).getLogLikelihoodRatio(0, 10) > 0);
+        assertTrue(createMatch(35, 20, 45).getLogLikelihoodRatio(0, 10) < 0);
+        assertTrue(createMatch(40, 20, 40).getLogLikelihoodRatio(0, 10) < 0);
+        // more of the same results is more evidence
+        assertTrue(createMatch(100, 40, 60).getLogLikelihoodRatio(0, 10)
+                > createMatch(50, 20, 30).getLogLikelihoodRatio(0, 10));
+        assertEquals(0.0, new MatchStatistics().getLogLikelihoodRatio(0, 10));
+    }
+
+    public void testDecisionAgainstTheBounds() {
+        double lowerBound = MatchStatistics.getLowerBound(0.05, 0.05);
+        double upperBound = MatchStatistics.getUpperBound(0.05, 0.05);
+        assertEquals(-Math.log(19), lowerBound, 1e-12);
+        assertEquals(Math.log(19), upperBound, 1e-12);
+
+        // a candidate scoring 55% against a test of 0 against 5 Elo, game after game
+        MatchStatistics match = new MatchStatistics();
+        MatchStatistics.Decision decision = MatchStatistics.Decision.CONTINUE;
+        int gameCount = 0;
+        while (decision == MatchStatistics.Decision.CONTINUE) {
+            match.addGame(gameCount % 20 < 8 ? 1 : gameCount % 20 < 14 ? 0.5 : 0);
+            gameCount++;
+            double ratio = match.getLogLikelihoodRatio(0, 5);
+            decision = match.getDecision(0, 5, 0.05, 0.05);
+            assertEquals(ratio >= upperBound ? MatchStatistics.Decision.ACCEPT_ELO1
+                    : ratio <= lowerBound ? MatchStatistics.Decision.ACCEPT_ELO0
+                    : MatchStatistics.Decision.CONTINUE, decision);
+        }
+        assertEquals(MatchStatistics.Decision.ACCEPT_ELO1, decision);
+        assertTrue(gameCount + " games", gameCount > 20);
+
+        assertEquals(MatchStatistics.Decision.ACCEPT_ELO0, createMatch(300, 200, 500).getDecision(0, 5, 0.05, 0.05));
+        assertEquals(MatchStatistics.Decision.CONTINUE, createMatch(2, 1, 2).getDecision(0, 5, 0.05, 0.05));
+        // a sweep measures no variance, it must still decide
+        assertEquals(MatchStatistics.Decision.ACCEPT_ELO1, createMatch(50, 0, 0).getDecision(0, 5, 0.05, 0.05));
+        assertEquals(MatchStatistics.Decision.ACCEPT_ELO0, createMatch(0, 0, 50).getDecision(0, 5, 0.05, 0.05));
+    }
+
+    public void testErrorMargin() {
+        assertEquals(Double.POSITIVE_INFINITY, createMatch(1, 0, 0).getEloErrorMargin());
+        assertEquals(Double.POSITIVE_INFINITY, createMatch(10, 0, 0).getEloErrorMargin());
+        assertEquals(Double.POSITIVE_INFINITY, createMatch(0, 0, 10).getEloErrorMargin());
+        double margin = createMatch(40, 20, 40).getEloErrorMargin();
+        assertTrue(margin > 0 && margin < 100);
+        assertTrue(createMatch(400, 200, 400).getEloErrorMargin() < margin / 2);
+    }
+
+    private static MatchStatistics createMatch(int wins, int draws, int losses) {
+        MatchStatistics match = new MatchStatistics();
+        for (int i = 0; i < wins; i++) {
+            match.addGame(1);
+        }
+        for (int i = 0; i < draws; i++) {
+            match.addGame(0.5);
+        }
+        for (int i = 0; i < losses; i++) {
+            match.addGame(0);
+        }
+        return match;
+    }
+}
@@ -0,0 +1,123 @@
+package Tests;
+
+import Chess.Engine.MateSolver;
+import Chess.Models.Board;
+import Chess.Types.GameStatus;
+import Chess.Types.PlayerColor;
+
+import java.util.HashSet;
+import java.util.Set;
+import junit.framework.TestCase;
+
+public class MateSolverTests extends TestCase {
+    public void testFindsShortestMate() {
+        MateSolver.Result result = new MateSolver(1 << 20).solve(new Board(getBoardWithBackRankMate()), PlayerColor.WHITE, 4);
+        assertEquals(MateSolver.Outcome.MATE, result.outcome);
+        assertEquals(2, result.mateInMoves);
+        assertSolution(new Board(getBoardWithBackRankMate()), PlayerColor.WHITE, result.solution, 2);
+    }
+
+    public void testNoMateWithinTooFewMoves() {
+        MateSolver.Result result = new MateSolver(1 << 20).solve(new Board(getBoardWithBackRankMate()), PlayerColor.WHITE, 1);
+        assertEquals(MateSolver.Outcome.NO_MATE, result.outcome);
+        assertNull(result.solution);
+    }
+
+    public void testMatesWithFairyPieces() {
+        MateSolver solver = new MateSolver(1 << 20);
+        MateSolver.Result result = solver.solve(new Board(getBoardWithDrunkenKnightMate()), PlayerColor.WHITE, 3);
+        assertEquals(1, result.mateInMoves);
+        assertSolution(new Board(getBoardWithDrunkenKnightMate()), PlayerColor.WHITE, result.solution, 1);
+
+        // the elephant steps like a king and guards the squares next to the black king
+        result = solver.solve(new Board(getBoardWithElephantMate()), PlayerColor.WHITE, 3);
+        assertEquals(2, result.mateInMoves);
+        assertSolution(new Board(getBoardWithElephantMate()), PlayerColor.WHITE, result.solution, 2);
+    }
+
+    public void testSmallTableFindsTheSameMate() {
+        // a few buckets, nearly every entry is replaced while searching
+        MateSolver.Result result = new MateSolver(256).solve(new Board(getBoardWithBackRankMate()), PlayerColor.WHITE, 3);
+        assertEquals(2, result.mateInMoves);
+        assertSolution(new Board(getBoardWithBackRankMate()), PlayerColor.WHITE, result.solution, 2);
+    }
+
+    public void testNodeLimitStopsTheSearch() {
+        MateSolver solver = new MateSolver(1 << 20);
+        solver.setNodeLimit(10);
+        MateSolver.Result result = solver.solve(new Board(getBoardWithBackRankMate()), PlayerColor.WHITE, 4);
+        assertEquals(MateSolver.Outcome.UNKNOWN, result.outcome);
+    }
+
+    /**
+     * Plays the attacker's move of the solution, then checks that it mates or that the solution answers every reply of
+     * the defender within movesLeft moves.
+     */
+    private static void assertSolution(Board board, PlayerColor attacker, MateSolver.SolutionNode node, int movesLeft) {
+        assertTrue(movesLeft > 0);
+        assertTrue(isLegal(board, attacker, node.move));
+        board.makeMove(node.move);
+        PlayerColor defender = attacker.oppositeColor();
+        if (node.replies.isEmpty()) {
+            assertEquals(GameStatus.CHECKMATE, board.evaluateStatus(defender));
+        } else {
+            int[] moves = new int[Board.MAX_LEGAL_MOVES];
+            int moveCount = board.generateLegalMoves(defender, moves, 0);
+            Set<Integer> replies = new HashSet<Integer>();
+            for (MateSolver.SolutionNode reply : node.replies) {
+                assertTrue(isLegal(board, defender, reply.move));
+                replies.add(reply.move);
+                assertEquals(1, reply.replies.size());
+                board.makeMove(reply.move);
+                assertSolution(board, attacker, reply.replies.get(0), movesLeft - 1);
+                board.undoLastMove();
+            }
+            assertEquals(moveCount, replies.size());
+        }
+        board.undoLastMove();
+    }
+
+    private static boolean isLegal(Board board, PlayerColor color, int move) {
+        int[] moves = new int[Board.MAX_LEGAL_MOVES];
+        int moveCount = board.generateLegalMoves(color, moves, 0);
+        for (int i = 0; i < moveCount; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Ra8 Rc8 Rxc8
+    static String getBoardWithBackRankMate() {
+        String line1 =     "#E2#E2#E2#E2#E2#E2#E2#K1";
+        String line2 =     "#E2#E2#R1#E2#E2#E2#P1#P1";
+        String emptyLine = "#E2#E2#E2#E2#E2#E2#E2#E2";
+        String line7 =     "#E2#E2#E2#E2#E2#K0#E2#E2";
+        String line8 =     "#R0#E2#E2#E2#E2#E2#E2#E2";
+        String boardSerializer = line1 + line2 + emptyLine + emptyLine + emptyLine + emptyLine + line7 + line8;
+        return boardSerializer;
+    }
+
+    // the smothered king is mated by the drunken knight jumping to e6
+    static String getBoardWithDrunkenKnightMate() {
+        String line1 =     "#K1#R1#E2#E2#E2#E2#E2#E2";
+        String line2 =     "#P1#P1#E2#E2#E2#E2#E2#E2";
+        String emptyLine = "#E2#E2#E2#E2#E2#E2#E2#E2";
+        String line5 =     "#E2#E2#E2#Y0#E2#E2#E2#E2";
+        String line8 =     "#E2#E2#E2#E2#E2#E2#E2#K0";
+        String boardSerializer = line1 + line2 + emptyLine + emptyLine + line5 + emptyLine + emptyLine + line8;
+        return boardSerializer;
+    }
+
+    // Ef7 Kh7 Rh1
+    static String getBoardWithElephantMate() {
+        String line1 =     "#E2#E2#E2#E2#E2#E2#E2#K1";
+        String emptyLine = "#E2#E2#E2#E2#E2#E2#E2#E2";
+        String line3 =     "#E2#E2#E2#E2#E2#E2#X0#E2";
+        String line6 =     "#K0#E2#E2#E2#E2#E2#E2#E2";
+        String line8 =     "#R0#E2#E2#E2#E2#E2#E2#E2";
+        String boardSerializer = line1 + emptyLine + line3 + emptyLine + emptyLine + line6 + emptyLine + line8;
+        return boardSerializer;
+    }
+}
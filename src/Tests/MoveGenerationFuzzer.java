@@ -0,0 +1,373 @@
+package Tests;
+
+import Chess.Models.Board;
+import Chess.Models.Move;
+import Chess.Models.Piece;
+import Chess.Types.GameStatus;
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Compares the legal moves, the checks and the game status of an implementation of the rules with ReferenceBoard, on
+ * random positions and along random games from them, on several threads.
+ *
+ * Every case is drawn from the seed and its index: a random position with both kings, the starting position or the
+ * starting position of the variant pieces, followed by up to MAX_PLIES random legal moves. Every position of the game
+ * is compared, for both players, so a case alone tells which position fails. The first failure stops all the threads
+ * and is shrunk: pieces other than the kings are taken off the board as long as the position still fails.
+ *
+ * Usage: MoveGenerationFuzzer [comparisons] [threads] [seed], where a comparison is the legal moves of one piece.
+ */
+public class MoveGenerationFuzzer {
+    static final int MAX_PLIES = 150;
+    private static final PlayerColor[] PLAYER_COLORS = PlayerColor.values();
+    private static final String STANDARD_POSITION =
+            "#R1#H1#B1#Q1#K1#B1#H1#R1" + repeat("#P1", 8) + repeat("#E2", 32) + repeat("#P0", 8)
+            + "#R0#H0#B0#Q0#K0#B0#H0#R0";
+    private static final String VARIANT_POSITION =
+            "#R1#Y1#X1#Q1#K1#B1#Y1#R1" + repeat("#P1", 8) + repeat("#E2", 32) + repeat("#P0", 8)
+            + "#R0#Y0#X0#Q0#K0#B0#Y0#R0";
+
+    /**
+     * The rules under test, one instance per thread.
+     */
+    public interface Rules {
+        /**
+         * @param serializer a position in the 192 characters of the Board constructor.
+         */
+        void loadPosition(String serializer);
+
+        /**
+         * @param targets receives, for every square, the legal destinations of its piece as one bit per square, 0
+         *                for an empty square.
+         */
+        void computeLegalTargets(long[] targets);
+
+        boolean isKingInCheck(PlayerColor color);
+
+        GameStatus evaluateStatus(PlayerColor color);
+
+        void makeMove(int fromSquare, int toSquare);
+    }
+
+    /**
+     * A position where the rules under test and the reference disagree.
+     */
+    public static final class Failure {
+        public final long seed;
+        public final long caseIndex;
+        // the position where the difference was first found, and the same position with fewer pieces
+        public final String position;
+        public final String shrunkPosition;
+        public final String difference;
+
+        Failure(long seed, long caseIndex, String position, String shrunkPosition, String difference) {
+            this.seed = seed;
+            this.caseIndex = caseIndex;
+            this.position = position;
+            this.shrunkPosition = shrunkPosition;
+            this.difference = difference;
+        }
+
+        @Override
+        public String toString() {
+            return "seed " + seed + " case " + caseIndex + ": " + difference + "\n" + describe(shrunkPosition)
+                    + "shrunk from " + position;
+        }
+    }
+
+    /**
+     * Board, through generateLegalMoves for both players. computeReachableMoves and isLegalMove read the same legal
+     * targets, so they are covered as well.
+     */
+    public static class BoardRules implements Rules {
+        private final Board board = new Board(STANDARD_POSITION);
+        private final int[] moves = new int[Board.MAX_LEGAL_MOVES];
+
+        @Override
+        public void loadPosition(String serializer) {
+            board.loadPosition(serializer);
+        }
+
+        @Override
+        public void computeLegalTargets(long[] targets) {
+            Arrays.fill(targets, 0);
+            for (PlayerColor color : PLAYER_COLORS) {
+                int count = board.generateLegalMoves(color, moves, 0);
+                for (int i = 0; i < count; i++) {
+                    targets[Move.getFromSquare(moves[i])] |= 1L << Move.getToSquare(moves[i]);
+                }
+            }
+        }
+
+        @Override
+        public boolean isKingInCheck(PlayerColor color) {
+            return board.isKingInCheck(color);
+        }
+
+        @Override
+        public GameStatus evaluateStatus(PlayerColor color) {
+            return board.evaluateStatus(color);
+        }
+
+        @Override
+        public void makeMove(int fromSquare, int toSquare) {
+            board.makeMove(Move.encode(fromSquare, toSquare));
+        }
+    }
+
+    private final Supplier<Rules> rulesFactory;
+    private final int threadCount;
+    private final AtomicLong comparisonCount = new AtomicLong();
+
+    /**
+     * @param rulesFactory creates the rules under test for each thread.
+     */
+    public MoveGenerationFuzzer(Supplier<Rules> rulesFactory, int threadCount) {
+        this.rulesFactory = rulesFactory;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @return the legal moves of pieces compared by the last run.
+     */
+    public long getComparisonCount() {
+        return comparisonCount.get();
+    }
+
+    /**
+     * Runs cases until about maxComparisons legal moves of pieces are compared or a position fails.
+     * @return the first failure found, shrunk, or null if the rules agree with the reference.
+     */
+    public Failure run(final long seed, final long maxComparisons) throws InterruptedException {
+        comparisonCount.set(0);
+        final AtomicLong nextCaseIndex = new AtomicLong();
+        final AtomicReference<Failure> failure = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                workers.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        Rules rules = rulesFactory.get();
+                        long[] targets = new long[64];
+                        long[] referenceTargets = new long[64];
+                        while (failure.get() == null && comparisonCount.get() < maxComparisons) {
+                            long caseIndex = nextCaseIndex.getAndIncrement();
+                            Failure caseFailure = runCase(rules, seed, caseIndex, targets, referenceTargets);
+                            if (caseFailure != null) {
+                                failure.compareAndSet(null, caseFailure);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("the rules under test threw", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return failure.get();
+    }
+
+    /**
+     * Plays one case, comparing every position of its game.
+     * @return the failure of the case, shrunk, or null.
+     */
+    Failure runCase(Rules rules, long seed, long caseIndex, long[] targets, long[] referenceTargets) {
+        Random random = new Random(seed * 0x9E3779B97F4A7C15L + caseIndex);
+        String position;
+        switch ((int) (caseIndex % 4)) {
+            case 0:
+                position = STANDARD_POSITION;
+                break;
+            case 1:
+                position = VARIANT_POSITION;
+                break;
+            default:
+                position = BoardTests.createRandomPosition(random);
+        }
+        ReferenceBoard reference = new ReferenceBoard(position);
+        rules.loadPosition(position);
+        PlayerColor color = PLAYER_COLORS[random.nextInt(2)];
+        for (int ply = 0; ; ply++) {
+            String difference = compare(rules, reference, targets, referenceTargets);
+            if (difference != null) {
+                String failingPosition = reference.serialize();
+                return new Failure(seed, caseIndex, failingPosition, shrink(rules, failingPosition), difference);
+            }
+            if (ply == MAX_PLIES) {
+                return null;
+            }
+            int move = pickMove(reference, color, referenceTargets, random);
+            if (move == Move.NONE) {
+                return null;
+            }
+            reference.moveTo(Move.getFromSquare(move), Move.getToSquare(move));
+            rules.makeMove(Move.getFromSquare(move), Move.getToSquare(move));
+            color = color == PlayerColor.WHITE ? PlayerColor.BLACK : PlayerColor.WHITE;
+        }
+    }
+
+    /**
+     * Compares the current positions of the rules and the reference, leaving the legal targets of the reference in
+     * referenceTargets.
+     * @return what differs, or null.
+     */
+    private String compare(Rules rules, ReferenceBoard reference, long[] targets, long[] referenceTargets) {
+        rules.computeLegalTargets(targets);
+        int pieceCount = 0;
+        String difference = null;
+        for (int square = 0; square < 64; square++) {
+            referenceTargets[square] = reference.getLegalTargets(square);
+            if (reference.getPieceAtSquare(square) != null) {
+                pieceCount++;
+            }
+            if (difference == null && targets[square] != referenceTargets[square]) {
+                difference = "moves from " + Move.squareName(square) + ": "
+                        + describeTargets(targets[square]) + " instead of " + describeTargets(referenceTargets[square]);
+            }
+        }
+        comparisonCount.addAndGet(pieceCount);
+        for (int i = 0; i < PLAYER_COLORS.length && difference == null; i++) {
+            PlayerColor color = PLAYER_COLORS[i];
+            if (rules.isKingInCheck(color) != reference.isKingInCheck(color)) {
+                difference = "check of " + color + ": " + rules.isKingInCheck(color);
+            } else if (rules.evaluateStatus(color) != reference.evaluateStatus(color)) {
+                difference = "status of " + color + ": " + rules.evaluateStatus(color) + " instead of "
+                        + reference.evaluateStatus(color);
+            }
+        }
+        return difference;
+    }
+
+    /**
+     * Takes pieces other than the kings off a failing position, one at a time, as long as it still fails.
+     * @return the smallest failing position found.
+     */
+    private String shrink(Rules rules, String position) {
+        long[] targets = new long[64];
+        long[] referenceTargets = new long[64];
+        ReferenceBoard shrunk = new ReferenceBoard(position);
+        boolean isShrinking = true;
+        while (isShrinking) {
+            isShrinking = false;
+            for (int square = 0; square < 64; square++) {
+                Piece piece = shrunk.getPieceAtSquare(square);
+                if (piece == null || piece.type == PieceType.KING) {
+                    continue;
+                }
+                shrunk.setPieceAtSquare(null, square);
+                String candidate = shrunk.serialize();
+                rules.loadPosition(candidate);
+                if (compare(rules, new ReferenceBoard(candidate), targets, referenceTargets) != null) {
+                    isShrinking = true;
+                } else {
+                    shrunk.setPieceAtSquare(piece, square);
+                }
+            }
+        }
+        return shrunk.serialize();
+    }
+
+    /**
+     * @return a random legal move of a player, or Move.NONE if they have none.
+     */
+    private static int pickMove(ReferenceBoard reference, PlayerColor color, long[] targets, Random random) {
+        int moveCount = 0;
+        for (int square = 0; square < 64; square++) {
+            Piece piece = reference.getPieceAtSquare(square);
+            if (piece != null && piece.color == color) {
+                moveCount += Long.bitCount(targets[square]);
+            }
+        }
+        if (moveCount == 0) {
+            return Move.NONE;
+        }
+        int index = random.nextInt(moveCount);
+        for (int square = 0; ; square++) {
+            Piece piece = reference.getPieceAtSquare(square);
+            if (piece == null || piece.color != color) {
+                continue;
+            }
+            long squareTargets = targets[square];
+            for (; squareTargets != 0; squareTargets &= squareTargets - 1) {
+                if (index-- == 0) {
+                    return Move.encode(square, Long.numberOfTrailingZeros(squareTargets));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the position as eight rows of FEN letters, upper case for white and '.' for empty squares.
+     */
+    static String describe(String position) {
+        ReferenceBoard board = new ReferenceBoard(position);
+        StringBuilder text = new StringBuilder();
+        for (int square = 0; square < 64; square++) {
+            Piece piece = board.getPieceAtSquare(square);
+            char letter = piece == null ? '.' : "KQBNRPDE".charAt(piece.type.ordinal());
+            text.append(piece != null && piece.color == PlayerColor.BLACK ? Character.toLowerCase(letter) : letter);
+            if (square % 8 == 7) {
+                text.append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private static String describeTargets(long targets) {
+        StringBuilder text = new StringBuilder("[");
+        for (; targets != 0; targets &= targets - 1) {
+            text.append(text.length() > 1 ? " " : "").append(Move.squareName(Long.numberOfTrailingZeros(targets)));
+        }
+        return text.append(']').toString();
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            repeated.append(text);
+        }
+        return repeated.toString();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long maxComparisons = args.length > 0 ? Long.parseLong(args[0]) : 10000000L;
+        int threadCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+        MoveGenerationFuzzer fuzzer = new MoveGenerationFuzzer(new Supplier<Rules>() {
+            @Override
+            public Rules get() {
+                return new BoardRules();
+            }
+        }, threadCount);
+        long startTime = System.nanoTime();
+        Failure failure = fuzzer.run(seed, maxComparisons);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("seed %d: %d comparisons in %.1fs, %.0f/s on %d threads%n", seed,
+                fuzzer.getComparisonCount(), seconds, fuzzer.getComparisonCount() / seconds, threadCount);
+        if (failure != null) {
+            System.out.println(failure);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package Tests;
+
+import Chess.Models.Board;
+import Chess.Models.Move;
+import Chess.Models.Piece;
+import Chess.Types.GameStatus;
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+import junit.framework.TestCase;
+
+import java.util.function.Supplier;
+
+public class MoveGenerationFuzzerTests extends TestCase {
+    public void testBoardAgreesWithTheReference() throws InterruptedException {
+        MoveGenerationFuzzer fuzzer = new MoveGenerationFuzzer(new Supplier<MoveGenerationFuzzer.Rules>() {
+            @Override
+            public MoveGenerationFuzzer.Rules get() {
+                return new MoveGenerationFuzzer.BoardRules();
+            }
+        }, 2);
+        MoveGenerationFuzzer.Failure failure = fuzzer.run(1, 200000);
+        assertNull(String.valueOf(failure), failure);
+        assertTrue(fuzzer.getComparisonCount() >= 200000);
+    }
+
+    public void testReferenceFollowsTheVariantRules() {
+        // a black pawn on its starting row leaps over the piece in front of it, an elephant steps like a king
+        ReferenceBoard reference = new ReferenceBoard(getEmptyBoard());
+        reference.setPieceAtSquare(Piece.of(PieceType.KING, PlayerColor.BLACK), 0);
+        reference.setPieceAtSquare(Piece.of(PieceType.KING, PlayerColor.WHITE), 63);
+        reference.setPieceAtSquare(Piece.of(PieceType.PAWN, PlayerColor.BLACK), 12);
+        reference.setPieceAtSquare(Piece.of(PieceType.KNIGHT, PlayerColor.WHITE), 20);
+        reference.setPieceAtSquare(Piece.of(PieceType.ELEPHANT, PlayerColor.WHITE), 35);
+        assertEquals(1L << 28, reference.getLegalTargets(12));
+        assertEquals(8, Long.bitCount(reference.getLegalTargets(35)));
+        assertEquals(GameStatus.ONGOING, reference.evaluateStatus(PlayerColor.BLACK));
+    }
+
+    public void testFailuresAreShrunk() throws InterruptedException {
+        // rules that forget the step of an elephant straight towards the opponent of white
+        MoveGenerationFuzzer fuzzer = new MoveGenerationFuzzer(new Supplier<MoveGenerationFuzzer.Rules>() {
+            @Override
+            public MoveGenerationFuzzer.Rules get() {
+                return new MoveGenerationFuzzer.Rules() {
+                    private final MoveGenerationFuzzer.Rules rules = new MoveGenerationFuzzer.BoardRules();
+                    private final Board board = new Board(getEmptyBoard());
+
+                    @Override
+                    public void loadPosition(String serializer) {
+                        rules.loadPosition(serializer);
+                        board.loadPosition(serializer);
+                    }
+
+                    @Override
+                    public void computeLegalTargets(long[] targets) {
+                        rules.computeLegalTargets(targets);
+                        for (int square = 8; square < 64; square++) {
+                            if (board.getPieceAtSquare(square) == Piece.of(PieceType.ELEPHANT, PlayerColor.WHITE)) {
+                                targets[square] &= ~(1L << (square - 8));
+                            }
+                        }
+                    }
+
+                    @Override
+                    public boolean isKingInCheck(PlayerColor color) {
+                        return rules.isKingInCheck(color);
+                    }
+
+                    @Override
+                    public GameStatus evaluateStatus(PlayerColor color) {
+                        return rules.evaluateStatus(color);
+                    }
+
+                    @Override
+                    public void makeMove(int fromSquare, int toSquare) {
+                        rules.makeMove(fromSquare, toSquare);
+                        board.makeMove(Move.encode(fromSquare, toSquare));
+                    }
+                };
+            }
+        }, 2);
+        MoveGenerationFuzzer.Failure failure = fuzzer.run(1, 1000000);
+        assertNotNull(failure);
+        assertTrue(failure.difference, failure.difference.startsWith("moves from "));
+
+        // only the kings and the elephant are left
+        ReferenceBoard shrunk = new ReferenceBoard(failure.shrunkPosition);
+        int pieceCount = 0;
+        int elephantCount = 0;
+        for (int square = 0; square < 64; square++) {
+            Piece piece = shrunk.getPieceAtSquare(square);
+            pieceCount += piece == null ? 0 : 1;
+            elephantCount += piece == Piece.of(PieceType.ELEPHANT, PlayerColor.WHITE) ? 1 : 0;
+        }
+        assertEquals(failure.toString(), 3, pieceCount);
+        assertEquals(1, elephantCount);
+    }
+
+    static String getEmptyBoard() {
+        StringBuilder serializer = new StringBuilder();
+        for (int square = 0; square < 64; square++) {
+            serializer.append("#E2");
+        }
+        return serializer.toString();
+    }
+}
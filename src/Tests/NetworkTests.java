@@ -0,0 +1,245 @@
+package Tests;
+
+import Chess.Models.Board;
+import Chess.Models.Move;
+import Chess.Network.ConnectionListener;
+import Chess.Network.NetworkConnection;
+import Chess.Network.NetworkMessage;
+import Chess.Network.SpectatorHub;
+import Chess.Types.PlayerColor;
+
+import java.io.DataInputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+
+public class NetworkTests extends TestCase {
+    public void testMessageRoundTrip() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(NetworkMessage.SIZE);
+        NetworkMessage.move(41, 4095, 0x8123456789ABCDEFL).write(buffer);
+        assertEquals(NetworkMessage.SIZE, buffer.position());
+        buffer.flip();
+        NetworkMessage message = NetworkMessage.read(buffer);
+        assertEquals(NetworkMessage.Type.MOVE, message.type);
+        assertEquals(41, message.sequence);
+        assertEquals(4095, message.move);
+        assertEquals(0x8123456789ABCDEFL, message.positionHash);
+    }
+
+    public void testLoopbackRoundTripTakesUnderAMillisecond() throws Exception {
+        final AtomicReference<NetworkConnection> host = new AtomicReference<NetworkConnection>();
+        host.set(NetworkConnection.host(0, new QueueListener() {
+            @Override
+            public void onMessage(NetworkMessage message) {
+                // played back as is, like a reply
+                host.get().send(message);
+            }
+        }));
+        QueueListener guestListener = new QueueListener();
+        NetworkConnection guest = NetworkConnection.connect("localhost", host.get().getLocalPort(), guestListener);
+        try {
+            long[] roundTrips = new long[2000];
+            for (int i = 0; i < roundTrips.length; i++) {
+                long startTime = System.nanoTime();
+                guest.send(NetworkMessage.move(i, i, i));
+                NetworkMessage reply = guestListener.messages.poll(5, TimeUnit.SECONDS);
+                roundTrips[i] = System.nanoTime() - startTime;
+                assertNotNull(reply);
+                assertEquals(i, reply.sequence);
+            }
+            // the first ones warm up the code, the median tells the usual case
+            Arrays.sort(roundTrips);
+            long median = roundTrips[roundTrips.length / 2];
+            assertTrue(median / 1000 + " microseconds", median < TimeUnit.MILLISECONDS.toNanos(1));
+        } finally {
+            guest.close();
+            host.get().close();
+        }
+    }
+
+    public void testForfeitCrossingAMoveChargesTheSender() throws Exception {
+        QueueListener hostListener = new QueueListener();
+        NetworkConnection host = NetworkConnection.host(0, hostListener);
+        QueueListener guestListener = new QueueListener();
+        NetworkConnection guest = NetworkConnection.connect("localhost", host.getLocalPort(), guestListener);
+        try {
+            // black gives up while the move of white is on its way, each side sees its own turn
+            host.send(NetworkMessage.move(0, Move.encode(52, 36), 0));
+            guest.send(NetworkMessage.forfeit(PlayerColor.BLACK));
+            NetworkMessage forfeit = hostListener.messages.poll(5, TimeUnit.SECONDS);
+            assertNotNull(forfeit);
+            assertEquals(NetworkMessage.Type.FORFEIT, forfeit.type);
+            assertEquals(PlayerColor.BLACK, forfeit.getForfeitingColor());
+            NetworkMessage move = guestListener.messages.poll(5, TimeUnit.SECONDS);
+            assertNotNull(move);
+            assertEquals(NetworkMessage.Type.MOVE, move.type);
+        } finally {
+            guest.close();
+            host.close();
+        }
+
+        // a frame without a color is not a forfeit
+        ByteBuffer buffer = ByteBuffer.allocate(NetworkMessage.SIZE);
+        NetworkMessage.forfeit(PlayerColor.WHITE).write(buffer);
+        buffer.flip();
+        assertEquals(PlayerColor.WHITE, NetworkMessage.read(buffer).getForfeitingColor());
+        buffer.putShort(5, (short) 2);
+        buffer.rewind();
+        try {
+            NetworkMessage.read(buffer);
+            fail();
+        } catch (ProtocolException e) {
+            // expected
+        }
+    }
+
+    public void testLateSpectatorReceivesSnapshotThenMoves() throws Exception {
+        SpectatorHub hub = SpectatorHub.open(0);
+        try {
+            Board board = new Board(BoardTests.getStartingBoard());
+            hub.publishPosition(board, PlayerColor.WHITE, 0);
+            Socket early = new Socket("localhost", hub.getLocalPort());
+            waitForSpectators(hub, 1);
+            publishKnightMoves(hub, board, 0, 3);
+            DataInputStream earlyInput = new DataInputStream(early.getInputStream());
+            assertSnapshot(earlyInput, 0, new Board(BoardTests.getStartingBoard()).getPositionHash());
+            for (int sequence = 0; sequence < 3; sequence++) {
+                assertMove(earlyInput, sequence);
+            }
+
+            // the moves were broadcast, a spectator joining now starts after them
+            Socket late = new Socket("localhost", hub.getLocalPort());
+            waitForSpectators(hub, 2);
+            publishKnightMoves(hub, board, 3, 1);
+            hub.publishResult(null);
+            assertMove(earlyInput, 3);
+            DataInputStream lateInput = new DataInputStream(late.getInputStream());
+            Board afterThreeMoves = new Board(BoardTests.getStartingBoard());
+            for (int i = 0; i < 3; i++) {
+                afterThreeMoves.makeMove(KNIGHT_MOVES[i]);
+            }
+            assertSnapshot(lateInput, 3, afterThreeMoves.getPositionHash());
+            assertMove(lateInput, 3);
+            assertEquals(SpectatorHub.RESULT, lateInput.readByte());
+            assertEquals(SpectatorHub.DRAW, lateInput.readByte());
+            early.close();
+            late.close();
+        } finally {
+            hub.close();
+        }
+    }
+
+    public void testSlowSpectatorIsDropped() throws Exception {
+        SpectatorHub hub = SpectatorHub.open(0);
+        try {
+            Board board = new Board(BoardTests.getStartingBoard());
+            hub.publishPosition(board, PlayerColor.WHITE, 0);
+            SocketChannel slow = SocketChannel.open();
+            slow.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+            slow.connect(new InetSocketAddress("localhost", hub.getLocalPort()));
+            Socket fast = new Socket("localhost", hub.getLocalPort());
+            waitForSpectators(hub, 2);
+            DataInputStream fastInput = new DataInputStream(fast.getInputStream());
+            assertEquals(SpectatorHub.SNAPSHOT, fastInput.readByte());
+            fastInput.skipBytes(SpectatorHub.SNAPSHOT_BYTES - 1);
+
+            // the slow spectator never reads, the fast one keeps up with every move
+            int sequence = 0;
+            while (hub.getDroppedCount() == 0 && sequence < 100000) {
+                publishKnightMoves(hub, board, sequence, 100);
+                for (int i = 0; i < 100; i++) {
+                    assertMove(fastInput, sequence++);
+                }
+            }
+            assertEquals(1, hub.getDroppedCount());
+            waitForSpectators(hub, 1);
+            slow.close();
+            fast.close();
+        } finally {
+            hub.close();
+        }
+    }
+
+    public void testSpectatorsResetWhileConnectingLeaveTheOthersServed() throws Exception {
+        SpectatorHub hub = SpectatorHub.open(0);
+        try {
+            Board board = new Board(BoardTests.getStartingBoard());
+            hub.publishPosition(board, PlayerColor.WHITE, 0);
+            // the connections are reset before the hub gets to set them up
+            for (int i = 0; i < 200; i++) {
+                Socket reset = new Socket("localhost", hub.getLocalPort());
+                reset.setSoLinger(true, 0);
+                reset.close();
+            }
+            Socket spectator = new Socket("localhost", hub.getLocalPort());
+            DataInputStream input = new DataInputStream(spectator.getInputStream());
+            assertSnapshot(input, 0, board.getPositionHash());
+            waitForSpectators(hub, 1);
+            publishKnightMoves(hub, board, 0, 1);
+            assertMove(input, 0);
+            spectator.close();
+        } finally {
+            hub.close();
+        }
+    }
+
+    // both knights out and back, so the moves can go on forever
+    private static final int[] KNIGHT_MOVES = {
+            Move.encode(62, 45), Move.encode(6, 21), Move.encode(45, 62), Move.encode(21, 6)};
+
+    private static void publishKnightMoves(SpectatorHub hub, Board board, int firstSequence, int count) {
+        for (int sequence = firstSequence; sequence < firstSequence + count; sequence++) {
+            int move = KNIGHT_MOVES[sequence % KNIGHT_MOVES.length];
+            board.makeMove(move);
+            hub.publishMove(move, board.getPositionHash());
+        }
+    }
+
+    private static void waitForSpectators(SpectatorHub hub, int count) throws InterruptedException {
+        for (int i = 0; i < 500 && hub.getSpectatorCount() != count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, hub.getSpectatorCount());
+    }
+
+    private static void assertSnapshot(DataInputStream input, int moveCount, long positionHash) throws Exception {
+        assertEquals(SpectatorHub.SNAPSHOT, input.readByte());
+        assertEquals(moveCount % 2 == 0 ? PlayerColor.WHITE.ordinal() : PlayerColor.BLACK.ordinal(), input.readByte());
+        assertEquals(moveCount, input.readInt());
+        assertEquals(positionHash, input.readLong());
+        input.skipBytes(Board.PACKED_POSITION_BYTES);
+    }
+
+    private static void assertMove(DataInputStream input, int sequence) throws Exception {
+        assertEquals(SpectatorHub.MOVE, input.readByte());
+        assertEquals(sequence, input.readInt());
+        assertEquals(KNIGHT_MOVES[sequence % KNIGHT_MOVES.length], input.readShort());
+        input.readLong();
+    }
+
+    static class QueueListener implements ConnectionListener {
+        final BlockingQueue<NetworkMessage> messages = new ArrayBlockingQueue<NetworkMessage>(16);
+
+        @Override
+        public void onConnected() {
+        }
+
+        @Override
+        public void onMessage(NetworkMessage message) {
+            messages.add(message);
+        }
+
+        @Override
+        public void onDisconnected(String reason) {
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package Tests;
+
+import Chess.Engine.NeuralEvaluator;
+import Chess.Engine.NeuralNetwork;
+import Chess.Engine.Search;
+import Chess.Models.Board;
+import Chess.Models.Move;
+import Chess.Models.Piece;
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import junit.framework.TestCase;
+
+public class NeuralEvaluatorTests extends TestCase {
+    public void testIncrementalAccumulatorsMatchRefreshes() {
+        NeuralNetwork network = createRandomNetwork(new Random(5), 8, 4);
+        NeuralEvaluator incremental = new NeuralEvaluator(network);
+        NeuralEvaluator refreshed = new NeuralEvaluator(network);
+        int[] moves = new int[Board.MAX_LEGAL_MOVES];
+        int[][] evaluations = new int[Search.MAX_PLY][2];
+        Random random = new Random(17);
+        int kingMoveCount = 0;
+        int captureCount = 0;
+        // the evaluations must vary, or clipping would hide a wrong row
+        Set<Integer> distinctEvaluations = new HashSet<Integer>();
+        for (int game = 0; game < 40; game++) {
+            // the starting position, then random positions with the variant pieces
+            Board board = new Board(game == 0 ? BoardTests.getStartingBoard()
+                    : BoardTests.createRandomPosition(random));
+            PlayerColor color = random.nextBoolean() ? PlayerColor.WHITE : PlayerColor.BLACK;
+            incremental.setPosition(board);
+            int ply = 0;
+            for (; ply < Search.MAX_PLY; ply++) {
+                int moveCount = board.generateLegalMoves(color, moves, 0);
+                if (moveCount == 0) {
+                    break;
+                }
+                int move = moves[random.nextInt(moveCount)];
+                Piece moved = board.getPieceAtSquare(Move.getFromSquare(move));
+                Piece captured = board.getPieceAtSquare(Move.getToSquare(move));
+                kingMoveCount += moved.type == PieceType.KING ? 1 : 0;
+                captureCount += captured != null ? 1 : 0;
+                board.makeMove(move);
+                incremental.onMoveMade(board, move, captured);
+                color = color.oppositeColor();
+
+                refreshed.setPosition(board);
+                for (PlayerColor perspective : PlayerColor.values()) {
+                    int expected = refreshed.evaluate(board, perspective);
+                    assertEquals(expected, incremental.evaluate(board, perspective));
+                    evaluations[ply][perspective.ordinal()] = expected;
+                    distinctEvaluations.add(expected);
+                }
+            }
+
+            // taking the moves back goes back to the evaluations of the earlier plies
+            while (ply-- > 1) {
+                board.undoLastMove();
+                incremental.onMoveUndone();
+                for (PlayerColor perspective : PlayerColor.values()) {
+                    assertEquals(evaluations[ply - 1][perspective.ordinal()], incremental.evaluate(board, perspective));
+                }
+            }
+        }
+        assertTrue(distinctEvaluations.size() + " evaluations", distinctEvaluations.size() > 100);
+        assertTrue(kingMoveCount + " king moves", kingMoveCount > 100);
+        assertTrue(captureCount + " captures", captureCount > 100);
+    }
+
+    public void testNetworkWriteThenLoad() throws Exception {
+        NeuralNetwork network = createRandomNetwork(new Random(3), 4, 2);
+        Path path = Files.createTempFile("network", ".nnue");
+        try {
+            network.write(path);
+            byte[] written = Files.readAllBytes(path);
+            NeuralNetwork loaded = NeuralNetwork.load(path);
+            assertEquals(4, loaded.getHiddenSize());
+            assertEquals(2, loaded.getLayerSize());
+            loaded.write(path);
+            assertTrue(Arrays.equals(written, Files.readAllBytes(path)));
+
+            Board board = new Board(BoardTests.getStartingBoard());
+            NeuralEvaluator original = new NeuralEvaluator(network);
+            NeuralEvaluator reloaded = new NeuralEvaluator(loaded);
+            original.setPosition(board);
+            reloaded.setPosition(board);
+            assertEquals(original.evaluate(board, PlayerColor.WHITE), reloaded.evaluate(board, PlayerColor.WHITE));
+
+            // a truncated file is refused
+            Files.write(path, Arrays.copyOf(written, written.length - 1));
+            try {
+                NeuralNetwork.load(path);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * @return a network with small random weights, whose accumulators stay mostly between the clipping bounds.
+     */
+    static NeuralNetwork createRandomNetwork(Random random, int hiddenSize, int layerSize) {
+        short[] featureWeights = new short[NeuralNetwork.FEATURE_COUNT * hiddenSize];
+        for (int i = 0; i < featureWeights.length; i++) {
+            featureWeights[i] = (short) (random.nextInt(17) - 8);
+        }
+        short[] featureBiases = new short[hiddenSize];
+        for (int i = 0; i < hiddenSize; i++) {
+            featureBiases[i] = (short) random.nextInt(64);
+        }
+        byte[] hiddenWeights = new byte[layerSize * 2 * hiddenSize];
+        random.nextBytes(hiddenWeights);
+        int[] hiddenBiases = new int[layerSize];
+        for (int i = 0; i < layerSize; i++) {
+            hiddenBiases[i] = random.nextInt(2001) - 1000;
+        }
+        byte[] outputWeights = new byte[layerSize];
+        random.nextBytes(outputWeights);
+        return new NeuralNetwork(hiddenSize, layerSize, featureWeights, featureBiases, hiddenWeights, hiddenBiases,
+                outputWeights, random.nextInt(201) - 100);
+    }
+}
@@ -0,0 +1,166 @@
+package Tests;
+
+import Chess.Analysis.AlgebraicNotation;
+import Chess.Analysis.GameDatabase;
+import Chess.Analysis.PgnGame;
+import Chess.Analysis.PgnImporter;
+import Chess.Analysis.PgnReader;
+import Chess.Analysis.PgnWriter;
+import Chess.Analysis.PositionCorpus;
+import Chess.Models.Board;
+import Chess.Models.Move;
+import Chess.Types.PlayerColor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class PgnTests extends TestCase {
+    public void testSanOfVariantPieces() {
+        Board board = AlgebraicNotation.parsePosition("4k3/8/8/8/4E3/8/8/1D2KD2 w - - 0 1");
+        // both drunken knights reach d2, the column tells them apart
+        int move = AlgebraicNotation.parseMove(board, PlayerColor.WHITE, "Dbd2");
+        assertEquals("b1d2", Move.toString(move));
+        assertEquals("Dbd2", AlgebraicNotation.formatMove(board, PlayerColor.WHITE, move));
+        assertEquals("e4e5", Move.toString(AlgebraicNotation.parseMove(board, PlayerColor.WHITE, "Ee5")));
+        try {
+            AlgebraicNotation.parseMove(board, PlayerColor.WHITE, "Dd2");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("ambiguous"));
+        }
+
+        // every legal move is written and read back the same
+        int[] moves = new int[Board.MAX_LEGAL_MOVES];
+        int moveCount = board.generateLegalMoves(PlayerColor.WHITE, moves, 0);
+        for (int i = 0; i < moveCount; i++) {
+            String san = AlgebraicNotation.formatMove(board, PlayerColor.WHITE, moves[i]);
+            assertEquals(san, moves[i], AlgebraicNotation.parseMove(board, PlayerColor.WHITE, san));
+        }
+        assertEquals("4k3/8/8/8/4E3/8/8/1D2KD2 w - - 0 1", AlgebraicNotation.formatPosition(board, PlayerColor.WHITE));
+    }
+
+    public void testGamesWrittenAreReadBack() throws Exception {
+        Random random = new Random(3);
+        List<PgnGame> games = new ArrayList<PgnGame>();
+        for (int i = 0; i < 50; i++) {
+            Map<String, String> tags = new LinkedHashMap<String, String>();
+            tags.put("Event", "Test \"" + i + "\"");
+            tags.put("Annotator", "Jou\u00e9");
+            Board board = BoardTests.playRandomGame(new Board(BoardTests.getStartingBoard()), PlayerColor.WHITE,
+                    random, random.nextInt(120));
+            games.add(new PgnGame(tags, board, PlayerColor.WHITE, (byte) random.nextInt(4)));
+        }
+        // a variant position with black to move
+        Map<String, String> tags = new LinkedHashMap<String, String>();
+        tags.put("Event", "Variant");
+        tags.put("Annotator", "Jou\u00e9");
+        Board fairyBoard = AlgebraicNotation.parsePosition("rdbqkbdr/pppppppp/8/8/8/8/PPPPPPPP/REBQKBER b - - 0 1");
+        games.add(new PgnGame(tags, BoardTests.playRandomGame(fairyBoard, PlayerColor.BLACK, random, 60),
+                PlayerColor.BLACK, PositionCorpus.RESULT_DRAW));
+
+        byte[] pgn = writeGames(games, "");
+        PgnReader reader = new PgnReader(new ByteArrayInputStream(pgn));
+        for (PgnGame game : games) {
+            PgnGame readGame = reader.next();
+            assertEquals(game.tags.get("Event"), readGame.tags.get("Event"));
+            assertEquals("Jou\u00e9", readGame.tags.get("Annotator"));
+            assertEquals(game.firstToMove, readGame.firstToMove);
+            assertEquals(game.result, readGame.result);
+            assertEquals(game.board.getMoveCount(), readGame.board.getMoveCount());
+            assertEquals(game.board.getPositionHash(), readGame.board.getPositionHash());
+            for (int ply = 0; ply < game.board.getMoveCount(); ply++) {
+                assertEquals(game.board.getMove(ply), readGame.board.getMove(ply));
+            }
+        }
+        assertNull(reader.next());
+    }
+
+    public void testReaderSkipsInvalidGames() throws Exception {
+        String pgn = "[Event \"first\"]\n[Result \"1-0\"]\n\n1. e4 {a comment} e5 2. Qh5 $1 (2. Nf3 Nc6 (2... d6)) Nc6"
+                + " 3. Bc4 Nf6?? 4. Qxf7# 1-0\n\n"
+                + "[Event \"illegal\"]\n\n1. e4 e5 2. Ke3 Nc6 3. d4 *\n\n"
+                + "% an escaped line\n[Event \"no result\"]\n[Result \"0-1\"]\n\n1. f3 e5 2. g4 ; a comment\nQh4#\n"
+                + "[Event \"last\"]\n1. d4 1/2-1/2";
+        PgnReader reader = new PgnReader(new ByteArrayInputStream(pgn.getBytes(StandardCharsets.UTF_8)));
+        PgnGame game = reader.next();
+        assertEquals("first", game.tags.get("Event"));
+        assertEquals(7, game.board.getMoveCount());
+        assertEquals(PositionCorpus.RESULT_WHITE_WINS, game.result);
+        try {
+            reader.next();
+            fail();
+        } catch (PgnReader.InvalidGameException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Ke3"));
+        }
+        game = reader.next();
+        assertEquals("no result", game.tags.get("Event"));
+        assertEquals(4, game.board.getMoveCount());
+        assertEquals(PositionCorpus.RESULT_BLACK_WINS, game.result);
+        game = reader.next();
+        assertEquals(PositionCorpus.RESULT_DRAW, game.result);
+        assertNull(reader.next());
+        assertEquals(4, reader.getGameCount());
+    }
+
+    public void testParallelImportKeepsTheOrderOfTheFile() throws Exception {
+        Random random = new Random(5);
+        List<PgnGame> games = new ArrayList<PgnGame>();
+        for (int i = 0; i < 1200; i++) {
+            games.add(new PgnGame(new LinkedHashMap<String, String>(), BoardTests.playRandomGame(
+                    new Board(BoardTests.getStartingBoard()), PlayerColor.WHITE, random, random.nextInt(30)),
+                    PlayerColor.WHITE, (byte) random.nextInt(4)));
+        }
+        // long comments make the file span a few chunks
+        char[] comment = new char[8000];
+        Arrays.fill(comment, 'c');
+        byte[] pgn = writeGames(games, "{" + new String(comment) + "}\n");
+
+        Path directory = Files.createTempDirectory("games");
+        try (GameDatabase database = GameDatabase.open(directory)) {
+            PgnImporter importer = new PgnImporter(database, 3);
+            importer.importGames(new ByteArrayInputStream(pgn));
+            assertEquals(games.size(), importer.getImportedGameCount());
+            assertEquals(0, importer.getInvalidGameCount());
+            for (int id = 0; id < games.size(); id++) {
+                GameDatabase.Game game = database.readGame(id);
+                assertEquals(games.get(id).result, game.result);
+                assertEquals(games.get(id).board.getMoveCount(), game.moves.length);
+                for (int ply = 0; ply < game.moves.length; ply++) {
+                    assertEquals(games.get(id).board.getMove(ply), game.moves[ply]);
+                }
+            }
+        } finally {
+            for (File file : directory.toFile().listFiles()) {
+                file.delete();
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * @param prefix written before every game.
+     */
+    private static byte[] writeGames(List<PgnGame> games, String prefix) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (PgnWriter writer = new PgnWriter(output)) {
+            for (PgnGame game : games) {
+                writer.flush();
+                output.write(prefix.getBytes(StandardCharsets.UTF_8));
+                writer.write(game);
+            }
+        }
+        return output.toByteArray();
+    }
+
+}
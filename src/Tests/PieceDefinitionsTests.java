@@ -0,0 +1,127 @@
+package Tests;
+
+import Chess.Models.Piece;
+import Chess.Models.PieceDefinitions;
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class PieceDefinitionsTests extends TestCase {
+    public void testShippedDefinitionsMatchTheReference() throws Exception {
+        PieceDefinitions definitions = PieceDefinitions.load(Paths.get(PieceDefinitions.DEFAULT_PATH));
+        Random random = new Random(23);
+        int[] comparisons = new int[PieceType.values().length];
+        for (int position = 0; position < 2000; position++) {
+            ReferenceBoard reference = new ReferenceBoard(BoardTests.createRandomPosition(random));
+            long[] colorSquares = new long[2];
+            for (int square = 0; square < 64; square++) {
+                Piece piece = reference.getPieceAtSquare(square);
+                if (piece != null) {
+                    colorSquares[piece.color.ordinal()] |= 1L << square;
+                }
+            }
+            long occupancy = colorSquares[0] | colorSquares[1];
+            for (int square = 0; square < 64; square++) {
+                Piece piece = reference.getPieceAtSquare(square);
+                if (piece == null) {
+                    continue;
+                }
+                long opponents = colorSquares[piece.color.oppositeColor().ordinal()];
+                assertEquals(piece + " on " + square, reference.getPseudoLegalTargets(square),
+                        definitions.getTargets(piece, square, occupancy, opponents));
+                comparisons[piece.type.ordinal()]++;
+            }
+        }
+        for (PieceType type : PieceType.values()) {
+            assertTrue(type + " compared " + comparisons[type.ordinal()] + " times", comparisons[type.ordinal()] > 100);
+        }
+    }
+
+    public void testShippedDefinitionsOnAnOpenBoard() throws Exception {
+        PieceDefinitions definitions = PieceDefinitions.load(Paths.get(PieceDefinitions.DEFAULT_PATH));
+        // alone on d4
+        int[] targetCounts = {8, 27, 13, 8, 14, 1, 12, 8};
+        for (PieceType type : PieceType.values()) {
+            long targets = definitions.getTargets(Piece.of(type, PlayerColor.WHITE), 35, 1L << 35, 0);
+            assertEquals(type.toString(), targetCounts[type.ordinal()], Long.bitCount(targets));
+        }
+        assertEquals(bits(1, 5, 18, 20, 23, 25, 29, 41, 45, 50, 52, 55),
+                definitions.getTargets(Piece.of(PieceType.DRUNKEN_KNIGHT, PlayerColor.BLACK), 35, 1L << 35, 0));
+        // pawns leap two squares from their starting rows
+        assertEquals(bits(43, 35), definitions.getTargets(Piece.of(PieceType.PAWN, PlayerColor.WHITE), 51, 1L << 51, 0));
+        assertEquals(bits(19, 27), definitions.getTargets(Piece.of(PieceType.PAWN, PlayerColor.BLACK), 11, 1L << 11, 0));
+        // a rook stops before its own piece on d6 and takes the opponent's on d2
+        assertEquals(bits(27, 43, 51, 32, 33, 34, 36, 37, 38, 39), definitions.getTargets(
+                Piece.of(PieceType.ROOK, PlayerColor.WHITE), 35, bits(35, 19, 51), bits(51)));
+    }
+
+    public void testInitialMoveAndRangeAndMoveOrCapture() {
+        PieceDefinitions definitions = PieceDefinitions.parse(Arrays.asList(
+                "# a pawn leaping two squares from its row, and a rook riding two squares at most",
+                "PAWN  leap  -1,0   move",
+                "PAWN  leap  -1,1   capture",
+                "PAWN  leap  -2,0   move initial",
+                "ROOK  ride2 1,0    symmetric"));
+        Piece whitePawn = Piece.of(PieceType.PAWN, PlayerColor.WHITE);
+        Piece blackPawn = Piece.of(PieceType.PAWN, PlayerColor.BLACK);
+        // e2 and e3 for white, rows are mirrored for black
+        assertEquals(bits(44, 36), definitions.getTargets(whitePawn, 52, 1L << 52, 0));
+        assertEquals(bits(36), definitions.getTargets(whitePawn, 44, 1L << 44, 0));
+        assertEquals(bits(20, 28), definitions.getTargets(blackPawn, 12, 1L << 12, 0));
+        // the initial leap jumps over a piece, the step does not capture it, the capture only takes an opponent
+        assertEquals(bits(36), definitions.getTargets(whitePawn, 52, bits(52, 44), bits(44)));
+        assertEquals(bits(45), definitions.getTargets(whitePawn, 52, bits(52, 44, 36, 45), bits(45)));
+        assertEquals(0, definitions.getTargets(whitePawn, 52, bits(52, 44, 36, 45), 0));
+
+        Piece rook = Piece.of(PieceType.ROOK, PlayerColor.WHITE);
+        assertEquals(bits(27, 19, 43, 51, 34, 33, 36, 37), definitions.getTargets(rook, 35, 1L << 35, 0));
+        assertEquals(bits(43, 51, 34, 33, 36, 37), definitions.getTargets(rook, 35, bits(35, 27), 0));
+        assertEquals(bits(27, 43, 51, 34, 33, 36, 37), definitions.getTargets(rook, 35, bits(35, 27), bits(27)));
+        // a piece without a line moves nowhere
+        assertEquals(0, definitions.getTargets(Piece.of(PieceType.KING, PlayerColor.WHITE), 35, 1L << 35, 0));
+    }
+
+    public void testInvalidDefinitionsNameTheirLine() {
+        assertInvalid("unknown piece type DRAGON", "DRAGON leap 1,0");
+        assertInvalid("expected leap, ride or rideN", "KING jump 1,0");
+        assertInvalid("expected leap, ride or rideN", "ROOK ride8 1,0");
+        assertInvalid("expected a piece type", "KING leap");
+        assertInvalid("unknown option 1;0", "KING leap 1;0");
+        assertInvalid("unknown option 8,0", "KING leap 8,0");
+        assertInvalid("unknown option 1,0,1", "KING leap 1,0,1");
+        assertInvalid("0,0 is not a move", "KING leap 0,0");
+        assertInvalid("unknown option sometimes", "KING leap 1,0 sometimes");
+        assertInvalid("no offsets", "KING leap symmetric");
+        assertInvalid("move and capture exclude each other", "KING leap 1,0 move capture");
+        // a rider jumping two squares and another walking through the square between cannot share the same lines
+        assertInvalid("rides through squares another rider jumps over", "QUEEN ride 2,0", "ROOK ride 1,0");
+    }
+
+    /**
+     * Parses a comment followed by the lines, the last one of which must be refused.
+     */
+    private static void assertInvalid(String message, String... lines) {
+        String[] definitions = new String[lines.length + 1];
+        definitions[0] = "# the line numbers count the comments";
+        System.arraycopy(lines, 0, definitions, 1, lines.length);
+        try {
+            PieceDefinitions.parse(Arrays.asList(definitions));
+            fail(Arrays.toString(lines));
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("line " + definitions.length + ": "));
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private static long bits(int... squares) {
+        long bits = 0;
+        for (int square : squares) {
+            bits |= 1L << square;
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,183 @@
+package Tests;
+
+import Chess.Analysis.PositionCorpus;
+import Chess.Analysis.PositionCorpusWriter;
+import Chess.Models.Board;
+import Chess.Models.Coordinate;
+import Chess.Models.Piece;
+import Chess.Types.PlayerColor;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class PositionCorpusTests extends TestCase {
+    public void testRecordsReadBackWithTheirMetadata() throws Exception {
+        Path path = Files.createTempFile("corpus", ".bin");
+        List<byte[]> positions = new ArrayList<byte[]>();
+        List<int[]> metadata = new ArrayList<int[]>();
+        // the games are written out of order, and game 7 in two runs around game 8
+        int[] gameIds = {3, 7, 8, 7, 1, 5};
+        Random random = new Random(29);
+        try {
+            PositionCorpusWriter writer = new PositionCorpusWriter(path, true);
+            try {
+                for (int i = 0; i < gameIds.length; i++) {
+                    byte result = (byte) (1 + i % 3);
+                    Board board = new Board(BoardTests.getStartingBoard());
+                    PlayerColor color = PlayerColor.WHITE;
+                    // enough plies for the records to go through several buffers of the writer
+                    for (int ply = 0; ply < 8000; ply++) {
+                        writer.append(board, gameIds[i], ply, result);
+                        positions.add(pack(board));
+                        metadata.add(new int[]{gameIds[i], ply, result});
+                        if (playRandomMove(board, color, random)) {
+                            color = color.oppositeColor();
+                        } else {
+                            board = new Board(BoardTests.getStartingBoard());
+                            color = PlayerColor.WHITE;
+                        }
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+
+            PositionCorpus corpus = PositionCorpus.open(path);
+            try {
+                assertTrue(corpus.hasMetadata());
+                assertEquals(positions.size(), corpus.getRecordCount());
+                Board board = new Board(BoardTests.getStartingBoard());
+                for (int record = 0; record < positions.size(); record++) {
+                    corpus.readPosition(record, board);
+                    assertTrue(Arrays.equals(positions.get(record), pack(board)));
+                    assertEquals(metadata.get(record)[0], corpus.getGameId(record));
+                    assertEquals(metadata.get(record)[1], corpus.getPly(record));
+                    assertEquals(metadata.get(record)[2], corpus.getResult(record));
+                }
+                // the decoded board is a whole position, the same as the one written
+                corpus.readPosition(0, board);
+                Board start = new Board(BoardTests.getStartingBoard());
+                for (int square = 0; square < 64; square++) {
+                    Piece expected = start.getPieceAtCoordinate(Coordinate.fromSquare(square));
+                    Piece piece = board.getPieceAtCoordinate(Coordinate.fromSquare(square));
+                    assertEquals(expected == null, piece == null);
+                    if (piece != null) {
+                        assertEquals(expected.type, piece.type);
+                        assertEquals(expected.color, piece.color);
+                    }
+                }
+
+                assertEquals(0, corpus.findFirstRecordOfGame(3));
+                assertEquals(8000, corpus.getRecordCountOfGame(3));
+                // the first of the two runs of game 7
+                assertEquals(8000, corpus.findFirstRecordOfGame(7));
+                assertEquals(8000, corpus.getRecordCountOfGame(7));
+                assertEquals(7, corpus.getGameId(24000));
+                assertEquals(16000, corpus.findFirstRecordOfGame(8));
+                assertEquals(40000, corpus.findFirstRecordOfGame(5));
+                assertEquals(-1, corpus.findFirstRecordOfGame(4));
+                assertEquals(0, corpus.getRecordCountOfGame(4));
+                assertEquals(-1, corpus.findFirstRecordOfGame(9));
+            } finally {
+                corpus.close();
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    public void testCorpusWithoutMetadata() throws Exception {
+        Path path = Files.createTempFile("corpus", ".bin");
+        try {
+            PositionCorpusWriter writer = new PositionCorpusWriter(path, false);
+            Board board = new Board(BoardTests.getStartingBoard());
+            for (int i = 0; i < 10; i++) {
+                writer.append(board);
+            }
+            writer.close();
+
+            PositionCorpus corpus = PositionCorpus.open(path);
+            try {
+                assertFalse(corpus.hasMetadata());
+                assertEquals(10, corpus.getRecordCount());
+                assertEquals(-1, corpus.getGameId(9));
+                assertEquals(-1, corpus.getPly(9));
+                assertEquals(PositionCorpus.RESULT_UNKNOWN, corpus.getResult(9));
+                assertEquals(-1, corpus.findFirstRecordOfGame(0));
+                Board read = new Board(BoardTests.getBoardWithKing());
+                corpus.readPosition(9, read);
+                assertTrue(Arrays.equals(pack(board), pack(read)));
+            } finally {
+                corpus.close();
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    public void testSlicesCoverTheRecordsOnce() throws Exception {
+        Path path = Files.createTempFile("corpus", ".bin");
+        try {
+            PositionCorpusWriter writer = new PositionCorpusWriter(path, false);
+            Board board = new Board(BoardTests.getStartingBoard());
+            for (int i = 0; i < 103; i++) {
+                writer.append(board);
+            }
+            writer.close();
+
+            PositionCorpus corpus = PositionCorpus.open(path);
+            try {
+                for (int sliceCount = 1; sliceCount <= 7; sliceCount++) {
+                    assertEquals(0, corpus.getSliceStart(0, sliceCount));
+                    assertEquals(103, corpus.getSliceStart(sliceCount, sliceCount));
+                    for (int slice = 0; slice < sliceCount; slice++) {
+                        long size = corpus.getSliceStart(slice + 1, sliceCount) - corpus.getSliceStart(slice, sliceCount);
+                        assertTrue(size == 103 / sliceCount || size == 103 / sliceCount + 1);
+                    }
+                }
+                // more slices than records leaves some empty
+                assertEquals(0, corpus.getSliceStart(1, 200));
+                assertEquals(103, corpus.getSliceStart(200, 200));
+            } finally {
+                corpus.close();
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static byte[] pack(Board board) {
+        ByteBuffer buffer = ByteBuffer.allocate(Board.PACKED_POSITION_BYTES);
+        board.writePackedPosition(buffer, 0);
+        return buffer.array();
+    }
+
+    /**
+     * Plays one of the legal moves of a player at random.
+     * @return false if the player has no legal move.
+     */
+    private static boolean playRandomMove(Board board, PlayerColor color, Random random) {
+        List<Coordinate[]> moves = new ArrayList<Coordinate[]>();
+        for (int square = 0; square < 64; square++) {
+            Coordinate from = Coordinate.fromSquare(square);
+            Piece piece = board.getPieceAtCoordinate(from);
+            if (piece != null && piece.color == color) {
+                for (Coordinate to : board.computeReachableMoves(from)) {
+                    moves.add(new Coordinate[]{from, to});
+                }
+            }
+        }
+        if (moves.isEmpty()) {
+            return false;
+        }
+        Coordinate[] move = moves.get(random.nextInt(moves.size()));
+        board.moveTo(move[1], move[0]);
+        return true;
+    }
+}
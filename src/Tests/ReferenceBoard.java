@@ -0,0 +1,216 @@
+package Tests;
+
+import Chess.Models.Piece;
+import Chess.Types.GameStatus;
+import Chess.Types.PieceType;
+import Chess.Types.PlayerColor;
+
+/**
+ * The rules of the game as the Piece[][] Board applied them before it was optimized, frozen as the oracle of
+ * MoveGenerationFuzzer. It must not follow the changes of Board or of Assets/pieces.txt: the moves of every piece are
+ * written out here, square by square, and a move is legal if the king of its player is not attacked once it is made.
+ *
+ * - the king and the elephant step to the eight squares around them, the knight leaps like in chess;
+ * - the queen, the rook and the bishop ride until the first piece, the drunken knight rides the knight's leaps;
+ * - a pawn steps forward to an empty square, or leaps two squares forward to an empty square from its starting row
+ *   whatever stands between, and captures one square diagonally forward. There are no promotions.
+ *
+ * Squares are numbered row * 8 + column from a8, white pawns move towards row 0.
+ */
+public final class ReferenceBoard {
+    // the serializer code of each PieceType, indexed by PieceType.ordinal()
+    private static final String SERIALIZER_CODES = "KQBHRPYX";
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+    private static final int[][] STRAIGHT = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] DIAGONAL = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+    private static final int[][] ALL_AROUND = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+    private static final int[][] KNIGHT = {{2, 1}, {2, -1}, {-2, 1}, {-2, -1}, {1, 2}, {1, -2}, {-1, 2}, {-1, -2}};
+
+    private final Piece[][] squares = new Piece[8][8];
+
+    /**
+     * @param serializer a position in the 192 characters of the Board constructor.
+     */
+    public ReferenceBoard(String serializer) {
+        for (int square = 0; square < 64; square++) {
+            char code = serializer.charAt(square * 3 + 1);
+            char color = serializer.charAt(square * 3 + 2);
+            if (code != 'E') {
+                squares[square / 8][square % 8] = Piece.of(PIECE_TYPES[SERIALIZER_CODES.indexOf(code)],
+                        color == '0' ? PlayerColor.WHITE : PlayerColor.BLACK);
+            }
+        }
+    }
+
+    /**
+     * @return the position in the 192 characters of the Board constructor.
+     */
+    public String serialize() {
+        StringBuilder serializer = new StringBuilder(192);
+        for (int square = 0; square < 64; square++) {
+            Piece piece = squares[square / 8][square % 8];
+            if (piece == null) {
+                serializer.append("#E2");
+            } else {
+                serializer.append('#').append(SERIALIZER_CODES.charAt(piece.type.ordinal()))
+                        .append(piece.color == PlayerColor.WHITE ? '0' : '1');
+            }
+        }
+        return serializer.toString();
+    }
+
+    public Piece getPieceAtSquare(int square) {
+        return squares[square / 8][square % 8];
+    }
+
+    public void setPieceAtSquare(Piece piece, int square) {
+        squares[square / 8][square % 8] = piece;
+    }
+
+    /**
+     * Moves a piece, capturing what stands on the destination.
+     */
+    public void moveTo(int fromSquare, int toSquare) {
+        squares[toSquare / 8][toSquare % 8] = squares[fromSquare / 8][fromSquare % 8];
+        squares[fromSquare / 8][fromSquare % 8] = null;
+    }
+
+    /**
+     * @return the legal destinations of the piece on a square, one bit per square, 0 if the square is empty.
+     */
+    public long getLegalTargets(int fromSquare) {
+        Piece piece = getPieceAtSquare(fromSquare);
+        if (piece == null) {
+            return 0;
+        }
+        long legalTargets = 0;
+        long targets = getPseudoLegalTargets(fromSquare);
+        while (targets != 0) {
+            int toSquare = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            Piece captured = getPieceAtSquare(toSquare);
+            moveTo(fromSquare, toSquare);
+            if (!isKingInCheck(piece.color)) {
+                legalTargets |= 1L << toSquare;
+            }
+            moveTo(toSquare, fromSquare);
+            setPieceAtSquare(captured, toSquare);
+        }
+        return legalTargets;
+    }
+
+    /**
+     * @return true if a piece of the other player can reach the king of a player. A player without a king is never
+     * in check.
+     */
+    public boolean isKingInCheck(PlayerColor kingColor) {
+        int kingSquare = -1;
+        for (int square = 0; square < 64; square++) {
+            Piece piece = getPieceAtSquare(square);
+            if (piece != null && piece.type == PieceType.KING && piece.color == kingColor) {
+                kingSquare = square;
+            }
+        }
+        if (kingSquare < 0) {
+            return false;
+        }
+        for (int square = 0; square < 64; square++) {
+            Piece piece = getPieceAtSquare(square);
+            if (piece != null && piece.color != kingColor
+                    && (getPseudoLegalTargets(square) & (1L << kingSquare)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the state of the game for a player, as if it were their turn.
+     */
+    public GameStatus evaluateStatus(PlayerColor color) {
+        boolean hasLegalMove = false;
+        for (int square = 0; square < 64 && !hasLegalMove; square++) {
+            Piece piece = getPieceAtSquare(square);
+            hasLegalMove = piece != null && piece.color == color && getLegalTargets(square) != 0;
+        }
+        boolean isInCheck = isKingInCheck(color);
+        if (hasLegalMove) {
+            return isInCheck ? GameStatus.CHECK : GameStatus.ONGOING;
+        }
+        return isInCheck ? GameStatus.CHECKMATE : GameStatus.STALEMATE;
+    }
+
+    /**
+     * @return the squares the piece on a square can go to, whether or not its king is left in check.
+     */
+    long getPseudoLegalTargets(int square) {
+        Piece piece = getPieceAtSquare(square);
+        int row = square / 8;
+        int column = square % 8;
+        switch (piece.type) {
+            case KING:
+            case ELEPHANT:
+                return step(row, column, piece.color, ALL_AROUND, false);
+            case QUEEN:
+                return step(row, column, piece.color, ALL_AROUND, true);
+            case BISHOP:
+                return step(row, column, piece.color, DIAGONAL, true);
+            case ROOK:
+                return step(row, column, piece.color, STRAIGHT, true);
+            case KNIGHT:
+                return step(row, column, piece.color, KNIGHT, false);
+            case DRUNKEN_KNIGHT:
+                return step(row, column, piece.color, KNIGHT, true);
+            default:
+                return getPawnTargets(row, column, piece.color);
+        }
+    }
+
+    /**
+     * @param isRiding true to go on in every direction until the edge or a piece, false for one step.
+     */
+    private long step(int row, int column, PlayerColor color, int[][] directions, boolean isRiding) {
+        long targets = 0;
+        for (int[] direction : directions) {
+            int targetRow = row + direction[0];
+            int targetColumn = column + direction[1];
+            while (isOnBoard(targetRow, targetColumn)) {
+                Piece target = squares[targetRow][targetColumn];
+                if (target == null || target.color != color) {
+                    targets |= 1L << (targetRow * 8 + targetColumn);
+                }
+                if (target != null || !isRiding) {
+                    break;
+                }
+                targetRow += direction[0];
+                targetColumn += direction[1];
+            }
+        }
+        return targets;
+    }
+
+    private long getPawnTargets(int row, int column, PlayerColor color) {
+        int forward = color == PlayerColor.WHITE ? -1 : 1;
+        int startingRow = color == PlayerColor.WHITE ? 6 : 1;
+        long targets = 0;
+        if (isOnBoard(row + forward, column) && squares[row + forward][column] == null) {
+            targets |= 1L << ((row + forward) * 8 + column);
+        }
+        if (row == startingRow && squares[row + 2 * forward][column] == null) {
+            targets |= 1L << ((row + 2 * forward) * 8 + column);
+        }
+        for (int side = -1; side <= 1; side += 2) {
+            if (isOnBoard(row + forward, column + side)) {
+                Piece target = squares[row + forward][column + side];
+                if (target != null && target.color != color) {
+                    targets |= 1L << ((row + forward) * 8 + column + side);
+                }
+            }
+        }
+        return targets;
+    }
+
+    private static boolean isOnBoard(int row, int column) {
+        return row >= 0 && row < 8 && column >= 0 && column < 8;
+    }
+}
@@ -0,0 +1,273 @@
+package Tests;
+
+import Chess.Analysis.AlgebraicNotation;
+import Chess.Controllers.SwingThrottle;
+import Chess.Engine.AnalysisEngine;
+import Chess.Engine.AnalysisListener;
+import Chess.Engine.AnalysisUpdate;
+import Chess.Engine.EvaluationParameters;
+import Chess.Engine.Evaluator;
+import Chess.Engine.PrincipalVariation;
+import Chess.Engine.Search;
+import Chess.Models.Board;
+import Chess.Models.Coordinate;
+import Chess.Models.Move;
+import Chess.Models.PerformanceCounters;
+import Chess.Types.PlayerColor;
+
+import javax.swing.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import junit.framework.TestCase;
+
+public class SearchTests extends TestCase {
+    private static final AnalysisListener IGNORE_UPDATES = new AnalysisListener() {
+        @Override
+        public void onDepthCompleted(AnalysisUpdate update) {
+        }
+    };
+
+    public void testLinesAreDistinctLegalMovesBestFirst() {
+        Board board = new Board(BoardTests.getStartingBoard());
+        int[] legalMoves = new int[Board.MAX_LEGAL_MOVES];
+        int legalMoveCount = board.generateLegalMoves(PlayerColor.WHITE, legalMoves, 0);
+        Set<Integer> legalMoveSet = new HashSet<Integer>();
+        for (int i = 0; i < legalMoveCount; i++) {
+            legalMoveSet.add(legalMoves[i]);
+        }
+        final List<AnalysisUpdate> updates = new ArrayList<AnalysisUpdate>();
+        new Search(new Evaluator()).analyze(board, PlayerColor.WHITE, 3, 4, new AnalysisListener() {
+            @Override
+            public void onDepthCompleted(AnalysisUpdate update) {
+                updates.add(update);
+            }
+        });
+
+        assertEquals(4, updates.size());
+        for (int i = 0; i < updates.size(); i++) {
+            AnalysisUpdate update = updates.get(i);
+            assertEquals(i + 1, update.depth);
+            assertEquals(board.getPositionHash(), update.rootHash);
+            assertEquals(3, update.lines.size());
+            Set<Integer> firstMoves = new HashSet<Integer>();
+            for (int line = 0; line < update.lines.size(); line++) {
+                PrincipalVariation variation = update.lines.get(line);
+                assertTrue(legalMoveSet.contains(variation.getFirstMove()));
+                assertTrue(firstMoves.add(variation.getFirstMove()));
+                if (line > 0) {
+                    assertTrue(update.lines.get(line - 1).score >= variation.score);
+                }
+                assertLineIsLegal(board, PlayerColor.WHITE, variation);
+            }
+        }
+    }
+
+    public void testFindsAForcedMate() {
+        // two rooks against a lone king in the corner, mate in two whatever black does
+        Board board = new Board(getBoardWithRookMate());
+        AnalysisUpdate update = new Search(new Evaluator()).analyze(board, PlayerColor.WHITE, 2, 8, IGNORE_UPDATES);
+        PrincipalVariation bestLine = update.getBestLine();
+        assertEquals(Search.MATE_SCORE - 3, bestLine.score);
+        assertEquals("#2", PrincipalVariation.formatScore(bestLine.score));
+        // the mated position is seen one depth after the mating move, no deeper search can find a shorter mate
+        assertEquals(4, update.depth);
+        assertEquals(3, bestLine.moves.length);
+        assertLineIsLegal(board, PlayerColor.WHITE, bestLine);
+        for (int move : bestLine.moves) {
+            board.makeMove(move);
+        }
+        assertTrue(board.isPlayerWinning(PlayerColor.WHITE));
+        // other rook moves mate as fast, the second line is another first move
+        assertTrue(update.lines.get(1).score <= bestLine.score);
+        assertTrue(update.lines.get(1).getFirstMove() != bestLine.getFirstMove());
+    }
+
+    public void testStoppedAnalysisReportsNothingAfterTheNextOne() throws Exception {
+        final List<Long> rootHashes = Collections.synchronizedList(new ArrayList<Long>());
+        AnalysisListener listener = new AnalysisListener() {
+            @Override
+            public void onDepthCompleted(AnalysisUpdate update) {
+                rootHashes.add(update.rootHash);
+            }
+        };
+        Board start = new Board(BoardTests.getStartingBoard());
+        Board mate = new Board(getBoardWithRookMate());
+        final AnalysisEngine engine = new AnalysisEngine();
+        try {
+            engine.start(start, PlayerColor.WHITE, 2, listener);
+            Thread.sleep(50);
+            // the mate is found at depth 4, which ends the analysis
+            engine.start(mate, PlayerColor.WHITE, 2, listener);
+            long deadline = System.currentTimeMillis() + 10000;
+            while (Collections.frequency(rootHashes, mate.getPositionHash()) < 4) {
+                assertTrue(rootHashes.toString(), System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+            // an analysis stopped after its first depth never reports again
+            engine.start(start, PlayerColor.WHITE, 2, new AnalysisListener() {
+                @Override
+                public void onDepthCompleted(AnalysisUpdate update) {
+                    rootHashes.add(update.rootHash);
+                    engine.stop();
+                }
+            });
+            while (rootHashes.get(rootHashes.size() - 1) != start.getPositionHash()) {
+                assertTrue(rootHashes.toString(), System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+            Thread.sleep(200);
+        } finally {
+            engine.shutdown();
+        }
+        int firstMateUpdate = rootHashes.indexOf(mate.getPositionHash());
+        assertEquals(rootHashes.toString(), firstMateUpdate + 5, rootHashes.size());
+        for (int i = 0; i < firstMateUpdate; i++) {
+            assertEquals(start.getPositionHash(), rootHashes.get(i).longValue());
+        }
+    }
+
+    public void testSwingThrottleDeliversTheLatestValue() throws Exception {
+        final List<Integer> delivered = Collections.synchronizedList(new ArrayList<Integer>());
+        final SwingThrottle<Integer> throttle = new SwingThrottle<Integer>(50, value -> delivered.add(value));
+        long startTime = System.currentTimeMillis();
+        for (int i = 1; i <= 200; i++) {
+            throttle.publish(i);
+            Thread.sleep(1);
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!delivered.contains(200)) {
+            assertTrue(delivered.toString(), System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        // at most one value per interval, in the order they were published
+        assertTrue(delivered + " in " + elapsed + "ms", delivered.size() <= elapsed / 50 + 2);
+        for (int i = 1; i < delivered.size(); i++) {
+            assertTrue(delivered.toString(), delivered.get(i - 1) < delivered.get(i));
+        }
+
+        // a value cleared before its delivery is dropped
+        SwingUtilities.invokeAndWait(() -> {
+            throttle.publish(201);
+            throttle.clear();
+        });
+        Thread.sleep(150);
+        SwingUtilities.invokeAndWait(() -> { });
+        assertEquals(200, delivered.get(delivered.size() - 1).intValue());
+    }
+
+    public void testSearchDoesNotAllocatePerNode() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        Board board = new Board(BoardTests.getStartingBoard());
+        Search search = new Search(new Evaluator());
+        // the first analyses allocate the search board and load the classes
+        for (int i = 0; i < 3; i++) {
+            search.analyze(board, PlayerColor.WHITE, 2, 4, IGNORE_UPDATES);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        search.analyze(board, PlayerColor.WHITE, 2, 5, IGNORE_UPDATES);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        assert search.getNodeCount() > 10000;
+        // only the lines reported for each depth
+        assertTrue(allocated + " bytes allocated", allocated < 4096);
+    }
+
+    public void testSearchReusedForAnotherPosition() {
+        Board board = new Board(BoardTests.getStartingBoard());
+        Search search = new Search(new Evaluator());
+        AnalysisUpdate first = search.analyze(board, PlayerColor.WHITE, 1, 3, IGNORE_UPDATES);
+        board.moveTo(new Coordinate(4,4), new Coordinate(6,4));
+        AnalysisUpdate second = search.analyze(board, PlayerColor.BLACK, 1, 3, IGNORE_UPDATES);
+        assertEquals(board.getPositionHash(), second.rootHash);
+        assert first.rootHash != second.rootHash;
+
+        // the search works on its own board
+        assertEquals("PAWN", board.getPieceNameAtCoordinate(new Coordinate(4,4)));
+        assert board.undoLastMove();
+        assert !board.undoLastMove();
+    }
+
+    public void testPawnTableMatchesTheFeatures() {
+        Evaluator evaluator = new Evaluator();
+        Search search = new Search(evaluator);
+        // a middlegame, where few moves touch the pawns
+        Board board = AlgebraicNotation.parsePosition("r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w - - 0 1");
+        search.analyze(board, PlayerColor.WHITE, 1, 6, IGNORE_UPDATES);
+        double hitRate = (double) evaluator.getPawnHitCount() / evaluator.getPawnProbeCount();
+        assertTrue("pawn table hit rate " + hitRate, hitRate > 0.95);
+
+        // the cached evaluation is the one the tuner computes from the features
+        EvaluationParameters parameters = EvaluationParameters.getDefault();
+        int[] features = new int[EvaluationParameters.COUNT];
+        int[] moves = new int[Board.MAX_LEGAL_MOVES];
+        Random random = new Random(11);
+        PlayerColor color = PlayerColor.WHITE;
+        for (int ply = 0; ply < 300; ply++) {
+            int moveCount = board.generateLegalMoves(color, moves, 0);
+            if (moveCount == 0) {
+                break;
+            }
+            board.makeMove(moves[random.nextInt(moveCount)]);
+            color = color.oppositeColor();
+            Evaluator.computeFeatures(board, features);
+            int expected = 0;
+            for (int i = 0; i < features.length; i++) {
+                expected += features[i] * parameters.get(i);
+            }
+            assertEquals(expected, evaluator.evaluate(board, PlayerColor.WHITE));
+            assertEquals(-expected, evaluator.evaluate(board, PlayerColor.BLACK));
+        }
+    }
+
+    public void testSearchPublishesItsCounters() {
+        PerformanceCounters counters = new PerformanceCounters();
+        Search search = new Search(new Evaluator());
+        search.setPerformanceCounters(counters);
+        Board board = new Board(BoardTests.getStartingBoard());
+        AnalysisUpdate update = search.analyze(board, PlayerColor.WHITE, 1, 4, IGNORE_UPDATES);
+        assertEquals(4, counters.getSearchDepth());
+        assertEquals(update.nodeCount, counters.getSearchNodeCount());
+        // the nodes add up across analyses
+        search.analyze(board, PlayerColor.WHITE, 1, 3, IGNORE_UPDATES);
+        assertEquals(3, counters.getSearchDepth());
+        assertEquals(update.nodeCount + search.getNodeCount(), counters.getSearchNodeCount());
+    }
+
+    /**
+     * Plays the moves of a line on a copy of the board, each one must be legal for the player to move.
+     */
+    private static void assertLineIsLegal(Board board, PlayerColor color, PrincipalVariation line) {
+        Board copy = new Board(board);
+        int[] moves = new int[Board.MAX_LEGAL_MOVES];
+        for (int move : line.moves) {
+            int moveCount = copy.generateLegalMoves(color, moves, 0);
+            boolean isLegal = false;
+            for (int i = 0; i < moveCount && !isLegal; i++) {
+                isLegal = moves[i] == move;
+            }
+            assertTrue(line + ": " + Move.toString(move), isLegal);
+            copy.makeMove(move);
+            color = color.oppositeColor();
+        }
+    }
+
+    static String getBoardWithRookMate() {
+        String line0 =     "#E2#E2#E2#E2#E2#E2#E2#K1";
+        String line2 =     "#R0#E2#E2#E2#E2#E2#E2#E2";
+        String line3 =     "#E2#R0#E2#E2#E2#E2#E2#E2";
+        String line7 =     "#K0#E2#E2#E2#E2#E2#E2#E2";
+        String emptyLine = "#E2#E2#E2#E2#E2#E2#E2#E2";
+        return line0 + emptyLine + line2 + line3 + emptyLine + emptyLine + emptyLine + line7;
+    }
+}